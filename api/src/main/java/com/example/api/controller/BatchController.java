@@ -0,0 +1,83 @@
+package com.example.api.controller;
+
+import com.example.core.service.BatchJob;
+import com.example.core.service.BatchJobRequest;
+import com.example.core.service.BatchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 提交批次比較：一次比較清單或兩個目錄中的所有程序，查詢進度和下載匯總報告。
+ */
+@RestController
+@RequestMapping("/api/batches")
+public class BatchController {
+
+    private final BatchService batchService;
+
+    @Autowired
+    public BatchController(BatchService batchService) {
+        this.batchService = batchService;
+    }
+
+    @PostMapping
+    public ResponseEntity<BatchJob> submit(@RequestBody BatchJobRequest request) {
+        BatchJob batch = batchService.submit(request);
+        URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(batch.getId()).toUri();
+        return ResponseEntity.accepted().location(location).body(batch);
+    }
+
+    @GetMapping
+    public List<BatchJob> list() {
+        return batchService.getBatches();
+    }
+
+    /**
+     * 批次的狀態和已結束的程序的結果，運行中也可以查看。
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<BatchJob> get(@PathVariable String id) {
+        return ResponseEntity.of(batchService.getBatch(id));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<BatchJob> cancel(@PathVariable String id) {
+        return ResponseEntity.of(batchService.cancel(id));
+    }
+
+    @GetMapping("/{id}/reports/{name:.+}")
+    public ResponseEntity<Resource> report(@PathVariable String id, @PathVariable String name) {
+        return batchService.getReport(id, name)
+                .map(ReportDownloads::download)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, String>> queueFull(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "300")
+                .body(Map.of("error", "批次比較的隊列已滿，請稍後再試"));
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.api.controller;
+
+import com.example.core.service.ComparisonJob;
+import com.example.core.service.ComparisonJobRequest;
+import com.example.core.service.CoreService;
+import com.example.core.service.UploadedTrace;
+import com.example.core.tool.store.ResultPage;
+import com.example.core.tool.store.ResultQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.ServletRequestDataBinder;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 以異步作業的形式提交跟蹤比較、查詢作業狀態和下載報告。
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private static final List<String> UPLOAD_PARTS = List.of("env1", "env2");
+
+    private final CoreService coreService;
+    private final JobProgressStreams progressStreams;
+    private final ConversionService conversionService;
+
+    @Autowired
+    public JobController(CoreService coreService, JobProgressStreams progressStreams,
+                         @Qualifier("mvcConversionService") ConversionService conversionService) {
+        this.coreService = coreService;
+        this.progressStreams = progressStreams;
+        this.conversionService = conversionService;
+    }
+
+    @PostMapping
+    public ResponseEntity<ComparisonJob> submit(@RequestBody ComparisonJobRequest request) {
+        ComparisonJob job = coreService.submit(request);
+        URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(job.getId()).toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+
+    /**
+     * 提交比較作業，並在比較的同時以 JSON Lines（application/x-ndjson）串流每一行結果。
+     *
+     * <p>請求體與 {@code POST /api/jobs} 相同。第一行是兩個環境的名稱，之後每產生一行結果就寫出一行，
+     * 最後一行是作業的最終狀態。客戶端讀得慢時比較隨之變慢，伺服器不會無限制地緩衝結果；
+     * 客戶端中途斷線時作業繼續運行，報告仍可從回應標頭 Location 指向的作業下載。</p>
+     */
+    @PostMapping(path = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> stream(@RequestBody ComparisonJobRequest request) {
+        ComparisonJob job = coreService.submitStreaming(request);
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath().path("/api/jobs/{id}").buildAndExpand(job.getId()).toUri();
+        return ResponseEntity.ok()
+                .location(location)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> coreService.streamRows(job, out));
+    }
+
+    /**
+     * 上傳兩個跟蹤文件並提交比較作業。
+     *
+     * <p>請求為 multipart/form-data，文件部分的名稱為 env1 和 env2，可以是純文本、gzip或zip；
+     * 作業參數（tool、env1Name、traceParams、rules 等）放在查詢字串或表單欄位中。
+     * 容器把文件部分寫入臨時文件（見 {@code spring.servlet.multipart} 設定），之後每個文件以串流方式逐行解析，
+     * 不會整個讀入記憶體。請求體延遲解析，所以隊列已滿時在接收文件之前就會拒絕。</p>
+     *
+     * <p>之前上傳過的內容可以用查詢參數 env1Digest / env2Digest（作業返回的SHA-256）引用，該環境不需要再上傳，
+     * 也不需要再解析。</p>
+     */
+    @PostMapping(path = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ComparisonJob> upload(MultipartHttpServletRequest servletRequest) throws IOException {
+        // 在接收可能很大的文件之前先檢查，避免上傳完才被拒絕；讀取任何參數都會觸發接收請求體
+        if (coreService.isQueueFull()) {
+            throw new RejectedExecutionException("比較作業的隊列已滿");
+        }
+        ComparisonJobRequest request = new ComparisonJobRequest();
+        ServletRequestDataBinder binder = new ServletRequestDataBinder(request);
+        binder.setConversionService(conversionService);
+        binder.bind(servletRequest);
+        if (binder.getBindingResult().hasErrors()) {
+            throw new IllegalArgumentException("無效的作業參數: " + binder.getBindingResult().getFieldErrors().stream()
+                    .map(error -> error.getField() + "=" + error.getRejectedValue()).toList());
+        }
+
+        for (String name : servletRequest.getMultiFileMap().keySet()) {
+            if (!UPLOAD_PARTS.contains(name)) {
+                throw new IllegalArgumentException("未知的上傳部分: " + name);
+            }
+        }
+        UploadedTrace env1 = upload(request, servletRequest.getFile("env1"), request.getEnv1Digest(), "env1Digest");
+        UploadedTrace env2 = upload(request, servletRequest.getFile("env2"), request.getEnv2Digest(), "env2Digest");
+        if (env1 == null || env2 == null) {
+            throw new IllegalArgumentException("必須上傳 env1 和 env2 兩個跟蹤文件，或以 env1Digest / env2Digest 引用之前的上傳");
+        }
+
+        ComparisonJob job = coreService.submit(request, env1, env2);
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath().path("/api/jobs/{id}").buildAndExpand(job.getId()).toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+
+    /**
+     * 上傳的文件優先於引用的摘要
+     */
+    private UploadedTrace upload(ComparisonJobRequest request, MultipartFile file, String digest, String field) throws IOException {
+        if (file == null) {
+            return cached(request, digest, field);
+        }
+        try (InputStream in = file.getInputStream()) {
+            return coreService.parseUpload(request, file.getOriginalFilename(), in);
+        }
+    }
+
+    private UploadedTrace cached(ComparisonJobRequest request, String digest, String field) {
+        if (digest == null) {
+            return null;
+        }
+        return coreService.getCachedTrace(request, digest).orElseThrow(() ->
+                new IllegalArgumentException("快取中沒有 " + field + " 對應的跟蹤內容，請重新上傳: " + digest));
+    }
+
+    @GetMapping
+    public List<ComparisonJob> list() {
+        return coreService.getJobs();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ComparisonJob> get(@PathVariable String id) {
+        return ResponseEntity.of(coreService.getJob(id));
+    }
+
+    /**
+     * 以伺服器推送事件串流作業進度：解析的位元組數、配對的條目數和寫出的行數，作業結束時發送最終狀態。
+     */
+    @GetMapping(path = "/{id}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> progress(@PathVariable String id) {
+        return ResponseEntity.of(coreService.getJob(id).map(progressStreams::open));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<ComparisonJob> cancel(@PathVariable String id) {
+        return ResponseEntity.of(coreService.cancel(id));
+    }
+
+    /**
+     * 分頁查詢已成功作業的比較結果，例如 {@code ?type=SQL&minDiff=500&sort=-diff&page=0&size=50}。
+     * 條件和排序見 {@link ResultQuery}；結果由作業產生的列式結果存儲及其索引提供，不需要重新讀取CSV。
+     */
+    @GetMapping("/{id}/rows")
+    public ResponseEntity<ResultPage> rows(@PathVariable String id, @ModelAttribute ResultQuery query) throws IOException {
+        return ResponseEntity.of(coreService.queryRows(id, query));
+    }
+
+    @GetMapping("/{id}/reports")
+    public ResponseEntity<List<String>> reports(@PathVariable String id) {
+        return ResponseEntity.of(coreService.getJob(id).map(ComparisonJob::getReports));
+    }
+
+    @GetMapping("/{id}/reports/{name:.+}")
+    public ResponseEntity<Resource> report(@PathVariable String id, @PathVariable String name) {
+        return coreService.getReport(id, name)
+                .map(ReportDownloads::download)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(MultipartException.class)
+    public ResponseEntity<Map<String, String>> badUpload(MultipartException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", "無法解析上傳內容: " + e.getMessage()));
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, String>> queueFull(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(Map.of("error", "比較作業的隊列已滿，請稍後再試"));
+    }
+}
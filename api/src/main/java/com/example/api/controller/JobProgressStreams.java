@@ -0,0 +1,115 @@
+package com.example.api.controller;
+
+import com.example.core.service.ComparisonJob;
+import com.example.core.service.JobProgress;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以伺服器推送事件（SSE）發送作業進度。
+ *
+ * <p>作業線程只更新 {@link JobProgress} 的計數器；此類的單一排程線程以固定頻率取樣每個訂閱中作業的進度，
+ * 進度有變化時發送 {@code progress} 事件，作業結束時發送 {@code status} 事件並結束串流。
+ * 進度長時間沒有變化時（例如作業仍在排隊）發送註釋行作為心跳，避免代理伺服器關閉閒置的連線。</p>
+ */
+@Slf4j
+@Component
+public class JobProgressStreams {
+
+    private static final long HEARTBEAT_MILLIS = 15_000;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "job-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long intervalMillis;
+
+    /**
+     * @param intervalMillis 取樣和發送進度的間隔
+     */
+    public JobProgressStreams(@Value("${trace-tool.jobs.progress-interval-millis:500}") long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * @param job 要訂閱的作業
+     * @return 發送該作業進度直到作業結束的串流
+     */
+    public SseEmitter open(ComparisonJob job) {
+        SseEmitter emitter = new SseEmitter(0L);
+        ProgressStream stream = new ProgressStream(job, emitter);
+        emitter.onCompletion(stream::stop);
+        emitter.onTimeout(stream::stop);
+        emitter.onError(e -> stream.stop());
+        stream.future = scheduler.scheduleAtFixedRate(stream, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private final class ProgressStream implements Runnable {
+        private final ComparisonJob job;
+        private final SseEmitter emitter;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean stopped;
+        private JobProgress.Snapshot lastSent;
+        private long idleMillis;
+
+        ProgressStream(ComparisonJob job, SseEmitter emitter) {
+            this.job = job;
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void run() {
+            if (stopped) {
+                stop();
+                return;
+            }
+            // 先讀狀態再取樣，使作業結束時最後一次發送的進度是最終的計數
+            boolean finished = job.getStatus().isFinished();
+            JobProgress.Snapshot snapshot = job.getProgress();
+            try {
+                if (!snapshot.equals(lastSent)) {
+                    emitter.send(SseEmitter.event().name("progress").data(snapshot, MediaType.APPLICATION_JSON));
+                    lastSent = snapshot;
+                    idleMillis = 0;
+                } else if ((idleMillis += intervalMillis) >= HEARTBEAT_MILLIS) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                    idleMillis = 0;
+                }
+                if (finished) {
+                    emitter.send(SseEmitter.event().name("status").data(job, MediaType.APPLICATION_JSON));
+                    emitter.complete();
+                    stop();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // 客戶端已斷開連線
+                log.debug("作業 {} 的進度串流已關閉: {}", job.getId(), e.toString());
+                stop();
+            }
+        }
+
+        void stop() {
+            stopped = true;
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.api.controller;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.file.Path;
+
+/**
+ * 作業和批次的報告下載，兩者的回應格式相同。
+ */
+final class ReportDownloads {
+
+    private ReportDownloads() {
+    }
+
+    /**
+     * @param report 報告的路徑，已由服務確認屬於作業或批次
+     * @return 以附件下載報告的回應，內容類型按副檔名決定
+     */
+    static ResponseEntity<Resource> download(Path report) {
+        Resource resource = new FileSystemResource(report);
+        MediaType mediaType = MediaTypeFactory.getMediaType(resource).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        ContentDisposition disposition = ContentDisposition.attachment()
+                .filename(report.getFileName().toString())
+                .build();
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                .body(resource);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.benchmarks;
+
+import com.example.core.tool.TopKRegressions;
+import com.example.core.tool.report.ComparisonRow;
+import com.example.core.tool.report.ComparisonSink;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 將比較結果交給JMH的Blackhole，只測量比較本身，不包含報告的格式化和寫出。
+ */
+final class BlackholeSink implements ComparisonSink {
+
+    private final Blackhole blackhole;
+
+    BlackholeSink(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) {
+        blackhole.consume(env1Name);
+        blackhole.consume(env2Name);
+    }
+
+    @Override
+    public void accept(ComparisonRow row) {
+        blackhole.consume(row);
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) {
+        blackhole.consume(topRegressions);
+    }
+
+    @Override
+    public void close() {
+    }
+}
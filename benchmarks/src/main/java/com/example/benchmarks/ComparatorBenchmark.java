@@ -0,0 +1,131 @@
+package com.example.benchmarks;
+
+import com.example.core.tool.AETraceComparator;
+import com.example.core.tool.NewAETraceComparator;
+import com.example.core.tool.NewSQRTraceComparator;
+import com.example.core.tool.SQRTraceComparator;
+import com.example.core.tool.analyzer.StandardTraceAnalyzer;
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.analyzer.TraceEntryTable;
+import com.example.core.tool.analyzer.TraceStringPool;
+import com.example.core.tool.rule.RuleSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比較器的吞吐量：兩個環境的跟蹤文件在試驗開始前解析一次，每次操作比較一對完整的條目列表。
+ *
+ * <p>使用輸出接口的比較器把結果交給 {@link BlackholeSink}，只測量配對和規則求值；
+ * 舊的比較器只能寫文件，每個線程寫入自己的臨時文件。{@link EntryCounter} 報告每秒比較的條目數（兩個環境之和）。
+ * 1000萬個條目時兩個環境的條目同時留在堆中，需要以 {@code -jvmArgsAppend -Xmx16g} 之類的參數加大堆。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=benchmark-logback.xml")
+public class ComparatorBenchmark {
+
+    private static final RuleSet RULES = RuleSet.defaults();
+
+    @Param({"10000", "1000000", "10000000"})
+    public int entries;
+
+    private List<TraceEntry> aeEnv1;
+    private List<TraceEntry> aeEnv2;
+    private TraceEntryTable aeTable1;
+    private TraceEntryTable aeTable2;
+    private List<SQRTraceComparator.TraceEntry> sqrEnv1;
+    private List<SQRTraceComparator.TraceEntry> sqrEnv2;
+    private List<?> newSqrEnv1;
+    private List<?> newSqrEnv2;
+
+    /**
+     * 每個線程的報告文件，供只能寫文件的舊比較器使用
+     */
+    @State(Scope.Thread)
+    public static class ReportFile {
+
+        Path path;
+
+        @Setup(Level.Trial)
+        public void create() throws IOException {
+            path = Files.createTempFile("trace-tool-benchmark", ".csv");
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void parseTraces() throws IOException {
+        aeEnv1 = new StandardTraceAnalyzer().parseTrace(TraceFiles.ae(entries, false).toString());
+        aeEnv2 = new StandardTraceAnalyzer().parseTrace(TraceFiles.ae(entries, true).toString());
+        // 比較兩個表時要求它們共用同一個字符串池
+        TraceStringPool stringPool = new TraceStringPool();
+        aeTable1 = TraceEntryTable.of(aeEnv1, stringPool);
+        aeTable2 = TraceEntryTable.of(aeEnv2, stringPool);
+
+        String sqrTrace1 = TraceFiles.sqr(entries, false).toString();
+        String sqrTrace2 = TraceFiles.sqr(entries, true).toString();
+        sqrEnv1 = SQRTraceComparator.parseTrace(sqrTrace1, SQRTraceComparator.TraceFormat.DETAILED_ALL);
+        sqrEnv2 = SQRTraceComparator.parseTrace(sqrTrace2, SQRTraceComparator.TraceFormat.DETAILED_ALL);
+        newSqrEnv1 = NewSQRTraceComparator.parseTrace(sqrTrace1);
+        newSqrEnv2 = NewSQRTraceComparator.parseTrace(sqrTrace2);
+    }
+
+    @Benchmark
+    public void aeEntries(EntryCounter counter, Blackhole blackhole) throws IOException {
+        AETraceComparator.compareTraces(aeEnv1, aeEnv2, "ENV1", "ENV2", RULES, new BlackholeSink(blackhole));
+        counter.add(aeEnv1.size() + aeEnv2.size());
+    }
+
+    @Benchmark
+    public void aeTables(EntryCounter counter, Blackhole blackhole) throws IOException {
+        AETraceComparator.compareTraces(aeTable1, aeTable2, "ENV1", "ENV2", RULES, new BlackholeSink(blackhole));
+        counter.add(aeTable1.size() + aeTable2.size());
+    }
+
+    @Benchmark
+    public void sqrEntries(EntryCounter counter, Blackhole blackhole) throws IOException {
+        SQRTraceComparator.compareTraces(sqrEnv1, sqrEnv2, "ENV1", "ENV2", RULES, new BlackholeSink(blackhole));
+        counter.add(sqrEnv1.size() + sqrEnv2.size());
+    }
+
+    @Benchmark
+    public void newAeToFile(EntryCounter counter, ReportFile report) throws IOException {
+        NewAETraceComparator.compareTraces(aeEnv1, aeEnv2, "ENV1", "ENV2", report.path.toString(), RULES);
+        counter.add(aeEnv1.size() + aeEnv2.size());
+    }
+
+    /**
+     * NewSQRTraceComparator的條目類型不是公開的，只能以原始類型的列表傳回。
+     */
+    @Benchmark
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public void newSqrToFile(EntryCounter counter, ReportFile report) throws IOException {
+        NewSQRTraceComparator.compareTraces((List) newSqrEnv1, (List) newSqrEnv2, 2.0, report.path.toString());
+        counter.add(newSqrEnv1.size() + newSqrEnv2.size());
+    }
+}
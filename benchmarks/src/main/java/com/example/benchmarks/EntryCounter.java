@@ -0,0 +1,42 @@
+package com.example.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collection;
+
+/**
+ * 記錄每個線程處理的跟蹤條目數，JMH將它除以測量時間，與每秒操作數一同報告為每秒條目數。
+ *
+ * <p>一次操作是解析或比較整個跟蹤文件，不同大小的文件之間每秒操作數無法比較，每秒條目數則可以。</p>
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class EntryCounter {
+
+    /**
+     * 本次迭代處理的條目數，字段名稱即報告中的計數器名稱
+     */
+    public long entries;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        entries = 0;
+    }
+
+    /**
+     * @param processed 一次操作處理的條目
+     * @return 同一個集合，方便作為基準方法的返回值
+     */
+    <T extends Collection<?>> T count(T processed) {
+        entries += processed.size();
+        return processed;
+    }
+
+    void add(long processed) {
+        entries += processed;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.benchmarks;
+
+import com.example.core.tool.AETraceComparator;
+import com.example.core.tool.SQRTraceComparator;
+import com.example.core.tool.analyzer.DetailedPcTraceAnalyzer;
+import com.example.core.tool.analyzer.DetailedSqlTraceAnalyzer;
+import com.example.core.tool.analyzer.StandardTraceAnalyzer;
+import com.example.core.tool.analyzer.TraceAnalyzerFactory;
+import com.example.core.tool.analyzer.TraceEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析器的吞吐量：每次操作從磁碟解析一個完整的跟蹤文件。
+ *
+ * <p>除了每秒操作數，{@link EntryCounter} 另外報告每秒解析的條目數；加上 {@code -prof gc} 可以看到每個條目分配的記憶體。
+ * 1000萬個條目的跟蹤文件需要數GB的堆，可以用 {@code -jvmArgsAppend -Xmx16g} 指定。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=benchmark-logback.xml")
+public class ParserBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int entries;
+
+    private String aeTrace;
+    private String sqrTrace;
+
+    @Setup(Level.Trial)
+    public void generateTraces() throws IOException {
+        aeTrace = TraceFiles.ae(entries, false).toString();
+        sqrTrace = TraceFiles.sqr(entries, false).toString();
+    }
+
+    @Benchmark
+    public List<TraceEntry> standardAnalyzer(EntryCounter counter) throws IOException {
+        return counter.count(new StandardTraceAnalyzer().parseTrace(aeTrace));
+    }
+
+    @Benchmark
+    public List<TraceEntry> detailedSqlAnalyzer(EntryCounter counter) throws IOException {
+        return counter.count(new DetailedSqlTraceAnalyzer().parseTrace(aeTrace));
+    }
+
+    @Benchmark
+    public List<TraceEntry> detailedPcAnalyzer(EntryCounter counter) throws IOException {
+        return counter.count(new DetailedPcTraceAnalyzer().parseTrace(aeTrace));
+    }
+
+    /**
+     * 按trace參數選擇分析器並合併結果，與比較服務解析AE跟蹤文件的方式相同。
+     */
+    @Benchmark
+    public List<TraceEntry> multipleAnalyzers(EntryCounter counter) throws IOException {
+        return counter.count(AETraceComparator.parseTraceWithMultipleAnalyzers(aeTrace,
+                TraceAnalyzerFactory.createAnalyzersForParams(TraceFiles.AE_TRACE_PARAMS)));
+    }
+
+    @Benchmark
+    public List<SQRTraceComparator.TraceEntry> sqrParseTrace(EntryCounter counter) throws IOException {
+        return counter.count(SQRTraceComparator.parseTrace(sqrTrace, SQRTraceComparator.TraceFormat.DETAILED_ALL));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.benchmarks;
+
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以不同的線程數依次運行同一組基準測試，觀察解析和比較能否隨並行的作業擴展。
+ *
+ * <p>參數依次為：基準測試名稱的正則表達式（默認為全部）、以逗號分隔的線程數（N表示可用的處理器數，默認為 {@code 1,2,4,N}）
+ * 和條目數（默認為1000000）。每個線程數的結果連同GC統計寫入 {@code jmh-result-threads-<線程數>.json}，
+ * 最後在日誌中輸出一張彙總表。</p>
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.example.benchmarks.ThreadScaling ParserBenchmark.standardAnalyzer 1,4,N 10000
+ * </pre>
+ */
+@Slf4j
+public final class ThreadScaling {
+
+    private ThreadScaling() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ThreadScaling.class.getPackageName() + "\\..*Benchmark";
+        List<Integer> threadCounts = threadCounts(args.length > 1 ? args[1] : "1,2,4,N");
+        String entries = args.length > 2 ? args[2] : "1000000";
+
+        List<String> summary = new ArrayList<>();
+        summary.add(String.format("%-45s %10s %8s %14s %16s", "Benchmark", "Entries", "Threads", "Ops/s", "Entries/s"));
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .param("entries", entries)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-threads-" + threads + ".json")
+                    .build();
+            for (RunResult result : new Runner(options).run()) {
+                Result<?> operations = result.getPrimaryResult();
+                Result<?> processed = result.getSecondaryResults().get("entries");
+                summary.add(String.format("%-45s %10s %8d %14.3f %16.0f",
+                        result.getParams().getBenchmark().replace(ThreadScaling.class.getPackageName() + ".", ""),
+                        result.getParams().getParam("entries"), threads, operations.getScore(),
+                        processed != null ? processed.getScore() : Double.NaN));
+            }
+        }
+        summary.forEach(log::info);
+    }
+
+    private static List<Integer> threadCounts(String value) {
+        List<Integer> counts = new ArrayList<>();
+        for (String count : value.split(",")) {
+            String trimmed = count.trim();
+            counts.add(trimmed.equalsIgnoreCase("N") ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(trimmed));
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * 產生基準測試用的合成跟蹤文件，每種大小和環境只產生一次。
+ *
+ * <p>文件存放在系統屬性 {@code benchmark.traceDir} 指定的目錄，默認為 {@code java.io.tmpdir} 下的
+ * {@code trace-tool-benchmarks}；目錄中已有的文件直接使用，每個fork和每次運行都不必重新產生。
+ * 1000萬個條目的AE跟蹤文件約為1.5GB。</p>
+ *
+ * <p>內容由固定種子的偽隨機數產生，兩個環境的結構相同：第二個環境的執行時間是第一個環境的0.8到1.6倍，
+ * 並且少數步驟多出或缺少一個SQL，比較時會同時出現MATCHED、UNIQUE和MISSING的結果。</p>
+ */
+final class TraceFiles {
+
+    /**
+     * 解析AE跟蹤文件時使用的trace參數，三個分析器都會用到
+     */
+    static final String AE_TRACE_PARAMS = "-TRACE 3 -TOOLSTRACEPC 4044 -TOOLSTRACESQL 31";
+
+    private static final int SQL_PER_STEP = 10;
+    private static final int FUNCTIONS_PER_STEP = 3;
+    private static final int DISTINCT_STEPS = 200;
+    private static final int DISTINCT_SQL = 5000;
+    private static final int DISTINCT_PROCEDURES = 300;
+    private static final int SQL_PER_PROCEDURE = 5;
+
+    /**
+     * 每隔多少個步驟出現一行PeopleCode program；DetailedPcTraceAnalyzer為每一行掃描所有已解析的條目
+     */
+    private static final int PC_PROGRAM_EVERY_STEPS = 50;
+
+    /**
+     * 第二個環境每隔多少個步驟多出一個SQL
+     */
+    private static final int UNIQUE_EVERY_STEPS = 97;
+
+    /**
+     * 第二個環境每隔多少個步驟缺少一個SQL
+     */
+    private static final int MISSING_EVERY_STEPS = 89;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private TraceFiles() {
+    }
+
+    /**
+     * @param entries 大約的條目數（步驟、SQL、函數和方法）
+     * @param env2    是否為第二個環境
+     * @return AE跟蹤文件
+     * @throws IOException 如果文件無法寫入
+     */
+    static Path ae(int entries, boolean env2) throws IOException {
+        return generate("ae", entries, env2, TraceFiles::writeAE);
+    }
+
+    /**
+     * @param entries 大約的條目數（過程和SQL）
+     * @param env2    是否為第二個環境
+     * @return SQR跟蹤文件
+     * @throws IOException 如果文件無法寫入
+     */
+    static Path sqr(int entries, boolean env2) throws IOException {
+        return generate("sqr", entries, env2, TraceFiles::writeSQR);
+    }
+
+    private static Path generate(String tool, int entries, boolean env2, TraceWriter writer) throws IOException {
+        Path directory = Path.of(System.getProperty("benchmark.traceDir",
+                Path.of(System.getProperty("java.io.tmpdir"), "trace-tool-benchmarks").toString()));
+        Path file = directory.resolve(tool + "-" + entries + (env2 ? "-env2" : "-env1") + ".log");
+        if (Files.isRegularFile(file)) {
+            return file;
+        }
+        Files.createDirectories(directory);
+        // 先寫入臨時文件再改名，同時運行的fork不會讀到寫了一半的文件
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(out, entries, env2);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    private static void writeAE(BufferedWriter out, int entries, boolean env2) throws IOException {
+        Random random = new Random(env2 ? 2 : 1);
+        long clock = 0;
+        int written = 0;
+        for (int step = 0; written < entries; step++) {
+            String stepId = "MAIN.STEP" + (step % DISTINCT_STEPS);
+            out.write(aeTime(clock) + " Step:" + stepId + " started\n");
+            int sqlCount = SQL_PER_STEP;
+            if (env2 && step % UNIQUE_EVERY_STEPS == 0) {
+                sqlCount++;
+            }
+            if (env2 && step % MISSING_EVERY_STEPS == 0) {
+                sqlCount--;
+            }
+            for (int i = 0; i < sqlCount; i++) {
+                String sqlId = "SQL_" + ((step * SQL_PER_STEP + i) % DISTINCT_SQL);
+                clock += 1 + random.nextInt(2);
+                out.write(aeTime(clock) + " SQL:" + sqlId + " started\n");
+                out.write("SQL statement: SELECT EMPLID, EFFDT, DEPTID FROM PS_JOB WHERE EMPLID = :1 AND EFFSEQ = " + i + "\n");
+                out.write("Bind-Variables: EMPLID=" + (100000 + step) + "\n");
+                clock += duration(random, 1 + i, env2);
+                out.write(aeTime(clock) + " SQL:" + sqlId + " ended\n");
+                written++;
+            }
+            for (int i = 0; i < FUNCTIONS_PER_STEP; i++) {
+                clock += 1;
+                out.write(aeTime(clock) + " Function:FUNC_" + i + " started\n");
+                out.write(aeTime(clock) + " Method:JOB_PKG:JobData.method" + i + " started\n");
+                if (i == 0 && step % PC_PROGRAM_EVERY_STEPS == 0) {
+                    out.write("PeopleCode program JOB.EMPLID.FieldChange\n");
+                }
+                clock += duration(random, 2, env2);
+                out.write(aeTime(clock) + " Method:JOB_PKG:JobData.method" + i + " ended\n");
+                clock += 1;
+                out.write(aeTime(clock) + " Function:FUNC_" + i + " ended\n");
+                written += 2;
+            }
+            clock += 1;
+            out.write(aeTime(clock) + " Step:" + stepId + " ended\n");
+            written++;
+        }
+    }
+
+    private static void writeSQR(BufferedWriter out, int entries, boolean env2) throws IOException {
+        Random random = new Random(env2 ? 2 : 1);
+        long seconds = 0;
+        out.write("SQR开始执行: 2023-05-15 00:00:00\n");
+        out.write("程序: BENCHMARK.SQR\n\n");
+        int written = 0;
+        for (int procedure = 0; written < entries; procedure++) {
+            String name = "PROC_" + (procedure % DISTINCT_PROCEDURES);
+            long procedureStart = seconds;
+            out.write("开始过程: " + name + " (" + sqrTime(seconds) + ")\n");
+            int sqlCount = SQL_PER_PROCEDURE;
+            if (env2 && procedure % UNIQUE_EVERY_STEPS == 0) {
+                sqlCount++;
+            }
+            if (env2 && procedure % MISSING_EVERY_STEPS == 0) {
+                sqlCount--;
+            }
+            for (int i = 0; i < sqlCount; i++) {
+                long millis = duration(random, 50 + 100 * i, env2);
+                out.write("执行SQL (" + sqrTime(seconds) + "):\n");
+                out.write("SELECT EMPLID, NAME FROM PS_PERSONAL_DATA WHERE DEPTID = 'D" + (procedure % 1000) + "'\n");
+                out.write("执行时间: " + millis / 1000 + "." + String.format("%03d", millis % 1000) + "秒\n\n");
+                seconds += 1 + millis / 1000;
+                written++;
+            }
+            out.write("结束过程: " + name + " (" + sqrTime(seconds) + ")\n");
+            out.write("过程执行时间: " + (seconds - procedureStart) + "秒\n\n");
+            written++;
+        }
+        out.write("SQR结束执行: 2023-05-15 " + sqrTime(seconds) + "\n");
+    }
+
+    private static long duration(Random random, long base, boolean env2) {
+        return env2 ? Math.round(base * (0.8 + 0.8 * random.nextDouble())) : base + random.nextInt(2);
+    }
+
+    private static String aeTime(long clock) {
+        long millis = clock % MILLIS_PER_DAY;
+        return String.format("%02d:%02d:%02d.%03d", millis / 3_600_000, millis / 60_000 % 60, millis / 1000 % 60, millis % 1000);
+    }
+
+    private static String sqrTime(long seconds) {
+        long time = seconds % (MILLIS_PER_DAY / 1000);
+        return String.format("%02d:%02d:%02d", time / 3600, time / 60 % 60, time % 60);
+    }
+
+    @FunctionalInterface
+    private interface TraceWriter {
+        void write(BufferedWriter out, int entries, boolean env2) throws IOException;
+    }
+}
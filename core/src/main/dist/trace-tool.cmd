@@ -0,0 +1,42 @@
+@echo off
+rem Runs the trace comparison command line without Spring: trace-tool <subcommand> [options], see trace-tool help
+rem
+rem Class data sharing: the first run records an archive in %TRACE_TOOL_CACHE%, else %LOCALAPPDATA%\trace-tool,
+rem named after this jar and java; see the trace-tool shell script. If the cache cannot be written the tool
+rem runs without an archive. An archive the JVM rejects is reported by a CDS warning: delete it and the next
+rem run records a new one. JAVA_HOME and JAVA_OPTS (for example -Xmx8g) are honoured. The --add-opens is
+rem needed by the Arrow output.
+
+setlocal
+set "DIR=%~dp0"
+set "JAVA=java"
+if defined JAVA_HOME set "JAVA=%JAVA_HOME%\bin\java"
+set "JAR=%DIR%@project.build.finalName@.jar"
+set "OPENS=--add-opens=java.base/java.nio=ALL-UNNAMED"
+set "CACHE=%LOCALAPPDATA%\trace-tool"
+if defined TRACE_TOOL_CACHE set "CACHE=%TRACE_TOOL_CACHE%"
+set "KEY=%JAR%_%JAVA%"
+set "KEY=%KEY::=%"
+set "KEY=%KEY:\=_%"
+set "KEY=%KEY:/=_%"
+set "KEY=%KEY: =_%"
+set "ARCHIVE=%CACHE%\trace-tool-%KEY%.jsa"
+
+if exist "%ARCHIVE%" (
+    "%JAVA%" "-XX:SharedArchiveFile=%ARCHIVE%" %OPENS% %JAVA_OPTS% -jar "%JAR%" %*
+    exit /b %ERRORLEVEL%
+)
+if not exist "%CACHE%" mkdir "%CACHE%" 2>nul
+(type nul > "%CACHE%\.writable") 2>nul || goto run
+del "%CACHE%\.writable" 2>nul
+
+rem Record into a file of this run and move it in place, so concurrent first runs never map a partial archive
+set "RECORDING=%ARCHIVE%.%RANDOM%"
+"%JAVA%" "-XX:ArchiveClassesAtExit=%RECORDING%" %OPENS% %JAVA_OPTS% -jar "%JAR%" %*
+set "STATUS=%ERRORLEVEL%"
+if exist "%RECORDING%" move /y "%RECORDING%" "%ARCHIVE%" >nul 2>nul || del "%RECORDING%" 2>nul
+exit /b %STATUS%
+
+:run
+"%JAVA%" %OPENS% %JAVA_OPTS% -jar "%JAR%" %*
+exit /b %ERRORLEVEL%
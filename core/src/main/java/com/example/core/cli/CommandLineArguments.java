@@ -0,0 +1,130 @@
+package com.example.core.cli;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一個子命令的參數：{@code --名稱 值}、{@code --名稱=值}、不帶值的開關和位置參數。
+ *
+ * <p>只接受子命令聲明的選項，拼錯的選項不會被默默忽略；同一選項出現多次時以最後一次為準，
+ * 因此舊的主方法可以先放入自己的默認值，再由使用者的參數覆蓋。單獨的 {@code --} 之後都是位置參數。</p>
+ */
+final class CommandLineArguments {
+
+    private final Map<String, String> options = new HashMap<>();
+    private final List<String> positionals = new ArrayList<>();
+
+    /**
+     * @param args         子命令名稱之後的參數
+     * @param valueOptions 需要值的選項名稱，不含 "--"
+     * @param flagOptions  不帶值的開關名稱，不含 "--"
+     * @throws UsageException 如果選項未聲明或缺少值
+     */
+    CommandLineArguments(String[] args, Set<String> valueOptions, Set<String> flagOptions) {
+        boolean onlyPositionals = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (onlyPositionals || !arg.startsWith("--")) {
+                positionals.add(arg);
+                continue;
+            }
+            if (arg.equals("--")) {
+                onlyPositionals = true;
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            String name = arg.substring(2, equals >= 0 ? equals : arg.length());
+            if (flagOptions.contains(name)) {
+                if (equals >= 0) {
+                    throw new UsageException("選項 --" + name + " 不需要值");
+                }
+                options.put(name, "true");
+            } else if (valueOptions.contains(name)) {
+                if (equals >= 0) {
+                    options.put(name, arg.substring(equals + 1));
+                } else if (i + 1 < args.length) {
+                    options.put(name, args[++i]);
+                } else {
+                    throw new UsageException("選項 --" + name + " 缺少值");
+                }
+            } else {
+                throw new UsageException("未知的選項: --" + name);
+            }
+        }
+    }
+
+    /**
+     * @return 位置參數，按出現的順序
+     */
+    List<String> positionals() {
+        return positionals;
+    }
+
+    /**
+     * @param expected 期望的數量說明，用於錯誤訊息，例如 "兩個跟蹤文件"
+     * @param min      最少的數量
+     * @param max      最多的數量
+     * @return 位置參數
+     * @throws UsageException 如果數量不在範圍內
+     */
+    List<String> positionals(String expected, int min, int max) {
+        if (positionals.size() < min || positionals.size() > max) {
+            throw new UsageException("需要" + expected + "，實際為 " + positionals.size() + " 個參數: " + positionals);
+        }
+        return positionals;
+    }
+
+    /**
+     * @return 選項的值，未指定時為null
+     */
+    String get(String name) {
+        return options.get(name);
+    }
+
+    String get(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    boolean has(String name) {
+        return options.containsKey(name);
+    }
+
+    int getInt(String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new UsageException("選項 --" + name + " 應為整數: " + value);
+        }
+    }
+
+    long getLong(String name, long defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new UsageException("選項 --" + name + " 應為整數: " + value);
+        }
+    }
+
+    double getDouble(String name, double defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new UsageException("選項 --" + name + " 應為數字: " + value);
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package com.example.core.cli;
+
+import com.example.core.tool.AETraceComparator;
+import com.example.core.tool.EnvironmentMatrixComparator;
+import com.example.core.tool.MultiRunTraceComparator;
+import com.example.core.tool.NewAETraceComparator;
+import com.example.core.tool.SQRTraceComparator;
+import com.example.core.tool.WallClockWaterfall;
+import com.example.core.tool.analyzer.TraceAnalyzer;
+import com.example.core.tool.analyzer.TraceAnalyzerFactory;
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.analyzer.TraceStreams;
+import com.example.core.tool.baseline.BaselineComparator;
+import com.example.core.tool.baseline.BaselineProfile;
+import com.example.core.tool.baseline.BaselineProfileStore;
+import com.example.core.tool.baseline.TraceFollower;
+import com.example.core.tool.batch.BatchComparator;
+import com.example.core.tool.batch.BatchManifest;
+import com.example.core.tool.batch.BatchPair;
+import com.example.core.tool.batch.BatchResult;
+import com.example.core.tool.batch.MemoryBudget;
+import com.example.core.tool.history.RunHistoryStore;
+import com.example.core.tool.history.TrendDetector;
+import com.example.core.tool.report.ComparisonSink;
+import com.example.core.tool.report.ComparisonSinks;
+import com.example.core.tool.rule.RuleSet;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 跟蹤比較工具的命令行入口，子命令為 ae、sqr、newae、matrix、multirun、batch、baseline、follow 和 trend，
+ * 所有參數都來自命令行。
+ *
+ * <p>不啟動Spring，只載入子命令用到的類別，配合首次運行時記錄在用戶快取目錄中的AppCDS歸檔（見 {@code trace-tool} 啟動腳本），
+ * 調度器每天啟動數千次時每次只需要很短的啟動時間。</p>
+ *
+ * <p>退出碼：0為成功；1為比較失敗或批次中有程序未成功；2為參數錯誤。</p>
+ */
+@Slf4j
+public final class TraceToolCli {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+
+    static final String USAGE = """
+            用法: trace-tool <子命令> [選項]
+
+              ae     <env1文件> <env2文件>   比較兩個環境的AE跟蹤文件
+              sqr    <env1文件> <env2文件>   比較兩個環境的SQR跟蹤文件
+              newae  <env1文件> <env2文件>   按順序對齊比較AE跟蹤文件，寫出 ae_trace_comparison_result.txt，
+                                            包含多執行的代碼（Extra code）；默認規則為 --ratio 2.0
+              matrix <文件> <文件>...        一次比較多個環境的AE跟蹤文件，寫出 ae_trace_matrix_result.csv
+              multirun --env1-runs <文件,...> --env2-runs <文件,...>
+                                            以多次運行的統計檢定比較兩個環境，寫出 ae_multi_run_comparison_result.csv
+              batch  <清單文件> | <env1目錄> <env2目錄>
+                                            批次比較所有程序，寫出 batch_summary.csv 和 batch_summary.md
+              baseline save <跟蹤文件>       以AE跟蹤文件建立（或覆蓋）程序的基準
+              baseline compare <跟蹤文件>    將AE跟蹤文件與基準比較，寫出 ae_trace_baseline_result.csv
+              follow <跟蹤文件>              跟隨正在執行的AE程序的跟蹤文件，超過基準時發出警報
+              trend  <跟蹤文件>              把AE跟蹤文件記錄到運行歷史，寫出 ae_trace_trend_result.csv
+              help                          顯示此說明
+
+            ae、sqr 和 batch 的選項:
+              --env1-name <名稱>            第一個環境的名稱（ae/sqr 默認 DEV，batch 默認 PREV）
+              --env2-name <名稱>            第二個環境的名稱（ae/sqr 默認 TEST，batch 默認 CURR）
+              --out <目錄>                  報告的輸出目錄（ae/sqr 默認目前目錄，batch 默認 batch_result）
+              --format <格式,...>           報告格式: console, console-rows, csv, markdown, html, json-lines, arrow, result-store
+                                            （ae/sqr 默認 console,csv,markdown,html；batch 默認 csv,html）
+              --rules-file <文件>           規則定義文件
+              --rules <規則>                規則定義，例如 "SQL: diff > 500 -> ALERT"
+              --ratio <倍數>                較慢的環境超過較快環境的倍數時標記為 THRESHOLD_EXCEEDED
+              --threshold-percent <百分比>  差異超過第一個環境時間的百分比（默認20）且超過毫秒閾值時標記為 ALERT
+              --threshold-ms <毫秒>         毫秒閾值（默認100）
+            ae 的選項:
+              --self-time                   另外寫出 ae_trace_self_time_result.csv，以不含子條目的自身時間比較，
+                                            按自身時間差異排序並以同樣的規則標記
+            ae、sqr 和 newae 的選項:
+              --params <trace參數>          產生跟蹤文件時使用的trace參數，決定解析方式
+            newae 接受 ae 除 --format 以外的選項。
+            matrix 的選項:
+              --env-names <名稱,...>        各文件所在環境的名稱（默認為文件名）
+              --out、--params 和規則選項與 ae 相同；規則以最快的環境為env1、最慢的環境為env2
+            multirun 的選項:
+              --env1-runs <文件,...>        第一個環境各次運行的跟蹤文件（至少3個）
+              --env2-runs <文件,...>        第二個環境各次運行的跟蹤文件（至少3個）
+              --env1-name、--env2-name、--out 和 --params 與 ae 相同
+            batch 的選項:
+              --threads <數量>              同時比較的程序數（默認處理器數）
+              --memory-mb <MB>              同時比較的程序估計使用的堆記憶體上限（默認最大堆記憶體的六成）
+            baseline、follow 和 trend 的選項:
+              --program <名稱>              程序名稱（默認由跟蹤文件名推導）
+              --params <trace參數>          產生跟蹤文件時使用的trace參數
+            baseline 和 follow 的選項:
+              --baselines <目錄>            基準目錄（默認 baselines）
+            baseline compare 和 trend 的選項:
+              --env <名稱>                  跟蹤文件所在環境的名稱（默認 TEST）
+              --out <目錄>                  報告的輸出目錄（默認目前目錄）
+            baseline compare 另外接受 ae 的規則選項。
+            follow 的選項:
+              --interval-ms <毫秒>          讀取新內容的間隔（默認1000）
+            trend 的選項:
+              --history <目錄>              運行歷史目錄（默認 trace_history）
+
+            退出碼: 0 成功；1 比較失敗或批次中有程序未成功；2 參數錯誤
+            """;
+
+    private static final String AE_DEFAULT_TRACE_PARAMS = "-TRACE 3 -TOOLSTRACEPC 4044 -TOOLSTRACESQL 31";
+    private static final String SQR_DEFAULT_TRACE_PARAMS = "-S -TIMING -debugfgt -E";
+
+    private static final Set<String> RULE_OPTIONS = Set.of("rules-file", "rules", "ratio", "threshold-percent", "threshold-ms");
+    private static final Set<String> COMPARE_OPTIONS = union(RULE_OPTIONS, "env1-name", "env2-name", "out", "format", "params");
+    private static final Set<String> AE_FLAGS = Set.of("self-time");
+    private static final Set<String> NEW_AE_OPTIONS = union(RULE_OPTIONS, "env1-name", "env2-name", "out", "params");
+    private static final Set<String> BATCH_OPTIONS = union(RULE_OPTIONS, "env1-name", "env2-name", "out", "format",
+            "threads", "memory-mb");
+    private static final Set<String> MATRIX_OPTIONS = union(RULE_OPTIONS, "env-names", "out", "params");
+    private static final Set<String> MULTI_RUN_OPTIONS = Set.of("env1-runs", "env2-runs", "env1-name", "env2-name", "out",
+            "params");
+    private static final Set<String> BASELINE_SAVE_OPTIONS = Set.of("program", "baselines", "params");
+    private static final Set<String> BASELINE_COMPARE_OPTIONS = union(RULE_OPTIONS, "program", "baselines", "params",
+            "env", "out");
+    private static final Set<String> FOLLOW_OPTIONS = Set.of("program", "baselines", "params", "interval-ms");
+    private static final Set<String> TREND_OPTIONS = Set.of("program", "history", "params", "env", "out");
+
+    private TraceToolCli() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * 運行一個子命令後以它的退出碼結束JVM，供各比較器原有的主方法使用。
+     *
+     * @param args    使用者的參數
+     * @param command 子命令名稱，以及放在使用者參數之前的默認選項
+     */
+    public static void runAndExit(String[] args, String... command) {
+        String[] commandLine = Arrays.copyOf(command, command.length + args.length);
+        System.arraycopy(args, 0, commandLine, command.length, args.length);
+        System.exit(run(commandLine));
+    }
+
+    /**
+     * 運行一個子命令，不結束JVM。
+     *
+     * @param args 子命令名稱和它的參數
+     * @return 退出碼
+     */
+    public static int run(String... args) {
+        if (args.length == 0) {
+            System.err.print(USAGE);
+            return EXIT_USAGE;
+        }
+        String command = args[0];
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        if (command.equals("help") || command.equals("--help") || command.equals("-h")
+                || Arrays.asList(rest).contains("--help")) {
+            System.out.print(USAGE);
+            return EXIT_OK;
+        }
+        try {
+            return switch (command) {
+                case "ae" -> compare(BatchPair.Tool.AE, rest);
+                case "sqr" -> compare(BatchPair.Tool.SQR, rest);
+                case "newae" -> newAE(rest);
+                case "matrix" -> matrix(rest);
+                case "multirun" -> multiRun(rest);
+                case "batch" -> batch(rest);
+                case "baseline" -> baseline(rest);
+                case "follow" -> follow(rest);
+                case "trend" -> trend(rest);
+                default -> throw new UsageException("未知的子命令: " + command);
+            };
+        } catch (UsageException e) {
+            System.err.println("錯誤: " + e.getMessage());
+            System.err.println();
+            System.err.print(USAGE);
+            return EXIT_USAGE;
+        } catch (IOException | RuntimeException e) {
+            log.error("{} 失敗", command, e);
+            return EXIT_FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("{} 已中斷", command);
+            return EXIT_FAILED;
+        }
+    }
+
+    private static int compare(BatchPair.Tool tool, String[] args) throws IOException {
+        CommandLineArguments arguments = new CommandLineArguments(args, COMPARE_OPTIONS,
+                tool == BatchPair.Tool.AE ? AE_FLAGS : Set.of());
+        List<String> files = arguments.positionals("兩個跟蹤文件", 2, 2);
+        Path env1File = traceFile(files.get(0));
+        Path env2File = traceFile(files.get(1));
+        String env1Name = arguments.get("env1-name", "DEV");
+        String env2Name = arguments.get("env2-name", "TEST");
+        RuleSet rules = rules(arguments);
+        Set<ComparisonSinks.Format> formats = formats(arguments.get("format"),
+                EnumSet.of(ComparisonSinks.Format.CONSOLE, ComparisonSinks.Format.CSV, ComparisonSinks.Format.MARKDOWN,
+                        ComparisonSinks.Format.HTML));
+        Path outputDir = Files.createDirectories(Path.of(arguments.get("out", ".")));
+        String outputPath = outputDir.resolve(tool.name().toLowerCase(Locale.ROOT) + "_trace_comparison_result.csv").toString();
+
+        if (tool == BatchPair.Tool.AE) {
+            String traceParams = arguments.get("params", AE_DEFAULT_TRACE_PARAMS);
+            List<TraceEntry> env1Entries = parseAE(env1File, traceParams);
+            List<TraceEntry> env2Entries = parseAE(env2File, traceParams);
+            try (ComparisonSink sink = ComparisonSinks.create(outputPath, "AE", formats, false)) {
+                AETraceComparator.compareTraces(env1Entries, env2Entries, env1Name, env2Name, rules, sink);
+            }
+            WallClockWaterfall.writeReport(env1Entries, env2Entries, env1Name, env2Name,
+                    outputPath.replace(".csv", "_waterfall.md"));
+            if (arguments.has("self-time")) {
+                AETraceComparator.compareTracesBySelfTime(env1Entries, env2Entries, env1Name, env2Name, rules,
+                        outputDir.resolve("ae_trace_self_time_result.csv").toString());
+            }
+        } else {
+            String traceParams = arguments.get("params", SQR_DEFAULT_TRACE_PARAMS);
+            List<SQRTraceComparator.TraceEntry> env1Entries = parseSQR(env1File, traceParams);
+            List<SQRTraceComparator.TraceEntry> env2Entries = parseSQR(env2File, traceParams);
+            try (ComparisonSink sink = ComparisonSinks.create(outputPath, "SQR", formats, false)) {
+                SQRTraceComparator.compareTraces(env1Entries, env2Entries, env1Name, env2Name, rules, sink);
+            }
+        }
+        log.info("報告已寫入 {}", outputDir.toAbsolutePath());
+        return EXIT_OK;
+    }
+
+    /**
+     * 以 {@link NewAETraceComparator} 按順序對齊比較，報告中另外列出只在一個環境中執行的代碼
+     */
+    private static int newAE(String[] args) throws IOException {
+        CommandLineArguments arguments = new CommandLineArguments(args, NEW_AE_OPTIONS, Set.of());
+        List<String> files = arguments.positionals("兩個跟蹤文件", 2, 2);
+        Path env1File = traceFile(files.get(0));
+        Path env2File = traceFile(files.get(1));
+        RuleSet rules = hasRuleOption(arguments) ? rules(arguments) : RuleSet.ratioThreshold(2.0);
+        Path outputDir = Files.createDirectories(Path.of(arguments.get("out", ".")));
+        String traceParams = arguments.get("params", AE_DEFAULT_TRACE_PARAMS);
+
+        List<TraceEntry> env1Entries = parseAE(env1File, traceParams);
+        List<TraceEntry> env2Entries = parseAE(env2File, traceParams);
+        Path outputPath = outputDir.resolve("ae_trace_comparison_result.txt");
+        NewAETraceComparator.compareTraces(env1Entries, env2Entries, arguments.get("env1-name", "DEV"),
+                arguments.get("env2-name", "TEST"), outputPath.toString(), rules);
+        log.info("報告已寫入 {}", outputPath.toAbsolutePath());
+        return EXIT_OK;
+    }
+
+    /**
+     * 以 {@link EnvironmentMatrixComparator} 一次比較多個環境，每個跟蹤文件只解析一次
+     */
+    private static int matrix(String[] args) throws IOException {
+        CommandLineArguments arguments = new CommandLineArguments(args, MATRIX_OPTIONS, Set.of());
+        List<String> files = arguments.positionals("至少兩個跟蹤文件", 2, Integer.MAX_VALUE);
+        List<String> environmentNames = new ArrayList<>();
+        for (String file : files) {
+            environmentNames.add(BatchManifest.programName(traceFile(file).getFileName().toString()));
+        }
+        if (arguments.has("env-names")) {
+            environmentNames = list(arguments.get("env-names"));
+            if (environmentNames.size() != files.size()) {
+                throw new UsageException("--env-names 有 " + environmentNames.size() + " 個名稱，但有 "
+                        + files.size() + " 個跟蹤文件");
+            }
+        }
+        RuleSet rules = rules(arguments);
+        Path outputDir = Files.createDirectories(Path.of(arguments.get("out", ".")));
+
+        List<List<TraceEntry>> environmentEntries = MultiRunTraceComparator.parseTracesInParallel(files,
+                analyzers(arguments));
+        Path outputPath = outputDir.resolve("ae_trace_matrix_result.csv");
+        EnvironmentMatrixComparator.compareEnvironments(environmentNames, environmentEntries, outputPath.toString(), rules);
+        log.info("報告已寫入 {}", outputPath.toAbsolutePath());
+        return EXIT_OK;
+    }
+
+    /**
+     * 以 {@link MultiRunTraceComparator} 比較兩個環境各自的多次運行
+     */
+    private static int multiRun(String[] args) throws IOException {
+        CommandLineArguments arguments = new CommandLineArguments(args, MULTI_RUN_OPTIONS, Set.of());
+        arguments.positionals("零個位置參數", 0, 0);
+        List<String> env1Files = runs(arguments, "env1-runs");
+        List<String> env2Files = runs(arguments, "env2-runs");
+        Path outputDir = Files.createDirectories(Path.of(arguments.get("out", ".")));
+
+        List<String> allFiles = new ArrayList<>(env1Files);
+        allFiles.addAll(env2Files);
+        List<List<TraceEntry>> runs = MultiRunTraceComparator.parseTracesInParallel(allFiles, analyzers(arguments));
+        Path outputPath = outputDir.resolve("ae_multi_run_comparison_result.csv");
+        MultiRunTraceComparator.compareRuns(runs.subList(0, env1Files.size()), runs.subList(env1Files.size(), runs.size()),
+                arguments.get("env1-name", "DEV"), arguments.get("env2-name", "TEST"), outputPath.toString());
+        log.info("報告已寫入 {}", outputPath.toAbsolutePath());
+        return EXIT_OK;
+    }
+
+    private static List<String> runs(CommandLineArguments arguments, String option) {
+        if (!arguments.has(option)) {
+            throw new UsageException("缺少選項 --" + option);
+        }
+        List<String> files = list(arguments.get(option));
+        if (files.size() < MultiRunTraceComparator.MIN_SAMPLES) {
+            throw new UsageException("--" + option + " 至少需要 " + MultiRunTraceComparator.MIN_SAMPLES
+                    + " 個跟蹤文件，實際為 " + files.size() + " 個");
+        }
+        files.forEach(TraceToolCli::traceFile);
+        return files;
+    }
+
+    private static int batch(String[] args) throws IOException, InterruptedException {
+        CommandLineArguments arguments = new CommandLineArguments(args, BATCH_OPTIONS, Set.of());
+        List<String> paths = arguments.positionals("一個清單文件或兩個跟蹤目錄", 1, 2);
+        BatchManifest manifest;
+        if (paths.size() == 2) {
+            manifest = BatchManifest.match(directory(paths.get(0)), directory(paths.get(1)));
+        } else {
+            manifest = BatchManifest.read(traceFile(paths.get(0)));
+        }
+        int threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+        if (threads < 1) {
+            throw new UsageException("--threads 必須大於0: " + threads);
+        }
+        // 默認把六成的最大堆記憶體分給同時運行的程序
+        MemoryBudget memoryBudget = MemoryBudget.ofMegabytes(arguments.getLong("memory-mb", 0));
+        BatchComparator comparator = new BatchComparator(arguments.get("env1-name", "PREV"), arguments.get("env2-name", "CURR"),
+                rules(arguments), formats(arguments.get("format"), EnumSet.of(ComparisonSinks.Format.CSV, ComparisonSinks.Format.HTML)),
+                threads, memoryBudget);
+        Path outputDir = Path.of(arguments.get("out", "batch_result"));
+
+        List<BatchResult> results = comparator.run(manifest, outputDir, null);
+        long unsuccessful = results.stream().filter(result -> result.status() != BatchResult.Status.SUCCEEDED).count();
+        log.info("匯總報告已寫入 {}，{} 個程序未成功", outputDir.resolve("batch_summary.md").toAbsolutePath(), unsuccessful);
+        return unsuccessful > 0 ? EXIT_FAILED : EXIT_OK;
+    }
+
+    /**
+     * baseline save 建立基準，供 baseline compare 和 follow 使用；baseline compare 將跟蹤文件與基準比較
+     */
+    private static int baseline(String[] args) throws IOException {
+        if (args.length == 0) {
+            throw new UsageException("baseline 需要 save 或 compare");
+        }
+        String action = args[0];
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        return switch (action) {
+            case "save" -> saveBaseline(rest);
+            case "compare" -> compareToBaseline(rest);
+            default -> throw new UsageException("未知的 baseline 子命令: " + action);
+        };
+    }
+
+    private static int saveBaseline(String[] args) throws IOException {
+        CommandLineArguments arguments = new CommandLineArguments(args, BASELINE_SAVE_OPTIONS, Set.of());
+        Path traceFile = traceFile(arguments.positionals("一個跟蹤文件", 1, 1).get(0));
+        String programName = programName(arguments, traceFile);
+        BaselineProfileStore store = new BaselineProfileStore(Path.of(arguments.get("baselines", "baselines")));
+
+        Path saved = store.save(programName, parseAE(traceFile, arguments.get("params", AE_DEFAULT_TRACE_PARAMS)));
+        log.info("程序 {} 的基準已寫入 {}", programName, saved.toAbsolutePath());
+        return EXIT_OK;
+    }
+
+    private static int compareToBaseline(String[] args) throws IOException {
+        CommandLineArguments arguments = new CommandLineArguments(args, BASELINE_COMPARE_OPTIONS, Set.of());
+        Path traceFile = traceFile(arguments.positionals("一個跟蹤文件", 1, 1).get(0));
+        String programName = programName(arguments, traceFile);
+        BaselineProfileStore store = new BaselineProfileStore(Path.of(arguments.get("baselines", "baselines")));
+        RuleSet rules = rules(arguments);
+        BaselineProfile baseline = openBaseline(store, arguments, programName);
+        Path outputDir = Files.createDirectories(Path.of(arguments.get("out", ".")));
+
+        List<TraceEntry> currentEntries = parseAE(traceFile, arguments.get("params", AE_DEFAULT_TRACE_PARAMS));
+        Path outputPath = outputDir.resolve("ae_trace_baseline_result.csv");
+        BaselineComparator.compareToBaseline(baseline, currentEntries, arguments.get("env", "TEST"), outputPath.toString(), rules);
+        log.info("報告已寫入 {}", outputPath.toAbsolutePath());
+        return EXIT_OK;
+    }
+
+    private static BaselineProfile openBaseline(BaselineProfileStore store, CommandLineArguments arguments,
+                                                String programName) throws IOException {
+        if (!store.exists(programName)) {
+            throw new UsageException(arguments.get("baselines", "baselines") + " 中沒有程序 " + programName
+                    + " 的基準，請先運行 baseline save");
+        }
+        return store.open(programName);
+    }
+
+    private static int follow(String[] args) throws IOException, InterruptedException {
+        CommandLineArguments arguments = new CommandLineArguments(args, FOLLOW_OPTIONS, Set.of());
+        Path traceFile = Path.of(arguments.positionals("一個跟蹤文件", 1, 1).get(0));
+        String programName = programName(arguments, traceFile);
+        long intervalMillis = arguments.getLong("interval-ms", 1000);
+        BaselineProfileStore store = new BaselineProfileStore(Path.of(arguments.get("baselines", "baselines")));
+        BaselineProfile baseline = openBaseline(store, arguments, programName);
+
+        TraceFollower follower = new TraceFollower(traceFile, analyzers(arguments), baseline, alert -> {
+            // 警報已記錄在日誌中
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(follower::stop));
+        follower.follow(intervalMillis);
+        return EXIT_OK;
+    }
+
+    /**
+     * 把跟蹤文件記錄為程序在該環境中的一次運行（運行時間為目前時間），再以 {@link TrendDetector} 檢查所有標識符的趨勢
+     */
+    private static int trend(String[] args) throws IOException {
+        CommandLineArguments arguments = new CommandLineArguments(args, TREND_OPTIONS, Set.of());
+        Path traceFile = traceFile(arguments.positionals("一個跟蹤文件", 1, 1).get(0));
+        String programName = programName(arguments, traceFile);
+        String environment = arguments.get("env", "TEST");
+        Path outputDir = Files.createDirectories(Path.of(arguments.get("out", ".")));
+
+        List<TraceEntry> entries = parseAE(traceFile, arguments.get("params", AE_DEFAULT_TRACE_PARAMS));
+        Path outputPath = outputDir.resolve("ae_trace_trend_result.csv");
+        try (RunHistoryStore store = RunHistoryStore.open(Path.of(arguments.get("history", "trace_history")))) {
+            store.recordRun(programName, environment, System.currentTimeMillis(), entries);
+            TrendDetector.writeReport(TrendDetector.detect(store, programName, environment), outputPath.toString());
+        }
+        log.info("報告已寫入 {}", outputPath.toAbsolutePath());
+        return EXIT_OK;
+    }
+
+    private static String programName(CommandLineArguments arguments, Path traceFile) {
+        return arguments.get("program", BatchManifest.programName(traceFile.getFileName().toString()));
+    }
+
+    private static List<TraceAnalyzer> analyzers(CommandLineArguments arguments) {
+        return TraceAnalyzerFactory.createAnalyzersForParams(arguments.get("params", AE_DEFAULT_TRACE_PARAMS));
+    }
+
+    /**
+     * 按 rules-file、rules、ratio、threshold-percent/threshold-ms 的優先順序建立規則，都未指定時使用默認規則
+     */
+    static RuleSet rules(CommandLineArguments arguments) throws IOException {
+        try {
+            if (arguments.has("rules-file")) {
+                return RuleSet.load(traceFile(arguments.get("rules-file")));
+            }
+            if (arguments.has("rules")) {
+                return RuleSet.compile(arguments.get("rules"));
+            }
+            if (arguments.has("ratio")) {
+                return RuleSet.ratioThreshold(arguments.getDouble("ratio", 0));
+            }
+            if (arguments.has("threshold-percent") || arguments.has("threshold-ms")) {
+                return RuleSet.threshold(arguments.getDouble("threshold-percent", 20), arguments.getLong("threshold-ms", 100));
+            }
+            return RuleSet.defaults();
+        } catch (UsageException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw new UsageException(e.getMessage(), e);
+        }
+    }
+
+    private static boolean hasRuleOption(CommandLineArguments arguments) {
+        return RULE_OPTIONS.stream().anyMatch(arguments::has);
+    }
+
+    /**
+     * @param value          以逗號分隔的格式名稱，例如 "csv,html"，大小寫和 - 或 _ 均可；為null時使用默認格式
+     * @param defaultFormats 默認格式
+     * @return 報告格式
+     */
+    static Set<ComparisonSinks.Format> formats(String value, Set<ComparisonSinks.Format> defaultFormats) {
+        if (value == null) {
+            return defaultFormats;
+        }
+        Set<ComparisonSinks.Format> formats = EnumSet.noneOf(ComparisonSinks.Format.class);
+        for (String name : value.split(",")) {
+            if (name.isBlank()) {
+                continue;
+            }
+            try {
+                formats.add(ComparisonSinks.Format.valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_')));
+            } catch (IllegalArgumentException e) {
+                throw new UsageException("未知的報告格式: " + name.trim()
+                        + "，可用的格式為 " + Arrays.toString(ComparisonSinks.Format.values()));
+            }
+        }
+        if (formats.isEmpty()) {
+            throw new UsageException("至少需要一種報告格式");
+        }
+        return formats;
+    }
+
+    private static List<TraceEntry> parseAE(Path traceFile, String traceParams) throws IOException {
+        try (InputStream in = Files.newInputStream(traceFile);
+             BufferedReader reader = TraceStreams.newReader(in)) {
+            List<TraceEntry> entries = AETraceComparator.parseTraceWithMultipleAnalyzers(reader,
+                    TraceAnalyzerFactory.createAnalyzersForParams(traceParams));
+            log.info("從 {} 解析出 {} 個條目", traceFile, entries.size());
+            return entries;
+        }
+    }
+
+    private static List<SQRTraceComparator.TraceEntry> parseSQR(Path traceFile, String traceParams) throws IOException {
+        try (InputStream in = Files.newInputStream(traceFile);
+             BufferedReader reader = TraceStreams.newReader(in)) {
+            List<SQRTraceComparator.TraceEntry> entries = SQRTraceComparator.parseTraceWithParams(reader, traceParams);
+            log.info("從 {} 解析出 {} 個條目", traceFile, entries.size());
+            return entries;
+        }
+    }
+
+    private static Path traceFile(String file) {
+        Path path = Path.of(file);
+        if (!Files.isRegularFile(path)) {
+            throw new UsageException("文件不存在: " + file);
+        }
+        return path;
+    }
+
+    private static Path directory(String dir) {
+        Path path = Path.of(dir);
+        if (!Files.isDirectory(path)) {
+            throw new UsageException("目錄不存在: " + dir);
+        }
+        return path;
+    }
+
+    /**
+     * @param value 以逗號分隔的值
+     * @return 去掉空白和空項後的值
+     */
+    private static List<String> list(String value) {
+        List<String> values = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                values.add(item.trim());
+            }
+        }
+        return values;
+    }
+
+    private static Set<String> union(Set<String> options, String... more) {
+        Set<String> union = new HashSet<>(options);
+        union.addAll(Arrays.asList(more));
+        return Set.copyOf(union);
+    }
+}
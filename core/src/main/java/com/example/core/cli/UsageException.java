@@ -0,0 +1,18 @@
+package com.example.core.cli;
+
+/**
+ * 命令行參數錯誤，例如未知的子命令或選項、缺少的參數、不存在的文件或無效的規則。
+ *
+ * <p>只在解析參數的地方拋出，{@link TraceToolCli} 對它返回參數錯誤的退出碼並顯示用法；
+ * 比較過程中的其他異常返回失敗的退出碼。</p>
+ */
+final class UsageException extends IllegalArgumentException {
+
+    UsageException(String message) {
+        super(message);
+    }
+
+    UsageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.core.service;
+
+import com.example.core.tool.batch.BatchResult;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * 一個在 {@link BatchService} 中運行的批次比較。
+ *
+ * <p>狀態的變化與 {@link ComparisonJob} 相同；每個程序結束時結果即加入 {@link #getResults()}，
+ * 運行中也可以查看已完成的程序。</p>
+ */
+public class BatchJob {
+
+    /**
+     * 匯總報告的文件名稱
+     */
+    public static final List<String> SUMMARY_REPORTS = List.of("batch_summary.csv", "batch_summary.md");
+
+    private final String id;
+    private final BatchJobRequest request;
+    private final Path outputDirectory;
+    private final Instant submittedAt = Instant.now();
+    private ComparisonJob.Status status = ComparisonJob.Status.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+    private int programCount;
+    private List<String> unmatched = Collections.emptyList();
+    private final List<BatchResult> results = new ArrayList<>();
+    private Future<?> future;
+
+    BatchJob(String id, BatchJobRequest request, Path outputDirectory) {
+        this.id = id;
+        this.request = request;
+        this.outputDirectory = outputDirectory;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public BatchJobRequest getRequest() {
+        return request;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public synchronized ComparisonJob.Status getStatus() {
+        return status;
+    }
+
+    public synchronized Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public synchronized Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * @return 整個批次失敗的原因，例如清單無法讀取；個別程序的失敗記錄在其結果中
+     */
+    public synchronized String getError() {
+        return error;
+    }
+
+    /**
+     * @return 需要比較的程序數，清單讀取之前為0
+     */
+    public synchronized int getProgramCount() {
+        return programCount;
+    }
+
+    /**
+     * @return 只在一個環境中有跟蹤文件的程序
+     */
+    public synchronized List<String> getUnmatched() {
+        return unmatched;
+    }
+
+    /**
+     * @return 已結束的程序的結果，按結束的順序
+     */
+    public synchronized List<BatchResult> getResults() {
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * @return 批次成功後可下載的匯總報告
+     */
+    public synchronized List<String> getReports() {
+        return status == ComparisonJob.Status.SUCCEEDED ? SUMMARY_REPORTS : Collections.emptyList();
+    }
+
+    Path getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    synchronized Future<?> getFuture() {
+        return future;
+    }
+
+    synchronized void setPrograms(int programCount, List<String> unmatched) {
+        this.programCount = programCount;
+        this.unmatched = List.copyOf(unmatched);
+    }
+
+    synchronized void addResult(BatchResult result) {
+        results.add(result);
+    }
+
+    /**
+     * @return 批次仍在排隊、可以開始時返回true；已取消的批次返回false
+     */
+    synchronized boolean start() {
+        if (status != ComparisonJob.Status.QUEUED) {
+            return false;
+        }
+        status = ComparisonJob.Status.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    synchronized void succeed() {
+        finish(ComparisonJob.Status.SUCCEEDED, null);
+    }
+
+    synchronized void fail(String error) {
+        finish(ComparisonJob.Status.FAILED, error);
+    }
+
+    /**
+     * @return 批次原本未結束、現在被標記為已取消時返回true
+     */
+    synchronized boolean cancel() {
+        if (status.isFinished()) {
+            return false;
+        }
+        finish(ComparisonJob.Status.CANCELLED, null);
+        return true;
+    }
+
+    private void finish(ComparisonJob.Status finalStatus, String error) {
+        if (status.isFinished()) {
+            return;
+        }
+        this.status = finalStatus;
+        this.error = error;
+        this.finishedAt = Instant.now();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.core.service;
+
+import com.example.core.tool.report.ComparisonSinks;
+
+import java.util.Set;
+
+/**
+ * 提交一個批次比較所需的參數：一個清單文件，或兩個按程序名稱配對的跟蹤目錄。
+ *
+ * <p>清單的格式和目錄配對的方式見 {@link com.example.core.tool.batch.BatchManifest}。
+ * 差異標記規則的優先順序與 {@link ComparisonJobRequest} 相同。</p>
+ */
+public class BatchJobRequest {
+
+    private String manifest;
+    private String env1Dir;
+    private String env2Dir;
+    private String env1Name = "DEV";
+    private String env2Name = "TEST";
+    private String rules;
+    private Double thresholdPercent;
+    private Long thresholdMillis;
+    private Set<ComparisonSinks.Format> formats;
+
+    /**
+     * @return 伺服器上清單文件的路徑；指定時忽略 env1Dir 和 env2Dir
+     */
+    public String getManifest() {
+        return manifest;
+    }
+
+    public void setManifest(String manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * @return 伺服器上第一個環境的跟蹤目錄
+     */
+    public String getEnv1Dir() {
+        return env1Dir;
+    }
+
+    public void setEnv1Dir(String env1Dir) {
+        this.env1Dir = env1Dir;
+    }
+
+    /**
+     * @return 伺服器上第二個環境的跟蹤目錄
+     */
+    public String getEnv2Dir() {
+        return env2Dir;
+    }
+
+    public void setEnv2Dir(String env2Dir) {
+        this.env2Dir = env2Dir;
+    }
+
+    public String getEnv1Name() {
+        return env1Name;
+    }
+
+    public void setEnv1Name(String env1Name) {
+        this.env1Name = env1Name;
+    }
+
+    public String getEnv2Name() {
+        return env2Name;
+    }
+
+    public void setEnv2Name(String env2Name) {
+        this.env2Name = env2Name;
+    }
+
+    /**
+     * @return 規則定義文字，語法見 {@link com.example.core.tool.rule.RuleSet}
+     */
+    public String getRules() {
+        return rules;
+    }
+
+    public void setRules(String rules) {
+        this.rules = rules;
+    }
+
+    public Double getThresholdPercent() {
+        return thresholdPercent;
+    }
+
+    public void setThresholdPercent(Double thresholdPercent) {
+        this.thresholdPercent = thresholdPercent;
+    }
+
+    public Long getThresholdMillis() {
+        return thresholdMillis;
+    }
+
+    public void setThresholdMillis(Long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    /**
+     * @return 每個程序需要產生的報告格式；為空時產生CSV和HTML報告，CSV報告總是產生
+     */
+    public Set<ComparisonSinks.Format> getFormats() {
+        return formats;
+    }
+
+    public void setFormats(Set<ComparisonSinks.Format> formats) {
+        this.formats = formats;
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.core.service;
+
+import com.example.core.tool.batch.BatchComparator;
+import com.example.core.tool.batch.BatchManifest;
+import com.example.core.tool.batch.BatchPair;
+import com.example.core.tool.batch.MemoryBudget;
+import com.example.core.tool.report.ComparisonSinks;
+import com.example.core.tool.rule.RuleSet;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以 {@link BatchComparator} 運行批次比較，例如每晚比較上一個和目前版本的所有程序。
+ *
+ * <p>一次只運行一個批次，其他批次排隊，最多排隊 {@code trace-tool.batches.queue-capacity} 個。
+ * 批次內同時比較的程序數由 {@code trace-tool.batches.threads} 決定，它們估計使用的堆記憶體與
+ * {@link CoreService} 的比較作業共用同一個預算（{@link CoreService#getMemoryBudget()}）。
+ * 報告寫入 {@code trace-tool.batches.output-dir} 下以批次編號命名的目錄；已結束的批次超過
+ * {@code trace-tool.batches.retained} 個時，與比較作業一樣刪除最早結束的批次及其報告。
+ * 清單、目錄和清單中的跟蹤文件都必須位於 {@code trace-tool.jobs.trace-dir} 之下，未設定時不接受批次。</p>
+ */
+@Slf4j
+@Service
+public class BatchService {
+
+    private static final Set<ComparisonSinks.Format> DEFAULT_FORMATS =
+            EnumSet.of(ComparisonSinks.Format.CSV, ComparisonSinks.Format.HTML);
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final MemoryBudget memoryBudget;
+    private final int retainedBatches;
+    private final Path outputRoot;
+    private final Path traceRoot;
+    private final Map<String, BatchJob> batches = new LinkedHashMap<>();
+
+    /**
+     * @param threads         批次內同時比較的程序數
+     * @param queueCapacity   最多排隊的批次數
+     * @param outputDir       報告的根目錄
+     * @param traceDir        允許讀取的跟蹤文件根目錄，為空時不接受批次
+     * @param retainedBatches 最多保留的已結束批次數
+     * @param coreService     提供與比較作業共用的記憶體預算
+     */
+    public BatchService(
+            @Value("${trace-tool.batches.threads:4}") int threads,
+            @Value("${trace-tool.batches.queue-capacity:4}") int queueCapacity,
+            @Value("${trace-tool.batches.output-dir:${java.io.tmpdir}/trace-tool-batches}") String outputDir,
+            @Value("${trace-tool.jobs.trace-dir:}") String traceDir,
+            @Value("${trace-tool.batches.retained:20}") int retainedBatches,
+            CoreService coreService) {
+        this.threads = threads;
+        this.memoryBudget = coreService.getMemoryBudget();
+        this.retainedBatches = retainedBatches;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "batch-comparison");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.outputRoot = Path.of(outputDir).toAbsolutePath().normalize();
+        this.traceRoot = traceDir.isBlank() ? null : Path.of(traceDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * 提交一個批次比較。清單或目錄在批次開始時才讀取，程序數在那之後才知道。
+     *
+     * @param request 批次參數
+     * @return 已排隊的批次
+     * @throws IllegalArgumentException   如果參數不正確，例如清單或目錄不存在、規則語法錯誤
+     * @throws RejectedExecutionException 如果排隊的批次已達上限
+     */
+    public BatchJob submit(BatchJobRequest request) {
+        if (request.getEnv1Name() == null || request.getEnv1Name().isBlank()
+                || request.getEnv2Name() == null || request.getEnv2Name().isBlank()) {
+            throw new IllegalArgumentException("環境名稱不能為空");
+        }
+        if (request.getManifest() != null && !request.getManifest().isBlank()) {
+            if (!Files.isRegularFile(checkPath(request.getManifest(), "manifest"))) {
+                throw new IllegalArgumentException("manifest 不存在: " + request.getManifest());
+            }
+        } else {
+            checkDirectory(request.getEnv1Dir(), "env1Dir");
+            checkDirectory(request.getEnv2Dir(), "env2Dir");
+        }
+        RuleSet rules = CoreService.buildRules(request.getRules(), request.getThresholdPercent(), request.getThresholdMillis());
+
+        String id = UUID.randomUUID().toString();
+        BatchJob batch = new BatchJob(id, request, outputRoot.resolve(id));
+        synchronized (batches) {
+            Future<?> future = executor.submit(() -> run(batch, rules));
+            batch.setFuture(future);
+            batches.put(id, batch);
+        }
+        log.info("已提交批次比較 {}", id);
+        return batch;
+    }
+
+    /**
+     * @param id 批次編號
+     * @return 批次，不存在時為空
+     */
+    public Optional<BatchJob> getBatch(String id) {
+        synchronized (batches) {
+            return Optional.ofNullable(batches.get(id));
+        }
+    }
+
+    /**
+     * @return 所有批次，按提交順序排列
+     */
+    public List<BatchJob> getBatches() {
+        synchronized (batches) {
+            return new ArrayList<>(batches.values());
+        }
+    }
+
+    /**
+     * 取消批次。排隊中的批次從隊列中移除，運行中的程序被中斷，已完成的程序的報告保留。
+     *
+     * @param id 批次編號
+     * @return 批次，不存在時為空
+     */
+    public Optional<BatchJob> cancel(String id) {
+        Optional<BatchJob> batch = getBatch(id);
+        batch.ifPresent(b -> {
+            if (b.cancel()) {
+                Future<?> future = b.getFuture();
+                future.cancel(true);
+                executor.remove((Runnable) future);
+                log.info("已取消批次比較 {}", id);
+            }
+        });
+        return batch;
+    }
+
+    /**
+     * @param id   批次編號
+     * @param name 匯總報告名稱，必須是 {@link BatchJob#getReports()} 中的一個
+     * @return 匯總報告的路徑；批次不存在、未成功或沒有該報告時為空
+     */
+    public Optional<Path> getReport(String id, String name) {
+        return getBatch(id)
+                .filter(batch -> batch.getReports().contains(name))
+                .map(batch -> batch.getOutputDirectory().resolve(name));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(BatchJob batch, RuleSet rules) {
+        if (!batch.start()) {
+            return;
+        }
+        BatchJobRequest request = batch.getRequest();
+        log.info("開始運行批次比較 {}", batch.getId());
+        try {
+            BatchManifest manifest = request.getManifest() != null && !request.getManifest().isBlank()
+                    ? BatchManifest.read(Path.of(request.getManifest()))
+                    : BatchManifest.match(Path.of(request.getEnv1Dir()), Path.of(request.getEnv2Dir()));
+            for (BatchPair pair : manifest.getPairs()) {
+                checkPath(pair.getEnv1File().toString(), pair.getProgram());
+                checkPath(pair.getEnv2File().toString(), pair.getProgram());
+            }
+            batch.setPrograms(manifest.getPairs().size(), manifest.getUnmatched());
+
+            Set<ComparisonSinks.Format> formats = request.getFormats() == null || request.getFormats().isEmpty()
+                    ? DEFAULT_FORMATS : request.getFormats();
+            BatchComparator comparator = new BatchComparator(request.getEnv1Name(), request.getEnv2Name(), rules,
+                    formats, threads, memoryBudget);
+            comparator.run(manifest, batch.getOutputDirectory(), batch::addResult);
+            batch.succeed();
+            log.info("批次比較 {} 已完成", batch.getId());
+        } catch (InterruptedException e) {
+            batch.cancel();
+            log.info("批次比較 {} 已中斷", batch.getId());
+        } catch (IOException | RuntimeException e) {
+            batch.fail(e.getMessage() != null ? e.getMessage() : e.toString());
+            log.error("批次比較 {} 失敗", batch.getId(), e);
+        } finally {
+            evictFinishedBatches();
+        }
+    }
+
+    /**
+     * 已結束的批次超過保留數量時，刪除最早結束的批次及其報告
+     */
+    private void evictFinishedBatches() {
+        List<BatchJob> evicted = new ArrayList<>();
+        synchronized (batches) {
+            List<BatchJob> finished = new ArrayList<>();
+            for (BatchJob batch : batches.values()) {
+                if (batch.getStatus().isFinished()) {
+                    finished.add(batch);
+                }
+            }
+            int excess = finished.size() - retainedBatches;
+            if (excess <= 0) {
+                return;
+            }
+            finished.sort(Comparator.comparing(BatchJob::getFinishedAt));
+            for (Iterator<BatchJob> it = finished.iterator(); it.hasNext() && excess > 0; excess--) {
+                BatchJob batch = it.next();
+                batches.remove(batch.getId());
+                evicted.add(batch);
+            }
+        }
+        for (BatchJob batch : evicted) {
+            CoreService.deleteDirectory(batch.getOutputDirectory());
+        }
+    }
+
+    private void checkDirectory(String dir, String field) {
+        if (dir == null || dir.isBlank()) {
+            throw new IllegalArgumentException("必須指定 manifest，或同時指定 env1Dir 和 env2Dir");
+        }
+        if (!Files.isDirectory(checkPath(dir, field))) {
+            throw new IllegalArgumentException(field + " 不是目錄: " + dir);
+        }
+    }
+
+    private Path checkPath(String file, String field) {
+        if (traceRoot == null) {
+            throw new IllegalArgumentException("伺服器未設定 trace-tool.jobs.trace-dir，不接受以路徑指定的 " + field);
+        }
+        Path path = Path.of(file).toAbsolutePath().normalize();
+        if (!path.startsWith(traceRoot)) {
+            throw new IllegalArgumentException(field + " 必須位於 " + traceRoot + " 之下: " + file);
+        }
+        return path;
+    }
+}
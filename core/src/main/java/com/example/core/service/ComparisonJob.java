@@ -0,0 +1,260 @@
+package com.example.core.service;
+
+import com.example.core.tool.report.PullComparisonSink;
+import com.example.core.tool.store.ResultStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * 一個在 {@link CoreService} 的線程池中運行的比較作業。
+ *
+ * <p>狀態只會沿 QUEUED → RUNNING → SUCCEEDED / FAILED / CANCELLED 前進；狀態的變更是同步的，
+ * 讀取方法可在任何線程中調用。</p>
+ */
+public class ComparisonJob {
+
+    /**
+     * 作業狀態
+     */
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED;
+
+        /**
+         * @return 作業是否已結束
+         */
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final String id;
+    private final ComparisonJobRequest request;
+    private final Path outputDirectory;
+    private final Instant submittedAt = Instant.now();
+    private final boolean uploaded;
+    private final JobProgress progress = new JobProgress();
+    private Status status = Status.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+    private List<String> reports = Collections.emptyList();
+    private Future<?> future;
+    private UploadedTrace env1Upload;
+    private UploadedTrace env2Upload;
+    private String env1Digest;
+    private String env2Digest;
+    private ResultStore resultStore;
+    private boolean resultStoreClosed;
+    private PullComparisonSink rowStream;
+
+    ComparisonJob(String id, ComparisonJobRequest request, Path outputDirectory) {
+        this(id, request, outputDirectory, null, null);
+    }
+
+    ComparisonJob(String id, ComparisonJobRequest request, Path outputDirectory,
+                  UploadedTrace env1Upload, UploadedTrace env2Upload) {
+        this.id = id;
+        this.request = request;
+        this.outputDirectory = outputDirectory;
+        this.uploaded = env1Upload != null || env2Upload != null;
+        this.env1Upload = env1Upload;
+        this.env2Upload = env2Upload;
+        this.env1Digest = env1Upload != null ? env1Upload.getDigest() : null;
+        this.env2Digest = env2Upload != null ? env2Upload.getDigest() : null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ComparisonJobRequest getRequest() {
+        return request;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public synchronized Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public synchronized Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * @return 作業失敗的原因，沒有失敗時為null
+     */
+    public synchronized String getError() {
+        return error;
+    }
+
+    /**
+     * @return 作業成功後產生的報告文件名稱
+     */
+    public synchronized List<String> getReports() {
+        return reports;
+    }
+
+    /**
+     * @return 作業目前的進度
+     */
+    public JobProgress.Snapshot getProgress() {
+        return progress.snapshot();
+    }
+
+    JobProgress progress() {
+        return progress;
+    }
+
+    Path getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * @return 第一個環境跟蹤內容的SHA-256，伺服器上的文件在作業開始解析前為null；可在之後的請求中以 env1Digest 引用
+     */
+    public synchronized String getEnv1Digest() {
+        return env1Digest;
+    }
+
+    /**
+     * @return 第二個環境跟蹤內容的SHA-256，伺服器上的文件在作業開始解析前為null；可在之後的請求中以 env2Digest 引用
+     */
+    public synchronized String getEnv2Digest() {
+        return env2Digest;
+    }
+
+    synchronized void setDigests(String env1Digest, String env2Digest) {
+        this.env1Digest = env1Digest;
+        this.env2Digest = env2Digest;
+    }
+
+    /**
+     * @return 作業是否使用上傳或快取中已解析的跟蹤內容，而不是只讀取伺服器上的文件
+     */
+    public boolean isUploaded() {
+        return uploaded;
+    }
+
+    synchronized UploadedTrace getEnv1Upload() {
+        return env1Upload;
+    }
+
+    synchronized UploadedTrace getEnv2Upload() {
+        return env2Upload;
+    }
+
+    /**
+     * 作業結束後不再需要上傳的條目，釋放它們使已結束的作業只佔用很少的記憶體
+     */
+    synchronized void releaseUploads() {
+        env1Upload = null;
+        env2Upload = null;
+    }
+
+    /**
+     * 第一次調用時以記憶體映射開啟結果存儲，之後返回同一個實例。
+     *
+     * @param path 結果存儲文件
+     * @return 結果存儲；已調用 {@link #closeResultStore()} 時為null
+     * @throws IOException 如果結果存儲無法開啟
+     */
+    synchronized ResultStore openResultStore(Path path) throws IOException {
+        if (resultStoreClosed) {
+            return null;
+        }
+        if (resultStore == null) {
+            resultStore = ResultStore.open(path);
+        }
+        return resultStore;
+    }
+
+    /**
+     * 解除結果存儲的映射並不再開啟，之後才能刪除作業目錄
+     */
+    synchronized void closeResultStore() {
+        resultStoreClosed = true;
+        if (resultStore != null) {
+            resultStore.close();
+            resultStore = null;
+        }
+    }
+
+    /**
+     * @return 即時交出比較結果的事件流，只有以 {@link CoreService#submitStreaming} 提交的作業才有
+     */
+    synchronized PullComparisonSink getRowStream() {
+        return rowStream;
+    }
+
+    synchronized void setRowStream(PullComparisonSink rowStream) {
+        this.rowStream = rowStream;
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    synchronized Future<?> getFuture() {
+        return future;
+    }
+
+    /**
+     * @return 作業仍在排隊、可以開始時返回true；已取消的作業返回false
+     */
+    synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    synchronized void succeed(List<String> reports) {
+        if (!status.isFinished()) {
+            this.reports = List.copyOf(reports);
+            finish(Status.SUCCEEDED, null);
+        }
+    }
+
+    synchronized void fail(String error) {
+        finish(Status.FAILED, error);
+    }
+
+    /**
+     * @return 作業原本未結束、現在被標記為已取消時返回true
+     */
+    synchronized boolean cancel() {
+        if (status.isFinished()) {
+            return false;
+        }
+        finish(Status.CANCELLED, null);
+        return true;
+    }
+
+    private void finish(Status finalStatus, String error) {
+        if (status.isFinished()) {
+            return;
+        }
+        this.status = finalStatus;
+        progress.setPhase(JobProgress.Phase.FINISHED);
+        this.error = error;
+        this.finishedAt = Instant.now();
+    }
+}
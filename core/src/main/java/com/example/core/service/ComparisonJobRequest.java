@@ -0,0 +1,153 @@
+package com.example.core.service;
+
+import com.example.core.tool.report.ComparisonSinks;
+
+import java.util.Set;
+
+/**
+ * 提交一個比較作業所需的參數。
+ *
+ * <p>差異標記規則的優先順序：{@link #getRules()} 不為空時編譯該規則定義；否則只要指定了
+ * {@link #getThresholdPercent()} 或 {@link #getThresholdMillis()}，就以「差異超過百分比且超過毫秒數」產生ALERT規則，
+ * 未指定的一項沿用默認值；都沒有指定時使用 {@link com.example.core.tool.rule.RuleSet#defaults()}。</p>
+ */
+public class ComparisonJobRequest {
+
+    /**
+     * 比較工具
+     */
+    public enum Tool {
+        AE,
+        SQR
+    }
+
+    private Tool tool;
+    private String env1TraceFile;
+    private String env2TraceFile;
+    private String env1Digest;
+    private String env2Digest;
+    private String env1Name = "DEV";
+    private String env2Name = "TEST";
+    private String traceParams;
+    private String rules;
+    private Double thresholdPercent;
+    private Long thresholdMillis;
+    private Set<ComparisonSinks.Format> formats;
+
+    public Tool getTool() {
+        return tool;
+    }
+
+    public void setTool(Tool tool) {
+        this.tool = tool;
+    }
+
+    /**
+     * @return 第一個環境的跟蹤文件在伺服器上的路徑
+     */
+    public String getEnv1TraceFile() {
+        return env1TraceFile;
+    }
+
+    public void setEnv1TraceFile(String env1TraceFile) {
+        this.env1TraceFile = env1TraceFile;
+    }
+
+    /**
+     * @return 第二個環境的跟蹤文件在伺服器上的路徑
+     */
+    public String getEnv2TraceFile() {
+        return env2TraceFile;
+    }
+
+    public void setEnv2TraceFile(String env2TraceFile) {
+        this.env2TraceFile = env2TraceFile;
+    }
+
+    /**
+     * @return 第一個環境已解析過的跟蹤內容的SHA-256，取代跟蹤文件或上傳；內容必須仍在 {@link ParsedTraceCache} 中
+     */
+    public String getEnv1Digest() {
+        return env1Digest;
+    }
+
+    public void setEnv1Digest(String env1Digest) {
+        this.env1Digest = env1Digest;
+    }
+
+    /**
+     * @return 第二個環境已解析過的跟蹤內容的SHA-256，取代跟蹤文件或上傳；內容必須仍在 {@link ParsedTraceCache} 中
+     */
+    public String getEnv2Digest() {
+        return env2Digest;
+    }
+
+    public void setEnv2Digest(String env2Digest) {
+        this.env2Digest = env2Digest;
+    }
+
+    public String getEnv1Name() {
+        return env1Name;
+    }
+
+    public void setEnv1Name(String env1Name) {
+        this.env1Name = env1Name;
+    }
+
+    public String getEnv2Name() {
+        return env2Name;
+    }
+
+    public void setEnv2Name(String env2Name) {
+        this.env2Name = env2Name;
+    }
+
+    /**
+     * @return 產生跟蹤文件時使用的trace參數，例如 "-TRACE 3 -TOOLSTRACESQL 31" 或 "-S -TIMING"；為空時使用工具的默認參數
+     */
+    public String getTraceParams() {
+        return traceParams;
+    }
+
+    public void setTraceParams(String traceParams) {
+        this.traceParams = traceParams;
+    }
+
+    /**
+     * @return 規則定義文字，語法見 {@link com.example.core.tool.rule.RuleSet}
+     */
+    public String getRules() {
+        return rules;
+    }
+
+    public void setRules(String rules) {
+        this.rules = rules;
+    }
+
+    public Double getThresholdPercent() {
+        return thresholdPercent;
+    }
+
+    public void setThresholdPercent(Double thresholdPercent) {
+        this.thresholdPercent = thresholdPercent;
+    }
+
+    public Long getThresholdMillis() {
+        return thresholdMillis;
+    }
+
+    public void setThresholdMillis(Long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    /**
+     * @return 需要產生的報告格式；為空時產生CSV、Markdown和HTML報告
+     */
+    public Set<ComparisonSinks.Format> getFormats() {
+        return formats;
+    }
+
+    public void setFormats(Set<ComparisonSinks.Format> formats) {
+        this.formats = formats;
+    }
+}
@@ -1,11 +1,803 @@
 package com.example.core.service;
 
+import com.example.core.tool.AETraceComparator;
+import com.example.core.tool.SQRTraceComparator;
+import com.example.core.tool.TopKRegressions;
+import com.example.core.tool.WallClockWaterfall;
+import com.example.core.tool.analyzer.TraceAnalyzer;
+import com.example.core.tool.analyzer.TraceAnalyzerFactory;
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.analyzer.TraceStreams;
+import com.example.core.tool.batch.MemoryBudget;
+import com.example.core.tool.report.ComparisonRow;
+import com.example.core.tool.report.ComparisonSink;
+import com.example.core.tool.report.ComparisonSinks;
+import com.example.core.tool.report.FanOutComparisonSink;
+import com.example.core.tool.report.JsonLinesComparisonSink;
+import com.example.core.tool.report.PullComparisonSink;
+import com.example.core.tool.rule.RuleSet;
+import com.example.core.tool.store.ResultPage;
+import com.example.core.tool.store.ResultQuery;
+import com.example.core.tool.store.ResultStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * 核心服務：在有界的線程池中以作業的形式運行跟蹤比較。
+ *
+ * <p>同時運行的作業數由 {@code trace-tool.jobs.threads} 決定，排隊的作業數由 {@code trace-tool.jobs.queue-capacity} 限制；
+ * 隊列已滿時提交會被拒絕，而不是無限制地堆積，因此伺服器在大量並發請求下仍能回應。每個作業的報告寫入
+ * {@code trace-tool.jobs.output-dir} 下以作業編號命名的目錄，已結束的作業最多保留 {@code trace-tool.jobs.retained} 個，
+ * 超過時最早結束的作業連同其報告一起刪除。</p>
+ *
+ * <p>跟蹤內容可以是伺服器上的文件，也可以是以 {@link #parseUpload} 接收的上傳內容；相同的內容只解析一次。
+ * 排隊中的作業取消後立即從隊列移除；運行中的作業會被中斷，比較在下一行結果時停止。</p>
+ */
+@Slf4j
 @Service
 public class CoreService {
 
+    private static final String AE_DEFAULT_TRACE_PARAMS = "-TRACE 3 -TOOLSTRACEPC 4044 -TOOLSTRACESQL 31";
+    private static final String SQR_DEFAULT_TRACE_PARAMS = "-S -TIMING -debugfgt -E";
+    private static final double DEFAULT_THRESHOLD_PERCENT = 20;
+    private static final long DEFAULT_THRESHOLD_MILLIS = 100;
+    private static final Duration ROW_STREAM_STALL_TIMEOUT = Duration.ofMinutes(5);
+    private static final Set<ComparisonSinks.Format> DEFAULT_FORMATS =
+            EnumSet.of(ComparisonSinks.Format.CONSOLE, ComparisonSinks.Format.CSV,
+                    ComparisonSinks.Format.MARKDOWN, ComparisonSinks.Format.HTML);
+
+    private final ThreadPoolExecutor executor;
+    private final Path outputRoot;
+    private final Path traceRoot;
+    private final int retainedJobs;
+    private final MemoryBudget memoryBudget;
+    private final ParsedTraceCache traceCache;
+    private final Map<String, ComparisonJob> jobs = new LinkedHashMap<>();
+
+    /**
+     * @param threads        同時運行的作業數
+     * @param queueCapacity  最多排隊的作業數
+     * @param outputDir      報告的根目錄
+     * @param traceDir       允許讀取的跟蹤文件根目錄，為空時只接受上傳或快取中的跟蹤內容
+     * @param retainedJobs   最多保留的已結束作業數
+     * @param memoryBudgetMb 作業和批次中的程序共用的堆記憶體預算（MB），為0時使用最大堆記憶體的六成
+     * @param traceCache     已解析跟蹤的快取
+     */
+    @Autowired
+    public CoreService(
+            @Value("${trace-tool.jobs.threads:2}") int threads,
+            @Value("${trace-tool.jobs.queue-capacity:16}") int queueCapacity,
+            @Value("${trace-tool.jobs.output-dir:${java.io.tmpdir}/trace-tool-jobs}") String outputDir,
+            @Value("${trace-tool.jobs.trace-dir:}") String traceDir,
+            @Value("${trace-tool.jobs.retained:100}") int retainedJobs,
+            @Value("${trace-tool.memory-budget-mb:${trace-tool.batches.memory-budget-mb:0}}") long memoryBudgetMb,
+            ParsedTraceCache traceCache) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "comparison-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.outputRoot = Path.of(outputDir).toAbsolutePath().normalize();
+        this.traceRoot = traceDir.isBlank() ? null : Path.of(traceDir).toAbsolutePath().normalize();
+        this.retainedJobs = retainedJobs;
+        this.memoryBudget = MemoryBudget.ofMegabytes(memoryBudgetMb);
+        this.traceCache = traceCache;
+    }
+
+    /**
+     * @return 比較作業估計使用的堆記憶體預算，{@link BatchService} 的批次與作業共用
+     */
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
     public String getServiceInfo() {
         return "Core Service is running";
     }
-}
\ No newline at end of file
+
+    /**
+     * 提交一個比較伺服器上兩個跟蹤文件的作業。指定了 env1Digest / env2Digest 的環境改用快取中已解析的內容，
+     * 不需要跟蹤文件。
+     *
+     * @param request 作業參數
+     * @return 已排隊的作業
+     * @throws IllegalArgumentException   如果參數不正確，例如跟蹤文件不存在、快取中沒有指定的內容或規則語法錯誤
+     * @throws RejectedExecutionException 如果排隊的作業已達上限
+     */
+    public ComparisonJob submit(ComparisonJobRequest request) {
+        return submit(request, null);
+    }
+
+    /**
+     * 提交一個比較伺服器上兩個跟蹤文件的作業，並在比較的同時以 {@link #streamRows} 交出每一行結果。
+     * 作業照常產生所有報告；讀取方離開後比較繼續進行，只是不再交出結果。
+     *
+     * @param request 作業參數，與 {@link #submit(ComparisonJobRequest)} 相同
+     * @return 已排隊的作業
+     * @throws IllegalArgumentException   如果參數不正確
+     * @throws RejectedExecutionException 如果排隊的作業已達上限
+     */
+    public ComparisonJob submitStreaming(ComparisonJobRequest request) {
+        return submit(request, new PullComparisonSink(PullComparisonSink.DEFAULT_CAPACITY, ROW_STREAM_STALL_TIMEOUT));
+    }
+
+    private ComparisonJob submit(ComparisonJobRequest request, PullComparisonSink rowStream) {
+        validate(request);
+        UploadedTrace env1 = null;
+        UploadedTrace env2 = null;
+        if (request.getEnv1Digest() != null) {
+            env1 = requireCached(request, request.getEnv1Digest(), "env1Digest");
+        } else {
+            checkTraceFile(request.getEnv1TraceFile(), "env1TraceFile");
+        }
+        if (request.getEnv2Digest() != null) {
+            env2 = requireCached(request, request.getEnv2Digest(), "env2Digest");
+        } else {
+            checkTraceFile(request.getEnv2TraceFile(), "env2TraceFile");
+        }
+        // 在提交前編譯規則，使語法錯誤直接返回給調用者而不是成為失敗的作業
+        RuleSet rules = buildRules(request);
+
+        String id = UUID.randomUUID().toString();
+        ComparisonJob job = new ComparisonJob(id, request, outputRoot.resolve(id), env1, env2);
+        // 在作業開始前接上，讀取方不會錯過任何一行
+        job.setRowStream(rowStream);
+        enqueue(job, rules);
+        log.info("已提交 {} 比較作業 {}：{} 對 {}", request.getTool(), id, request.getEnv1TraceFile(), request.getEnv2TraceFile());
+        return job;
+    }
+
+    /**
+     * 提交一個比較兩個已上傳跟蹤內容的作業。
+     *
+     * @param request 作業參數，其中的跟蹤文件路徑被忽略
+     * @param env1    第一個環境上傳並解析好的跟蹤內容
+     * @param env2    第二個環境上傳並解析好的跟蹤內容
+     * @return 已排隊的作業
+     * @throws IllegalArgumentException   如果參數不正確
+     * @throws RejectedExecutionException 如果排隊的作業已達上限
+     */
+    public ComparisonJob submit(ComparisonJobRequest request, UploadedTrace env1, UploadedTrace env2) {
+        validate(request);
+        if ((request.getTool() == ComparisonJobRequest.Tool.AE) != (env1.getAeEntries() != null)
+                || (env1.getAeEntries() != null) != (env2.getAeEntries() != null)) {
+            throw new IllegalArgumentException("上傳的跟蹤內容不是以 " + request.getTool() + " 工具解析的");
+        }
+        RuleSet rules = buildRules(request);
+
+        String id = UUID.randomUUID().toString();
+        ComparisonJob job = enqueue(new ComparisonJob(id, request, outputRoot.resolve(id), env1, env2), rules);
+        log.info("已提交 {} 比較作業 {}：上傳的 {}（{} 個條目）對 {}（{} 個條目）", request.getTool(), id,
+                env1.getName(), env1.size(), env2.getName(), env2.size());
+        return job;
+    }
+
+    /**
+     * 接收上傳的跟蹤內容。內容原樣寫入暫存文件，同時以 {@link DigestInputStream} 計算解壓後內容的SHA-256；
+     * {@link ParsedTraceCache} 中已有相同內容時直接返回快取中的實例，不再解析，否則才解析暫存文件並放入快取。
+     * gzip和zip內容保持壓縮寫入暫存文件，解析時再即時解壓縮。
+     *
+     * @param request 作業參數，決定使用的工具和trace參數
+     * @param name    上傳的文件名稱
+     * @param in      上傳的內容，不會被關閉
+     * @return 解析好的跟蹤內容
+     * @throws IllegalArgumentException 如果未指定比較工具
+     * @throws IOException              如果內容無法讀取、解壓縮或寫入暫存文件
+     */
+    public UploadedTrace parseUpload(ComparisonJobRequest request, String name, InputStream in) throws IOException {
+        if (request.getTool() == null) {
+            throw new IllegalArgumentException("必須指定比較工具（AE或SQR）");
+        }
+        Path spool = Files.createTempFile("trace-tool-upload-", ".spool");
+        try {
+            String digest;
+            try (OutputStream out = Files.newOutputStream(spool)) {
+                digest = sha256(TraceStreams.decompress(new TeeInputStream(in, out)));
+            }
+            return cachedOrParse(request.getTool(), traceParams(request), name, digest,
+                    () -> TraceStreams.decompress(Files.newInputStream(spool)));
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /**
+     * 快取中已有相同內容時返回快取中的實例，否則解析內容並放入快取。
+     */
+    private UploadedTrace cachedOrParse(ComparisonJobRequest.Tool tool, String traceParams, String name, String digest,
+                                        TraceSource source) throws IOException {
+        String key = ParsedTraceCache.key(tool, traceParams, digest);
+        Optional<UploadedTrace> cached = traceCache.get(key);
+        if (cached.isPresent()) {
+            log.info("{} 與快取中已解析的內容相同（SHA-256 {}），使用快取中的實例", name, digest);
+            return cached.get();
+        }
+
+        UploadedTrace parsed;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(source.open(), StandardCharsets.UTF_8),
+                TraceStreams.BUFFER_SIZE)) {
+            parsed = parse(tool, traceParams, name, reader);
+        }
+        log.info("從 {} 解析出 {} 個條目，SHA-256 {}", name, parsed.size(), digest);
+        UploadedTrace trace = parsed.withDigest(digest);
+        traceCache.put(key, trace);
+        return trace;
+    }
+
+    /**
+     * 讀完內容並返回其SHA-256
+     */
+    private static String sha256(InputStream in) throws IOException {
+        MessageDigest digest = ParsedTraceCache.newDigest();
+        try (DigestInputStream digestIn = new DigestInputStream(in, digest)) {
+            digestIn.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @param request 作業參數，決定使用的工具和trace參數
+     * @param digest  之前解析過的內容的SHA-256
+     * @return 快取中解析好的跟蹤內容，不在快取中時為空
+     * @throws IllegalArgumentException 如果未指定比較工具
+     */
+    public Optional<UploadedTrace> getCachedTrace(ComparisonJobRequest request, String digest) {
+        if (request.getTool() == null) {
+            throw new IllegalArgumentException("必須指定比較工具（AE或SQR）");
+        }
+        return traceCache.get(ParsedTraceCache.key(request.getTool(), traceParams(request), digest));
+    }
+
+    /**
+     * @return 排隊的作業是否已達上限；上傳大文件前先檢查，避免接收完才被拒絕
+     */
+    public boolean isQueueFull() {
+        return executor.getQueue().remainingCapacity() == 0;
+    }
+
+    private ComparisonJob enqueue(ComparisonJob job, RuleSet rules) {
+        synchronized (jobs) {
+            Future<?> future = executor.submit(() -> run(job, rules));
+            job.setFuture(future);
+            jobs.put(job.getId(), job);
+        }
+        return job;
+    }
+
+    /**
+     * 在調用線程中把以 {@link #submitStreaming} 提交的作業的結果以JSON Lines寫出，直到作業結束。
+     *
+     * <p>第一行是兩個環境的名稱，之後每行一個結果，格式與JSON Lines報告相同，並在產生後立即寫出；
+     * 最後一行是作業的最終狀態 {@code {"record":"status",...}}。out寫得慢時比較隨之變慢，
+     * 伺服器中等待寫出的結果不超過 {@link PullComparisonSink#DEFAULT_CAPACITY} 行。</p>
+     *
+     * @param job 作業
+     * @param out 輸出，不會被關閉
+     * @throws IOException 如果輸出無法寫入，例如客戶端已斷線；作業繼續運行
+     */
+    public void streamRows(ComparisonJob job, OutputStream out) throws IOException {
+        PullComparisonSink rowStream = job.getRowStream();
+        if (rowStream == null) {
+            throw new IllegalStateException("作業 " + job.getId() + " 不是以串流方式提交的");
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        JsonLinesComparisonSink json = new JsonLinesComparisonSink(writer);
+        try {
+            rowStream.drainTo(json, writer);
+            // 比較結束後作業還要寫出其他報告，等作業結束才能返回最終狀態
+            job.getFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待比較作業 " + job.getId() + " 時被中斷");
+        } catch (ExecutionException | CancellationException e) {
+            // 作業的結果記錄在作業狀態中
+        }
+        json.status(job.getId(), job.getStatus().name(), job.getError());
+        writer.flush();
+    }
+
+    /**
+     * @param id 作業編號
+     * @return 作業，不存在或已被清除時為空
+     */
+    public Optional<ComparisonJob> getJob(String id) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(id));
+        }
+    }
+
+    /**
+     * @return 所有保留中的作業，按提交順序排列
+     */
+    public List<ComparisonJob> getJobs() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    /**
+     * 取消作業。排隊中的作業從隊列中移除，運行中的作業被中斷。
+     *
+     * @param id 作業編號
+     * @return 作業，不存在時為空
+     */
+    public Optional<ComparisonJob> cancel(String id) {
+        Optional<ComparisonJob> job = getJob(id);
+        job.ifPresent(j -> {
+            if (j.cancel()) {
+                j.releaseUploads();
+                if (j.getRowStream() != null) {
+                    j.getRowStream().detach();
+                }
+                Future<?> future = j.getFuture();
+                future.cancel(true);
+                executor.remove((Runnable) future);
+                log.info("已取消比較作業 {}", id);
+                evictFinishedJobs();
+            }
+        });
+        return job;
+    }
+
+    /**
+     * @param id   作業編號
+     * @param name 報告文件名稱，必須是 {@link ComparisonJob#getReports()} 中的一個
+     * @return 報告文件的路徑；作業不存在、未成功或沒有該報告時為空
+     */
+    public Optional<Path> getReport(String id, String name) {
+        return getJob(id)
+                .filter(job -> job.getReports().contains(name))
+                .map(job -> job.getOutputDirectory().resolve(name));
+    }
+
+    /**
+     * 分頁查詢已成功作業的比較結果。結果存儲在第一次查詢時以記憶體映射開啟，之後的查詢重用同一個實例。
+     *
+     * @param id    作業編號
+     * @param query 查詢條件、排序和頁碼
+     * @return 這一頁結果；作業不存在、未成功、沒有結果存儲或已被淘汰時為空
+     * @throws IOException              如果結果存儲無法開啟
+     * @throws IllegalArgumentException 如果排序欄位、頁碼或每頁行數不正確
+     */
+    public Optional<ResultPage> queryRows(String id, ResultQuery query) throws IOException {
+        Optional<ComparisonJob> job = getJob(id).filter(j -> j.getStatus() == ComparisonJob.Status.SUCCEEDED);
+        if (job.isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<String> name = job.get().getReports().stream().filter(report -> report.endsWith(".rows")).findFirst();
+        if (name.isEmpty()) {
+            return Optional.empty();
+        }
+        ResultStore store = job.get().openResultStore(job.get().getOutputDirectory().resolve(name.get()));
+        if (store == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(store.query(query));
+        } catch (IllegalStateException e) {
+            // 作業在查詢開始後被淘汰
+            if (store.isClosed()) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return 排隊中的作業數
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(ComparisonJob job, RuleSet rules) {
+        if (!job.start()) {
+            return;
+        }
+        ComparisonJobRequest request = job.getRequest();
+        log.info("開始運行比較作業 {}", job.getId());
+        try (MemoryBudget.Lease lease = memoryBudget.acquire(estimatedHeapBytes(job))) {
+            Files.createDirectories(job.getOutputDirectory());
+            if (request.getTool() == ComparisonJobRequest.Tool.AE) {
+                runAE(job, rules);
+            } else {
+                runSQR(job, rules);
+            }
+            job.succeed(listReports(job.getOutputDirectory()));
+            log.info("比較作業 {} 已完成", job.getId());
+        } catch (InterruptedException | InterruptedIOException e) {
+            job.cancel();
+            log.info("比較作業 {} 已中斷", job.getId());
+        } catch (IOException | RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                job.cancel();
+                log.info("比較作業 {} 已中斷", job.getId());
+            } else {
+                job.fail(e.getMessage() != null ? e.getMessage() : e.toString());
+                log.error("比較作業 {} 失敗", job.getId(), e);
+            }
+        } finally {
+            if (job.getRowStream() != null) {
+                // 比較開始前就失敗時事件流沒有被關閉，讀取方也要知道已經結束
+                job.getRowStream().close();
+            }
+            job.releaseUploads();
+            evictFinishedJobs();
+        }
+    }
+
+    /**
+     * 上傳的內容按解析後的估計大小計算，伺服器上的文件與批次中的程序一樣按解壓後的大小估計
+     */
+    private static long estimatedHeapBytes(ComparisonJob job) throws IOException {
+        ComparisonJobRequest request = job.getRequest();
+        return estimatedHeapBytes(job.getEnv1Upload(), request.getEnv1TraceFile())
+                + estimatedHeapBytes(job.getEnv2Upload(), request.getEnv2TraceFile());
+    }
+
+    private static long estimatedHeapBytes(UploadedTrace upload, String file) throws IOException {
+        return upload != null ? upload.getEstimatedBytes() : MemoryBudget.estimatedHeapBytes(TraceStreams.uncompressedSize(Path.of(file)));
+    }
+
+    private void runAE(ComparisonJob job, RuleSet rules) throws IOException {
+        ComparisonJobRequest request = job.getRequest();
+        List<TraceEntry> env1Entries = loadTrace(job, true).getAeEntries();
+        List<TraceEntry> env2Entries = loadTrace(job, false).getAeEntries();
+
+        String outputPath = job.getOutputDirectory().resolve("ae_trace_comparison_result.csv").toString();
+        job.progress().setPhase(JobProgress.Phase.COMPARING);
+        try (ComparisonSink sink = new InterruptibleSink(sinks(job, outputPath, "AE"), job.progress())) {
+            AETraceComparator.compareTraces(env1Entries, env2Entries, request.getEnv1Name(), request.getEnv2Name(), rules, sink);
+        }
+        WallClockWaterfall.writeReport(env1Entries, env2Entries, request.getEnv1Name(), request.getEnv2Name(),
+                outputPath.replace(".csv", "_waterfall.md"));
+    }
+
+    private void runSQR(ComparisonJob job, RuleSet rules) throws IOException {
+        ComparisonJobRequest request = job.getRequest();
+        List<SQRTraceComparator.TraceEntry> env1Entries = loadTrace(job, true).getSqrEntries();
+        List<SQRTraceComparator.TraceEntry> env2Entries = loadTrace(job, false).getSqrEntries();
+
+        String outputPath = job.getOutputDirectory().resolve("sqr_trace_comparison_result.csv").toString();
+        job.progress().setPhase(JobProgress.Phase.COMPARING);
+        try (ComparisonSink sink = new InterruptibleSink(sinks(job, outputPath, "SQR"), job.progress())) {
+            SQRTraceComparator.compareTraces(env1Entries, env2Entries, request.getEnv1Name(), request.getEnv2Name(), rules, sink);
+        }
+    }
+
+    /**
+     * 取得作業一個環境的跟蹤內容：上傳或快取中的內容直接使用；伺服器上的文件先計算SHA-256，
+     * 與快取中的內容相同時使用快取中的實例，否則才解析並放入快取。
+     */
+    private UploadedTrace loadTrace(ComparisonJob job, boolean env1) throws IOException {
+        JobProgress progress = job.progress();
+        progress.setPhase(env1 ? JobProgress.Phase.PARSING_ENV1 : JobProgress.Phase.PARSING_ENV2);
+        UploadedTrace upload = env1 ? job.getEnv1Upload() : job.getEnv2Upload();
+        if (upload == null) {
+            ComparisonJobRequest request = job.getRequest();
+            String file = env1 ? request.getEnv1TraceFile() : request.getEnv2TraceFile();
+            Path path = Path.of(file);
+            // 計算雜湊只需讀取文件，比解析快得多；快取命中時省去整個解析
+            String digest = sha256(Files.newInputStream(path));
+            LongAdder bytesParsed = progress.startParsing(env1, Files.size(path));
+            upload = cachedOrParse(request.getTool(), traceParams(request), file, digest,
+                    () -> new CountingInputStream(Files.newInputStream(path), bytesParsed));
+        }
+        progress.parsed(env1, upload.size());
+        if (env1) {
+            job.setDigests(upload.getDigest(), job.getEnv2Digest());
+        } else {
+            job.setDigests(job.getEnv1Digest(), upload.getDigest());
+        }
+        checkInterrupted();
+        return upload;
+    }
+
+    private UploadedTrace requireCached(ComparisonJobRequest request, String digest, String field) {
+        return getCachedTrace(request, digest).orElseThrow(() ->
+                new IllegalArgumentException("快取中沒有 " + field + " 對應的跟蹤內容，請重新上傳或指定跟蹤文件: " + digest));
+    }
+
+    private static UploadedTrace parse(ComparisonJobRequest.Tool tool, String traceParams, String name,
+                                       BufferedReader reader) throws IOException {
+        if (tool == ComparisonJobRequest.Tool.AE) {
+            List<TraceAnalyzer> analyzers = TraceAnalyzerFactory.createAnalyzersForParams(traceParams);
+            return UploadedTrace.ae(name, null, AETraceComparator.parseTraceWithMultipleAnalyzers(reader, analyzers));
+        }
+        return UploadedTrace.sqr(name, null, SQRTraceComparator.parseTraceWithParams(reader, traceParams));
+    }
+
+    private static String traceParams(ComparisonJobRequest request) {
+        return orDefault(request.getTraceParams(),
+                request.getTool() == ComparisonJobRequest.Tool.AE ? AE_DEFAULT_TRACE_PARAMS : SQR_DEFAULT_TRACE_PARAMS);
+    }
+
+    private void validate(ComparisonJobRequest request) {
+        if (request.getTool() == null) {
+            throw new IllegalArgumentException("必須指定比較工具（AE或SQR）");
+        }
+        if (request.getEnv1Name() == null || request.getEnv1Name().isBlank()
+                || request.getEnv2Name() == null || request.getEnv2Name().isBlank()) {
+            throw new IllegalArgumentException("環境名稱不能為空");
+        }
+    }
+
+    private void checkTraceFile(String file, String field) {
+        if (file == null || file.isBlank()) {
+            throw new IllegalArgumentException("必須指定 " + field);
+        }
+        if (traceRoot == null) {
+            throw new IllegalArgumentException("伺服器未設定 trace-tool.jobs.trace-dir，不接受以路徑指定的 " + field
+                    + "，請上傳跟蹤文件");
+        }
+        Path path = Path.of(file).toAbsolutePath().normalize();
+        if (!path.startsWith(traceRoot)) {
+            throw new IllegalArgumentException(field + " 必須位於 " + traceRoot + " 之下: " + file);
+        }
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalArgumentException(field + " 不存在: " + file);
+        }
+    }
+
+    /**
+     * 按 {@link ComparisonJobRequest} 中說明的優先順序建立規則
+     */
+    static RuleSet buildRules(ComparisonJobRequest request) {
+        return buildRules(request.getRules(), request.getThresholdPercent(), request.getThresholdMillis());
+    }
+
+    static RuleSet buildRules(String rules, Double thresholdPercent, Long thresholdMillis) {
+        if (rules != null && !rules.isBlank()) {
+            return RuleSet.compile(rules);
+        }
+        if (thresholdPercent == null && thresholdMillis == null) {
+            return RuleSet.defaults();
+        }
+        double percent = thresholdPercent != null ? thresholdPercent : DEFAULT_THRESHOLD_PERCENT;
+        long millis = thresholdMillis != null ? thresholdMillis : DEFAULT_THRESHOLD_MILLIS;
+        return RuleSet.threshold(percent, millis);
+    }
+
+    private static ComparisonSink sinks(ComparisonJob job, String outputPath, String title) throws IOException {
+        ComparisonSink reports = ComparisonSinks.create(outputPath, title, formats(job.getRequest()), false);
+        PullComparisonSink rowStream = job.getRowStream();
+        return rowStream != null ? new FanOutComparisonSink(List.of(reports, rowStream)) : reports;
+    }
+
+    private static Set<ComparisonSinks.Format> formats(ComparisonJobRequest request) {
+        Set<ComparisonSinks.Format> formats = EnumSet.noneOf(ComparisonSinks.Format.class);
+        formats.addAll(request.getFormats() == null || request.getFormats().isEmpty() ? DEFAULT_FORMATS : request.getFormats());
+        // 結果存儲供 queryRows 分頁查詢，無論請求哪些報告格式都要產生
+        formats.add(ComparisonSinks.Format.RESULT_STORE);
+        return formats;
+    }
+
+    private static String orDefault(String value, String defaultValue) {
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("比較作業已取消");
+        }
+    }
+
+    private static List<String> listReports(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> file.getFileName().toString())
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * 已結束的作業超過保留數量時，刪除最早結束的作業及其報告
+     */
+    private void evictFinishedJobs() {
+        List<ComparisonJob> evicted = new ArrayList<>();
+        synchronized (jobs) {
+            List<ComparisonJob> finished = new ArrayList<>();
+            for (ComparisonJob job : jobs.values()) {
+                if (job.getStatus().isFinished()) {
+                    finished.add(job);
+                }
+            }
+            int excess = finished.size() - retainedJobs;
+            if (excess <= 0) {
+                return;
+            }
+            finished.sort(Comparator.comparing(ComparisonJob::getFinishedAt));
+            for (Iterator<ComparisonJob> it = finished.iterator(); it.hasNext() && excess > 0; excess--) {
+                ComparisonJob job = it.next();
+                jobs.remove(job.getId());
+                evicted.add(job);
+            }
+        }
+        for (ComparisonJob job : evicted) {
+            // 映射中的文件在Windows上無法刪除，並且刪除後的查詢會讀到已不存在的頁
+            job.closeResultStore();
+            deleteDirectory(job.getOutputDirectory());
+        }
+    }
+
+    /**
+     * 刪除作業或批次的輸出目錄，失敗時只記錄警告
+     */
+    static void deleteDirectory(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("無法刪除目錄 {}", directory, e);
+        }
+    }
+
+    /**
+     * 打開要解析的內容
+     */
+    @FunctionalInterface
+    private interface TraceSource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * 把讀取的內容同時原樣寫入另一個輸出流，用於在計算雜湊的同時把上傳內容寫入暫存文件
+     */
+    private static final class TeeInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                copy.write(buffer, offset, n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // 上傳的內容由調用者關閉
+        }
+    }
+
+    /**
+     * 把讀取的位元組數累加到進度計數器。每次讀取的是一整個緩衝區，因此計數的開銷可以忽略。
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final LongAdder count;
+
+        CountingInputStream(InputStream in, LongAdder count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count.add(n);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * 在每一行結果前檢查線程是否已被中斷，使運行中的作業可以被取消
+     */
+    private static final class InterruptibleSink implements ComparisonSink {
+        private final ComparisonSink delegate;
+        private final JobProgress progress;
+
+        InterruptibleSink(ComparisonSink delegate, JobProgress progress) {
+            this.delegate = delegate;
+            this.progress = progress;
+        }
+
+        @Override
+        public void begin(String env1Name, String env2Name) throws IOException {
+            delegate.begin(env1Name, env2Name);
+        }
+
+        @Override
+        public void accept(ComparisonRow row) throws IOException {
+            checkInterrupted();
+            delegate.accept(row);
+            progress.rowWritten(row);
+        }
+
+        @Override
+        public void end(TopKRegressions topRegressions) throws IOException {
+            progress.setPhase(JobProgress.Phase.WRITING_REPORTS);
+            delegate.end(topRegressions);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.core.service;
+
+import com.example.core.tool.report.ComparisonRow;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一個比較作業的進度計數器。
+ *
+ * <p>解析和比較的線程在每次讀取或每一行結果時更新 {@link LongAdder}，更新不需要鎖，也不會在線程之間爭用同一個快取行；
+ * 讀取方以固定頻率調用 {@link #snapshot()} 取樣，例如伺服器推送事件（SSE）的發送器。取樣不是原子的，
+ * 各計數之間可能相差幾次更新，但每個計數本身只會增加。</p>
+ */
+public final class JobProgress {
+
+    /**
+     * 作業所處的階段
+     */
+    public enum Phase {
+        QUEUED,
+        PARSING_ENV1,
+        PARSING_ENV2,
+        COMPARING,
+        WRITING_REPORTS,
+        FINISHED
+    }
+
+    /**
+     * 某一時刻的進度
+     *
+     * @param phase           階段
+     * @param env1BytesParsed 第一個環境已解析的位元組數
+     * @param env1BytesTotal  第一個環境的總位元組數；上傳的內容在提交前已解析完，為 -1
+     * @param env2BytesParsed 第二個環境已解析的位元組數
+     * @param env2BytesTotal  第二個環境的總位元組數；上傳的內容在提交前已解析完，為 -1
+     * @param env1Entries     第一個環境的條目數，解析完成前為 -1
+     * @param env2Entries     第二個環境的條目數，解析完成前為 -1
+     * @param matched         已配對的執行數
+     * @param unique          只存在於第二個環境的執行數
+     * @param missing         只存在於第一個環境的執行數
+     * @param rowsWritten     已寫出的結果行數
+     * @param alignedPercent  第二個環境已完成配對的條目百分比，比較開始前為 0
+     */
+    public record Snapshot(Phase phase,
+                           long env1BytesParsed, long env1BytesTotal,
+                           long env2BytesParsed, long env2BytesTotal,
+                           int env1Entries, int env2Entries,
+                           long matched, long unique, long missing,
+                           long rowsWritten, double alignedPercent) {
+    }
+
+    private volatile Phase phase = Phase.QUEUED;
+    private final LongAdder env1BytesParsed = new LongAdder();
+    private final LongAdder env2BytesParsed = new LongAdder();
+    private volatile long env1BytesTotal = -1;
+    private volatile long env2BytesTotal = -1;
+    private volatile int env1Entries = -1;
+    private volatile int env2Entries = -1;
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder unique = new LongAdder();
+    private final LongAdder missing = new LongAdder();
+
+    void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * @param env1       是否為第一個環境
+     * @param totalBytes 將要解析的總位元組數
+     * @return 解析時每讀取一段內容就增加的計數器
+     */
+    LongAdder startParsing(boolean env1, long totalBytes) {
+        if (env1) {
+            env1BytesTotal = totalBytes;
+            return env1BytesParsed;
+        }
+        env2BytesTotal = totalBytes;
+        return env2BytesParsed;
+    }
+
+    void parsed(boolean env1, int entries) {
+        if (env1) {
+            env1Entries = entries;
+        } else {
+            env2Entries = entries;
+        }
+    }
+
+    /**
+     * 記錄一行寫出的結果
+     */
+    void rowWritten(ComparisonRow row) {
+        switch (row.getStatus()) {
+            case MATCHED -> matched.increment();
+            case UNIQUE -> unique.increment();
+            case MISSING -> missing.increment();
+        }
+    }
+
+    /**
+     * @return 目前的進度
+     */
+    public Snapshot snapshot() {
+        long matchedCount = matched.sum();
+        long uniqueCount = unique.sum();
+        long missingCount = missing.sum();
+        int env2Count = env2Entries;
+        // 第二個環境的每個條目恰好產生一行配對或獨有的結果，之後才輸出只存在於第一個環境的結果
+        double aligned = env2Count > 0 ? Math.min(100.0, (matchedCount + uniqueCount) * 100.0 / env2Count) : 0;
+        return new Snapshot(phase,
+                env1BytesParsed.sum(), env1BytesTotal,
+                env2BytesParsed.sum(), env2BytesTotal,
+                env1Entries, env2Count,
+                matchedCount, uniqueCount, missingCount,
+                matchedCount + uniqueCount + missingCount, aligned);
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.core.service;
+
+import com.example.core.tool.SQRTraceComparator;
+import com.example.core.tool.analyzer.TraceEntry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * 以內容雜湊為鍵的已解析跟蹤快取。
+ *
+ * <p>同一份基準跟蹤常被反覆上傳，與不同的候選運行比較。鍵是解壓後內容的SHA-256加上工具和trace參數，
+ * 值是解析好的 {@link UploadedTrace}，因此相同的內容再次比較時完全不需要解析。</p>
+ *
+ * <p>記憶體層按 {@link UploadedTrace#getEstimatedBytes()} 的總和做LRU淘汰，上限為 {@code trace-tool.jobs.cache.max-bytes}。
+ * 設定了 {@code trace-tool.jobs.cache.spill-dir} 時，被淘汰的條目寫入本地磁碟層，磁碟層按文件大小做LRU淘汰，
+ * 上限為 {@code trace-tool.jobs.cache.max-spill-bytes}；磁碟層命中時讀回記憶體層。磁碟上的文件以鍵的雜湊命名，
+ * 因此伺服器重啟後仍可使用。磁碟的讀寫都在鎖之外進行。</p>
+ */
+@Slf4j
+@Component
+public class ParsedTraceCache {
+
+    private static final String SPILL_SUFFIX = ".trace";
+
+    /**
+     * 磁碟層只寫入 {@link UploadedTrace} 和它的條目；讀回時只允許這些類別及條目用到的JDK集合和值類型，
+     * 被替換或損壞的文件無法藉由反序列化實例化其他類別
+     */
+    static final ObjectInputFilter SPILL_FILTER = ObjectInputFilter.Config.createFilter(String.join(";",
+            UploadedTrace.class.getName(),
+            TraceEntry.class.getName(),
+            SQRTraceComparator.TraceEntry.class.getName(),
+            "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList",
+            "java.util.Collections$UnmodifiableCollection",
+            "java.util.ArrayList",
+            "java.util.HashMap",
+            "java.util.Map$Entry",
+            "java.lang.Object",
+            "java.lang.String",
+            "java.lang.Number",
+            "java.lang.Long",
+            "java.lang.Integer",
+            "java.lang.Double",
+            "java.lang.Boolean",
+            "maxdepth=10",
+            "!*"));
+
+    private final long maxBytes;
+    private final Path spillDir;
+    private final long maxSpillBytes;
+    // 以訪問順序排列，第一個是最久未使用的
+    private final LinkedHashMap<String, UploadedTrace> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> spilled = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long spilledBytes;
+
+    /**
+     * @param maxBytes      記憶體層最多保留的估計位元組數，為0時只使用磁碟層
+     * @param spillDir      磁碟層的目錄，為空時不使用磁碟層
+     * @param maxSpillBytes 磁碟層最多佔用的位元組數
+     */
+    @Autowired
+    public ParsedTraceCache(
+            @Value("${trace-tool.jobs.cache.max-bytes:268435456}") long maxBytes,
+            @Value("${trace-tool.jobs.cache.spill-dir:}") String spillDir,
+            @Value("${trace-tool.jobs.cache.max-spill-bytes:2147483648}") long maxSpillBytes) {
+        this.maxBytes = maxBytes;
+        this.spillDir = spillDir == null || spillDir.isBlank() ? null : Path.of(spillDir).toAbsolutePath().normalize();
+        this.maxSpillBytes = maxSpillBytes;
+        if (this.spillDir != null) {
+            loadSpilled();
+        }
+    }
+
+    /**
+     * @param tool        比較工具
+     * @param traceParams 解析時使用的trace參數
+     * @param digest      解壓後內容的SHA-256
+     * @return 快取的鍵；trace參數只在空白上有差異時視為相同
+     */
+    public static String key(ComparisonJobRequest.Tool tool, String traceParams, String digest) {
+        return digest + "/" + tool + "/" + traceParams.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * @return 新的SHA-256計算器
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM不支援SHA-256", e);
+        }
+    }
+
+    /**
+     * 查找快取，先查記憶體層再查磁碟層。
+     *
+     * @param key {@link #key} 產生的鍵
+     * @return 解析好的跟蹤內容，未命中時為空
+     */
+    public Optional<UploadedTrace> get(String key) {
+        String fileName;
+        synchronized (this) {
+            UploadedTrace trace = memory.get(key);
+            if (trace != null) {
+                return Optional.of(trace);
+            }
+            fileName = spillFileName(key);
+            if (spillDir == null || spilled.get(fileName) == null) {
+                return Optional.empty();
+            }
+        }
+
+        UploadedTrace trace;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(spillDir.resolve(fileName)), 1 << 16))) {
+            in.setObjectInputFilter(SPILL_FILTER);
+            trace = (UploadedTrace) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // 文件可能剛被淘汰、由不相容的舊版本寫入，或包含不允許的類別
+            log.warn("無法讀取磁碟快取 {}: {}", fileName, e.toString());
+            removeSpilled(fileName);
+            return Optional.empty();
+        }
+        log.info("從磁碟快取讀回 {}（{} 個條目）", trace.getName(), trace.size());
+        put(key, trace);
+        return Optional.of(trace);
+    }
+
+    /**
+     * 加入快取，必要時把最久未使用的條目移到磁碟層。
+     *
+     * @param key   {@link #key} 產生的鍵
+     * @param trace 解析好的跟蹤內容
+     */
+    public void put(String key, UploadedTrace trace) {
+        List<Map.Entry<String, UploadedTrace>> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (trace.getEstimatedBytes() <= maxBytes) {
+                UploadedTrace previous = memory.put(key, trace);
+                memoryBytes += trace.getEstimatedBytes() - (previous != null ? previous.getEstimatedBytes() : 0);
+            } else {
+                // 比整個記憶體層還大的內容直接放到磁碟層
+                evicted.add(Map.entry(key, trace));
+            }
+            Iterator<Map.Entry<String, UploadedTrace>> it = memory.entrySet().iterator();
+            while (memoryBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, UploadedTrace> eldest = it.next();
+                it.remove();
+                memoryBytes -= eldest.getValue().getEstimatedBytes();
+                evicted.add(eldest);
+            }
+        }
+        for (Map.Entry<String, UploadedTrace> entry : evicted) {
+            spill(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return 記憶體層目前的估計位元組數
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return 磁碟層目前佔用的位元組數
+     */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    private void spill(String key, UploadedTrace trace) {
+        if (spillDir == null) {
+            return;
+        }
+        String fileName = spillFileName(key);
+        synchronized (this) {
+            if (spilled.get(fileName) != null) {
+                return;
+            }
+        }
+
+        Path file = spillDir.resolve(fileName);
+        long size;
+        try {
+            Files.createDirectories(spillDir);
+            Path temp = Files.createTempFile(spillDir, fileName, ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp);
+                 ObjectOutputStream objects = new ObjectOutputStream(new BufferedOutputStream(out, 1 << 16))) {
+                objects.writeObject(trace);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            size = Files.size(file);
+        } catch (IOException e) {
+            log.warn("無法把 {} 寫入磁碟快取: {}", trace.getName(), e.toString());
+            return;
+        }
+        log.debug("已把 {} 寫入磁碟快取（{} 位元組）", trace.getName(), size);
+
+        List<String> removed = new ArrayList<>();
+        synchronized (this) {
+            Long previous = spilled.put(fileName, size);
+            spilledBytes += size - (previous != null ? previous : 0);
+            Iterator<Map.Entry<String, Long>> it = spilled.entrySet().iterator();
+            while (spilledBytes > maxSpillBytes && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                it.remove();
+                spilledBytes -= eldest.getValue();
+                removed.add(eldest.getKey());
+            }
+        }
+        for (String name : removed) {
+            deleteQuietly(spillDir.resolve(name));
+        }
+    }
+
+    private void removeSpilled(String fileName) {
+        synchronized (this) {
+            Long size = spilled.remove(fileName);
+            if (size != null) {
+                spilledBytes -= size;
+            }
+        }
+        deleteQuietly(spillDir.resolve(fileName));
+    }
+
+    /**
+     * 把上次運行留下的磁碟快取按修改時間加入磁碟層，並清除未寫完的臨時文件
+     */
+    private void loadSpilled() {
+        if (!Files.isDirectory(spillDir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(spillDir)) {
+            files.sorted(Comparator.comparingLong(ParsedTraceCache::lastModified)).forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SPILL_SUFFIX)) {
+                    try {
+                        long size = Files.size(file);
+                        spilled.put(name, size);
+                        spilledBytes += size;
+                    } catch (IOException e) {
+                        log.warn("無法讀取磁碟快取 {}: {}", name, e.toString());
+                    }
+                } else if (name.endsWith(".tmp")) {
+                    deleteQuietly(file);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("無法列出磁碟快取目錄 {}: {}", spillDir, e.toString());
+        }
+        log.info("磁碟快取 {} 中有 {} 個文件，共 {} 位元組", spillDir, spilled.size(), spilledBytes);
+    }
+
+    private static String spillFileName(String key) {
+        return HexFormat.of().formatHex(newDigest().digest(key.getBytes(StandardCharsets.UTF_8))) + SPILL_SUFFIX;
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("無法刪除磁碟快取 {}: {}", file, e.toString());
+        }
+    }
+}
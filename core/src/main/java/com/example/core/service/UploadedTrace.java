@@ -0,0 +1,92 @@
+package com.example.core.service;
+
+import com.example.core.tool.SQRTraceComparator;
+import com.example.core.tool.analyzer.TraceEntry;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 解析好的一份跟蹤內容，來自上傳的串流、伺服器上的文件或 {@link ParsedTraceCache}。
+ * 只保留解析後的條目，不保留原始內容；AE與SQR的條目類型不同，每個實例只持有其中一種。
+ * 同一個實例可能同時被快取和多個作業使用，因此條目列表不可修改。
+ */
+public final class UploadedTrace implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final String digest;
+    private final List<TraceEntry> aeEntries;
+    private final List<SQRTraceComparator.TraceEntry> sqrEntries;
+    private final long estimatedBytes;
+
+    private UploadedTrace(String name, String digest, List<TraceEntry> aeEntries,
+                          List<SQRTraceComparator.TraceEntry> sqrEntries, long estimatedBytes) {
+        this.name = name;
+        this.digest = digest;
+        this.aeEntries = aeEntries;
+        this.sqrEntries = sqrEntries;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    static UploadedTrace ae(String name, String digest, List<TraceEntry> entries) {
+        long bytes = 64 + 8L * entries.size();
+        for (TraceEntry entry : entries) {
+            bytes += entry.estimatedSize();
+        }
+        return new UploadedTrace(name, digest, Collections.unmodifiableList(entries), null, bytes);
+    }
+
+    static UploadedTrace sqr(String name, String digest, List<SQRTraceComparator.TraceEntry> entries) {
+        long bytes = 64 + 8L * entries.size();
+        for (SQRTraceComparator.TraceEntry entry : entries) {
+            bytes += entry.estimatedSize();
+        }
+        return new UploadedTrace(name, digest, null, Collections.unmodifiableList(entries), bytes);
+    }
+
+    /**
+     * @param digest 內容的SHA-256
+     * @return 條目相同但帶有雜湊的實例
+     */
+    UploadedTrace withDigest(String digest) {
+        return new UploadedTrace(name, digest, aeEntries, sqrEntries, estimatedBytes);
+    }
+
+    /**
+     * @return 上傳時或首次解析時的文件名稱
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 解壓後內容的SHA-256（十六進位），可在之後的請求中以 env1Digest / env2Digest 引用
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return 解析出的條目數
+     */
+    public int size() {
+        return aeEntries != null ? aeEntries.size() : sqrEntries.size();
+    }
+
+    /**
+     * @return 估計佔用的堆記憶體位元組數
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    List<TraceEntry> getAeEntries() {
+        return aeEntries;
+    }
+
+    List<SQRTraceComparator.TraceEntry> getSqrEntries() {
+        return sqrEntries;
+    }
+}
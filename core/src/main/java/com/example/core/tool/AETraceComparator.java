@@ -1,14 +1,30 @@
 package com.example.core.tool;
 
+import com.example.core.cli.TraceToolCli;
 import com.example.core.tool.analyzer.TraceAnalyzer;
-import com.example.core.tool.analyzer.TraceAnalyzerFactory;
 import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.analyzer.TraceEntryCursor;
+import com.example.core.tool.analyzer.StreamingTraceEntryMerger;
+import com.example.core.tool.analyzer.TraceEntryMerger;
+import com.example.core.tool.analyzer.TraceEntryTable;
+import com.example.core.tool.analyzer.TraceSession;
+import com.example.core.tool.analyzer.TraceStreams;
+import com.example.core.tool.analyzer.TraceStringPool;
+import com.example.core.tool.report.ComparisonRow;
+import com.example.core.tool.report.ComparisonSink;
+import com.example.core.tool.report.ComparisonSinks;
+import com.example.core.tool.report.CsvComparisonSink;
+import com.example.core.tool.report.DetailSection;
+import com.example.core.tool.rule.RuleInput;
+import com.example.core.tool.rule.RuleSet;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * 一個用於比較不同環境中Application Engine跟蹤文件的工具。
@@ -29,14 +45,35 @@ import java.util.*;
  * <ul>
  *   <li>包含差異摘要的CSV文件</li>
  *   <li>包含深入分析差異的詳細Markdown報告</li>
+ *   <li>可離線打開、以虛擬捲動顯示大量差異的HTML報告（見 {@link com.example.core.tool.report.HtmlComparisonSink}）</li>
+ *   <li>將總執行時間差異分配到各類別和關鍵路徑的瀑布報告（見 {@link WallClockWaterfall}）</li>
  *   <li>包含最重要差異的控制台輸出</li>
  * </ul>
+ *
+ * <p>比較結果以 {@link ComparisonRow} 事件交給 {@link ComparisonSink}，各種報告格式在同一次比較中
+ * 接收同一個事件流；也可以用接受 {@code ComparisonSink} 的重載輸出JSON Lines或自訂格式。</p>
+ *
+ * <p>對於非常大的跟蹤文件，可以用 {@link #parseTraceToTable} 將條目的固定寬度記錄存放到堆外記憶體的
+ * {@link TraceEntryTable}，再用對應的 {@code compareTraces} 重載進行比較，以減少長時間運行的服務中的GC停頓。
+ * 不重複的字串和元數據仍在堆上。</p>
  */
 @Slf4j
 public class AETraceComparator {
 
+    /**
+     * 控制台中顯示的自身時間差異條目數
+     */
+    private static final int SELF_TIME_CONSOLE_ROWS = 20;
+
+    /**
+     * 詳細報告標題中的工具名稱
+     */
+    private static final String REPORT_TITLE = "AE";
+
     /**
      * 比較兩個跟蹤文件並輸出差異。
+     * 同一標識符的多次執行按出現順序配對：env2中的第n次執行與env1中的第n次執行比較，
+     * 多出的執行分別標記為UNIQUE或MISSING。
      *
      * @param env1Entries 第一個環境的跟蹤條目
      * @param env2Entries 第二個環境的跟蹤條目
@@ -51,192 +88,454 @@ public class AETraceComparator {
             String env1Name,
             String env2Name,
             String outputPath) throws IOException {
+        compareTraces(env1Entries, env2Entries, env1Name, env2Name, outputPath, RuleSet.defaults());
+    }
 
-        Map<String, TraceEntry> env1Map = new HashMap<>();
-        for (TraceEntry entry : env1Entries) {
-            env1Map.put(entry.identifier, entry);
+    /**
+     * 比較兩個跟蹤文件並以指定的規則標記差異。
+     * 規則在比較每個配對條目時直接求值，可使用該標識符在env2中的執行次數（executions）。
+     *
+     * @param env1Entries 第一個環境的跟蹤條目
+     * @param env2Entries 第二個環境的跟蹤條目
+     * @param env1Name    第一個環境的名稱
+     * @param env2Name    第二個環境的名稱
+     * @param outputPath  輸出CSV文件的路徑
+     * @param rules       差異標記規則
+     * @throws IOException 如果輸出文件無法寫入
+     */
+    public static void compareTraces(
+            List<TraceEntry> env1Entries,
+            List<TraceEntry> env2Entries,
+            String env1Name,
+            String env2Name,
+            String outputPath,
+            RuleSet rules) throws IOException {
+
+        try (ComparisonSink sink = ComparisonSinks.defaults(outputPath, REPORT_TITLE)) {
+            compareTraces(env1Entries, env2Entries, env1Name, env2Name, rules, sink);
         }
+    }
+
+    /**
+     * 比較兩個跟蹤文件，並將每一行結果交給指定的輸出。
+     * 多個輸出可以在同一次比較中接收同一個事件流，例如以 {@link ComparisonSinks#create} 同時產生CSV、Markdown和JSON Lines報告。
+     *
+     * @param env1Entries 第一個環境的跟蹤條目
+     * @param env2Entries 第二個環境的跟蹤條目
+     * @param env1Name    第一個環境的名稱
+     * @param env2Name    第二個環境的名稱
+     * @param rules       差異標記規則
+     * @param sink        比較結果的輸出，由調用者關閉
+     * @throws IOException 如果輸出無法寫入
+     */
+    public static void compareTraces(
+            List<TraceEntry> env1Entries,
+            List<TraceEntry> env2Entries,
+            String env1Name,
+            String env2Name,
+            RuleSet rules,
+            ComparisonSink sink) throws IOException {
 
-        List<String> outputLines = new ArrayList<>();
-        outputLines.add("Type,Identifier," + env1Name + "(ms)," + env2Name + "(ms),Diff(ms),Diff(%),Flag,Details");
+        // 以標識符為鍵，按出現順序記錄env1中的每一次執行
+        Map<String, List<TraceEntry>> env1Occurrences = new HashMap<>();
+        for (TraceEntry entry : env1Entries) {
+            env1Occurrences.computeIfAbsent(entry.identifier, k -> new ArrayList<>()).add(entry);
+        }
 
-        log.info("Type        Identifier                                        {} (ms)       {} (ms)       Diff      Diff(%)    Flag      Details", env1Name, env2Name);
-        log.info("{}", "=".repeat(140));
+        // env2中每個標識符的執行次數，供規則使用
+        Map<String, Integer> env2Executions = new HashMap<>();
+        for (TraceEntry entry : env2Entries) {
+            env2Executions.merge(entry.identifier, 1, Integer::sum);
+        }
 
-        // 創建詳細報告文件
-        List<String> detailedReport = new ArrayList<>();
-        detailedReport.add("# AE Trace Comparison Detailed Report");
-        detailedReport.add("## Comparison between " + env1Name + " and " + env2Name);
-        detailedReport.add("");
+        ComparisonContext context = new ComparisonContext(rules, sink);
+        sink.begin(env1Name, env2Name);
 
+        // env2中某標識符的第n次執行與env1中同一標識符的第n次執行比較
+        Map<String, Integer> env2Counts = new HashMap<>();
         for (TraceEntry env2Entry : env2Entries) {
-            TraceEntry env1Entry = env1Map.get(env2Entry.identifier);
-            if (env1Entry != null) {
-                long env1Time = env1Entry.duration();
-                long env2Time = env2Entry.duration();
-                long diff = env2Time - env1Time;
-                double diffPercent = env1Time > 0 ? (diff * 100.0 / env1Time) : 0;
-
-                // 標記顯著差異（>20%且>100ms）
-                String flag = (Math.abs(diff) > env1Time * 0.2 && Math.abs(diff) > 100) ? "ALERT" : "";
-
-                // 檢查是否有額外的詳細信息需要比較
-                StringBuilder details = new StringBuilder();
-
-                // 比較SQL文本（如果有）
-                if (env1Entry.type.equals("SQL") && env2Entry.type.equals("SQL")) {
-                    String env1Content = env1Entry.content != null ? env1Entry.content : "";
-                    String env2Content = env2Entry.content != null ? env2Entry.content : "";
-
-                    if (!env1Content.isEmpty() && !env2Content.isEmpty() && !env1Content.equals(env2Content)) {
-                        details.append("SQL Text differs; ");
-
-                        // 添加到詳細報告
-                        detailedReport.add("### SQL Text Difference for " + env2Entry.identifier);
-                        detailedReport.add("#### " + env1Name + " SQL:");
-                        detailedReport.add("```sql");
-                        detailedReport.add(env1Content);
-                        detailedReport.add("```");
-                        detailedReport.add("#### " + env2Name + " SQL:");
-                        detailedReport.add("```sql");
-                        detailedReport.add(env2Content);
-                        detailedReport.add("```");
-                        detailedReport.add("");
-                    }
+            int occurrence = env2Counts.merge(env2Entry.identifier, 1, Integer::sum) - 1;
+            List<TraceEntry> occurrences = env1Occurrences.get(env2Entry.identifier);
+            context.topRegressions.recordRuntime(env2Entry.startTime, env2Entry.endTime);
+            if (occurrences != null && occurrence < occurrences.size()) {
+                recordMatchedEntry(occurrences.get(occurrence), env2Entry, env2Executions.get(env2Entry.identifier), context);
+            } else {
+                sink.accept(ComparisonRow.unique(env2Entry.type, env2Entry.identifier, env2Entry.duration()));
+            }
+        }
 
-                    // 比較綁定變量（如果有）
-                    String env1BindVars = (String) env1Entry.metadata.getOrDefault("bindVariables", "");
-                    String env2BindVars = (String) env2Entry.metadata.getOrDefault("bindVariables", "");
-
-                    if (!env1BindVars.isEmpty() && !env2BindVars.isEmpty() && !env1BindVars.equals(env2BindVars)) {
-                        details.append("Bind Variables differ; ");
-
-                        // 添加到詳細報告
-                        detailedReport.add("### Bind Variables Difference for " + env2Entry.identifier);
-                        detailedReport.add("#### " + env1Name + " Bind Variables:");
-                        detailedReport.add("```");
-                        detailedReport.add(env1BindVars);
-                        detailedReport.add("```");
-                        detailedReport.add("#### " + env2Name + " Bind Variables:");
-                        detailedReport.add("```");
-                        detailedReport.add(env2BindVars);
-                        detailedReport.add("```");
-                        detailedReport.add("");
-                    }
-                }
+        // 檢查只存在於env1的條目（包括env1比env2多出的執行次數）
+        Map<String, Integer> env1Counts = new HashMap<>();
+        for (TraceEntry env1Entry : env1Entries) {
+            int occurrence = env1Counts.merge(env1Entry.identifier, 1, Integer::sum) - 1;
+            if (occurrence >= env2Counts.getOrDefault(env1Entry.identifier, 0)) {
+                sink.accept(ComparisonRow.missing(env1Entry.type, env1Entry.identifier, env1Entry.duration()));
+            }
+        }
 
-                // 比較PeopleCode執行信息（如果有）
-                if ((env1Entry.type.equals("FUNCTION") || env1Entry.type.equals("METHOD")) &&
-                    (env2Entry.type.equals("FUNCTION") || env2Entry.type.equals("METHOD"))) {
-
-                    String env1PcExec = (String) env1Entry.metadata.getOrDefault("pcExecution", "");
-                    String env2PcExec = (String) env2Entry.metadata.getOrDefault("pcExecution", "");
-
-                    if (!env1PcExec.isEmpty() && !env2PcExec.isEmpty() && !env1PcExec.equals(env2PcExec)) {
-                        details.append("PeopleCode Execution differs; ");
-
-                        // 添加到詳細報告
-                        detailedReport.add("### PeopleCode Execution Difference for " + env2Entry.identifier);
-                        detailedReport.add("#### " + env1Name + " PeopleCode Execution:");
-                        detailedReport.add("```");
-                        detailedReport.add(env1PcExec);
-                        detailedReport.add("```");
-                        detailedReport.add("#### " + env2Name + " PeopleCode Execution:");
-                        detailedReport.add("```");
-                        detailedReport.add(env2PcExec);
-                        detailedReport.add("```");
-                        detailedReport.add("");
-                    }
+        sink.end(context.topRegressions);
+    }
 
-                    // 比較變量（如果有）
-                    Map<String, String> env1Vars = (Map<String, String>) env1Entry.metadata.getOrDefault("variables", new HashMap<>());
-                    Map<String, String> env2Vars = (Map<String, String>) env2Entry.metadata.getOrDefault("variables", new HashMap<>());
-
-                    if (!env1Vars.isEmpty() && !env2Vars.isEmpty() && !env1Vars.equals(env2Vars)) {
-                        details.append("Variables differ; ");
-
-                        // 添加到詳細報告
-                        detailedReport.add("### Variables Difference for " + env2Entry.identifier);
-                        detailedReport.add("| Variable | " + env1Name + " | " + env2Name + " |");
-                        detailedReport.add("|----------|------------|------------|");
-
-                        // 合併兩個環境的所有變量名
-                        Set<String> allVars = new HashSet<>(env1Vars.keySet());
-                        allVars.addAll(env2Vars.keySet());
-
-                        for (String varName : allVars) {
-                            String env1Value = env1Vars.getOrDefault(varName, "N/A");
-                            String env2Value = env2Vars.getOrDefault(varName, "N/A");
-                            if (!env1Value.equals(env2Value)) {
-                                detailedReport.add("| " + varName + " | " + env1Value + " | " + env2Value + " |");
-                            }
-                        }
-                        detailedReport.add("");
-                    }
-                }
+    /**
+     * 比較兩個存放於堆外記憶體的跟蹤條目表並輸出差異。
+     * 輸出內容與 {@link #compareTraces(List, List, String, String, String)} 相同，
+     * 但條目透過 {@link TraceEntryCursor} 享元逐筆讀取，不會在堆上保留整個跟蹤文件。
+     * 兩個表必須共用同一個 {@link TraceStringPool}，以便直接以標識符ID比對。
+     *
+     * @param env1Table  第一個環境的跟蹤條目表
+     * @param env2Table  第二個環境的跟蹤條目表
+     * @param env1Name   第一個環境的名稱
+     * @param env2Name   第二個環境的名稱
+     * @param outputPath 輸出CSV文件的路徑
+     * @throws IOException 如果輸出文件無法寫入
+     */
+    public static void compareTraces(
+            TraceEntryTable env1Table,
+            TraceEntryTable env2Table,
+            String env1Name,
+            String env2Name,
+            String outputPath) throws IOException {
+        compareTraces(env1Table, env2Table, env1Name, env2Name, outputPath, RuleSet.defaults());
+    }
+
+    /**
+     * 比較兩個存放於堆外記憶體的跟蹤條目表，並以指定的規則標記差異。
+     *
+     * @param env1Table  第一個環境的跟蹤條目表
+     * @param env2Table  第二個環境的跟蹤條目表
+     * @param env1Name   第一個環境的名稱
+     * @param env2Name   第二個環境的名稱
+     * @param outputPath 輸出CSV文件的路徑
+     * @param rules      差異標記規則
+     * @throws IOException 如果輸出文件無法寫入
+     */
+    public static void compareTraces(
+            TraceEntryTable env1Table,
+            TraceEntryTable env2Table,
+            String env1Name,
+            String env2Name,
+            String outputPath,
+            RuleSet rules) throws IOException {
+
+        try (ComparisonSink sink = ComparisonSinks.defaults(outputPath, REPORT_TITLE)) {
+            compareTraces(env1Table, env2Table, env1Name, env2Name, rules, sink);
+        }
+    }
+
+    /**
+     * 比較兩個存放於堆外記憶體的跟蹤條目表，並將每一行結果交給指定的輸出。
+     *
+     * @param env1Table 第一個環境的跟蹤條目表
+     * @param env2Table 第二個環境的跟蹤條目表
+     * @param env1Name  第一個環境的名稱
+     * @param env2Name  第二個環境的名稱
+     * @param rules     差異標記規則
+     * @param sink      比較結果的輸出，由調用者關閉
+     * @throws IOException 如果輸出無法寫入
+     */
+    public static void compareTraces(
+            TraceEntryTable env1Table,
+            TraceEntryTable env2Table,
+            String env1Name,
+            String env2Name,
+            RuleSet rules,
+            ComparisonSink sink) throws IOException {
+
+        if (env1Table.stringPool() != env2Table.stringPool()) {
+            throw new IllegalArgumentException("兩個跟蹤條目表必須共用同一個TraceStringPool");
+        }
+
+        // 以標識符ID為索引，按出現順序記錄env1中每一次執行所在的行（壓縮稀疏行格式）
+        int identifierCount = env1Table.stringPool().size();
+        int[] env1Counts = new int[identifierCount];
+        TraceEntryCursor env1Cursor = env1Table.cursor();
+        while (env1Cursor.next()) {
+            env1Counts[env1Cursor.identifierId()]++;
+        }
+
+        int[] env1Offsets = new int[identifierCount + 1];
+        for (int id = 0; id < identifierCount; id++) {
+            env1Offsets[id + 1] = env1Offsets[id] + env1Counts[id];
+        }
+
+        int[] env1Rows = new int[env1Table.size()];
+        int[] fillPositions = Arrays.copyOf(env1Offsets, identifierCount);
+        for (int row = 0; row < env1Table.size(); row++) {
+            env1Rows[fillPositions[env1Cursor.moveTo(row).identifierId()]++] = row;
+        }
+
+        // env2中每個標識符的執行次數，供規則使用
+        int[] env2Executions = new int[identifierCount];
+        TraceEntryCursor env2Cursor = env2Table.cursor();
+        while (env2Cursor.next()) {
+            env2Executions[env2Cursor.identifierId()]++;
+        }
+
+        ComparisonContext context = new ComparisonContext(rules, sink);
+        sink.begin(env1Name, env2Name);
+
+        // 兩個可重用的條目，避免為每一筆記錄分配新物件
+        TraceEntry env1Entry = new TraceEntry();
+        TraceEntry env2Entry = new TraceEntry();
+        int[] env2Counts = new int[identifierCount];
+
+        // env2中某標識符的第n次執行與env1中同一標識符的第n次執行比較
+        env2Cursor = env2Table.cursor();
+        while (env2Cursor.next()) {
+            int identifierId = env2Cursor.identifierId();
+            int occurrence = env2Counts[identifierId]++;
+            env2Cursor.copyTo(env2Entry);
+            context.topRegressions.recordRuntime(env2Entry.startTime, env2Entry.endTime);
+
+            if (occurrence < env1Counts[identifierId]) {
+                env1Cursor.moveTo(env1Rows[env1Offsets[identifierId] + occurrence]).copyTo(env1Entry);
+                recordMatchedEntry(env1Entry, env2Entry, env2Executions[identifierId], context);
+            } else {
+                sink.accept(ComparisonRow.unique(env2Entry.type, env2Entry.identifier, env2Entry.duration()));
+            }
+        }
 
-                String detailsStr = details.toString().trim();
-                log.info("{} {} {} {} {} {} {} {}",
-                        env2Entry.type, env2Entry.identifier, env1Time, env2Time, diff, String.format("%.2f", diffPercent), flag, detailsStr);
-
-                outputLines.add(String.format("%s,%s,%d,%d,%d,%.2f,%s,%s",
-                        env2Entry.type, env2Entry.identifier, env1Time, env2Time, diff, diffPercent, flag, detailsStr));
-
-                // 如果有ALERT標記，添加到詳細報告
-                if (flag.equals("ALERT")) {
-                    detailedReport.add("### " + flag + ": " + env2Entry.type + " - " + env2Entry.identifier);
-                    detailedReport.add("* " + env1Name + " Duration: " + env1Time + " ms");
-                    detailedReport.add("* " + env2Name + " Duration: " + env2Time + " ms");
-                    detailedReport.add("* Difference: " + diff + " ms (" + String.format("%.2f", diffPercent) + "%)");
-                    if (!detailsStr.isEmpty()) {
-                        detailedReport.add("* Details: " + detailsStr);
+        // 檢查只存在於env1的條目（包括env1比env2多出的執行次數）
+        int[] env1Seen = new int[identifierCount];
+        for (int row = 0; row < env1Table.size(); row++) {
+            int identifierId = env1Cursor.moveTo(row).identifierId();
+            if (env1Seen[identifierId]++ >= env2Counts[identifierId]) {
+                env1Cursor.copyTo(env1Entry);
+                sink.accept(ComparisonRow.missing(env1Entry.type, env1Entry.identifier, env1Entry.duration()));
+            }
+        }
+
+        sink.end(context.topRegressions);
+    }
+
+    /**
+     * 比較兩個環境中相同標識符的條目，將差異和需要列出的附加資訊作為一行結果交給輸出
+     */
+    @SuppressWarnings("unchecked")
+    private static void recordMatchedEntry(
+            TraceEntry env1Entry,
+            TraceEntry env2Entry,
+            int env2Executions,
+            ComparisonContext context) throws IOException {
+
+        long env1Time = env1Entry.duration();
+        long env2Time = env2Entry.duration();
+        context.topRegressions.offer(env2Entry.type, env2Entry.identifier, env1Time, env2Time);
+
+        // 以編譯好的規則標記顯著差異（默認為>20%且>100ms）
+        String flag = context.rules.evaluate(env2Entry.type, context.ruleInput.set(env1Time, env2Time, env2Executions));
+
+        // 檢查是否有額外的詳細信息需要比較
+        StringBuilder details = new StringBuilder();
+        List<DetailSection> sections = new ArrayList<>(0);
+
+        // 比較SQL文本（如果有）
+        if (env1Entry.type.equals("SQL") && env2Entry.type.equals("SQL")) {
+            String env1Content = env1Entry.content != null ? env1Entry.content : "";
+            String env2Content = env2Entry.content != null ? env2Entry.content : "";
+
+            if (!env1Content.isEmpty() && !env2Content.isEmpty() && !env1Content.equals(env2Content)) {
+                details.append("SQL Text differs; ");
+                sections.add(DetailSection.text("SQL Text Difference", "SQL", "sql", env1Content, env2Content));
+            }
+
+            // 比較綁定變量（如果有）
+            String env1BindVars = (String) env1Entry.metadata.getOrDefault("bindVariables", "");
+            String env2BindVars = (String) env2Entry.metadata.getOrDefault("bindVariables", "");
+
+            if (!env1BindVars.isEmpty() && !env2BindVars.isEmpty() && !env1BindVars.equals(env2BindVars)) {
+                details.append("Bind Variables differ; ");
+                sections.add(DetailSection.text("Bind Variables Difference", "Bind Variables", "", env1BindVars, env2BindVars));
+            }
+        }
+
+        // 比較PeopleCode執行信息（如果有）
+        if ((env1Entry.type.equals("FUNCTION") || env1Entry.type.equals("METHOD")) &&
+            (env2Entry.type.equals("FUNCTION") || env2Entry.type.equals("METHOD"))) {
+
+            String env1PcExec = (String) env1Entry.metadata.getOrDefault("pcExecution", "");
+            String env2PcExec = (String) env2Entry.metadata.getOrDefault("pcExecution", "");
+
+            if (!env1PcExec.isEmpty() && !env2PcExec.isEmpty() && !env1PcExec.equals(env2PcExec)) {
+                details.append("PeopleCode Execution differs; ");
+                sections.add(DetailSection.text("PeopleCode Execution Difference", "PeopleCode Execution", "", env1PcExec, env2PcExec));
+            }
+
+            // 比較變量（如果有）
+            Map<String, String> env1Vars = (Map<String, String>) env1Entry.metadata.getOrDefault("variables", new HashMap<>());
+            Map<String, String> env2Vars = (Map<String, String>) env2Entry.metadata.getOrDefault("variables", new HashMap<>());
+
+            if (!env1Vars.isEmpty() && !env2Vars.isEmpty() && !env1Vars.equals(env2Vars)) {
+                details.append("Variables differ; ");
+
+                // 合併兩個環境的所有變量名，按名稱排序讓報告內容穩定
+                Set<String> allVars = new TreeSet<>(env1Vars.keySet());
+                allVars.addAll(env2Vars.keySet());
+
+                Map<String, String[]> differences = new LinkedHashMap<>();
+                for (String varName : allVars) {
+                    String env1Value = env1Vars.getOrDefault(varName, "N/A");
+                    String env2Value = env2Vars.getOrDefault(varName, "N/A");
+                    if (!env1Value.equals(env2Value)) {
+                        differences.put(varName, new String[]{env1Value, env2Value});
                     }
-                    detailedReport.add("");
                 }
+                sections.add(DetailSection.table("Variables Difference", "Variable", differences));
+            }
+        }
+
+        context.sink.accept(ComparisonRow.matched(env2Entry.type, env2Entry.identifier, env1Time, env2Time,
+                flag, details.toString().trim(), sections));
+    }
+
+    /**
+     * 以自身時間（不含子條目的時間）比較兩個跟蹤文件，並按自身時間差異排序輸出。
+     * <p>
+     * {@link TraceEntry#duration()} 包含子條目的時間，一個慢SQL會讓包含它的每一層STEP都顯示同樣的差異。
+     * 此模式用 {@link TraceTimeline} 計算每個條目的自身時間，按出現順序配對兩個環境的執行，
+     * 並將自身時間增加最多的條目排在最前面，讓真正變慢的條目不會被其上層條目淹沒。
+     *
+     * @param env1Entries 第一個環境的跟蹤條目
+     * @param env2Entries 第二個環境的跟蹤條目
+     * @param env1Name    第一個環境的名稱
+     * @param env2Name    第二個環境的名稱
+     * @param rules       標記差異的規則，以自身時間作為兩個環境的時間
+     * @param outputPath  輸出CSV文件的路徑
+     * @throws IOException 如果輸出文件無法寫入
+     */
+    public static void compareTracesBySelfTime(
+            List<TraceEntry> env1Entries,
+            List<TraceEntry> env2Entries,
+            String env1Name,
+            String env2Name,
+            RuleSet rules,
+            String outputPath) throws IOException {
+
+        TraceTimeline env1Timeline = TraceTimeline.build(env1Entries);
+        TraceTimeline env2Timeline = TraceTimeline.build(env2Entries);
+
+        // 以標識符為鍵，按開始順序記錄env1中每一次執行在時間線中的位置
+        Map<String, List<Integer>> env1Occurrences = new HashMap<>();
+        for (int i = 0; i < env1Timeline.size(); i++) {
+            env1Occurrences.computeIfAbsent(env1Timeline.entry(i).identifier, k -> new ArrayList<>()).add(i);
+        }
+
+        List<SelfTimeRow> matchedRows = new ArrayList<>();
+        List<SelfTimeRow> unmatchedRows = new ArrayList<>();
+
+        Map<String, Integer> env2Counts = new HashMap<>();
+        for (int i = 0; i < env2Timeline.size(); i++) {
+            TraceEntry env2Entry = env2Timeline.entry(i);
+            int occurrence = env2Counts.merge(env2Entry.identifier, 1, Integer::sum) - 1;
+            List<Integer> occurrences = env1Occurrences.get(env2Entry.identifier);
+            if (occurrences != null && occurrence < occurrences.size()) {
+                int env1Index = occurrences.get(occurrence);
+                TraceEntry env1Entry = env1Timeline.entry(env1Index);
+                matchedRows.add(new SelfTimeRow(env2Entry.type, env2Entry.identifier,
+                        env1Timeline.selfTime(env1Index), env2Timeline.selfTime(i),
+                        env1Entry.duration(), env2Entry.duration(), null));
             } else {
-                // 條目只存在於env2
-                log.info("{} {} {} {} {} {} {} {}",
-                        env2Entry.type, env2Entry.identifier, "N/A", env2Entry.duration(), "N/A", "N/A", "UNIQUE", "");
-
-                outputLines.add(String.format("%s,%s,%s,%d,%s,%s,%s,%s",
-                        env2Entry.type, env2Entry.identifier, "N/A", env2Entry.duration(), "N/A", "N/A", "UNIQUE", ""));
-
-                // 添加唯一條目到詳細報告
-                detailedReport.add("### UNIQUE: " + env2Entry.type + " - " + env2Entry.identifier);
-                detailedReport.add("* Only exists in " + env2Name);
-                detailedReport.add("* Duration: " + env2Entry.duration() + " ms");
-                detailedReport.add("");
+                unmatchedRows.add(new SelfTimeRow(env2Entry.type, env2Entry.identifier,
+                        -1, env2Timeline.selfTime(i), -1, env2Entry.duration(), "UNIQUE"));
             }
         }
 
-        // 檢查只存在於env1的條目
-        for (TraceEntry env1Entry : env1Entries) {
-            boolean foundInEnv2 = env2Entries.stream()
-                    .anyMatch(e -> e.identifier.equals(env1Entry.identifier));
+        Map<String, Integer> env1Counts = new HashMap<>();
+        for (int i = 0; i < env1Timeline.size(); i++) {
+            TraceEntry env1Entry = env1Timeline.entry(i);
+            int occurrence = env1Counts.merge(env1Entry.identifier, 1, Integer::sum) - 1;
+            if (occurrence >= env2Counts.getOrDefault(env1Entry.identifier, 0)) {
+                unmatchedRows.add(new SelfTimeRow(env1Entry.type, env1Entry.identifier,
+                        env1Timeline.selfTime(i), -1, env1Entry.duration(), -1, "MISSING"));
+            }
+        }
+
+        // 按自身時間差異由大到小排序
+        matchedRows.sort(Comparator.comparingLong((SelfTimeRow row) -> row.selfDiff()).reversed());
 
-            if (!foundInEnv2) {
-                log.info("{} {} {} {} {} {} {} {}",
-                        env1Entry.type, env1Entry.identifier, env1Entry.duration(), "N/A", "N/A", "N/A", "MISSING", "");
+        try (StreamingReportWriter csvOutput = StreamingReportWriter.create(outputPath)) {
+            csvOutput.line("Type,Identifier," + env1Name + " Self(ms)," + env2Name + " Self(ms),Self Diff(ms),Self Diff(%),"
+                    + env1Name + " Total(ms)," + env2Name + " Total(ms),Total Diff(ms),Flag");
 
-                outputLines.add(String.format("%s,%s,%d,%s,%s,%s,%s,%s",
-                        env1Entry.type, env1Entry.identifier, env1Entry.duration(), "N/A", "N/A", "N/A", "MISSING", ""));
+            log.info("按自身時間差異排序的前 {} 個條目：", Math.min(SELF_TIME_CONSOLE_ROWS, matchedRows.size()));
+            log.info("Type        Identifier                                        {} Self   {} Self   Self Diff   {} Total   {} Total   Flag", env1Name, env2Name, env1Name, env2Name);
+            log.info("{}", "=".repeat(140));
 
-                // 添加缺失條目到詳細報告
-                detailedReport.add("### MISSING: " + env1Entry.type + " - " + env1Entry.identifier);
-                detailedReport.add("* Only exists in " + env1Name);
-                detailedReport.add("* Duration: " + env1Entry.duration() + " ms");
-                detailedReport.add("");
+            RuleInput ruleInput = new RuleInput();
+            for (int i = 0; i < matchedRows.size(); i++) {
+                SelfTimeRow row = matchedRows.get(i);
+                long selfDiff = row.selfDiff();
+                double selfDiffPercent = row.env1Self > 0 ? (selfDiff * 100.0 / row.env1Self) : 0;
+
+                // 以自身時間套用規則
+                String flag = rules.evaluate(row.type, ruleInput.set(row.env1Self, row.env2Self, env2Counts.get(row.identifier)));
+
+                if (i < SELF_TIME_CONSOLE_ROWS) {
+                    log.info("{} {} {} {} {} {} {} {}",
+                            row.type, row.identifier, row.env1Self, row.env2Self, selfDiff, row.env1Total, row.env2Total, flag);
+                }
+
+                csvOutput.line(String.format("%s,%s,%d,%d,%d,%.2f,%d,%d,%d,%s",
+                        CsvComparisonSink.escape(row.type), CsvComparisonSink.escape(row.identifier),
+                        row.env1Self, row.env2Self, selfDiff, selfDiffPercent,
+                        row.env1Total, row.env2Total, row.env2Total - row.env1Total, flag));
+            }
+
+            for (SelfTimeRow row : unmatchedRows) {
+                csvOutput.line(String.format("%s,%s,%s,%s,%s,%s,%s,%s,%s,%s",
+                        CsvComparisonSink.escape(row.type), CsvComparisonSink.escape(row.identifier),
+                        row.env1Self >= 0 ? String.valueOf(row.env1Self) : "N/A",
+                        row.env2Self >= 0 ? String.valueOf(row.env2Self) : "N/A",
+                        "N/A", "N/A",
+                        row.env1Total >= 0 ? String.valueOf(row.env1Total) : "N/A",
+                        row.env2Total >= 0 ? String.valueOf(row.env2Total) : "N/A",
+                        "N/A", row.flag));
             }
+
+        }
+        log.info("\n自身時間比對結果已輸出到 {}", outputPath);
+    }
+
+    /**
+     * 一次比較中各個記錄方法共用的狀態
+     */
+    private static final class ComparisonContext {
+        final ComparisonSink sink;
+        final TopKRegressions topRegressions = new TopKRegressions();
+        final RuleSet rules;
+        final RuleInput ruleInput = new RuleInput();
+
+        ComparisonContext(RuleSet rules, ComparisonSink sink) {
+            this.rules = rules;
+            this.sink = sink;
         }
+    }
 
-        // 寫入CSV輸出
-        Files.write(Paths.get(outputPath), outputLines);
-        log.info("\n比對結果已輸出到 {}", outputPath);
+    /**
+     * 自身時間比較中的一行，-1表示該環境沒有此條目
+     */
+    private static class SelfTimeRow {
+        final String type;
+        final String identifier;
+        final long env1Self;
+        final long env2Self;
+        final long env1Total;
+        final long env2Total;
+        final String flag;
+
+        SelfTimeRow(String type, String identifier, long env1Self, long env2Self, long env1Total, long env2Total, String flag) {
+            this.type = type;
+            this.identifier = identifier;
+            this.env1Self = env1Self;
+            this.env2Self = env2Self;
+            this.env1Total = env1Total;
+            this.env2Total = env2Total;
+            this.flag = flag;
+        }
 
-        // 寫入詳細報告
-        String detailedReportPath = outputPath.replace(".csv", "_detailed.md");
-        Files.write(Paths.get(detailedReportPath), detailedReport);
-        log.info("詳細報告已輸出到 {}", detailedReportPath);
+        long selfDiff() {
+            return env2Self - env1Self;
+        }
     }
 
     /**
@@ -256,8 +555,9 @@ public class AETraceComparator {
      * 來處理同一個跟蹤文件，從而獲取更全面的分析結果。
      * <p>
      * 合併邏輯：
-     * - 如果多個分析器發現相同的條目（相同的類型和標識符），則合併這些條目
-     * - 保留最早的開始時間和最晚的結束時間
+     * - 每個分析器都按文件順序輸出條目，以k路歸併合併，時間複雜度為O(n log k)
+     * - 同一次執行由開始行號、類型和標識符識別；多個分析器發現同一次執行時合併這些條目
+     * - 同一步驟或SQL的多次執行保留為獨立條目，各自保留自己的開始和結束時間
      * - 如果一個分析器提供了內容而另一個沒有，則使用有內容的那個
      * - 合併所有元數據，保留所有唯一的鍵值對
      *
@@ -267,79 +567,76 @@ public class AETraceComparator {
      * @throws IOException 如果文件無法讀取
      */
     public static List<TraceEntry> parseTraceWithMultipleAnalyzers(String filePath, List<TraceAnalyzer> analyzers) throws IOException {
-        List<TraceEntry> allEntries = new ArrayList<>();
-        Map<String, TraceEntry> entryMap = new HashMap<>();
-
-        // 使用每個分析器解析文件
+        // 使用每個分析器解析文件，每個分析器的輸出都已按文件順序排列
+        List<List<TraceEntry>> analyzerOutputs = new ArrayList<>(analyzers.size());
         for (TraceAnalyzer analyzer : analyzers) {
-            List<TraceEntry> entries = analyzer.parseTrace(filePath);
-
-            // 合併結果
-            for (TraceEntry entry : entries) {
-                String key = entry.type + ":" + entry.identifier;
-
-                if (entryMap.containsKey(key)) {
-                    // 已存在此條目，合併元數據
-                    TraceEntry existingEntry = entryMap.get(key);
-
-                    // 保留最早的開始時間和最晚的結束時間
-                    existingEntry.startTime = Math.min(existingEntry.startTime, entry.startTime);
-                    existingEntry.endTime = Math.max(existingEntry.endTime, entry.endTime);
-
-                    // 如果新條目有內容而現有條目沒有，則使用新條目的內容
-                    if (existingEntry.content == null && entry.content != null) {
-                        existingEntry.content = entry.content;
-                    }
-
-                    // 合併元數據
-                    for (Map.Entry<String, Object> metadataEntry : entry.metadata.entrySet()) {
-                        if (!existingEntry.metadata.containsKey(metadataEntry.getKey())) {
-                            existingEntry.metadata.put(metadataEntry.getKey(), metadataEntry.getValue());
-                        }
-                    }
-                } else {
-                    // 新條目，添加到映射
-                    entryMap.put(key, entry);
-                }
-            }
+            analyzerOutputs.add(analyzer.parseTrace(filePath));
         }
 
-        // 將映射轉換為列表
-        allEntries.addAll(entryMap.values());
-        return allEntries;
+        // 以k路歸併合併結果，保留每一次執行為獨立條目，不需要再全局排序
+        return TraceEntryMerger.mergeInstances(analyzerOutputs);
     }
 
     /**
-     * 主方法，用於運行比較器。
-     * 直接在代碼中指定兩個trace檔案路徑與使用的trace參數。
+     * 使用多個分析器一次讀取並解析跟蹤內容，例如仍在接收中的上傳文件。
+     * 每一行依次交給各分析器的 {@link TraceSession}，讀取器之外只保留尚未結束的條目，不需要先把整個文件存下來。
+     * <p>
+     * 會話按結束順序報告條目，合併時等到較早開始的條目都不會再改變才輸出，結果與 {@link #parseTraceWithMultipleAnalyzers(String, List)} 的文件順序相同。
      *
-     * @throws IOException 如果文件無法讀取或寫入
+     * @param reader    跟蹤內容，可用 {@link TraceStreams#newReader} 建立
+     * @param analyzers 分析器列表
+     * @return 合併後的跟蹤條目列表
+     * @throws IOException 如果內容無法讀取
      */
-    public static void main(String[] args) throws IOException {
-        // 直接在代碼中指定檔案路徑和參數，而不是從命令行獲取
-        String env1TraceFile = "D:\\traces\\env1_trace.log";
-        String env2TraceFile = "D:\\traces\\env2_trace.log";
-        String env1Name = "DEV";
-        String env2Name = "TEST";
-        String outputPath = "ae_trace_comparison_result.csv";
-
-        // 指定使用的trace參數（支持多個參數）
-        String traceParams = "-TRACE 3 -TOOLSTRACEPC 4044 -TOOLSTRACESQL 31"; // 多個trace參數
-
-        // 根據trace參數創建多個分析器
-        List<TraceAnalyzer> analyzers = TraceAnalyzerFactory.createAnalyzersForParams(traceParams);
+    public static List<TraceEntry> parseTraceWithMultipleAnalyzers(BufferedReader reader, List<TraceAnalyzer> analyzers) throws IOException {
+        List<TraceEntry> entries = new ArrayList<>();
+        parseWithSessions(reader, analyzers, entries::add);
+        return entries;
+    }
 
-        log.info("使用參數 {} 分析 {} 和 {} 檔案", traceParams, env1TraceFile, env2TraceFile);
-        log.info("創建了 {} 個分析器", analyzers.size());
+    /**
+     * 使用多個分析器解析跟蹤文件，並將結果存放到堆外記憶體的條目表中。
+     * 每個條目在不會再被改變時即按文件順序寫入條目表，之後即可被回收；
+     * 解析時只暫存尚未結束的條目，長期保留的是堆外的固定寬度記錄，以及堆上字串池中不重複的字串和條目的元數據。
+     *
+     * @param filePath   跟蹤文件路徑
+     * @param analyzers  分析器列表
+     * @param stringPool 與另一個環境共用的字串池
+     * @return 堆外記憶體的跟蹤條目表
+     * @throws IOException 如果文件無法讀取
+     */
+    public static TraceEntryTable parseTraceToTable(String filePath, List<TraceAnalyzer> analyzers, TraceStringPool stringPool) throws IOException {
+        TraceEntryTable table = new TraceEntryTable(stringPool);
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(filePath))) {
+            parseWithSessions(reader, analyzers, table::add);
+        }
+        return table;
+    }
 
-        // 使用多個分析器解析trace檔案
-        List<TraceEntry> env1Entries = parseTraceWithMultipleAnalyzers(env1TraceFile, analyzers);
-        List<TraceEntry> env2Entries = parseTraceWithMultipleAnalyzers(env2TraceFile, analyzers);
+    /**
+     * 把每一行交給各分析器的會話，合併後的條目按文件順序交給 {@code merged}。
+     */
+    private static void parseWithSessions(BufferedReader reader, List<TraceAnalyzer> analyzers,
+                                          Consumer<TraceEntry> merged) throws IOException {
+        List<TraceSession> sessions = new ArrayList<>(analyzers.size());
+        for (TraceAnalyzer analyzer : analyzers) {
+            sessions.add(analyzer.openSession());
+        }
+        StreamingTraceEntryMerger merger = new StreamingTraceEntryMerger(sessions, merged);
 
-        log.info("從 {} 解析出 {} 個條目", env1TraceFile, env1Entries.size());
-        log.info("從 {} 解析出 {} 個條目", env2TraceFile, env2Entries.size());
+        int lineNumber = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            merger.processLine(line, ++lineNumber);
+        }
+        merger.finish();
+    }
 
-        // 比較兩個環境的trace結果
-        compareTraces(env1Entries, env2Entries, env1Name, env2Name, outputPath);
+    /**
+     * 主方法，與 {@code trace-tool ae} 相同，參數見 {@link TraceToolCli}。
+     *
+     * @param args 兩個跟蹤文件和選項
+     */
+    public static void main(String[] args) {
+        TraceToolCli.runAndExit(args, "ae");
     }
 }
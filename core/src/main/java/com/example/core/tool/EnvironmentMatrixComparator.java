@@ -0,0 +1,279 @@
+package com.example.core.tool;
+
+import com.example.core.cli.TraceToolCli;
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.report.CsvComparisonSink;
+import com.example.core.tool.rule.RuleInput;
+import com.example.core.tool.rule.RuleSet;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次比較同一個AE程序在多個環境（例如DEV、SIT、UAT、PROD）中的跟蹤文件。
+ *
+ * <p>以 {@link AETraceComparator#compareTraces} 兩兩比較N個環境需要N(N-1)/2次比較，每次都重新解析和索引兩個文件。
+ * 此工具每個跟蹤文件只解析一次（並行），再以一次掃描按標識符將所有環境的條目合併成矩陣：
+ * 同一標識符在各環境中的第n次執行放在同一行，與 {@link AETraceComparator} 的配對方式一致。</p>
+ *
+ * <p>每一行輸出各環境的執行時間、最快與最慢環境的差距，以及與其他環境差異最大的環境。
+ * 差距以 {@link RuleSet} 標記：最快的環境作為env1、最慢的環境作為env2，默認規則與兩兩比較相同（&gt;20%且&gt;100ms）。</p>
+ */
+@Slf4j
+public class EnvironmentMatrixComparator {
+
+    /**
+     * 矩陣中的一行：一個標識符的第n次執行在各環境中的執行時間
+     */
+    public static final class MatrixRow {
+        private final String type;
+        private final String identifier;
+        private final int occurrence;
+        private final long[] durations;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private int presentCount;
+        private int outlier = -1;
+        private String flag = "";
+
+        MatrixRow(String type, String identifier, int occurrence, int environmentCount) {
+            this.type = type;
+            this.identifier = identifier;
+            this.occurrence = occurrence;
+            this.durations = new long[environmentCount];
+            Arrays.fill(durations, -1);
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * @return 第幾次執行，從1開始
+         */
+        public int getOccurrence() {
+            return occurrence;
+        }
+
+        /**
+         * @param environment 環境的位置
+         * @return 該環境中的執行時間（毫秒），-1表示該環境沒有此執行
+         */
+        public long getDuration(int environment) {
+            return durations[environment];
+        }
+
+        /**
+         * @return 最慢與最快環境的差距（毫秒）
+         */
+        public long getSpread() {
+            return presentCount > 0 ? max - min : 0;
+        }
+
+        /**
+         * @return 與其他環境差異最大的環境位置，少於兩個環境有此執行時返回-1
+         */
+        public int getOutlier() {
+            return outlier;
+        }
+
+        /**
+         * @return 是否所有環境都有此執行
+         */
+        public boolean isComplete() {
+            return presentCount == durations.length;
+        }
+
+        /**
+         * @return 規則標記，少於兩個環境有此執行或沒有規則成立時為空字串
+         */
+        public String getFlag() {
+            return flag;
+        }
+
+        /**
+         * @return 是否有規則成立
+         */
+        public boolean isAlert() {
+            return !flag.isEmpty();
+        }
+
+        void summarize() {
+            for (long duration : durations) {
+                if (duration >= 0) {
+                    presentCount++;
+                    min = Math.min(min, duration);
+                    max = Math.max(max, duration);
+                }
+            }
+            if (presentCount < 2) {
+                return;
+            }
+
+            // 離群環境是與其他環境中位數距離最遠的環境；只有兩個環境時就是較慢的那個
+            long[] present = new long[presentCount];
+            int index = 0;
+            for (long duration : durations) {
+                if (duration >= 0) {
+                    present[index++] = duration;
+                }
+            }
+            double median = TraceStatistics.median(present);
+            double farthest = -1;
+            for (int environment = 0; environment < durations.length; environment++) {
+                if (durations[environment] >= 0) {
+                    double distance = Math.abs(durations[environment] - median);
+                    if (distance > farthest || (distance == farthest && durations[environment] > durations[outlier])) {
+                        farthest = distance;
+                        outlier = environment;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 以默認規則將所有環境的條目合併成矩陣。
+     *
+     * @see #buildMatrix(List, RuleSet)
+     */
+    public static List<MatrixRow> buildMatrix(List<List<TraceEntry>> environmentEntries) {
+        return buildMatrix(environmentEntries, RuleSet.defaults());
+    }
+
+    /**
+     * 將所有環境的條目按標識符和出現次序合併成矩陣。每個環境的條目只掃描一次。
+     *
+     * @param environmentEntries 每個環境的跟蹤條目
+     * @param rules              標記差距的規則；執行次數取該標識符在各環境中最多的執行次數
+     * @return 矩陣的所有行，完整且差距大的行在前
+     */
+    public static List<MatrixRow> buildMatrix(List<List<TraceEntry>> environmentEntries, RuleSet rules) {
+        int environmentCount = environmentEntries.size();
+        Map<String, List<MatrixRow>> rowsByIdentifier = new HashMap<>();
+        List<MatrixRow> rows = new ArrayList<>();
+
+        for (int environment = 0; environment < environmentCount; environment++) {
+            Map<String, Integer> counts = new HashMap<>();
+            for (TraceEntry entry : environmentEntries.get(environment)) {
+                int occurrence = counts.merge(entry.identifier, 1, Integer::sum) - 1;
+                List<MatrixRow> occurrences = rowsByIdentifier.computeIfAbsent(entry.identifier, k -> new ArrayList<>());
+                if (occurrence == occurrences.size()) {
+                    MatrixRow row = new MatrixRow(entry.type, entry.identifier, occurrence + 1, environmentCount);
+                    occurrences.add(row);
+                    rows.add(row);
+                }
+                occurrences.get(occurrence).durations[environment] = entry.duration();
+            }
+        }
+
+        RuleInput ruleInput = new RuleInput();
+        for (MatrixRow row : rows) {
+            row.summarize();
+            if (row.presentCount >= 2) {
+                ruleInput.set(row.min, row.max, rowsByIdentifier.get(row.identifier).size());
+                row.flag = rules.evaluate(row.type, ruleInput);
+            }
+        }
+
+        rows.sort(Comparator.comparing((MatrixRow row) -> !row.isComplete())
+                .thenComparing(Comparator.comparingLong(MatrixRow::getSpread).reversed()));
+        return rows;
+    }
+
+    /**
+     * 以默認規則比較多個環境的跟蹤條目並輸出矩陣報告。
+     *
+     * @see #compareEnvironments(List, List, String, RuleSet)
+     */
+    public static List<MatrixRow> compareEnvironments(
+            List<String> environmentNames,
+            List<List<TraceEntry>> environmentEntries,
+            String outputPath) throws IOException {
+        return compareEnvironments(environmentNames, environmentEntries, outputPath, RuleSet.defaults());
+    }
+
+    /**
+     * 比較多個環境的跟蹤條目並輸出矩陣報告。
+     *
+     * @param environmentNames   環境名稱
+     * @param environmentEntries 每個環境的跟蹤條目，順序與環境名稱一致
+     * @param outputPath         輸出CSV文件的路徑
+     * @param rules              標記差距的規則
+     * @return 矩陣的所有行
+     * @throws IOException 如果輸出文件無法寫入
+     */
+    public static List<MatrixRow> compareEnvironments(
+            List<String> environmentNames,
+            List<List<TraceEntry>> environmentEntries,
+            String outputPath,
+            RuleSet rules) throws IOException {
+
+        if (environmentNames.size() != environmentEntries.size()) {
+            throw new IllegalArgumentException("環境名稱數量(" + environmentNames.size()
+                    + ")與跟蹤條目數量(" + environmentEntries.size() + ")不一致");
+        }
+
+        List<MatrixRow> rows = buildMatrix(environmentEntries, rules);
+
+        StringBuilder header = new StringBuilder("Type,Identifier,Occurrence");
+        for (String environmentName : environmentNames) {
+            CsvComparisonSink.quote(header.append(','), environmentName + "(ms)");
+        }
+        header.append(",Min(ms),Max(ms),Spread(ms),Spread(%),Outlier,Flag");
+
+        List<String> outputLines = new ArrayList<>(rows.size() + 1);
+        outputLines.add(header.toString());
+
+        int alerts = 0;
+        for (MatrixRow row : rows) {
+            StringBuilder line = new StringBuilder();
+            CsvComparisonSink.quote(line, row.type).append(',');
+            CsvComparisonSink.quote(line, row.identifier).append(',').append(row.occurrence);
+            for (long duration : row.durations) {
+                line.append(',').append(duration >= 0 ? String.valueOf(duration) : "N/A");
+            }
+
+            String flag = row.isAlert() ? row.flag : (row.isComplete() ? "" : "PARTIAL");
+            if (row.presentCount >= 2) {
+                double spreadPercent = row.min > 0 ? row.getSpread() * 100.0 / row.min : 0;
+                line.append(String.format(",%d,%d,%d,%.2f,%s,%s", row.min, row.max, row.getSpread(), spreadPercent,
+                        CsvComparisonSink.escape(environmentNames.get(row.outlier)), CsvComparisonSink.escape(flag)));
+            } else {
+                line.append(String.format(",%d,%d,N/A,N/A,N/A,%s", row.min, row.max, CsvComparisonSink.escape(flag)));
+            }
+            outputLines.add(line.toString());
+
+            if (row.isAlert()) {
+                alerts++;
+            }
+        }
+
+        log.info("比較了 {} 個環境，共 {} 行，其中 {} 行被規則標記", environmentNames.size(), rows.size(), alerts);
+
+        Files.write(Paths.get(outputPath), outputLines);
+        log.info("\n環境矩陣比對結果已輸出到 {}", outputPath);
+        return rows;
+    }
+
+    /**
+     * 主方法，與 {@code trace-tool matrix} 相同：一次比較多個環境的跟蹤文件，參數見 {@link TraceToolCli}。
+     *
+     * @param args 跟蹤文件和選項
+     */
+    public static void main(String[] args) {
+        TraceToolCli.runAndExit(args, "matrix");
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.core.tool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * 逐行讀取文本，並允許查看當前行之後固定數量的行。
+ *
+ * <p>解析器原本以 {@code Files.readAllLines} 讀入整個文件，只為了能以索引向後查看幾行；
+ * 此類只保留當前行起的一個環形窗口，因此可以解析任意大小的文件或仍在接收中的串流。
+ * 行號從0開始，與原來的列表索引相同；已經越過的行會被丟棄，不能再讀取。</p>
+ */
+final class LookaheadLineReader {
+    private final BufferedReader reader;
+    private final String[] window;
+    private final int mask;
+    private int first;
+    private int end;
+    private boolean eof;
+
+    /**
+     * @param reader    來源
+     * @param lookahead 當前行之後最多需要查看的行數
+     */
+    LookaheadLineReader(BufferedReader reader, int lookahead) {
+        this.reader = reader;
+        int capacity = Integer.highestOneBit(Math.max(2, lookahead + 1) * 2 - 1);
+        this.window = new String[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @param index 行號
+     * @return 該行是否存在；必要時從來源讀入直到該行
+     * @throws IOException           如果來源無法讀取
+     * @throws IllegalStateException 如果該行已被丟棄或超出查看範圍
+     */
+    boolean has(int index) throws IOException {
+        if (index < first || index - first >= window.length) {
+            throw new IllegalStateException("第 " + index + " 行不在 " + first + " 起的 " + window.length + " 行窗口內");
+        }
+        while (end <= index && !eof) {
+            String line = reader.readLine();
+            if (line == null) {
+                eof = true;
+            } else {
+                window[end & mask] = line;
+                end++;
+            }
+        }
+        return index < end;
+    }
+
+    /**
+     * 讀取一行以向後查看，不移動窗口。
+     *
+     * @param index 行號，必須已由 {@link #has(int)} 確認存在
+     * @return 該行的內容
+     */
+    String get(int index) {
+        if (index < first || index >= end) {
+            throw new IllegalStateException("第 " + index + " 行不在窗口內");
+        }
+        return window[index & mask];
+    }
+
+    /**
+     * 將窗口移到指定行，丟棄之前的所有行。
+     *
+     * @param index 行號，必須已由 {@link #has(int)} 確認存在
+     * @return 該行的內容
+     */
+    String advanceTo(int index) {
+        String line = get(index);
+        for (int i = first; i < index; i++) {
+            window[i & mask] = null;
+        }
+        first = index;
+        return line;
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.core.tool;
+
+import com.example.core.cli.TraceToolCli;
+import com.example.core.tool.analyzer.TraceAnalyzer;
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.report.CsvComparisonSink;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 以多次執行的跟蹤文件比較兩個環境的Application Engine執行時間。
+ *
+ * <p>單一跟蹤文件對單一跟蹤文件的比較（{@link AETraceComparator}）使用固定的 "&gt;20% 且 &gt;100ms" 規則，
+ * 執行時間的自然波動經常被誤報為ALERT。此工具接受每個環境的N個跟蹤文件：</p>
+ * <ul>
+ *   <li>所有跟蹤文件以多個線程並行解析</li>
+ *   <li>同一標識符在每次運行中的總執行時間為一個樣本，存放於基本類型陣列；同一次運行中的多次執行
+ *       受同樣的環境狀況影響而互不獨立，因此不作為各自的樣本</li>
+ *   <li>以Mann-Whitney U檢定計算p值，以Cliff's delta表示效果量，並以bootstrap估計中位數差異的信賴區間</li>
+ *   <li>以Benjamini-Hochberg方法校正大量標識符同時檢定的錯誤發現率</li>
+ * </ul>
+ *
+ * <p>只有校正後顯著（q值小於 {@value #SIGNIFICANCE_LEVEL}）且信賴區間不包含0的差異才會被標記為REGRESSION或IMPROVEMENT。</p>
+ */
+@Slf4j
+public class MultiRunTraceComparator {
+
+    /**
+     * 錯誤發現率門檻
+     */
+    public static final double SIGNIFICANCE_LEVEL = 0.05;
+
+    /**
+     * 每個環境至少需要的樣本數（出現該標識符的運行次數），少於此數的標識符不進行檢定
+     */
+    public static final int MIN_SAMPLES = 3;
+
+    /**
+     * bootstrap重抽樣次數
+     */
+    private static final int BOOTSTRAP_ITERATIONS = 1000;
+
+    /**
+     * bootstrap的基礎隨機種子，使結果可重現
+     */
+    private static final long BOOTSTRAP_SEED = 0x5EEDL;
+
+    /**
+     * 一個標識符在兩個環境中的統計比較結果
+     */
+    public static final class IdentifierStatistics {
+        private final String type;
+        private final String identifier;
+        private final long[] env1Samples;
+        private final long[] env2Samples;
+        private double env1Median;
+        private double env2Median;
+        private double ciLow;
+        private double ciHigh;
+        private double cliffsDelta;
+        private double pValue = 1.0;
+        private double qValue = 1.0;
+        private String flag = "";
+
+        IdentifierStatistics(String type, String identifier, long[] env1Samples, long[] env2Samples) {
+            this.type = type;
+            this.identifier = identifier;
+            this.env1Samples = env1Samples;
+            this.env2Samples = env2Samples;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * @return 第一個環境中出現該標識符的運行次數，即樣本數
+         */
+        public int getEnv1Count() {
+            return env1Samples.length;
+        }
+
+        public int getEnv2Count() {
+            return env2Samples.length;
+        }
+
+        public double getEnv1Median() {
+            return env1Median;
+        }
+
+        public double getEnv2Median() {
+            return env2Median;
+        }
+
+        public double getMedianShift() {
+            return env2Median - env1Median;
+        }
+
+        public double getCiLow() {
+            return ciLow;
+        }
+
+        public double getCiHigh() {
+            return ciHigh;
+        }
+
+        public double getCliffsDelta() {
+            return cliffsDelta;
+        }
+
+        public double getPValue() {
+            return pValue;
+        }
+
+        public double getQValue() {
+            return qValue;
+        }
+
+        public String getFlag() {
+            return flag;
+        }
+
+        boolean isTestable() {
+            return env1Samples.length >= MIN_SAMPLES && env2Samples.length >= MIN_SAMPLES;
+        }
+    }
+
+    /**
+     * 並行解析多個跟蹤文件。
+     *
+     * @param filePaths 跟蹤文件路徑
+     * @param analyzers 分析器列表，分析器不保存解析狀態，可以在多個線程中共用
+     * @return 與輸入順序相同的每個文件的跟蹤條目
+     * @throws IOException 如果任一文件無法讀取
+     */
+    public static List<List<TraceEntry>> parseTracesInParallel(List<String> filePaths, List<TraceAnalyzer> analyzers) throws IOException {
+        int threads = Math.max(1, Math.min(filePaths.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<TraceEntry>>> futures = new ArrayList<>(filePaths.size());
+            for (String filePath : filePaths) {
+                futures.add(executor.submit(() -> AETraceComparator.parseTraceWithMultipleAnalyzers(filePath, analyzers)));
+            }
+
+            List<List<TraceEntry>> results = new ArrayList<>(filePaths.size());
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(awaitParse(futures.get(i), filePaths.get(i)));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<TraceEntry> awaitParse(Future<List<TraceEntry>> future, String filePath) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("解析跟蹤文件時被中斷: " + filePath, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException("無法解析跟蹤文件: " + filePath, cause);
+        }
+    }
+
+    /**
+     * 收集每個標識符在每次運行中的總執行時間並進行統計比較。
+     *
+     * @param env1Runs 第一個環境每次執行的跟蹤條目
+     * @param env2Runs 第二個環境每次執行的跟蹤條目
+     * @return 每個至少在一個環境中出現的標識符的統計結果
+     */
+    public static List<IdentifierStatistics> analyze(List<List<TraceEntry>> env1Runs, List<List<TraceEntry>> env2Runs) {
+        Map<String, SampleBuffer> env1Samples = collectSamples(env1Runs);
+        Map<String, SampleBuffer> env2Samples = collectSamples(env2Runs);
+
+        List<IdentifierStatistics> results = new ArrayList<>();
+        for (Map.Entry<String, SampleBuffer> entry : env2Samples.entrySet()) {
+            SampleBuffer env1 = env1Samples.get(entry.getKey());
+            results.add(new IdentifierStatistics(entry.getValue().type, entry.getKey(),
+                    env1 != null ? env1.toSortedArray() : new long[0], entry.getValue().toSortedArray()));
+        }
+        for (Map.Entry<String, SampleBuffer> entry : env1Samples.entrySet()) {
+            if (!env2Samples.containsKey(entry.getKey())) {
+                results.add(new IdentifierStatistics(entry.getValue().type, entry.getKey(),
+                        entry.getValue().toSortedArray(), new long[0]));
+            }
+        }
+
+        List<IdentifierStatistics> testable = new ArrayList<>();
+        for (IdentifierStatistics statistics : results) {
+            if (statistics.env1Samples.length > 0) {
+                statistics.env1Median = TraceStatistics.median(statistics.env1Samples.clone());
+            }
+            if (statistics.env2Samples.length > 0) {
+                statistics.env2Median = TraceStatistics.median(statistics.env2Samples.clone());
+            }
+
+            if (statistics.env1Samples.length == 0) {
+                statistics.flag = "UNIQUE";
+            } else if (statistics.env2Samples.length == 0) {
+                statistics.flag = "MISSING";
+            } else if (!statistics.isTestable()) {
+                statistics.flag = "INSUFFICIENT";
+            } else {
+                TraceStatistics.RankTestResult test = TraceStatistics.mannWhitney(statistics.env1Samples, statistics.env2Samples);
+                statistics.pValue = test.getPValue();
+                statistics.cliffsDelta = test.getCliffsDelta();
+                double[] interval = TraceStatistics.bootstrapMedianShift(statistics.env1Samples, statistics.env2Samples,
+                        BOOTSTRAP_ITERATIONS, 1.0 - SIGNIFICANCE_LEVEL, BOOTSTRAP_SEED ^ statistics.identifier.hashCode());
+                statistics.ciLow = interval[0];
+                statistics.ciHigh = interval[1];
+                testable.add(statistics);
+            }
+        }
+
+        // 對所有進行了檢定的標識符一起做錯誤發現率校正
+        double[] pValues = new double[testable.size()];
+        for (int i = 0; i < pValues.length; i++) {
+            pValues[i] = testable.get(i).pValue;
+        }
+        double[] qValues = TraceStatistics.benjaminiHochberg(pValues);
+        for (int i = 0; i < qValues.length; i++) {
+            IdentifierStatistics statistics = testable.get(i);
+            statistics.qValue = qValues[i];
+            if (statistics.qValue < SIGNIFICANCE_LEVEL && statistics.ciLow > 0) {
+                statistics.flag = "REGRESSION";
+            } else if (statistics.qValue < SIGNIFICANCE_LEVEL && statistics.ciHigh < 0) {
+                statistics.flag = "IMPROVEMENT";
+            }
+        }
+
+        // 顯著變慢的條目排在最前面，其次按中位數差異由大到小
+        results.sort(Comparator.comparing((IdentifierStatistics statistics) -> !"REGRESSION".equals(statistics.flag))
+                .thenComparing(Comparator.comparingDouble(IdentifierStatistics::getMedianShift).reversed())
+                .thenComparing(IdentifierStatistics::getIdentifier));
+        return results;
+    }
+
+    private static Map<String, SampleBuffer> collectSamples(List<List<TraceEntry>> runs) {
+        Map<String, SampleBuffer> samples = new LinkedHashMap<>();
+        for (List<TraceEntry> run : runs) {
+            // 每次運行只貢獻一個樣本，即該標識符在這次運行中所有執行的總時間
+            Map<String, Long> runTotals = new LinkedHashMap<>();
+            for (TraceEntry entry : run) {
+                samples.computeIfAbsent(entry.identifier, k -> new SampleBuffer(entry.type));
+                runTotals.merge(entry.identifier, entry.duration(), Long::sum);
+            }
+            runTotals.forEach((identifier, total) -> samples.get(identifier).add(total));
+        }
+        return samples;
+    }
+
+    /**
+     * 比較兩個環境的多次執行並輸出統計結果。
+     *
+     * @param env1Runs   第一個環境每次執行的跟蹤條目
+     * @param env2Runs   第二個環境每次執行的跟蹤條目
+     * @param env1Name   第一個環境的名稱
+     * @param env2Name   第二個環境的名稱
+     * @param outputPath 輸出CSV文件的路徑
+     * @return 統計結果
+     * @throws IOException 如果輸出文件無法寫入
+     */
+    public static List<IdentifierStatistics> compareRuns(
+            List<List<TraceEntry>> env1Runs,
+            List<List<TraceEntry>> env2Runs,
+            String env1Name,
+            String env2Name,
+            String outputPath) throws IOException {
+
+        List<IdentifierStatistics> results = analyze(env1Runs, env2Runs);
+
+        List<String> outputLines = new ArrayList<>();
+        outputLines.add(String.join(",", "Type", "Identifier", CsvComparisonSink.escape(env1Name + " Runs"),
+                CsvComparisonSink.escape(env2Name + " Runs"), CsvComparisonSink.escape(env1Name + " Median per Run(ms)"),
+                CsvComparisonSink.escape(env2Name + " Median per Run(ms)"),
+                "Median Shift(ms),CI Low(ms),CI High(ms),Cliff's Delta,p-value,q-value,Flag"));
+
+        int regressions = 0;
+        for (IdentifierStatistics statistics : results) {
+            outputLines.add(String.format("%s,%s,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.3f,%.4g,%.4g,%s",
+                    CsvComparisonSink.escape(statistics.type), CsvComparisonSink.escape(statistics.identifier),
+                    statistics.getEnv1Count(), statistics.getEnv2Count(),
+                    statistics.env1Median, statistics.env2Median, statistics.getMedianShift(),
+                    statistics.ciLow, statistics.ciHigh, statistics.cliffsDelta,
+                    statistics.pValue, statistics.qValue, statistics.flag));
+
+            if ("REGRESSION".equals(statistics.flag)) {
+                regressions++;
+                log.info("REGRESSION {} {}: 中位數 {} -> {} ms, 差異 {} ms ({}% CI {} ~ {}), Cliff's delta {}, q={}",
+                        statistics.type, statistics.identifier,
+                        String.format("%.1f", statistics.env1Median), String.format("%.1f", statistics.env2Median),
+                        String.format("%.1f", statistics.getMedianShift()), Math.round((1 - SIGNIFICANCE_LEVEL) * 100),
+                        String.format("%.1f", statistics.ciLow), String.format("%.1f", statistics.ciHigh),
+                        String.format("%.3f", statistics.cliffsDelta), String.format("%.4g", statistics.qValue));
+            }
+        }
+
+        log.info("{} 對 {}：{} 次對 {} 次執行，{} 個標識符中有 {} 個顯著變慢",
+                env1Name, env2Name, env1Runs.size(), env2Runs.size(), results.size(), regressions);
+
+        Files.write(Paths.get(outputPath), outputLines);
+        log.info("\n多次執行比對結果已輸出到 {}", outputPath);
+        return results;
+    }
+
+    /**
+     * 一個標識符的樣本，存放於按需擴容的基本類型陣列
+     */
+    private static final class SampleBuffer {
+        private final String type;
+        private long[] values = new long[8];
+        private int size;
+
+        SampleBuffer(String type) {
+            this.type = type;
+        }
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * 主方法，與 {@code trace-tool multirun} 相同：比較兩個環境各自多次執行的跟蹤文件，參數見 {@link TraceToolCli}。
+     *
+     * @param args 選項
+     */
+    public static void main(String[] args) {
+        TraceToolCli.runAndExit(args, "multirun");
+    }
+}
@@ -101,65 +101,43 @@ public class NewSQRTraceComparator {
             double threshold,
             String outputPath) throws IOException {
 
-        List<String> outputLines = new ArrayList<>();
-        outputLines.add("# SQR Trace Comparison Results");
-        outputLines.add("Threshold: " + threshold + " times");
-        outputLines.add("");
-
-        int i = 0, j = 0;
-
-        while (i < file1Entries.size() && j < file2Entries.size()) {
-            TraceEntry entry1 = file1Entries.get(i);
-            TraceEntry entry2 = file2Entries.get(j);
-
-            // If the line content matches, compare execution times
-            if (entry1.lineContent.equals(entry2.lineContent)) {
-                // Check if execution time difference exceeds threshold
-                if (entry1.actualExecutionTime > 0 && entry2.actualExecutionTime > 0) {
-                    double ratio = (double) entry2.actualExecutionTime / entry1.actualExecutionTime;
-
-                    if (ratio > threshold || ratio < 1.0 / threshold) {
-                        outputLines.add("## Time Difference Detected");
-                        outputLines.add("Line content: " + entry1.lineContent);
-                        outputLines.add("File 1 line: " + entry1.lineNumber + ", execution time: " + entry1.actualExecutionTime + " ms");
-                        outputLines.add("File 2 line: " + entry2.lineNumber + ", execution time: " + entry2.actualExecutionTime + " ms");
-                        outputLines.add("Ratio: " + String.format("%.2f", ratio) + " times");
-                        outputLines.add("");
+        try (StreamingReportWriter output = StreamingReportWriter.create(outputPath)) {
+            output.line("# SQR Trace Comparison Results");
+            output.line("Threshold: " + threshold + " times");
+            output.line("");
+
+            int i = 0, j = 0;
+
+            while (i < file1Entries.size() && j < file2Entries.size()) {
+                TraceEntry entry1 = file1Entries.get(i);
+                TraceEntry entry2 = file2Entries.get(j);
+
+                // If the line content matches, compare execution times
+                if (entry1.lineContent.equals(entry2.lineContent)) {
+                    // Check if execution time difference exceeds threshold
+                    if (entry1.actualExecutionTime > 0 && entry2.actualExecutionTime > 0) {
+                        double ratio = (double) entry2.actualExecutionTime / entry1.actualExecutionTime;
+
+                        if (ratio > threshold || ratio < 1.0 / threshold) {
+                            output.line("## Time Difference Detected");
+                            output.line("Line content: " + entry1.lineContent);
+                            output.line("File 1 line: " + entry1.lineNumber + ", execution time: " + entry1.actualExecutionTime + " ms");
+                            output.line("File 2 line: " + entry2.lineNumber + ", execution time: " + entry2.actualExecutionTime + " ms");
+                            output.line("Ratio: " + String.format("%.2f", ratio) + " times");
+                            output.line("");
+                        }
                     }
-                }
 
-                i++;
-                j++;
-            }
-            // If line content doesn't match, handle the case where one file has code that the other doesn't
-            else {
-                // Try to find matching line in file2
-                boolean found = false;
-                int lookAhead = 1;
-                while (j + lookAhead < file2Entries.size() && lookAhead <= 10) { // Look ahead up to 10 lines
-                    if (entry1.lineContent.equals(file2Entries.get(j + lookAhead).lineContent)) {
-                        found = true;
-                        break;
-                    }
-                    lookAhead++;
+                    i++;
+                    j++;
                 }
-
-                if (found) {
-                    // Extra code in file2, record and skip
-                    outputLines.add("## Extra Code in File 2");
-                    outputLines.add("Starting at line: " + file2Entries.get(j).lineNumber);
-                    for (int k = 0; k < lookAhead; k++) {
-                        outputLines.add("Line " + file2Entries.get(j + k).lineNumber + ": " + file2Entries.get(j + k).lineContent);
-                    }
-                    outputLines.add("");
-
-                    j += lookAhead; // Skip ahead in file2
-                } else {
-                    // Try to find matching line in file1
-                    found = false;
-                    lookAhead = 1;
-                    while (i + lookAhead < file1Entries.size() && lookAhead <= 10) { // Look ahead up to 10 lines
-                        if (entry2.lineContent.equals(file1Entries.get(i + lookAhead).lineContent)) {
+                // If line content doesn't match, handle the case where one file has code that the other doesn't
+                else {
+                    // Try to find matching line in file2
+                    boolean found = false;
+                    int lookAhead = 1;
+                    while (j + lookAhead < file2Entries.size() && lookAhead <= 10) { // Look ahead up to 10 lines
+                        if (entry1.lineContent.equals(file2Entries.get(j + lookAhead).lineContent)) {
                             found = true;
                             break;
                         }
@@ -167,47 +145,67 @@ public class NewSQRTraceComparator {
                     }
 
                     if (found) {
-                        // Extra code in file1, record and skip
-                        outputLines.add("## Extra Code in File 1");
-                        outputLines.add("Starting at line: " + file1Entries.get(i).lineNumber);
+                        // Extra code in file2, record and skip
+                        output.line("## Extra Code in File 2");
+                        output.line("Starting at line: " + file2Entries.get(j).lineNumber);
                         for (int k = 0; k < lookAhead; k++) {
-                            outputLines.add("Line " + file1Entries.get(i + k).lineNumber + ": " + file1Entries.get(i + k).lineContent);
+                            output.line("Line " + file2Entries.get(j + k).lineNumber + ": " + file2Entries.get(j + k).lineContent);
                         }
-                        outputLines.add("");
+                        output.line("");
 
-                        i += lookAhead; // Skip ahead in file1
+                        j += lookAhead; // Skip ahead in file2
                     } else {
-                        // Lines don't match and no match found ahead, just move forward
-                        outputLines.add("## Mismatched Lines");
-                        outputLines.add("File 1 line " + entry1.lineNumber + ": " + entry1.lineContent);
-                        outputLines.add("File 2 line " + entry2.lineNumber + ": " + entry2.lineContent);
-                        outputLines.add("");
-
-                        i++;
-                        j++;
+                        // Try to find matching line in file1
+                        found = false;
+                        lookAhead = 1;
+                        while (i + lookAhead < file1Entries.size() && lookAhead <= 10) { // Look ahead up to 10 lines
+                            if (entry2.lineContent.equals(file1Entries.get(i + lookAhead).lineContent)) {
+                                found = true;
+                                break;
+                            }
+                            lookAhead++;
+                        }
+
+                        if (found) {
+                            // Extra code in file1, record and skip
+                            output.line("## Extra Code in File 1");
+                            output.line("Starting at line: " + file1Entries.get(i).lineNumber);
+                            for (int k = 0; k < lookAhead; k++) {
+                                output.line("Line " + file1Entries.get(i + k).lineNumber + ": " + file1Entries.get(i + k).lineContent);
+                            }
+                            output.line("");
+
+                            i += lookAhead; // Skip ahead in file1
+                        } else {
+                            // Lines don't match and no match found ahead, just move forward
+                            output.line("## Mismatched Lines");
+                            output.line("File 1 line " + entry1.lineNumber + ": " + entry1.lineContent);
+                            output.line("File 2 line " + entry2.lineNumber + ": " + entry2.lineContent);
+                            output.line("");
+
+                            i++;
+                            j++;
+                        }
                     }
                 }
             }
-        }
 
-        // Handle remaining entries in file1
-        while (i < file1Entries.size()) {
-            TraceEntry entry = file1Entries.get(i);
-            outputLines.add("## Extra Code in File 1 (End of File)");
-            outputLines.add("Line " + entry.lineNumber + ": " + entry.lineContent);
-            i++;
-        }
+            // Handle remaining entries in file1
+            while (i < file1Entries.size()) {
+                TraceEntry entry = file1Entries.get(i);
+                output.line("## Extra Code in File 1 (End of File)");
+                output.line("Line " + entry.lineNumber + ": " + entry.lineContent);
+                i++;
+            }
 
-        // Handle remaining entries in file2
-        while (j < file2Entries.size()) {
-            TraceEntry entry = file2Entries.get(j);
-            outputLines.add("## Extra Code in File 2 (End of File)");
-            outputLines.add("Line " + entry.lineNumber + ": " + entry.lineContent);
-            j++;
+            // Handle remaining entries in file2
+            while (j < file2Entries.size()) {
+                TraceEntry entry = file2Entries.get(j);
+                output.line("## Extra Code in File 2 (End of File)");
+                output.line("Line " + entry.lineNumber + ": " + entry.lineContent);
+                j++;
+            }
         }
-
-        // Write output to file
-        Files.write(Paths.get(outputPath), outputLines);
         log.info("Comparison results written to: {}", outputPath);
     }
 
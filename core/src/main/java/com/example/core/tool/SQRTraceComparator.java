@@ -1,8 +1,17 @@
 package com.example.core.tool;
 
+import com.example.core.cli.TraceToolCli;
+import com.example.core.tool.report.ComparisonRow;
+import com.example.core.tool.report.ComparisonSink;
+import com.example.core.tool.report.ComparisonSinks;
+import com.example.core.tool.report.DetailSection;
+import com.example.core.tool.rule.RuleInput;
+import com.example.core.tool.rule.RuleSet;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalTime;
@@ -11,6 +20,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,6 +41,7 @@ import java.util.regex.Pattern;
  * <ul>
  *   <li>包含差異摘要的CSV文件</li>
  *   <li>包含深入分析差異的詳細Markdown報告</li>
+ *   <li>可離線打開、以虛擬捲動顯示大量差異的HTML報告（見 {@link com.example.core.tool.report.HtmlComparisonSink}）</li>
  *   <li>包含最重要差異的控制台輸出</li>
  * </ul>
  *
@@ -47,6 +58,11 @@ import java.util.regex.Pattern;
 @Slf4j
 public class SQRTraceComparator {
 
+    /**
+     * 解析時需要向後查看的最多行數：時間分解的標題最多在結束行之後第9行，其內容再收集9行
+     */
+    private static final int LOOKAHEAD_LINES = 18;
+
     /**
      * 檢測SQR跟蹤文件的格式。
      *
@@ -55,10 +71,13 @@ public class SQRTraceComparator {
      * @throws IOException 如果文件無法讀取
      */
     public static TraceFormat detectTraceFormat(String filePath) throws IOException {
-        // 讀取更多行以提高檢測準確性，但限制在文件大小範圍內
-        long fileLineCount = Files.lines(Paths.get(filePath)).count();
-        int sampleSize = Math.min(500, (int) fileLineCount);
-        List<String> sampleLines = Files.readAllLines(Paths.get(filePath)).subList(0, sampleSize);
+        // 讀取更多行以提高檢測準確性，但只讀入文件開頭的500行
+        List<String> sampleLines = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath))) {
+            for (String line = reader.readLine(); line != null && sampleLines.size() < 500; line = reader.readLine()) {
+                sampleLines.add(line);
+            }
+        }
 
         boolean hasDetailedSql = false;
         boolean hasDetailedTime = false;
@@ -97,7 +116,9 @@ public class SQRTraceComparator {
         return TraceFormat.fromFeatures(hasDetailedSql, hasDetailedTime, hasDetailedResult);
     }
 
-    static class TraceEntry {
+    public static class TraceEntry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         String identifier; // 程序名稱、過程名稱或SQL語句
         String type;       // PROGRAM, PROCEDURE, SQL, VARIABLE
         long startTime;    // 以毫秒為單位
@@ -112,6 +133,24 @@ public class SQRTraceComparator {
         long duration() {
             return endTime - startTime;
         }
+
+        /**
+         * 估計條目佔用的堆記憶體，用於限制已解析跟蹤的快取大小。
+         *
+         * @return 大約的位元組數
+         */
+        public long estimatedSize() {
+            long size = 104 + sizeOf(identifier) + sizeOf(type) + sizeOf(content);
+            for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                size += 48 + sizeOf(entry.getKey());
+                size += entry.getValue() instanceof String value ? sizeOf(value) : 24;
+            }
+            return size;
+        }
+
+        private static long sizeOf(String value) {
+            return value == null ? 0 : 40 + 2L * value.length();
+        }
     }
 
     /**
@@ -134,8 +173,23 @@ public class SQRTraceComparator {
      * @throws IOException 如果文件無法讀取
      */
     public static List<TraceEntry> parseTrace(String filePath, TraceFormat format) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath))) {
+            return parseTrace(reader, format);
+        }
+    }
+
+    /**
+     * 從串流解析SQR跟蹤內容並提取跟蹤條目，例如仍在接收中的上傳文件。
+     * 只保留當前行之後 {@value #LOOKAHEAD_LINES} 行的窗口，不需要先讀入整個文件。
+     *
+     * @param reader 跟蹤內容
+     * @param format 跟蹤格式
+     * @return 跟蹤條目列表
+     * @throws IOException 如果內容無法讀取
+     */
+    public static List<TraceEntry> parseTrace(BufferedReader reader, TraceFormat format) throws IOException {
         List<TraceEntry> entries = new ArrayList<>();
-        List<String> lines = Files.readAllLines(Paths.get(filePath));
+        LookaheadLineReader lines = new LookaheadLineReader(reader, LOOKAHEAD_LINES);
 
         log.info("Detected trace format: {}", format);
 
@@ -179,8 +233,8 @@ public class SQRTraceComparator {
         String currentProgramName = "";
         int sqlCounter = 0;
 
-        for (int i = 0; i < lines.size(); i++) {
-            String line = lines.get(i);
+        for (int i = 0; lines.has(i); i++) {
+            String line = lines.advanceTo(i);
 
             // 程序開始
             Matcher programStartMatcher = programStartPattern.matcher(line);
@@ -189,7 +243,7 @@ public class SQRTraceComparator {
                 long timeMillis = parseTimeToMillis(timeStr);
 
                 // 在接下來的幾行中尋找程序名稱
-                for (int j = i + 1; j < Math.min(i + 5, lines.size()); j++) {
+                for (int j = i + 1; j < i + 5 && lines.has(j); j++) {
                     Matcher programNameMatcher = programNamePattern.matcher(lines.get(j));
                     if (programNameMatcher.find()) {
                         currentProgramName = programNameMatcher.group(1);
@@ -288,12 +342,12 @@ public class SQRTraceComparator {
                         // 如果我們處於包含詳細時間信息的格式，尋找時間分解
                         if (format.hasDetailedTime() && timeBreakdownPattern != null) {
                             // 向前查找時間分解
-                            for (int j = i + 1; j < Math.min(i + 10, lines.size()); j++) {
+                            for (int j = i + 1; j < i + 10 && lines.has(j); j++) {
                                 Matcher timeBreakdownMatcher = timeBreakdownPattern.matcher(lines.get(j));
                                 if (timeBreakdownMatcher.find()) {
                                     StringBuilder timeBreakdown = new StringBuilder();
                                     // 收集時間分解行
-                                    for (int k = j + 1; k < Math.min(j + 10, lines.size()); k++) {
+                                    for (int k = j + 1; k < j + 10 && lines.has(k); k++) {
                                         String breakdownLine = lines.get(k).trim();
                                         if (breakdownLine.isEmpty()) break;
                                         timeBreakdown.append(breakdownLine).append("\n");
@@ -408,12 +462,12 @@ public class SQRTraceComparator {
                     // If we're in a format with detailed time information, look for time breakdown
                     if (format.hasDetailedTime() && timeBreakdownPattern != null) {
                         // Look ahead for time breakdown
-                        for (int j = i + 1; j < Math.min(i + 10, lines.size()); j++) {
+                        for (int j = i + 1; j < i + 10 && lines.has(j); j++) {
                             Matcher timeBreakdownMatcher = timeBreakdownPattern.matcher(lines.get(j));
                             if (timeBreakdownMatcher.find()) {
                                 StringBuilder timeBreakdown = new StringBuilder();
                                 // Collect time breakdown lines
-                                for (int k = j + 1; k < Math.min(j + 10, lines.size()); k++) {
+                                for (int k = j + 1; k < j + 10 && lines.has(k); k++) {
                                     String breakdownLine = lines.get(k).trim();
                                     if (breakdownLine.isEmpty()) break;
                                     timeBreakdown.append(breakdownLine).append("\n");
@@ -437,7 +491,7 @@ public class SQRTraceComparator {
                 long timeMillis = parseTimeToMillis(timeStr);
 
                 // Look for variable value in next line
-                if (i + 1 < lines.size()) {
+                if (lines.has(i + 1)) {
                     String varLine = lines.get(i + 1);
                     TraceEntry entry = new TraceEntry();
                     entry.identifier = "VAR: " + varLine.trim();
@@ -468,203 +522,154 @@ public class SQRTraceComparator {
             String env1Name,
             String env2Name,
             String outputPath) throws IOException {
+        compareTraces(env1Entries, env2Entries, env1Name, env2Name, outputPath, RuleSet.defaults());
+    }
+
+    /**
+     * Compare two trace files and flag the differences with the given rules.
+     *
+     * @param env1Entries Trace entries from first environment
+     * @param env2Entries Trace entries from second environment
+     * @param env1Name Name of first environment
+     * @param env2Name Name of second environment
+     * @param outputPath Path to output CSV file
+     * @param rules Compiled flag rules, evaluated once per matched entry
+     * @throws IOException If output file cannot be written
+     */
+    public static void compareTraces(
+            List<TraceEntry> env1Entries,
+            List<TraceEntry> env2Entries,
+            String env1Name,
+            String env2Name,
+            String outputPath,
+            RuleSet rules) throws IOException {
+
+        try (ComparisonSink sink = ComparisonSinks.defaults(outputPath, "SQR")) {
+            compareTraces(env1Entries, env2Entries, env1Name, env2Name, rules, sink);
+        }
+    }
+
+    /**
+     * Compare two trace files and hand every result row to the given sink.
+     * All sinks behind a {@link com.example.core.tool.report.FanOutComparisonSink} consume the same rows in one pass.
+     *
+     * @param env1Entries Trace entries from first environment
+     * @param env2Entries Trace entries from second environment
+     * @param env1Name Name of first environment
+     * @param env2Name Name of second environment
+     * @param rules Compiled flag rules, evaluated once per matched entry
+     * @param sink Receiver of the comparison rows; closed by the caller
+     * @throws IOException If the sink cannot be written
+     */
+    public static void compareTraces(
+            List<TraceEntry> env1Entries,
+            List<TraceEntry> env2Entries,
+            String env1Name,
+            String env2Name,
+            RuleSet rules,
+            ComparisonSink sink) throws IOException {
 
         Map<String, TraceEntry> env1Map = new HashMap<>();
         for (TraceEntry entry : env1Entries) {
             env1Map.put(entry.identifier, entry);
         }
 
-        List<String> outputLines = new ArrayList<>();
-        outputLines.add("Type,Identifier," + env1Name + "(ms)," + env2Name + "(ms),Diff(ms),Diff(%),Flag,Details");
-
-        log.info("Type        Identifier                                        {} (ms)       {} (ms)       Diff      Diff(%)    Flag      Details", env1Name, env2Name);
-        log.info("{}", "=".repeat(140));
+        // Executions per identifier in env2, available to the rules
+        Map<String, Integer> env2Executions = new HashMap<>();
+        for (TraceEntry entry : env2Entries) {
+            env2Executions.merge(entry.identifier, 1, Integer::sum);
+        }
+        RuleInput ruleInput = new RuleInput();
+        TopKRegressions topRegressions = new TopKRegressions();
 
-        // Create detailed report file
-        List<String> detailedReport = new ArrayList<>();
-        detailedReport.add("# SQR Trace Comparison Detailed Report");
-        detailedReport.add("## Comparison between " + env1Name + " and " + env2Name);
-        detailedReport.add("");
+        sink.begin(env1Name, env2Name);
 
         for (TraceEntry env2Entry : env2Entries) {
             TraceEntry env1Entry = env1Map.get(env2Entry.identifier);
-            if (env1Entry != null) {
-                long env1Time = env1Entry.duration();
-                long env2Time = env2Entry.duration();
-                long diff = env2Time - env1Time;
-                double diffPercent = env1Time > 0 ? (diff * 100.0 / env1Time) : 0;
-
-                // Flag significant differences (>20% and >100ms)
-                String flag = (Math.abs(diff) > env1Time * 0.2 && Math.abs(diff) > 100) ? "ALERT" : "";
-
-                // Check for additional details to compare
-                StringBuilder details = new StringBuilder();
-
-                // Compare SQL execution plans if available
-                if (env1Entry.type.equals("SQL") && env2Entry.type.equals("SQL")) {
-                    String env1Plan = (String) env1Entry.metadata.getOrDefault("sqlPlan", "");
-                    String env2Plan = (String) env2Entry.metadata.getOrDefault("sqlPlan", "");
-
-                    if (!env1Plan.isEmpty() && !env2Plan.isEmpty() && !env1Plan.equals(env2Plan)) {
-                        details.append("SQL Plan differs; ");
-
-                        // Add to detailed report
-                        detailedReport.add("### SQL Plan Difference for " + env2Entry.identifier);
-                        detailedReport.add("#### " + env1Name + " Plan:");
-                        detailedReport.add("```");
-                        detailedReport.add(env1Plan);
-                        detailedReport.add("```");
-                        detailedReport.add("#### " + env2Name + " Plan:");
-                        detailedReport.add("```");
-                        detailedReport.add(env2Plan);
-                        detailedReport.add("```");
-                        detailedReport.add("");
-                    }
+            topRegressions.recordRuntime(env2Entry.startTime, env2Entry.endTime);
+            if (env1Entry == null) {
+                // Entry only exists in env2
+                sink.accept(ComparisonRow.unique(env2Entry.type, env2Entry.identifier, env2Entry.duration()));
+                continue;
+            }
 
-                    // Compare SQL statistics if available
-                    String env1Stats = (String) env1Entry.metadata.getOrDefault("sqlStats", "");
-                    String env2Stats = (String) env2Entry.metadata.getOrDefault("sqlStats", "");
-
-                    if (!env1Stats.isEmpty() && !env2Stats.isEmpty() && !env1Stats.equals(env2Stats)) {
-                        details.append("SQL Stats differs; ");
-
-                        // Add to detailed report
-                        detailedReport.add("### SQL Statistics Difference for " + env2Entry.identifier);
-                        detailedReport.add("#### " + env1Name + " Statistics:");
-                        detailedReport.add("```");
-                        detailedReport.add(env1Stats);
-                        detailedReport.add("```");
-                        detailedReport.add("#### " + env2Name + " Statistics:");
-                        detailedReport.add("```");
-                        detailedReport.add(env2Stats);
-                        detailedReport.add("```");
-                        detailedReport.add("");
-                    }
+            long env1Time = env1Entry.duration();
+            long env2Time = env2Entry.duration();
+            topRegressions.offer(env2Entry.type, env2Entry.identifier, env1Time, env2Time);
 
-                    // Compare result sets if available
-                    String env1ResultSet = (String) env1Entry.metadata.getOrDefault("resultSet", "");
-                    String env2ResultSet = (String) env2Entry.metadata.getOrDefault("resultSet", "");
-
-                    if (!env1ResultSet.isEmpty() && !env2ResultSet.isEmpty() && !env1ResultSet.equals(env2ResultSet)) {
-                        details.append("Result Set differs; ");
-
-                        // Add to detailed report
-                        detailedReport.add("### Result Set Difference for " + env2Entry.identifier);
-                        detailedReport.add("#### " + env1Name + " Result Set:");
-                        detailedReport.add("```");
-                        detailedReport.add(env1ResultSet);
-                        detailedReport.add("```");
-                        detailedReport.add("#### " + env2Name + " Result Set:");
-                        detailedReport.add("```");
-                        detailedReport.add(env2ResultSet);
-                        detailedReport.add("```");
-                        detailedReport.add("");
-                    }
-                }
+            // Flag significant differences with the compiled rules (>20% and >100ms by default)
+            String flag = rules.evaluate(env2Entry.type, ruleInput.set(env1Time, env2Time, env2Executions.get(env2Entry.identifier)));
 
-                // Compare time breakdowns if available
-                String env1TimeBreakdown = (String) env1Entry.metadata.getOrDefault("timeBreakdown", "");
-                String env2TimeBreakdown = (String) env2Entry.metadata.getOrDefault("timeBreakdown", "");
-
-                if (!env1TimeBreakdown.isEmpty() && !env2TimeBreakdown.isEmpty() && !env1TimeBreakdown.equals(env2TimeBreakdown)) {
-                    details.append("Time Breakdown differs; ");
-
-                    // Add to detailed report
-                    detailedReport.add("### Time Breakdown Difference for " + env2Entry.identifier);
-                    detailedReport.add("#### " + env1Name + " Time Breakdown:");
-                    detailedReport.add("```");
-                    detailedReport.add(env1TimeBreakdown);
-                    detailedReport.add("```");
-                    detailedReport.add("#### " + env2Name + " Time Breakdown:");
-                    detailedReport.add("```");
-                    detailedReport.add(env2TimeBreakdown);
-                    detailedReport.add("```");
-                    detailedReport.add("");
-                }
+            // Check for additional details to compare
+            StringBuilder details = new StringBuilder();
+            List<DetailSection> sections = new ArrayList<>(0);
 
-                // Compare reported durations if available
-                Object env1ReportedDuration = env1Entry.metadata.get("reportedDuration");
-                Object env2ReportedDuration = env2Entry.metadata.get("reportedDuration");
+            if (env1Entry.type.equals("SQL") && env2Entry.type.equals("SQL")) {
+                // Compare SQL execution plans, statistics and result sets if available
+                compareMetadata(env1Entry, env2Entry, "sqlPlan", "SQL Plan differs; ", "SQL Plan Difference", "Plan", details, sections);
+                compareMetadata(env1Entry, env2Entry, "sqlStats", "SQL Stats differs; ", "SQL Statistics Difference", "Statistics", details, sections);
+                compareMetadata(env1Entry, env2Entry, "resultSet", "Result Set differs; ", "Result Set Difference", "Result Set", details, sections);
+            }
 
-                if (env1ReportedDuration != null && env2ReportedDuration != null) {
-                    long env1RepDur = (long) env1ReportedDuration;
-                    long env2RepDur = (long) env2ReportedDuration;
-                    long repDiff = env2RepDur - env1RepDur;
-                    double repDiffPercent = env1RepDur > 0 ? (repDiff * 100.0 / env1RepDur) : 0;
+            // Compare time breakdowns if available
+            compareMetadata(env1Entry, env2Entry, "timeBreakdown", "Time Breakdown differs; ", "Time Breakdown Difference", "Time Breakdown", details, sections);
 
-                    if (Math.abs(repDiff) > env1RepDur * 0.2 && Math.abs(repDiff) > 100) {
-                        details.append(String.format("Reported Duration: %d vs %d ms (%+.2f%%); ",
-                                env1RepDur, env2RepDur, repDiffPercent));
-                    }
-                }
+            // Compare reported durations if available
+            Object env1ReportedDuration = env1Entry.metadata.get("reportedDuration");
+            Object env2ReportedDuration = env2Entry.metadata.get("reportedDuration");
 
-                String detailsStr = details.toString();
-                if (detailsStr.endsWith("; ")) {
-                    detailsStr = detailsStr.substring(0, detailsStr.length() - 2);
-                }
+            if (env1ReportedDuration != null && env2ReportedDuration != null) {
+                long env1RepDur = (long) env1ReportedDuration;
+                long env2RepDur = (long) env2ReportedDuration;
+                long repDiff = env2RepDur - env1RepDur;
+                double repDiffPercent = env1RepDur > 0 ? (repDiff * 100.0 / env1RepDur) : 0;
 
-                log.info("{} {} {} {} {} {:.2f} {} {}",
-                        env2Entry.type, env2Entry.identifier, env1Time, env2Time, diff, diffPercent, flag,
-                        detailsStr.length() > 20 ? detailsStr.substring(0, 17) + "..." : detailsStr);
-
-                outputLines.add(String.format("%s,%s,%d,%d,%d,%.2f,%s,\"%s\"",
-                        env2Entry.type, env2Entry.identifier, env1Time, env2Time, diff, diffPercent, flag, detailsStr));
-
-                // Add entry to detailed report if it has an ALERT flag
-                if (flag.equals("ALERT")) {
-                    detailedReport.add("### " + flag + ": " + env2Entry.type + " - " + env2Entry.identifier);
-                    detailedReport.add("* " + env1Name + " Duration: " + env1Time + " ms");
-                    detailedReport.add("* " + env2Name + " Duration: " + env2Time + " ms");
-                    detailedReport.add("* Difference: " + diff + " ms (" + String.format("%.2f", diffPercent) + "%)");
-                    if (!detailsStr.isEmpty()) {
-                        detailedReport.add("* Details: " + detailsStr);
-                    }
-                    detailedReport.add("");
+                if (Math.abs(repDiff) > env1RepDur * 0.2 && Math.abs(repDiff) > 100) {
+                    details.append(String.format("Reported Duration: %d vs %d ms (%+.2f%%); ",
+                            env1RepDur, env2RepDur, repDiffPercent));
                 }
-            } else {
-                // Entry only exists in env2
-                log.info("{} {} {} {} {} {} {} {}",
-                        env2Entry.type, env2Entry.identifier, "N/A", env2Entry.duration(), "N/A", "N/A", "UNIQUE", "");
-
-                outputLines.add(String.format("%s,%s,%s,%d,%s,%s,%s,%s",
-                        env2Entry.type, env2Entry.identifier, "N/A", env2Entry.duration(), "N/A", "N/A", "UNIQUE", ""));
+            }
 
-                // Add unique entry to detailed report
-                detailedReport.add("### UNIQUE: " + env2Entry.type + " - " + env2Entry.identifier);
-                detailedReport.add("* Only exists in " + env2Name);
-                detailedReport.add("* Duration: " + env2Entry.duration() + " ms");
-                detailedReport.add("");
+            String detailsStr = details.toString();
+            if (detailsStr.endsWith("; ")) {
+                detailsStr = detailsStr.substring(0, detailsStr.length() - 2);
             }
+
+            sink.accept(ComparisonRow.matched(env2Entry.type, env2Entry.identifier, env1Time, env2Time,
+                    flag, detailsStr, sections));
         }
 
         // Check for entries only in env1
+        Set<String> env2Identifiers = env2Executions.keySet();
         for (TraceEntry env1Entry : env1Entries) {
-            boolean foundInEnv2 = env2Entries.stream()
-                    .anyMatch(e -> e.identifier.equals(env1Entry.identifier));
-
-            if (!foundInEnv2) {
-                System.out.printf("%-10s %-50s %-15d %-15s %-10s %-10s %-10s %-20s\n",
-                        env1Entry.type, env1Entry.identifier, env1Entry.duration(), "N/A", "N/A", "N/A", "MISSING", "");
-
-                outputLines.add(String.format("%s,%s,%d,%s,%s,%s,%s,%s",
-                        env1Entry.type, env1Entry.identifier, env1Entry.duration(), "N/A", "N/A", "N/A", "MISSING", ""));
-
-                // Add missing entry to detailed report
-                detailedReport.add("### MISSING: " + env1Entry.type + " - " + env1Entry.identifier);
-                detailedReport.add("* Only exists in " + env1Name);
-                detailedReport.add("* Duration: " + env1Entry.duration() + " ms");
-                detailedReport.add("");
+            if (!env2Identifiers.contains(env1Entry.identifier)) {
+                sink.accept(ComparisonRow.missing(env1Entry.type, env1Entry.identifier, env1Entry.duration()));
             }
         }
 
-        // Write CSV output
-        Files.write(Paths.get(outputPath), outputLines);
-        System.out.println("\n比對結果已輸出到 " + outputPath);
+        sink.end(topRegressions);
+    }
 
-        // Write detailed report
-        String detailedReportPath = outputPath.replace(".csv", "_detailed.md");
-        Files.write(Paths.get(detailedReportPath), detailedReport);
-        System.out.println("詳細報告已輸出到 " + detailedReportPath);
+    /**
+     * Compare one metadata value of a matched pair and record a detail section when both sides have it and it differs.
+     */
+    private static void compareMetadata(
+            TraceEntry env1Entry,
+            TraceEntry env2Entry,
+            String key,
+            String summary,
+            String title,
+            String subject,
+            StringBuilder details,
+            List<DetailSection> sections) {
+
+        String env1Value = (String) env1Entry.metadata.getOrDefault(key, "");
+        String env2Value = (String) env2Entry.metadata.getOrDefault(key, "");
+
+        if (!env1Value.isEmpty() && !env2Value.isEmpty() && !env1Value.equals(env2Value)) {
+            details.append(summary);
+            sections.add(DetailSection.text(title, subject, "", env1Value, env2Value));
+        }
     }
 
     /**
@@ -793,32 +798,25 @@ public class SQRTraceComparator {
     }
 
     /**
-     * Main method to run the comparator.
-     * Directly specifies analysis files, trace parameters, and output files.
+     * Parse trace content from a stream with specific trace parameters.
      *
-     * @throws IOException If files cannot be read or written
+     * @param reader      Trace content, e.g. from {@link com.example.core.tool.analyzer.TraceStreams#newReader}
+     * @param traceParams Trace parameters string
+     * @return List of trace entries
+     * @throws IOException If the content cannot be read
      */
-    public static void main(String[] args) throws IOException {
-        // Directly specify files and parameters in the code
-        String env1TraceFile = "D:\\traces\\env1_trace.log";
-        String env2TraceFile = "D:\\traces\\env2_trace.log";
-        String env1Name = "DEV";
-        String env2Name = "TEST";
-        String outputPath = "sqr_trace_comparison_result.csv";
-
-        // Specify trace parameters (supports multiple parameters)
-        String traceParams = "-S -TIMING -debugfgt -E";
-
-        log.info("Using parameters {} to analyze {} and {} files", traceParams, env1TraceFile, env2TraceFile);
-
-        // Parse trace files with the specified parameters
-        List<TraceEntry> env1Entries = parseTraceWithParams(env1TraceFile, traceParams);
-        List<TraceEntry> env2Entries = parseTraceWithParams(env2TraceFile, traceParams);
-
-        log.info("Parsed {} entries from {}", env1Entries.size(), env1TraceFile);
-        log.info("Parsed {} entries from {}", env2Entries.size(), env2TraceFile);
+    public static List<TraceEntry> parseTraceWithParams(BufferedReader reader, String traceParams) throws IOException {
+        TraceFormat format = parseTraceParams(traceParams);
+        log.info("Using trace format: {} for parameters: {}", format, traceParams);
+        return parseTrace(reader, format);
+    }
 
-        // Compare the traces
-        compareTraces(env1Entries, env2Entries, env1Name, env2Name, outputPath);
+    /**
+     * Main method, same as {@code trace-tool sqr}; see {@link TraceToolCli} for the options.
+     *
+     * @param args the two trace files and options
+     */
+    public static void main(String[] args) {
+        TraceToolCli.runAndExit(args, "sqr");
     }
 }
@@ -0,0 +1,160 @@
+package com.example.core.tool;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 逐行寫入比較報告，記憶體用量與報告的行數無關。
+ *
+ * <p>每一行產生後立即寫入緩衝的文件通道，而不是先收集到 {@code List<String>} 最後才用 {@code Files.write} 寫出。
+ * 必須寫在報告後面、卻要先產生的內容（例如詳細報告中排在變慢排名之後的逐筆差異，或附在結果最後的多執行代碼）
+ * 先寫入 {@link Spool} 臨時文件，最後以 {@link FileChannel#transferTo} 直接複製到報告中，不經過Java堆。</p>
+ *
+ * <p>報告以UTF-8寫入，行分隔符與 {@code Files.write} 相同。StreamingReportWriter不是線程安全的。</p>
+ */
+public final class StreamingReportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final BufferedWriter writer;
+    private final List<Spool> spools = new ArrayList<>();
+
+    private StreamingReportWriter(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * 建立報告文件，已存在的文件會被覆蓋。
+     *
+     * @param outputPath 報告文件的路徑
+     * @return 報告寫入器
+     * @throws IOException 如果文件無法建立
+     */
+    public static StreamingReportWriter create(String outputPath) throws IOException {
+        return new StreamingReportWriter(Paths.get(outputPath));
+    }
+
+    /**
+     * 寫入一行。
+     *
+     * @param line 不含行分隔符的內容
+     * @throws IOException 如果文件無法寫入
+     */
+    public void line(String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+    }
+
+    /**
+     * 依次寫入多行。
+     *
+     * @param lines 不含行分隔符的內容
+     * @throws IOException 如果文件無法寫入
+     */
+    public void lines(List<String> lines) throws IOException {
+        for (String line : lines) {
+            line(line);
+        }
+    }
+
+    /**
+     * 建立一個稍後附加到此報告的臨時區段，放在報告文件所在的目錄中。
+     *
+     * @return 臨時區段，在附加或關閉此報告時刪除
+     * @throws IOException 如果臨時文件無法建立
+     */
+    public Spool spool() throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Spool spool = new Spool(Files.createTempFile(directory, path.getFileName().toString(), ".tmp"));
+        spools.add(spool);
+        return spool;
+    }
+
+    /**
+     * 將臨時區段的內容附加到報告目前的位置，然後刪除臨時文件。
+     *
+     * @param spool 由 {@link #spool()} 建立的臨時區段
+     * @throws IOException 如果文件無法讀取或寫入
+     */
+    public void append(Spool spool) throws IOException {
+        writer.flush();
+        spool.writer.close();
+        try (FileChannel source = FileChannel.open(spool.path, StandardOpenOption.READ)) {
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, channel);
+            }
+        }
+        spool.delete();
+        spools.remove(spool);
+    }
+
+    /**
+     * 寫出緩衝的內容並關閉文件；未附加的臨時區段會被刪除。
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            for (Spool spool : spools) {
+                spool.delete();
+            }
+            spools.clear();
+        }
+    }
+
+    /**
+     * 報告中稍後才附加的一段內容，先寫入臨時文件
+     */
+    public static final class Spool {
+        private final Path path;
+        private final BufferedWriter writer;
+        private long lineCount;
+
+        private Spool(Path path) throws IOException {
+            this.path = path;
+            this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 寫入一行。
+         *
+         * @param line 不含行分隔符的內容
+         * @throws IOException 如果文件無法寫入
+         */
+        public void line(String line) throws IOException {
+            writer.write(line);
+            writer.newLine();
+            lineCount++;
+        }
+
+        /**
+         * @return 是否還沒有寫入任何內容
+         */
+        public boolean isEmpty() {
+            return lineCount == 0;
+        }
+
+        private void delete() throws IOException {
+            writer.close();
+            Files.deleteIfExists(path);
+        }
+    }
+}
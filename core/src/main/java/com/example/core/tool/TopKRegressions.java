@@ -0,0 +1,270 @@
+package com.example.core.tool;
+
+import com.example.core.tool.report.MarkdownComparisonSink;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 在比較結果逐筆產生時，追蹤最嚴重的K個變慢條目。
+ *
+ * <p>同時維護三個固定大小為K的最小堆，分別按以下指標排名：</p>
+ * <ul>
+ *   <li>絕對差異：env2比env1多出的毫秒數</li>
+ *   <li>相對差異：多出的百分比，只計入差異超過 {@value #MIN_RELATIVE_DIFF_MS} ms 的條目，以免極短的條目佔滿排名</li>
+ *   <li>執行時間佔比：變慢條目的包含時間（含其中嵌套的條目）在env2總執行時間中所佔的比例</li>
+ * </ul>
+ *
+ * <p>佔比按包含時間計算：外層的步驟和函數包含了內層SQL的時間，各條目的佔比會重疊，加總可超過100%。</p>
+ *
+ * <p>每個堆的頂部是目前排名中最輕微的條目，新條目只有超過它時才會被加入，
+ * 所以處理n個條目的時間為O(n log K)，記憶體為O(K)，不需要保留或排序全部結果。此類不是線程安全的。</p>
+ */
+@Slf4j
+public class TopKRegressions {
+
+    /**
+     * 默認追蹤的條目數
+     */
+    public static final int DEFAULT_K = 20;
+
+    /**
+     * 計入相對差異排名的最小差異（毫秒），與ALERT規則的100ms門檻一致
+     */
+    public static final long MIN_RELATIVE_DIFF_MS = 100;
+
+    private static final Comparator<Regression> BY_ABSOLUTE_DELTA = Comparator
+            .comparingLong(Regression::diff)
+            .thenComparing(Regression::getIdentifier, Comparator.reverseOrder());
+
+    private static final Comparator<Regression> BY_RELATIVE_DELTA = Comparator
+            .comparingDouble(Regression::diffPercent)
+            .thenComparing(Regression::getIdentifier, Comparator.reverseOrder());
+
+    private static final Comparator<Regression> BY_RUNTIME_SHARE = Comparator
+            .comparingLong(Regression::getEnv2Time)
+            .thenComparing(Regression::getIdentifier, Comparator.reverseOrder());
+
+    private final int k;
+    private final PriorityQueue<Regression> byAbsoluteDelta;
+    private final PriorityQueue<Regression> byRelativeDelta;
+    private final PriorityQueue<Regression> byRuntimeShare;
+
+    private long firstStart = Long.MAX_VALUE;
+    private long lastEnd = Long.MIN_VALUE;
+    private long offered;
+
+    /**
+     * 創建追蹤 {@value #DEFAULT_K} 個條目的排名。
+     */
+    public TopKRegressions() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * 創建追蹤K個條目的排名。
+     *
+     * @param k 每個指標追蹤的條目數
+     */
+    public TopKRegressions(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("K必須大於0: " + k);
+        }
+        this.k = k;
+        this.byAbsoluteDelta = new PriorityQueue<>(k + 1, BY_ABSOLUTE_DELTA);
+        this.byRelativeDelta = new PriorityQueue<>(k + 1, BY_RELATIVE_DELTA);
+        this.byRuntimeShare = new PriorityQueue<>(k + 1, BY_RUNTIME_SHARE);
+    }
+
+    /**
+     * 記錄一個env2條目的執行區間，用於計算env2的總執行時間。
+     *
+     * @param startTime 開始時間（毫秒）
+     * @param endTime   結束時間（毫秒）
+     */
+    public void recordRuntime(long startTime, long endTime) {
+        firstStart = Math.min(firstStart, startTime);
+        lastEnd = Math.max(lastEnd, Math.max(startTime, endTime));
+    }
+
+    /**
+     * 提交一個兩個環境都存在的條目。沒有變慢的條目會被忽略。
+     *
+     * @param type       條目類型
+     * @param identifier 條目標識符
+     * @param env1Time   第一個環境的執行時間（毫秒）
+     * @param env2Time   第二個環境的執行時間（毫秒）
+     */
+    public void offer(String type, String identifier, long env1Time, long env2Time) {
+        offered++;
+        long diff = env2Time - env1Time;
+        if (diff <= 0) {
+            return;
+        }
+
+        Regression regression = new Regression(type, identifier, env1Time, env2Time);
+        offerTo(byAbsoluteDelta, BY_ABSOLUTE_DELTA, regression);
+        if (diff > MIN_RELATIVE_DIFF_MS && env1Time > 0) {
+            offerTo(byRelativeDelta, BY_RELATIVE_DELTA, regression);
+        }
+        offerTo(byRuntimeShare, BY_RUNTIME_SHARE, regression);
+    }
+
+    /**
+     * 堆未滿時直接加入；已滿時只有比堆頂（目前排名最輕微的條目）更嚴重才替換它
+     */
+    private void offerTo(PriorityQueue<Regression> heap, Comparator<Regression> order, Regression regression) {
+        if (heap.size() < k) {
+            heap.add(regression);
+        } else if (order.compare(regression, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(regression);
+        }
+    }
+
+    /**
+     * @return 按絕對差異由大到小排列的條目
+     */
+    public List<Regression> byAbsoluteDelta() {
+        return sortedDescending(byAbsoluteDelta, BY_ABSOLUTE_DELTA);
+    }
+
+    /**
+     * @return 按相對差異由大到小排列的條目
+     */
+    public List<Regression> byRelativeDelta() {
+        return sortedDescending(byRelativeDelta, BY_RELATIVE_DELTA);
+    }
+
+    /**
+     * @return 按包含時間在env2總執行時間中的佔比由大到小排列的變慢條目
+     */
+    public List<Regression> byRuntimeShare() {
+        return sortedDescending(byRuntimeShare, BY_RUNTIME_SHARE);
+    }
+
+    /**
+     * @return env2的總執行時間（毫秒），即記錄過的最早開始到最晚結束
+     */
+    public long totalRuntime() {
+        return lastEnd > firstStart ? lastEnd - firstStart : 0;
+    }
+
+    private static List<Regression> sortedDescending(PriorityQueue<Regression> heap, Comparator<Regression> order) {
+        List<Regression> sorted = new ArrayList<>(heap);
+        sorted.sort(order.reversed());
+        return sorted;
+    }
+
+    /**
+     * 生成報告開頭的排名章節（Markdown格式）。
+     *
+     * @param env1Name 第一個環境的名稱
+     * @param env2Name 第二個環境的名稱
+     * @return Markdown行
+     */
+    public List<String> toMarkdown(String env1Name, String env2Name) {
+        List<String> lines = new ArrayList<>();
+        lines.add("## Top " + k + " Regressions");
+        lines.add("");
+        appendMarkdownTable(lines, "By Absolute Difference", byAbsoluteDelta(), env1Name, env2Name);
+        appendMarkdownTable(lines, "By Relative Difference (> " + MIN_RELATIVE_DIFF_MS + " ms)", byRelativeDelta(), env1Name, env2Name);
+        appendMarkdownTable(lines, "By Inclusive Share of " + env2Name + " Runtime (" + totalRuntime() + " ms)", byRuntimeShare(), env1Name, env2Name);
+        return lines;
+    }
+
+    private void appendMarkdownTable(List<String> lines, String title, List<Regression> regressions, String env1Name, String env2Name) {
+        lines.add("### " + title);
+        if (regressions.isEmpty()) {
+            lines.add("");
+            lines.add("No regressions.");
+            lines.add("");
+            return;
+        }
+        lines.add("| Type | Identifier | " + MarkdownComparisonSink.cell(env1Name) + " (ms) | " + MarkdownComparisonSink.cell(env2Name)
+                + " (ms) | Diff (ms) | Diff (%) | Inclusive Share (%) |");
+        lines.add("|------|------------|------|------|------|------|------|");
+        for (Regression regression : regressions) {
+            lines.add(String.format("| %s | %s | %d | %d | %d | %.2f | %.2f |",
+                    MarkdownComparisonSink.cell(regression.type), MarkdownComparisonSink.cell(regression.identifier),
+                    regression.env1Time, regression.env2Time,
+                    regression.diff(), regression.diffPercent(), shareOf(regression)));
+        }
+        lines.add("");
+    }
+
+    /**
+     * 在控制台輸出排名。
+     *
+     * @param env1Name 第一個環境的名稱
+     * @param env2Name 第二個環境的名稱
+     */
+    public void logSummary(String env1Name, String env2Name) {
+        log.info("在 {} 個配對條目中，{} 相對 {} 變慢最多的前 {} 個條目：", offered, env2Name, env1Name, k);
+        logRanking("按絕對差異", byAbsoluteDelta());
+        logRanking("按相對差異", byRelativeDelta());
+        logRanking("按包含時間佔比", byRuntimeShare());
+    }
+
+    private void logRanking(String title, List<Regression> regressions) {
+        log.info("{}：", title);
+        for (int i = 0; i < regressions.size(); i++) {
+            Regression regression = regressions.get(i);
+            log.info("{}. {} {} {} -> {} ms (+{} ms, {}%, 包含時間佔 {}%)", i + 1, regression.type, regression.identifier,
+                    regression.env1Time, regression.env2Time, regression.diff(),
+                    String.format("%.2f", regression.diffPercent()), String.format("%.2f", shareOf(regression)));
+        }
+    }
+
+    /**
+     * 條目的包含時間在env2總執行時間中的百分比
+     */
+    private double shareOf(Regression regression) {
+        long total = totalRuntime();
+        return total > 0 ? regression.env2Time * 100.0 / total : 0;
+    }
+
+    /**
+     * 一個變慢的條目
+     */
+    public static final class Regression {
+        private final String type;
+        private final String identifier;
+        private final long env1Time;
+        private final long env2Time;
+
+        Regression(String type, String identifier, long env1Time, long env2Time) {
+            this.type = type;
+            this.identifier = identifier;
+            this.env1Time = env1Time;
+            this.env2Time = env2Time;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public long getEnv1Time() {
+            return env1Time;
+        }
+
+        public long getEnv2Time() {
+            return env2Time;
+        }
+
+        public long diff() {
+            return env2Time - env1Time;
+        }
+
+        public double diffPercent() {
+            return env1Time > 0 ? diff() * 100.0 / env1Time : 0;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.core.tool;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 比較兩組執行時間樣本所需的統計方法。所有方法都直接處理基本類型陣列，不會將樣本裝箱。
+ *
+ * <ul>
+ *   <li>Mann-Whitney U檢定：不假設常態分佈，使用帶平手修正和連續性修正的常態近似計算雙尾p值</li>
+ *   <li>Cliff's delta：env2的樣本比env1大的機率減去比env1小的機率，範圍為-1到1，由U統計量直接得出</li>
+ *   <li>中位數差異的bootstrap信賴區間：以固定種子重抽樣，結果可重現</li>
+ *   <li>Benjamini-Hochberg校正：同時檢定大量標識符時控制錯誤發現率</li>
+ * </ul>
+ */
+public final class TraceStatistics {
+
+    private TraceStatistics() {
+    }
+
+    /**
+     * Mann-Whitney U檢定的結果
+     */
+    public static final class RankTestResult {
+        private final double pValue;
+        private final double cliffsDelta;
+
+        RankTestResult(double pValue, double cliffsDelta) {
+            this.pValue = pValue;
+            this.cliffsDelta = cliffsDelta;
+        }
+
+        /**
+         * @return 雙尾p值
+         */
+        public double getPValue() {
+            return pValue;
+        }
+
+        /**
+         * @return Cliff's delta，正值表示env2較慢
+         */
+        public double getCliffsDelta() {
+            return cliffsDelta;
+        }
+    }
+
+    /**
+     * 對兩組樣本進行Mann-Whitney U檢定並計算Cliff's delta。
+     *
+     * @param env1Samples 第一個環境的樣本，必須已排序
+     * @param env2Samples 第二個環境的樣本，必須已排序
+     * @return 檢定結果
+     */
+    public static RankTestResult mannWhitney(long[] env1Samples, long[] env2Samples) {
+        int n1 = env1Samples.length;
+        int n2 = env2Samples.length;
+        if (n1 == 0 || n2 == 0) {
+            return new RankTestResult(1.0, 0.0);
+        }
+
+        // 歸併兩個已排序的陣列並為平手的值分配平均秩，同時累計env2的秩和及平手修正項
+        double env2RankSum = 0;
+        double tieCorrection = 0;
+        int i = 0;
+        int j = 0;
+        int rank = 0;
+        while (i < n1 || j < n2) {
+            long value = (j >= n2 || (i < n1 && env1Samples[i] <= env2Samples[j])) ? env1Samples[i] : env2Samples[j];
+            int env1Ties = 0;
+            int env2Ties = 0;
+            while (i < n1 && env1Samples[i] == value) {
+                i++;
+                env1Ties++;
+            }
+            while (j < n2 && env2Samples[j] == value) {
+                j++;
+                env2Ties++;
+            }
+            int ties = env1Ties + env2Ties;
+            double averageRank = rank + (ties + 1) / 2.0;
+            env2RankSum += env2Ties * averageRank;
+            tieCorrection += (double) ties * ties * ties - ties;
+            rank += ties;
+        }
+
+        double n = n1 + n2;
+        double u2 = env2RankSum - n2 * (n2 + 1) / 2.0;
+        double mean = (double) n1 * n2 / 2.0;
+        double variance = (double) n1 * n2 / 12.0 * ((n + 1) - tieCorrection / (n * (n - 1)));
+        double cliffsDelta = 2.0 * u2 / ((double) n1 * n2) - 1.0;
+
+        if (variance <= 0) {
+            // 所有樣本都相同
+            return new RankTestResult(1.0, cliffsDelta);
+        }
+
+        double z = (Math.abs(u2 - mean) - 0.5) / Math.sqrt(variance);
+        double pValue = z <= 0 ? 1.0 : Math.min(1.0, erfc(z / Math.sqrt(2.0)));
+        return new RankTestResult(pValue, cliffsDelta);
+    }
+
+    /**
+     * 以bootstrap估計中位數差異（env2 - env1）的百分位信賴區間。
+     *
+     * @param env1Samples 第一個環境的樣本
+     * @param env2Samples 第二個環境的樣本
+     * @param iterations  重抽樣次數
+     * @param confidence  信賴水準，例如0.95
+     * @param seed        隨機種子
+     * @return 長度為2的陣列：區間下界和上界（毫秒）
+     */
+    public static double[] bootstrapMedianShift(long[] env1Samples, long[] env2Samples, int iterations, double confidence, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] env1Buffer = new long[env1Samples.length];
+        long[] env2Buffer = new long[env2Samples.length];
+        double[] shifts = new double[iterations];
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            shifts[iteration] = median(resample(env2Samples, env2Buffer, random))
+                    - median(resample(env1Samples, env1Buffer, random));
+        }
+
+        Arrays.sort(shifts);
+        double tail = (1.0 - confidence) / 2.0;
+        int low = (int) Math.floor(tail * (iterations - 1));
+        int high = (int) Math.ceil((1.0 - tail) * (iterations - 1));
+        return new double[]{shifts[low], shifts[high]};
+    }
+
+    private static long[] resample(long[] samples, long[] buffer, SplittableRandom random) {
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = samples[random.nextInt(samples.length)];
+        }
+        return buffer;
+    }
+
+    /**
+     * 計算中位數。陣列內容會被重新排列。
+     *
+     * @param samples 樣本，不能為空
+     * @return 中位數
+     */
+    public static double median(long[] samples) {
+        int n = samples.length;
+        int middle = n / 2;
+        long upper = select(samples, middle);
+        if (n % 2 == 1) {
+            return upper;
+        }
+        // select之後middle左邊的元素都不大於upper，其中最大的就是下中位數
+        long lower = samples[0];
+        for (int i = 1; i < middle; i++) {
+            lower = Math.max(lower, samples[i]);
+        }
+        return (lower + upper) / 2.0;
+    }
+
+    /**
+     * 以快速選擇在平均O(n)時間內找出第k小的元素，並將其放在位置k。
+     */
+    private static long select(long[] values, int k) {
+        int left = 0;
+        int right = values.length - 1;
+        while (left < right) {
+            long pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long swap = values[i];
+                    values[i] = values[j];
+                    values[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    /**
+     * 以Benjamini-Hochberg方法將p值轉換為q值（校正後的p值）。
+     *
+     * @param pValues p值
+     * @return 與輸入順序相同的q值
+     */
+    public static double[] benjaminiHochberg(double[] pValues) {
+        int m = pValues.length;
+        double[] sorted = pValues.clone();
+        Arrays.sort(sorted);
+
+        // 由大到小累計最小值，使q值隨p值單調
+        double[] sortedQValues = new double[m];
+        double minimum = 1.0;
+        for (int rank = m; rank >= 1; rank--) {
+            minimum = Math.min(minimum, sorted[rank - 1] * m / rank);
+            sortedQValues[rank - 1] = minimum;
+        }
+
+        // 相同的p值得到相同的q值，所以二分搜尋找到任一相同值的位置即可
+        double[] qValues = new double[m];
+        for (int i = 0; i < m; i++) {
+            qValues[i] = sortedQValues[Arrays.binarySearch(sorted, pValues[i])];
+        }
+        return qValues;
+    }
+
+    /**
+     * 互補誤差函數，相對誤差小於1.2e-7（Chebyshev近似）。
+     */
+    static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1.0 / (1.0 + 0.5 * z);
+        double result = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? result : 2.0 - result;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.core.tool;
+
+import com.example.core.tool.analyzer.TraceEntry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 從跟蹤條目的開始和結束時間重建執行時間線，並計算每個條目的自身時間（不含子條目的時間）。
+ *
+ * <p>條目先按開始時間排序（如果已按文件順序排列則跳過排序），然後以一個堆疊做一次區間掃描：
+ * 任一時刻的時間都歸屬於當時最內層（最晚開始且尚未結束）的條目。因此：</p>
+ * <ul>
+ *   <li>被其他條目完全包含的條目成為其子條目，父條目的自身時間扣除子條目的時間</li>
+ *   <li>部分重疊的條目也不會重複計算時間，所有條目的自身時間加總等於被覆蓋的總時間</li>
+ *   <li>沒有任何條目在執行的時間記為空閒時間</li>
+ * </ul>
+ *
+ * <p>排序為O(n log n)，掃描本身為線性時間。</p>
+ */
+public class TraceTimeline {
+
+    private static final Comparator<TraceEntry> START_ORDER = Comparator
+            .comparingLong((TraceEntry e) -> e.startTime)
+            .thenComparing(Comparator.comparingLong(TraceTimeline::endTimeOf).reversed())
+            .thenComparingInt(e -> e.lineNumber);
+
+    private final List<TraceEntry> entries;
+    private final long[] selfTimes;
+    private final int[] parents;
+    private final long[] gapsBefore;
+    private long idleTime;
+    private long firstStart;
+    private long lastEnd;
+
+    private TraceTimeline(List<TraceEntry> entries) {
+        this.entries = entries;
+        this.selfTimes = new long[entries.size()];
+        this.parents = new int[entries.size()];
+        this.gapsBefore = new long[entries.size()];
+    }
+
+    /**
+     * 從跟蹤條目建立時間線。
+     *
+     * @param entries 跟蹤條目，通常已按文件順序排列
+     * @return 時間線
+     */
+    public static TraceTimeline build(List<TraceEntry> entries) {
+        TraceTimeline timeline = new TraceTimeline(inStartOrder(entries));
+        timeline.sweep();
+        return timeline;
+    }
+
+    /**
+     * 以堆疊掃描按開始時間排列的條目，將每一段時間歸屬於最內層的條目。
+     * 已結束但不在堆疊頂部的條目會延遲到其上方條目彈出時才移除，所以每個條目只入棧和出棧一次。
+     */
+    private void sweep() {
+        int[] stack = new int[entries.size()];
+        int top = -1;
+        long cursor = Long.MIN_VALUE;
+
+        for (int i = 0; i < entries.size(); i++) {
+            long start = entries.get(i).startTime;
+
+            // 結束所有在此條目開始前已結束的條目
+            while (top >= 0 && endTimeOf(entries.get(stack[top])) <= start) {
+                cursor = attribute(stack[top], cursor, endTimeOf(entries.get(stack[top])));
+                top--;
+            }
+
+            if (top >= 0) {
+                cursor = attribute(stack[top], cursor, start);
+            } else if (cursor != Long.MIN_VALUE && start > cursor) {
+                gapsBefore[i] = start - cursor;
+                idleTime += start - cursor;
+            }
+            cursor = Math.max(cursor, start);
+
+            parents[i] = top >= 0 ? stack[top] : -1;
+            stack[++top] = i;
+        }
+
+        while (top >= 0) {
+            cursor = attribute(stack[top], cursor, endTimeOf(entries.get(stack[top])));
+            top--;
+        }
+
+        if (!entries.isEmpty()) {
+            firstStart = entries.get(0).startTime;
+            lastEnd = cursor;
+        }
+    }
+
+    private long attribute(int index, long cursor, long until) {
+        if (until > cursor) {
+            selfTimes[index] += until - cursor;
+            return until;
+        }
+        return cursor;
+    }
+
+    private static List<TraceEntry> inStartOrder(List<TraceEntry> entries) {
+        for (int i = 1; i < entries.size(); i++) {
+            if (entries.get(i).startTime < entries.get(i - 1).startTime) {
+                List<TraceEntry> sorted = new ArrayList<>(entries);
+                sorted.sort(START_ORDER);
+                return sorted;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 結束時間早於開始時間的條目（例如跨越午夜）視為零長度，以免產生負的時間。
+     */
+    static long endTimeOf(TraceEntry entry) {
+        return Math.max(entry.startTime, entry.endTime);
+    }
+
+    /**
+     * @return 時間線中的條目數
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param index 按開始時間排列的位置
+     * @return 該位置的條目
+     */
+    public TraceEntry entry(int index) {
+        return entries.get(index);
+    }
+
+    /**
+     * @param index 按開始時間排列的位置
+     * @return 該條目的自身時間（毫秒）
+     */
+    public long selfTime(int index) {
+        return selfTimes[index];
+    }
+
+    /**
+     * @param index 按開始時間排列的位置
+     * @return 包含該條目的最內層條目的位置，頂層條目返回-1
+     */
+    public int parent(int index) {
+        return parents[index];
+    }
+
+    /**
+     * @param index 按開始時間排列的位置
+     * @return 該條目開始前沒有任何條目執行的時間（毫秒），前面沒有空隙則返回0
+     */
+    public long gapBefore(int index) {
+        return gapsBefore[index];
+    }
+
+    /**
+     * @return 第一個條目開始到最後一個條目結束的總時間（毫秒），等於所有自身時間與空閒時間之和
+     */
+    public long wallClockTime() {
+        return lastEnd - firstStart;
+    }
+
+    /**
+     * @return 第一個條目開始到最後一個條目結束之間沒有任何條目執行的時間（毫秒）
+     */
+    public long idleTime() {
+        return idleTime;
+    }
+}
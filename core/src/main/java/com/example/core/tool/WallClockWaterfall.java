@@ -0,0 +1,320 @@
+package com.example.core.tool;
+
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.report.MarkdownComparisonSink;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 將兩個環境之間總執行時間（wall-clock）的差異分配到各類別和關鍵路徑上的工具。
+ *
+ * <p>超過ALERT門檻的條目列表無法說明程序變慢的時間究竟花在哪裡：一個慢SQL會讓包含它的每一層都超過門檻。
+ * 此工具用 {@link TraceTimeline} 的自身時間將總執行時間不重疊地拆分為以下類別，各類別的差異加總正好等於總執行時間的差異：</p>
+ * <ul>
+ *   <li>SQL：SQL條目的自身時間</li>
+ *   <li>PeopleCode：FUNCTION和METHOD條目的自身時間</li>
+ *   <li>步驟開銷：STEP條目的自身時間，即步驟內沒有被SQL或PeopleCode覆蓋的時間</li>
+ *   <li>其他：其他類型條目的自身時間</li>
+ *   <li>空閒：沒有任何條目執行的空隙</li>
+ * </ul>
+ *
+ * <p>AE程序是單線程順序執行的，所以關鍵路徑就是頂層條目依次執行的序列。報告按出現順序配對兩個環境的頂層條目，
+ * 列出增加最多的段落及其中最耗時的子條目鏈，並列出env2中最大的空隙。除排序以外，所有計算都是對時間線的線性掃描。</p>
+ */
+@Slf4j
+public class WallClockWaterfall {
+
+    /**
+     * 報告中列出的關鍵路徑段落和空隙數
+     */
+    private static final int REPORT_ROWS = 10;
+
+    /**
+     * 類別名稱，順序與 {@link #categoryOf(String)} 的返回值一致
+     */
+    private static final String[] CATEGORIES = {"SQL", "PeopleCode", "步驟開銷", "其他", "空閒"};
+
+    private static final int SQL = 0;
+    private static final int PEOPLE_CODE = 1;
+    private static final int STEP_OVERHEAD = 2;
+    private static final int OTHER = 3;
+    private static final int IDLE = 4;
+
+    private final TraceTimeline timeline;
+    private final long[] categoryTimes = new long[CATEGORIES.length];
+    private final int[] hottestChildren;
+
+    private WallClockWaterfall(TraceTimeline timeline) {
+        this.timeline = timeline;
+        this.hottestChildren = new int[timeline.size()];
+    }
+
+    /**
+     * 將一個環境的總執行時間按類別拆分。
+     *
+     * @param entries 跟蹤條目
+     * @return 拆分結果
+     */
+    public static WallClockWaterfall of(List<TraceEntry> entries) {
+        WallClockWaterfall waterfall = new WallClockWaterfall(TraceTimeline.build(entries));
+        waterfall.attribute();
+        return waterfall;
+    }
+
+    /**
+     * 一次掃描同時累計各類別的時間並找出每個條目中總時間最長的子條目。
+     */
+    private void attribute() {
+        Arrays.fill(hottestChildren, -1);
+        for (int i = 0; i < timeline.size(); i++) {
+            TraceEntry entry = timeline.entry(i);
+            categoryTimes[categoryOf(entry.type)] += timeline.selfTime(i);
+
+            int parent = timeline.parent(i);
+            if (parent >= 0 && (hottestChildren[parent] < 0
+                    || entry.duration() > timeline.entry(hottestChildren[parent]).duration())) {
+                hottestChildren[parent] = i;
+            }
+        }
+        categoryTimes[IDLE] = timeline.idleTime();
+    }
+
+    private static int categoryOf(String type) {
+        switch (type) {
+            case "SQL":
+                return SQL;
+            case "FUNCTION":
+            case "METHOD":
+                return PEOPLE_CODE;
+            case "STEP":
+                return STEP_OVERHEAD;
+            default:
+                return OTHER;
+        }
+    }
+
+    /**
+     * @return SQL條目的自身時間總和（毫秒）
+     */
+    public long sqlTime() {
+        return categoryTimes[SQL];
+    }
+
+    /**
+     * @return FUNCTION和METHOD條目的自身時間總和（毫秒）
+     */
+    public long peopleCodeTime() {
+        return categoryTimes[PEOPLE_CODE];
+    }
+
+    /**
+     * @return STEP條目的自身時間總和（毫秒）
+     */
+    public long stepOverheadTime() {
+        return categoryTimes[STEP_OVERHEAD];
+    }
+
+    /**
+     * @return 其他類型條目的自身時間總和（毫秒）
+     */
+    public long otherTime() {
+        return categoryTimes[OTHER];
+    }
+
+    /**
+     * @return 沒有任何條目執行的時間（毫秒）
+     */
+    public long idleTime() {
+        return categoryTimes[IDLE];
+    }
+
+    /**
+     * @return 總執行時間（毫秒），等於所有類別之和
+     */
+    public long wallClockTime() {
+        return timeline.wallClockTime();
+    }
+
+    /**
+     * 返回關鍵路徑，即頂層條目按執行順序的位置。
+     *
+     * @return 頂層條目在時間線中的位置
+     */
+    public List<Integer> criticalPath() {
+        List<Integer> path = new ArrayList<>();
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.parent(i) < 0) {
+                path.add(i);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * 從指定條目開始，沿每一層總時間最長的子條目向下走，返回經過的條目。
+     *
+     * @param index 起始條目在時間線中的位置
+     * @return 從起始條目到最內層的條目鏈
+     */
+    public List<TraceEntry> hottestChain(int index) {
+        List<TraceEntry> chain = new ArrayList<>();
+        for (int i = index; i >= 0; i = hottestChildren[i]) {
+            chain.add(timeline.entry(i));
+        }
+        return chain;
+    }
+
+    /**
+     * @return 底層的時間線
+     */
+    public TraceTimeline timeline() {
+        return timeline;
+    }
+
+    /**
+     * 比較兩個環境的總執行時間並輸出瀑布報告（Markdown格式）。
+     *
+     * @param env1Entries 第一個環境的跟蹤條目
+     * @param env2Entries 第二個環境的跟蹤條目
+     * @param env1Name    第一個環境的名稱
+     * @param env2Name    第二個環境的名稱
+     * @param outputPath  輸出Markdown文件的路徑
+     * @throws IOException 如果輸出文件無法寫入
+     */
+    public static void writeReport(
+            List<TraceEntry> env1Entries,
+            List<TraceEntry> env2Entries,
+            String env1Name,
+            String env2Name,
+            String outputPath) throws IOException {
+
+        WallClockWaterfall env1 = of(env1Entries);
+        WallClockWaterfall env2 = of(env2Entries);
+        long totalDiff = env2.wallClockTime() - env1.wallClockTime();
+
+        List<String> report = new ArrayList<>();
+        report.add("# 總執行時間瀑布分析報告");
+        report.add("");
+        report.add("比較環境: " + env1Name + " vs " + env2Name);
+        report.add("");
+        report.add(String.format("總執行時間: %d ms -> %d ms (差異 %+d ms)", env1.wallClockTime(), env2.wallClockTime(), totalDiff));
+        report.add("");
+
+        report.add("## 差異分配");
+        report.add("");
+        report.add("| 類別 | " + MarkdownComparisonSink.cell(env1Name) + " (ms) | " + MarkdownComparisonSink.cell(env2Name)
+                + " (ms) | 差異 (ms) | 佔總差異 |");
+        report.add("|------|------|------|------|------|");
+        for (int category = 0; category < CATEGORIES.length; category++) {
+            long diff = env2.categoryTimes[category] - env1.categoryTimes[category];
+            report.add(String.format("| %s | %d | %d | %+d | %s |", CATEGORIES[category],
+                    env1.categoryTimes[category], env2.categoryTimes[category], diff, shareOf(diff, totalDiff)));
+        }
+        report.add(String.format("| **總計** | %d | %d | %+d | 100%% |", env1.wallClockTime(), env2.wallClockTime(), totalDiff));
+        report.add("");
+
+        report.add("## 關鍵路徑");
+        report.add("");
+        report.add("頂層條目按出現順序配對，按執行時間增加排序。\"最耗時子條目鏈\"為" + env2Name + "中每一層總時間最長的子條目。");
+        report.add("");
+        report.add("| 類型 | 標識符 | " + MarkdownComparisonSink.cell(env1Name) + " (ms) | " + MarkdownComparisonSink.cell(env2Name)
+                + " (ms) | 差異 (ms) | 最耗時子條目鏈 |");
+        report.add("|------|------|------|------|------|------|");
+        for (PathSegment segment : pairCriticalPaths(env1, env2)) {
+            TraceEntry entry = env2.timeline.entry(segment.env2Index);
+            List<TraceEntry> chain = env2.hottestChain(segment.env2Index);
+            StringBuilder chainText = new StringBuilder();
+            for (int i = 1; i < chain.size(); i++) {
+                if (i > 1) {
+                    chainText.append(" > ");
+                }
+                chainText.append(chain.get(i).type).append(':').append(chain.get(i).identifier)
+                        .append(" (").append(chain.get(i).duration()).append(" ms)");
+            }
+            report.add(String.format("| %s | %s | %s | %d | %s | %s |",
+                    MarkdownComparisonSink.cell(entry.type), MarkdownComparisonSink.cell(entry.identifier),
+                    segment.env1Duration >= 0 ? String.valueOf(segment.env1Duration) : "N/A",
+                    entry.duration(),
+                    segment.env1Duration >= 0 ? String.format("%+d", entry.duration() - segment.env1Duration) : "N/A",
+                    MarkdownComparisonSink.cell(chainText.toString())));
+        }
+        report.add("");
+
+        report.add("## " + env2Name + " 中最大的空隙");
+        report.add("");
+        report.add("| 空隙 (ms) | 之後開始的條目 | 開始時間 |");
+        report.add("|------|------|------|");
+        for (int index : largestGaps(env2.timeline)) {
+            TraceEntry entry = env2.timeline.entry(index);
+            report.add(String.format("| %d | %s:%s | %d |", env2.timeline.gapBefore(index),
+                    MarkdownComparisonSink.cell(entry.type), MarkdownComparisonSink.cell(entry.identifier), entry.startTime));
+        }
+
+        Files.write(Paths.get(outputPath), report);
+        log.info("總執行時間差異 {} ms，瀑布分析報告已輸出到 {}", totalDiff, outputPath);
+    }
+
+    /**
+     * 按出現順序配對兩個環境關鍵路徑上的頂層條目，返回env2中執行時間增加最多的段落。
+     * 只存在於env2的段落也會列出，以其全部時間作為增加量排序。
+     */
+    private static List<PathSegment> pairCriticalPaths(WallClockWaterfall env1, WallClockWaterfall env2) {
+        Map<String, List<Long>> env1Durations = new HashMap<>();
+        for (int index : env1.criticalPath()) {
+            TraceEntry entry = env1.timeline.entry(index);
+            env1Durations.computeIfAbsent(entry.identifier, k -> new ArrayList<>()).add(entry.duration());
+        }
+
+        List<PathSegment> segments = new ArrayList<>();
+        Map<String, Integer> env2Counts = new HashMap<>();
+        for (int index : env2.criticalPath()) {
+            TraceEntry entry = env2.timeline.entry(index);
+            int occurrence = env2Counts.merge(entry.identifier, 1, Integer::sum) - 1;
+            List<Long> durations = env1Durations.get(entry.identifier);
+            long env1Duration = durations != null && occurrence < durations.size() ? durations.get(occurrence) : -1;
+            segments.add(new PathSegment(index, env1Duration, entry.duration() - Math.max(0, env1Duration)));
+        }
+
+        segments.sort(Comparator.comparingLong((PathSegment segment) -> segment.diff).reversed());
+        return segments.subList(0, Math.min(REPORT_ROWS, segments.size()));
+    }
+
+    private static List<Integer> largestGaps(TraceTimeline timeline) {
+        List<Integer> gaps = new ArrayList<>();
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.gapBefore(i) > 0) {
+                gaps.add(i);
+            }
+        }
+        gaps.sort(Comparator.comparingLong(timeline::gapBefore).reversed());
+        return gaps.subList(0, Math.min(REPORT_ROWS, gaps.size()));
+    }
+
+    private static String shareOf(long diff, long totalDiff) {
+        return totalDiff != 0 ? String.format("%.1f%%", diff * 100.0 / totalDiff) : "N/A";
+    }
+
+    /**
+     * 關鍵路徑上的一個頂層段落，env1Duration為-1表示env1中沒有對應的段落
+     */
+    private static class PathSegment {
+        final int env2Index;
+        final long env1Duration;
+        final long diff;
+
+        PathSegment(int env2Index, long env1Duration, long diff) {
+            this.env2Index = env2Index;
+            this.env1Duration = env1Duration;
+            this.diff = diff;
+        }
+    }
+}
@@ -3,12 +3,8 @@ package com.example.core.tool.analyzer;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,77 +14,53 @@ import java.util.regex.Pattern;
 @Slf4j
 public class DetailedPcTraceAnalyzer extends StandardTraceAnalyzer {
 
+    // Additional patterns for PeopleCode details
+    private static final Pattern METHOD_START_PATTERN = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Method:(\\S+)\\s+started");
+    private static final Pattern METHOD_END_PATTERN = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Method:(\\S+)\\s+ended");
+    private static final Pattern PC_PROGRAM_PATTERN = Pattern.compile("PeopleCode program\\s+(.+)");
+
+    /**
+     * Parse the file through {@link #openSession()}, so that a file and a stream of the same trace
+     * attach PeopleCode programs to the same functions and methods.
+     */
     @Override
     public List<TraceEntry> parseTrace(String filePath) throws IOException {
-        List<String> lines = Files.readAllLines(Paths.get(filePath));
-        List<TraceEntry> entries = new ArrayList<>();
-
-        // First use the standard analyzer to get basic entries
-        List<TraceEntry> standardEntries = super.parseTrace(filePath);
-        entries.addAll(standardEntries);
-
-        // Additional patterns for PeopleCode details
-        Pattern methodStartPattern = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Method:(\\S+)\\s+started");
-        Pattern methodEndPattern = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Method:(\\S+)\\s+ended");
-        Pattern pcProgramPattern = Pattern.compile("PeopleCode program\\s+(.+)");
-
-        // Process method entries
-        Map<String, TraceEntry> activeEntries = new HashMap<>();
-
-        for (int i = 0; i < lines.size(); i++) {
-            String line = lines.get(i);
-            int lineNumber = i + 1; // Line numbers are 1-based
-
-            // Process method entries
-            Matcher startMatcher = methodStartPattern.matcher(line);
-            if (startMatcher.find()) {
-                String time = startMatcher.group(1);
-                String identifier = startMatcher.group(2);
-                String entryKey = "METHOD:" + identifier;
-
-                TraceEntry entry = new TraceEntry();
-                entry.type = "METHOD";
-                entry.identifier = identifier;
-                entry.startTime = parseTimeToMillis(time);
-                entry.lineNumber = lineNumber; // Store the line number
-
-                activeEntries.put(entryKey, entry);
-            }
-
-            Matcher endMatcher = methodEndPattern.matcher(line);
-            if (endMatcher.find()) {
-                String time = endMatcher.group(1);
-                String identifier = endMatcher.group(2);
-                String entryKey = "METHOD:" + identifier;
+        return parseTraceWithSession(filePath);
+    }
 
-                TraceEntry entry = activeEntries.get(entryKey);
-                if (entry != null) {
-                    entry.endTime = parseTimeToMillis(time);
-                    entries.add(entry);
-                    activeEntries.remove(entryKey);
+    /**
+     * Adds METHOD entries and attaches each PeopleCode program line to the innermost function or method
+     * that is still running. Finished callables never receive a program, so they can be written out as
+     * soon as they end.
+     */
+    @Override
+    public TraceSession openSession() {
+        return new StandardSession() {
+            @Override
+            public void processLine(String line, int lineNumber, Consumer<TraceEntry> completed) {
+                super.processLine(line, lineNumber, completed);
+                processLine(line, lineNumber, METHOD_START_PATTERN, METHOD_END_PATTERN, "METHOD", completed);
+
+                Matcher pcProgramMatcher = PC_PROGRAM_PATTERN.matcher(line);
+                if (pcProgramMatcher.find()) {
+                    TraceEntry callable = innermostCallable();
+                    if (callable != null) {
+                        callable.metadata.put("peopleCodeProgram", pcProgramMatcher.group(1).trim());
+                    }
                 }
             }
 
-            // Process PeopleCode program information
-            Matcher pcProgramMatcher = pcProgramPattern.matcher(line);
-            if (pcProgramMatcher.find()) {
-                String pcProgram = pcProgramMatcher.group(1).trim();
-
-                // Find the most recent function or method entry to associate this with
-                TraceEntry lastEntry = null;
-                for (TraceEntry entry : entries) {
-                    if (("FUNCTION".equals(entry.type) || "METHOD".equals(entry.type)) &&
-                        (lastEntry == null || entry.startTime > lastEntry.startTime)) {
-                        lastEntry = entry;
+            private TraceEntry innermostCallable() {
+                // Only the current nesting is open, so this scans a handful of entries
+                TraceEntry innermost = null;
+                for (TraceEntry entry : activeEntries.values()) {
+                    if (("FUNCTION".equals(entry.type) || "METHOD".equals(entry.type))
+                            && (innermost == null || entry.lineNumber > innermost.lineNumber)) {
+                        innermost = entry;
                     }
                 }
-
-                if (lastEntry != null) {
-                    lastEntry.metadata.put("peopleCodeProgram", pcProgram);
-                }
+                return innermost;
             }
-        }
-
-        return entries;
+        };
     }
 }
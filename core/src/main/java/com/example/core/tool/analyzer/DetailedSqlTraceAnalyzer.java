@@ -3,12 +3,11 @@ package com.example.core.tool.analyzer;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,95 +17,128 @@ import java.util.regex.Pattern;
 @Slf4j
 public class DetailedSqlTraceAnalyzer extends StandardTraceAnalyzer {
 
+    // Additional patterns for SQL details
+    private static final Pattern SQL_STATEMENT_PATTERN = Pattern.compile("SQL statement:\\s*(.+)");
+    private static final Pattern BIND_VARIABLES_PATTERN = Pattern.compile("Bind-Variables:\\s*(.+)");
+    private static final Pattern SQL_ID_PATTERN = Pattern.compile("SQL:(\\S+)");
+
+    /**
+     * Number of preceding lines searched for the SQL identifier of a statement
+     */
+    private static final int SQL_ID_LOOKBACK = 5;
+
+    /**
+     * Parse the file through {@link #openSession()}, so that a file and a stream of the same trace
+     * attach SQL details to the same executions.
+     */
     @Override
     public List<TraceEntry> parseTrace(String filePath) throws IOException {
-        List<String> lines = Files.readAllLines(Paths.get(filePath));
-        List<TraceEntry> entries = new ArrayList<>();
-
-        // First use the standard analyzer to get basic entries
-        List<TraceEntry> standardEntries = super.parseTrace(filePath);
-        entries.addAll(standardEntries);
+        return parseTraceWithSession(filePath);
+    }
 
-        // Additional patterns for SQL details
-        Pattern sqlStatementPattern = Pattern.compile("SQL statement:\\s*(.+)");
-        Pattern bindVariablesPattern = Pattern.compile("Bind-Variables:\\s*(.+)");
+    @Override
+    public TraceSession openSession() {
+        return new DetailedSqlSession();
+    }
 
-        // Map to track SQL entries by identifier
-        Map<String, TraceEntry> sqlEntries = new HashMap<>();
-        for (TraceEntry entry : entries) {
-            if ("SQL".equals(entry.type)) {
-                sqlEntries.put(entry.identifier, entry);
+    /**
+     * Attaches SQL text and bind variables to the execution that was running when they were written.
+     * Only the SQL identifiers named on the last {@value #SQL_ID_LOOKBACK} lines are kept for finding
+     * the SQL of a statement, and details written before any execution of their SQL started are not
+     * attached, because later lines are not known yet.
+     */
+    private class DetailedSqlSession extends StandardSession {
+        private final Map<String, TraceEntry> lastStartedSql = new HashMap<>();
+        // SQL identifier named on each of the previous lines, "" for lines that name none
+        private final ArrayDeque<String> previousSqlIds = new ArrayDeque<>(SQL_ID_LOOKBACK);
+        private StringBuilder currentSqlText = new StringBuilder();
+        private TraceEntry currentSqlEntry;
+        private boolean collectingSql;
+
+        @Override
+        public void processLine(String line, int lineNumber, Consumer<TraceEntry> completed) {
+            super.processLine(line, lineNumber, completed);
+            processDetails(line);
+
+            if (previousSqlIds.size() == SQL_ID_LOOKBACK) {
+                previousSqlIds.removeFirst();
             }
+            String sqlId = findSqlId(line);
+            previousSqlIds.addLast(sqlId != null ? sqlId : "");
         }
 
-        // Process SQL details
-        StringBuilder currentSqlText = new StringBuilder();
-        String currentSqlId = null;
-        boolean collectingSql = false;
+        @Override
+        public int firstPendingLine() {
+            // Details still go to the current execution, or to one named on the lines a later statement searches
+            int first = super.firstPendingLine();
+            if (currentSqlEntry != null) {
+                first = Math.min(first, currentSqlEntry.lineNumber);
+            }
+            for (String sqlId : previousSqlIds) {
+                TraceEntry entry = lastStartedSql.get(sqlId);
+                if (entry != null) {
+                    first = Math.min(first, entry.lineNumber);
+                }
+            }
+            return first;
+        }
 
-        for (int i = 0; i < lines.size(); i++) {
-            String line = lines.get(i);
-            int lineNumber = i + 1; // Line numbers are 1-based
+        @Override
+        protected void started(TraceEntry entry) {
+            if ("SQL".equals(entry.type)) {
+                lastStartedSql.put(entry.identifier, entry);
+            }
+        }
 
-            // Check for SQL statement start
-            Matcher sqlMatcher = sqlStatementPattern.matcher(line);
+        private void processDetails(String line) {
+            Matcher sqlMatcher = SQL_STATEMENT_PATTERN.matcher(line);
             if (sqlMatcher.find()) {
                 collectingSql = true;
                 currentSqlText = new StringBuilder();
                 currentSqlText.append(sqlMatcher.group(1).trim());
 
-                // Try to extract SQL ID from nearby lines
-                for (int j = Math.max(0, i - 5); j < Math.min(lines.size(), i + 1); j++) {
-                    String nearbyLine = lines.get(j);
-                    if (nearbyLine.contains("SQL:")) {
-                        Pattern sqlIdPattern = Pattern.compile("SQL:(\\S+)");
-                        Matcher sqlIdMatcher = sqlIdPattern.matcher(nearbyLine);
-                        if (sqlIdMatcher.find()) {
-                            currentSqlId = sqlIdMatcher.group(1);
-
-                            // Store the line number in the SQL entry if found
-                            if (sqlEntries.containsKey(currentSqlId)) {
-                                TraceEntry sqlEntry = sqlEntries.get(currentSqlId);
-                                if (sqlEntry.lineNumber == -1) { // Only update if not already set
-                                    sqlEntry.lineNumber = lineNumber;
-                                }
-                            }
-
-                            break;
-                        }
+                // The earliest nearby line that names a SQL, then the statement line itself
+                String sqlId = null;
+                for (String previousSqlId : previousSqlIds) {
+                    if (!previousSqlId.isEmpty()) {
+                        sqlId = previousSqlId;
+                        break;
                     }
                 }
-                continue;
+                if (sqlId == null) {
+                    sqlId = findSqlId(line);
+                }
+                if (sqlId != null) {
+                    currentSqlEntry = lastStartedSql.get(sqlId);
+                }
+                return;
             }
 
-            // Collect SQL text
             if (collectingSql) {
                 if (line.trim().isEmpty() || line.contains("Bind-Variables:") || line.contains("SQL:")) {
                     collectingSql = false;
-
-                    // Store SQL text in the corresponding entry
-                    if (currentSqlId != null && sqlEntries.containsKey(currentSqlId)) {
-                        TraceEntry sqlEntry = sqlEntries.get(currentSqlId);
-                        sqlEntry.content = currentSqlText.toString().trim();
+                    if (currentSqlEntry != null) {
+                        currentSqlEntry.content = currentSqlText.toString().trim();
                     }
                 } else {
                     currentSqlText.append("\n").append(line.trim());
                 }
             }
 
-            // Check for bind variables
-            Matcher bindMatcher = bindVariablesPattern.matcher(line);
-            if (bindMatcher.find()) {
-                String bindVars = bindMatcher.group(1).trim();
+            Matcher bindMatcher = BIND_VARIABLES_PATTERN.matcher(line);
+            if (bindMatcher.find() && currentSqlEntry != null) {
+                currentSqlEntry.metadata.put("bindVariables", bindMatcher.group(1).trim());
+            }
+        }
 
-                // Store bind variables in the corresponding entry
-                if (currentSqlId != null && sqlEntries.containsKey(currentSqlId)) {
-                    TraceEntry sqlEntry = sqlEntries.get(currentSqlId);
-                    sqlEntry.metadata.put("bindVariables", bindVars);
+        private String findSqlId(String line) {
+            if (line.contains("SQL:")) {
+                Matcher sqlIdMatcher = SQL_ID_PATTERN.matcher(line);
+                if (sqlIdMatcher.find()) {
+                    return sqlIdMatcher.group(1);
                 }
             }
+            return null;
         }
-
-        return entries;
     }
 }
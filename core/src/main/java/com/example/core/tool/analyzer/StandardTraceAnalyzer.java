@@ -2,24 +2,41 @@ package com.example.core.tool.analyzer;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Analyzer for standard AE trace format (-TRACE 1)
+ * <p>
+ * Entries are returned in file order, i.e. sorted by the line on which they started.
  */
 @Slf4j
 public class StandardTraceAnalyzer implements TraceAnalyzer {
 
+    // Patterns for different trace entry types
+    private static final Pattern STEP_START_PATTERN = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Step:(\\S+)\\s+started");
+    private static final Pattern STEP_END_PATTERN = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Step:(\\S+)\\s+ended");
+    private static final Pattern SQL_START_PATTERN = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+SQL:(\\S+)\\s+started");
+    private static final Pattern SQL_END_PATTERN = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+SQL:(\\S+)\\s+ended");
+    private static final Pattern FUNCTION_START_PATTERN = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Function:(\\S+)\\s+started");
+    private static final Pattern FUNCTION_END_PATTERN = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Function:(\\S+)\\s+ended");
+
     /**
      * Parse time string to milliseconds since midnight.
      *
@@ -44,36 +61,77 @@ public class StandardTraceAnalyzer implements TraceAnalyzer {
         List<String> lines = Files.readAllLines(Paths.get(filePath));
         List<TraceEntry> entries = new ArrayList<>();
 
-        // Patterns for different trace entry types
-        Pattern stepPattern = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Step:(\\S+)\\s+started");
-        Pattern stepEndPattern = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Step:(\\S+)\\s+ended");
-        Pattern sqlPattern = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+SQL:(\\S+)\\s+started");
-        Pattern sqlEndPattern = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+SQL:(\\S+)\\s+ended");
-        Pattern functionPattern = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Function:(\\S+)\\s+started");
-        Pattern functionEndPattern = Pattern.compile("(\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)\\s+Function:(\\S+)\\s+ended");
-
         Map<String, TraceEntry> activeEntries = new HashMap<>();
+        Set<TraceEntry> unclosedEntries = Collections.newSetFromMap(new IdentityHashMap<>());
 
         for (int i = 0; i < lines.size(); i++) {
             String line = lines.get(i);
             int lineNumber = i + 1; // Line numbers are 1-based
 
             // Process step entries
-            processEntryType(line, lineNumber, stepPattern, stepEndPattern, "STEP", activeEntries, entries);
+            processEntryType(line, lineNumber, STEP_START_PATTERN, STEP_END_PATTERN, "STEP", activeEntries, unclosedEntries, entries);
 
             // Process SQL entries
-            processEntryType(line, lineNumber, sqlPattern, sqlEndPattern, "SQL", activeEntries, entries);
+            processEntryType(line, lineNumber, SQL_START_PATTERN, SQL_END_PATTERN, "SQL", activeEntries, unclosedEntries, entries);
 
             // Process function entries
-            processEntryType(line, lineNumber, functionPattern, functionEndPattern, "FUNCTION", activeEntries, entries);
+            processEntryType(line, lineNumber, FUNCTION_START_PATTERN, FUNCTION_END_PATTERN, "FUNCTION", activeEntries, unclosedEntries, entries);
+        }
+
+        return removeUnclosedEntries(entries, activeEntries, unclosedEntries);
+    }
+
+    @Override
+    public TraceSession openSession() {
+        return new StandardSession();
+    }
+
+    /**
+     * Parse a file through {@link #openSession()}. Analyzers whose session attaches details to entries use this
+     * for {@link #parseTrace}, so that a file and a stream of the same trace give the same entries.
+     *
+     * @param filePath Path to the trace file
+     * @return Entries that ended, in file order
+     * @throws IOException If the file cannot be read
+     */
+    protected List<TraceEntry> parseTraceWithSession(String filePath) throws IOException {
+        List<TraceEntry> entries = new ArrayList<>();
+        TraceSession session = openSession();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath))) {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++; // Line numbers are 1-based
+                session.processLine(line, lineNumber, entries::add);
+            }
         }
 
+        // The session reports entries as they end; sort them back into file order
+        entries.sort(Comparator.comparingInt(entry -> entry.lineNumber));
+        return entries;
+    }
+
+    /**
+     * Drop entries that were started but never ended, keeping the remaining entries in file order.
+     * Entries are added to the result when they start, so the result is ordered by start line;
+     * only the ones that also ended are kept, matching what the trace actually completed.
+     *
+     * @param entries         Entries in start-line order
+     * @param activeEntries   Entries still open at the end of the file
+     * @param unclosedEntries Entries that were replaced by a restart before they ended
+     * @return The entries list with unclosed entries removed
+     */
+    private List<TraceEntry> removeUnclosedEntries(List<TraceEntry> entries, Map<String, TraceEntry> activeEntries,
+                                                   Set<TraceEntry> unclosedEntries) {
+        unclosedEntries.addAll(activeEntries.values());
+        if (!unclosedEntries.isEmpty()) {
+            entries.removeIf(unclosedEntries::contains);
+        }
         return entries;
     }
 
     private void processEntryType(String line, int lineNumber, Pattern startPattern, Pattern endPattern,
                                   String type, Map<String, TraceEntry> activeEntries,
-                                  List<TraceEntry> entries) {
+                                  Set<TraceEntry> unclosedEntries, List<TraceEntry> entries) {
         Matcher startMatcher = startPattern.matcher(line);
         if (startMatcher.find()) {
             String time = startMatcher.group(1);
@@ -86,7 +144,12 @@ public class StandardTraceAnalyzer implements TraceAnalyzer {
             entry.startTime = parseTimeToMillis(time);
             entry.lineNumber = lineNumber; // Store the line number
 
-            activeEntries.put(entryKey, entry);
+            // Add in start order; a restart of the same key before it ended leaves the old entry unclosed
+            entries.add(entry);
+            TraceEntry previous = activeEntries.put(entryKey, entry);
+            if (previous != null) {
+                unclosedEntries.add(previous);
+            }
         }
 
         Matcher endMatcher = endPattern.matcher(line);
@@ -98,9 +161,61 @@ public class StandardTraceAnalyzer implements TraceAnalyzer {
             TraceEntry entry = activeEntries.get(entryKey);
             if (entry != null) {
                 entry.endTime = parseTimeToMillis(time);
-                entries.add(entry);
                 activeEntries.remove(entryKey);
             }
         }
     }
+
+    /**
+     * Incremental counterpart of {@link #parseTrace}: reports STEP, SQL and FUNCTION entries as they end.
+     * A restart of the same key before it ended replaces the open entry, which is then never reported,
+     * just as {@link #parseTrace} drops it.
+     */
+    protected class StandardSession implements TraceSession {
+        protected final Map<String, TraceEntry> activeEntries = new HashMap<>();
+
+        @Override
+        public void processLine(String line, int lineNumber, Consumer<TraceEntry> completed) {
+            processLine(line, lineNumber, STEP_START_PATTERN, STEP_END_PATTERN, "STEP", completed);
+            processLine(line, lineNumber, SQL_START_PATTERN, SQL_END_PATTERN, "SQL", completed);
+            processLine(line, lineNumber, FUNCTION_START_PATTERN, FUNCTION_END_PATTERN, "FUNCTION", completed);
+        }
+
+        @Override
+        public Collection<TraceEntry> openEntries() {
+            return Collections.unmodifiableCollection(activeEntries.values());
+        }
+
+        protected void processLine(String line, int lineNumber, Pattern startPattern, Pattern endPattern,
+                                   String type, Consumer<TraceEntry> completed) {
+            Matcher startMatcher = startPattern.matcher(line);
+            if (startMatcher.find()) {
+                TraceEntry entry = new TraceEntry();
+                entry.type = type;
+                entry.identifier = startMatcher.group(2);
+                entry.startTime = parseTimeToMillis(startMatcher.group(1));
+                entry.lineNumber = lineNumber;
+                activeEntries.put(type + ":" + entry.identifier, entry);
+                started(entry);
+            }
+
+            Matcher endMatcher = endPattern.matcher(line);
+            if (endMatcher.find()) {
+                TraceEntry entry = activeEntries.remove(type + ":" + endMatcher.group(2));
+                if (entry != null) {
+                    entry.endTime = parseTimeToMillis(endMatcher.group(1));
+                    completed.accept(entry);
+                }
+            }
+        }
+
+        /**
+         * Called when an entry starts, before any later line is processed.
+         * Subclasses use it to attach detail lines to the execution they belong to.
+         *
+         * @param entry The entry that started on the current line
+         */
+        protected void started(TraceEntry entry) {
+        }
+    }
 }
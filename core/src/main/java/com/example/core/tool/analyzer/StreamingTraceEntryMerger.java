@@ -0,0 +1,88 @@
+package com.example.core.tool.analyzer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Feeds a trace to several sessions line by line and passes their entries on in file order while it is read.
+ * <p>
+ * Sessions report entries when they end, so completed entries wait until no session can still report or
+ * change an entry that started on an earlier line (see {@link TraceSession#firstPendingLine()}); only then
+ * are they merged like {@link TraceEntryMerger#mergeInstances} does and handed to the consumer. At any time
+ * only the entries inside the currently open nesting are held, not the whole trace.
+ * Not thread-safe.
+ */
+public class StreamingTraceEntryMerger {
+
+    private static final Comparator<Pending> FILE_ORDER = Comparator.comparingInt((Pending pending) -> pending.entry.lineNumber)
+            .thenComparingInt(pending -> pending.sessionIndex)
+            .thenComparingLong(pending -> pending.sequence);
+
+    private final List<TraceSession> sessions;
+    private final List<Consumer<TraceEntry>> collectors;
+    private final Consumer<TraceEntry> merged;
+    private final PriorityQueue<Pending> pending = new PriorityQueue<>(FILE_ORDER);
+    private final List<TraceEntry> lineGroup = new ArrayList<>();
+    private long sequence;
+
+    /**
+     * @param sessions One session per analyzer, in the order their entries take precedence when merged
+     * @param merged   Receives the merged entries in file order
+     */
+    public StreamingTraceEntryMerger(List<TraceSession> sessions, Consumer<TraceEntry> merged) {
+        this.sessions = sessions;
+        this.merged = merged;
+        this.collectors = new ArrayList<>(sessions.size());
+        for (int i = 0; i < sessions.size(); i++) {
+            int sessionIndex = i;
+            collectors.add(entry -> pending.add(new Pending(entry, sessionIndex, sequence++)));
+        }
+    }
+
+    /**
+     * Process one line with every session and pass on the entries that can no longer change.
+     *
+     * @param line       The line without its line terminator
+     * @param lineNumber The 1-based line number in the trace
+     */
+    public void processLine(String line, int lineNumber) {
+        int firstPendingLine = Integer.MAX_VALUE;
+        for (int i = 0; i < sessions.size(); i++) {
+            TraceSession session = sessions.get(i);
+            session.processLine(line, lineNumber, collectors.get(i));
+            firstPendingLine = Math.min(firstPendingLine, session.firstPendingLine());
+        }
+        flushBefore(firstPendingLine);
+    }
+
+    /**
+     * Pass on the remaining entries at the end of the trace. Entries that never ended are dropped.
+     */
+    public void finish() {
+        flushBefore(Integer.MAX_VALUE);
+    }
+
+    private void flushBefore(int lineNumber) {
+        while (!pending.isEmpty() && pending.peek().entry.lineNumber < lineNumber) {
+            // Entries of the same instance share a start line, so each line group is merged on its own
+            int currentLine = pending.peek().entry.lineNumber;
+            lineGroup.clear();
+            while (!pending.isEmpty() && pending.peek().entry.lineNumber == currentLine) {
+                TraceEntry entry = pending.poll().entry;
+                TraceEntry existing = TraceEntryMerger.findSameInstance(lineGroup, 0, entry);
+                if (existing != null) {
+                    TraceEntryMerger.mergeInto(existing, entry);
+                } else {
+                    lineGroup.add(entry);
+                }
+            }
+            lineGroup.forEach(merged);
+        }
+    }
+
+    private record Pending(TraceEntry entry, int sessionIndex, long sequence) {
+    }
+}
@@ -13,8 +13,16 @@ public interface TraceAnalyzer {
      * Parse a trace file and extract trace entries.
      *
      * @param filePath Path to the trace file
-     * @return List of trace entries
+     * @return List of trace entries in file order, i.e. sorted by the line on which each entry started
      * @throws IOException If the file cannot be read
      */
     List<TraceEntry> parseTrace(String filePath) throws IOException;
+
+    /**
+     * Start an incremental parse, for streaming a trace in one pass or following a file that is still growing.
+     * Feeding every line of a file to the session yields the same entries as {@link #parseTrace(String)}.
+     *
+     * @return A new session with no open entries
+     */
+    TraceSession openSession();
 }
\ No newline at end of file
@@ -1,12 +1,15 @@
 package com.example.core.tool.analyzer;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Represents a trace entry with timing and metadata information.
  */
-public class TraceEntry {
+public class TraceEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     public String identifier; // Can be Step name, SQL digest, or Function name
     public String type;       // STEP, SQL, FUNCTION, METHOD
     public long startTime;    // In milliseconds
@@ -28,4 +31,22 @@ public class TraceEntry {
     public long duration() {
         return endTime - startTime;
     }
+
+    /**
+     * Estimate the heap footprint of this entry, used to bound caches of parsed traces.
+     *
+     * @return Approximate size in bytes
+     */
+    public long estimatedSize() {
+        long size = 112 + sizeOf(identifier) + sizeOf(type) + sizeOf(content);
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            size += 48 + sizeOf(entry.getKey());
+            size += entry.getValue() instanceof String value ? sizeOf(value) : 24;
+        }
+        return size;
+    }
+
+    private static long sizeOf(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
 }
@@ -0,0 +1,116 @@
+package com.example.core.tool.analyzer;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Flyweight view over one record of a {@link TraceEntryTable}.
+ * <p>
+ * The cursor is repositioned instead of allocating an object per entry. Values returned by
+ * its accessors belong to the current record only and change when the cursor moves.
+ */
+public class TraceEntryCursor {
+
+    private final TraceEntryTable table;
+    private ByteBuffer chunk;
+    private int base;
+    private int index = -1;
+
+    TraceEntryCursor(TraceEntryTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Move to the next record.
+     *
+     * @return false if the cursor was already on the last record
+     */
+    public boolean next() {
+        if (index + 1 >= table.size()) {
+            return false;
+        }
+        moveTo(index + 1);
+        return true;
+    }
+
+    /**
+     * Move to a specific record.
+     *
+     * @param index Zero-based record index
+     * @return This cursor
+     */
+    public TraceEntryCursor moveTo(int index) {
+        if (index < 0 || index >= table.size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + table.size());
+        }
+        this.index = index;
+        this.chunk = table.chunk(index);
+        this.base = (index & TraceEntryTable.CHUNK_MASK) * TraceEntryTable.RECORD_SIZE;
+        return this;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public long startTime() {
+        return chunk.getLong(base + TraceEntryTable.OFFSET_START_TIME);
+    }
+
+    public long endTime() {
+        return chunk.getLong(base + TraceEntryTable.OFFSET_END_TIME);
+    }
+
+    public long duration() {
+        return endTime() - startTime();
+    }
+
+    public int lineNumber() {
+        return chunk.getInt(base + TraceEntryTable.OFFSET_LINE_NUMBER);
+    }
+
+    public int typeId() {
+        return chunk.getInt(base + TraceEntryTable.OFFSET_TYPE);
+    }
+
+    public int identifierId() {
+        return chunk.getInt(base + TraceEntryTable.OFFSET_IDENTIFIER);
+    }
+
+    public String type() {
+        return table.stringPool().get(typeId());
+    }
+
+    public String identifier() {
+        return table.stringPool().get(identifierId());
+    }
+
+    public String content() {
+        return table.stringPool().get(chunk.getInt(base + TraceEntryTable.OFFSET_CONTENT));
+    }
+
+    /**
+     * @return Metadata of the current record; an immutable empty map if it has none
+     */
+    public Map<String, Object> metadata() {
+        return table.metadata(chunk.getInt(base + TraceEntryTable.OFFSET_METADATA));
+    }
+
+    /**
+     * Copy the current record into a reusable entry.
+     * The metadata map is shared with the table and must not be modified.
+     *
+     * @param target The entry to overwrite
+     * @return The target entry
+     */
+    public TraceEntry copyTo(TraceEntry target) {
+        target.startTime = startTime();
+        target.endTime = endTime();
+        target.lineNumber = lineNumber();
+        target.type = type();
+        target.identifier = identifier();
+        target.content = content();
+        target.metadata = metadata();
+        return target;
+    }
+}
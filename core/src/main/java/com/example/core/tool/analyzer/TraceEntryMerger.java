@@ -0,0 +1,130 @@
+package com.example.core.tool.analyzer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the entry streams that several analyzers produced for the same trace file.
+ * <p>
+ * Every analyzer returns its entries in file order (by start line), so the streams are combined
+ * with a k-way merge in O(n log k) instead of being re-sorted. An entry instance is identified by
+ * its start line, type and identifier: when two analyzers report the same instance, the first one
+ * is kept and content and metadata from the others are added to it. Repeated executions of the
+ * same step or SQL start on different lines and therefore stay separate entries.
+ */
+@Slf4j
+public class TraceEntryMerger {
+
+    /**
+     * Merge analyzer outputs into one list in file order.
+     *
+     * @param streams Entry lists from each analyzer, each ordered by line number
+     * @return The merged entries, ordered by line number
+     */
+    public static List<TraceEntry> mergeInstances(List<List<TraceEntry>> streams) {
+        PriorityQueue<StreamCursor> heap = new PriorityQueue<>(Math.max(1, streams.size()));
+        int totalSize = 0;
+        for (int i = 0; i < streams.size(); i++) {
+            List<TraceEntry> stream = ensureFileOrder(streams.get(i));
+            totalSize += stream.size();
+            if (!stream.isEmpty()) {
+                heap.add(new StreamCursor(stream, i));
+            }
+        }
+
+        List<TraceEntry> merged = new ArrayList<>(totalSize);
+        int currentLine = Integer.MIN_VALUE;
+        int lineGroupStart = 0;
+
+        while (!heap.isEmpty()) {
+            StreamCursor cursor = heap.poll();
+            TraceEntry entry = cursor.current();
+
+            // Entries of the same instance always share a start line, so only the current line group is searched
+            if (entry.lineNumber != currentLine) {
+                currentLine = entry.lineNumber;
+                lineGroupStart = merged.size();
+            }
+
+            TraceEntry existing = findSameInstance(merged, lineGroupStart, entry);
+            if (existing != null) {
+                mergeInto(existing, entry);
+            } else {
+                merged.add(entry);
+            }
+
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+
+        return merged;
+    }
+
+    static TraceEntry findSameInstance(List<TraceEntry> merged, int from, TraceEntry entry) {
+        for (int i = from; i < merged.size(); i++) {
+            TraceEntry candidate = merged.get(i);
+            if (candidate.type.equals(entry.type) && candidate.identifier.equals(entry.identifier)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    static void mergeInto(TraceEntry existing, TraceEntry entry) {
+        // Use the content of the new entry if the existing one has none
+        if (existing.content == null && entry.content != null) {
+            existing.content = entry.content;
+        }
+
+        for (Map.Entry<String, Object> metadataEntry : entry.metadata.entrySet()) {
+            existing.metadata.putIfAbsent(metadataEntry.getKey(), metadataEntry.getValue());
+        }
+    }
+
+    /**
+     * Analyzers are expected to return entries in file order. Streams from analyzers that do not
+     * are sorted here so that the merge still produces a correct result.
+     */
+    private static List<TraceEntry> ensureFileOrder(List<TraceEntry> stream) {
+        for (int i = 1; i < stream.size(); i++) {
+            if (stream.get(i).lineNumber < stream.get(i - 1).lineNumber) {
+                log.debug("Analyzer output is not in file order, sorting {} entries", stream.size());
+                List<TraceEntry> sorted = new ArrayList<>(stream);
+                sorted.sort(Comparator.comparingInt(e -> e.lineNumber));
+                return sorted;
+            }
+        }
+        return stream;
+    }
+
+    private static class StreamCursor implements Comparable<StreamCursor> {
+        private final List<TraceEntry> entries;
+        private final int streamIndex;
+        private int position;
+
+        StreamCursor(List<TraceEntry> entries, int streamIndex) {
+            this.entries = entries;
+            this.streamIndex = streamIndex;
+        }
+
+        TraceEntry current() {
+            return entries.get(position);
+        }
+
+        boolean advance() {
+            return ++position < entries.size();
+        }
+
+        @Override
+        public int compareTo(StreamCursor other) {
+            int byLine = Integer.compare(current().lineNumber, other.current().lineNumber);
+            return byLine != 0 ? byLine : Integer.compare(streamIndex, other.streamIndex);
+        }
+    }
+}
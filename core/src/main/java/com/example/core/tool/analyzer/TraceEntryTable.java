@@ -0,0 +1,135 @@
+package com.example.core.tool.analyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of trace entries stored as fixed-width records in direct buffers.
+ * <p>
+ * Each record holds the timing fields and line number as primitives and refers to type,
+ * identifier and content through a shared {@link TraceStringPool}. Only the records are
+ * off-heap: the pool keeps every distinct string on the heap, and entries that carry metadata
+ * keep their metadata map there as well. The table saves the per-entry objects, so heap use
+ * grows with the distinct text of a trace (mostly SQL statements) rather than with its entry count.
+ * Records are read back through a {@link TraceEntryCursor} flyweight.
+ * <p>
+ * Record memory is allocated in chunks and released when the table becomes unreachable.
+ */
+public class TraceEntryTable {
+
+    static final int RECORD_SIZE = 40;
+    static final int OFFSET_START_TIME = 0;
+    static final int OFFSET_END_TIME = 8;
+    static final int OFFSET_LINE_NUMBER = 16;
+    static final int OFFSET_TYPE = 20;
+    static final int OFFSET_IDENTIFIER = 24;
+    static final int OFFSET_CONTENT = 28;
+    static final int OFFSET_METADATA = 32;
+
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+
+    private static final int NO_METADATA = -1;
+
+    private final TraceStringPool stringPool;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    // Metadata stays on the heap; records refer to it by index
+    private final List<Map<String, Object>> metadata = new ArrayList<>();
+    private int size;
+
+    /**
+     * Create an empty table.
+     *
+     * @param stringPool Pool used to intern types, identifiers and content
+     */
+    public TraceEntryTable(TraceStringPool stringPool) {
+        this.stringPool = stringPool;
+    }
+
+    /**
+     * Copy a list of parsed entries into a new table.
+     *
+     * @param entries    The parsed trace entries
+     * @param stringPool Pool used to intern types, identifiers and content
+     * @return The table holding the entries in list order
+     */
+    public static TraceEntryTable of(List<TraceEntry> entries, TraceStringPool stringPool) {
+        TraceEntryTable table = new TraceEntryTable(stringPool);
+        for (TraceEntry entry : entries) {
+            table.add(entry);
+        }
+        return table;
+    }
+
+    /**
+     * Append an entry to the table.
+     *
+     * @param entry The entry to append; it is not referenced after this call
+     */
+    public void add(TraceEntry entry) {
+        int chunkIndex = size >>> CHUNK_SHIFT;
+        if (chunkIndex == chunks.size()) {
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD_SIZE).order(ByteOrder.nativeOrder()));
+        }
+        ByteBuffer chunk = chunks.get(chunkIndex);
+        int base = (size & CHUNK_MASK) * RECORD_SIZE;
+
+        int metadataIndex = NO_METADATA;
+        if (entry.metadata != null && !entry.metadata.isEmpty()) {
+            metadataIndex = metadata.size();
+            metadata.add(entry.metadata);
+        }
+
+        chunk.putLong(base + OFFSET_START_TIME, entry.startTime);
+        chunk.putLong(base + OFFSET_END_TIME, entry.endTime);
+        chunk.putInt(base + OFFSET_LINE_NUMBER, entry.lineNumber);
+        chunk.putInt(base + OFFSET_TYPE, stringPool.intern(entry.type));
+        chunk.putInt(base + OFFSET_IDENTIFIER, stringPool.intern(entry.identifier));
+        chunk.putInt(base + OFFSET_CONTENT, stringPool.intern(entry.content));
+        chunk.putInt(base + OFFSET_METADATA, metadataIndex);
+        size++;
+    }
+
+    /**
+     * @return Number of entries in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The string pool this table interns into
+     */
+    public TraceStringPool stringPool() {
+        return stringPool;
+    }
+
+    /**
+     * @return Bytes of direct memory reserved by this table
+     */
+    public long offHeapBytes() {
+        return (long) chunks.size() * CHUNK_RECORDS * RECORD_SIZE;
+    }
+
+    /**
+     * Create a new cursor positioned before the first entry.
+     *
+     * @return A flyweight view over this table
+     */
+    public TraceEntryCursor cursor() {
+        return new TraceEntryCursor(this);
+    }
+
+    ByteBuffer chunk(int index) {
+        return chunks.get(index >>> CHUNK_SHIFT);
+    }
+
+    Map<String, Object> metadata(int metadataIndex) {
+        return metadataIndex == NO_METADATA ? Collections.emptyMap() : metadata.get(metadataIndex);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.core.tool.analyzer;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Incremental parsing state for a trace file that is read line by line, e.g. while it is still being written.
+ * <p>
+ * A session keeps the entries that have started but not yet ended between calls, so a file can be fed
+ * in arbitrary chunks. Entries are reported when they end, i.e. in end order rather than file order.
+ * A session is not thread-safe.
+ */
+public interface TraceSession {
+
+    /**
+     * Process one complete line of the trace file.
+     *
+     * @param line       The line without its line terminator
+     * @param lineNumber The 1-based line number in the file
+     * @param completed  Receives every entry that ended on this line
+     */
+    void processLine(String line, int lineNumber, Consumer<TraceEntry> completed);
+
+    /**
+     * @return Entries that have started but not yet ended, in no particular order
+     */
+    Collection<TraceEntry> openEntries();
+
+    /**
+     * Entries that started before the returned line will not be reported or changed by any later line,
+     * so they can be written out in file order while the rest of the trace is still being read.
+     *
+     * @return The lowest start line of an entry that is still open or may still receive details,
+     * or {@link Integer#MAX_VALUE} if there is none
+     */
+    default int firstPendingLine() {
+        int first = Integer.MAX_VALUE;
+        for (TraceEntry entry : openEntries()) {
+            first = Math.min(first, entry.lineNumber);
+        }
+        return first;
+    }
+}
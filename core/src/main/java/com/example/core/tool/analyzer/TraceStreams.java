@@ -0,0 +1,127 @@
+package com.example.core.tool.analyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens trace content that arrives as a stream, e.g. an HTTP upload, for line-by-line parsing.
+ * <p>
+ * Gzip and zip content is recognised by its leading magic bytes and decompressed on the fly,
+ * so a compressed upload never has to be stored or expanded before parsing. Only a small
+ * read buffer is held in memory at any time.
+ */
+public final class TraceStreams {
+
+    /**
+     * Size of the read and decompression buffers
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private static final int GZIP_MAGIC = 0x1f8b;
+    private static final int ZIP_MAGIC = 0x504b0304;
+
+    /**
+     * Compression ratio assumed for trace text when the exact uncompressed size is not known.
+     * Trace text usually compresses by more than this, so estimates based on it err on the low side.
+     */
+    public static final int ASSUMED_COMPRESSION_RATIO = 10;
+
+    private TraceStreams() {
+    }
+
+    /**
+     * Wrap a stream so that it yields the uncompressed trace text.
+     *
+     * @param in Raw stream; plain text, gzip, or a zip archive whose first file is the trace
+     * @return Stream of the uncompressed content
+     * @throws IOException If the stream cannot be read or a zip archive contains no file
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(4);
+        int b0 = buffered.read();
+        int b1 = buffered.read();
+        int b2 = buffered.read();
+        int b3 = buffered.read();
+        buffered.reset();
+
+        if (b0 >= 0 && b1 >= 0 && ((b0 << 8) | b1) == GZIP_MAGIC) {
+            return new GZIPInputStream(buffered, BUFFER_SIZE);
+        }
+        if (b3 >= 0 && ((b0 << 24) | (b1 << 16) | (b2 << 8) | b3) == ZIP_MAGIC) {
+            ZipInputStream zip = new ZipInputStream(buffered, StandardCharsets.UTF_8);
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                if (!entry.isDirectory()) {
+                    return zip;
+                }
+            }
+            throw new IOException("Zip archive contains no trace file");
+        }
+        return buffered;
+    }
+
+    /**
+     * Size of the trace text in a file once it is decompressed, without decompressing it.
+     * <p>
+     * For gzip this is the ISIZE trailer. ISIZE only holds the size modulo 4 GiB, so the result is never
+     * less than the compressed size times {@link #ASSUMED_COMPRESSION_RATIO}. For zip it is the recorded size
+     * of the first file, or the same estimate if the archive does not record it. For plain text it is the file size.
+     *
+     * @param file Trace file; plain text, gzip, or a zip archive whose first file is the trace
+     * @return Uncompressed size in bytes
+     * @throws IOException If the file cannot be read
+     */
+    public static long uncompressedSize(Path file) throws IOException {
+        long size = Files.size(file);
+        int magic;
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(4);
+            magic = head.length < 4 ? 0 : ByteBuffer.wrap(head).getInt();
+        }
+
+        long estimate = size * ASSUMED_COMPRESSION_RATIO;
+        if ((magic >>> 16) == GZIP_MAGIC && size >= 18) {
+            ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            try (FileChannel channel = FileChannel.open(file)) {
+                while (trailer.hasRemaining() && channel.read(trailer, size - 4 + trailer.position()) >= 0) {
+                    // Read the last four bytes
+                }
+            }
+            return Math.max(Integer.toUnsignedLong(trailer.getInt(0)), estimate);
+        }
+        if (magic == ZIP_MAGIC) {
+            try (ZipFile zip = new ZipFile(file.toFile(), StandardCharsets.UTF_8)) {
+                for (ZipEntry entry : Collections.list(zip.entries())) {
+                    if (!entry.isDirectory()) {
+                        return entry.getSize() >= 0 ? entry.getSize() : estimate;
+                    }
+                }
+            }
+            return estimate;
+        }
+        return size;
+    }
+
+    /**
+     * @param in Raw stream, possibly compressed
+     * @return UTF-8 line reader over the uncompressed content
+     * @throws IOException If the stream cannot be read
+     */
+    public static BufferedReader newReader(InputStream in) throws IOException {
+        return new BufferedReader(new InputStreamReader(decompress(in), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.core.tool.analyzer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary that maps repeated trace strings (types, identifiers, SQL text) to dense int ids.
+ * <p>
+ * Tables that share a pool can compare identifiers by id instead of by string.
+ * The pool is not thread-safe; tables that share it must be built from a single thread.
+ */
+public class TraceStringPool {
+
+    /**
+     * Id used for a {@code null} string.
+     */
+    public static final int NULL_ID = -1;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * Return the id of a string, adding it to the pool if needed.
+     *
+     * @param value The string to intern, may be null
+     * @return The id of the string, or {@link #NULL_ID} for null
+     */
+    public int intern(String value) {
+        if (value == null) {
+            return NULL_ID;
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Look up the id of a string without adding it.
+     *
+     * @param value The string to look up
+     * @return The id of the string, or {@link #NULL_ID} if it is not in the pool
+     */
+    public int idOf(String value) {
+        Integer id = value == null ? null : ids.get(value);
+        return id == null ? NULL_ID : id;
+    }
+
+    /**
+     * Return the string for an id.
+     *
+     * @param id The id returned by {@link #intern(String)}
+     * @return The string, or null for {@link #NULL_ID}
+     */
+    public String get(int id) {
+        return id == NULL_ID ? null : values.get(id);
+    }
+
+    /**
+     * @return Number of distinct strings in the pool
+     */
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.core.tool.arrow;
+
+import com.example.core.tool.TopKRegressions;
+import com.example.core.tool.report.ComparisonRow;
+import com.example.core.tool.report.ComparisonSink;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.DurationVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以Arrow IPC串流格式輸出比較結果，每滿一個批次寫出一次。
+ *
+ * <p>欄位：status、type、flag 以字典編碼；identifier、details 為字串；env1_duration、env2_duration、diff
+ * 為duration[ms]；diff_percent 為float64。不存在於某個環境的執行時間、沒有標記和沒有差異摘要時為null。
+ * 兩個環境的名稱存放在schema的元數據 env1 和 env2 中。</p>
+ */
+@Slf4j
+public final class ArrowComparisonSink extends ArrowRowWriter implements ComparisonSink {
+    private final Path outputPath;
+    private final ArrowDictionaryColumn status;
+    private final ArrowDictionaryColumn type;
+    private final ArrowDictionaryColumn flag;
+    private VarCharVector identifier;
+    private DurationVector env1Duration;
+    private DurationVector env2Duration;
+    private DurationVector diff;
+    private Float8Vector diffPercent;
+    private VarCharVector details;
+
+    /**
+     * @param outputPath 輸出文件的路徑，建議使用 .arrows 副檔名
+     */
+    public ArrowComparisonSink(Path outputPath) {
+        this(outputPath, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param outputPath 輸出文件的路徑
+     * @param batchSize  每個批次的行數
+     */
+    public ArrowComparisonSink(Path outputPath, int batchSize) {
+        super(outputPath, batchSize);
+        this.outputPath = outputPath;
+        this.status = dictionaryColumn("status");
+        this.type = dictionaryColumn("type");
+        this.flag = dictionaryColumn("flag");
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) throws IOException {
+        FieldType durationType = FieldType.nullable(new ArrowType.Duration(TimeUnit.MILLISECOND));
+        start(List.of(
+                status.field(),
+                type.field(),
+                new Field("identifier", FieldType.nullable(ArrowType.Utf8.INSTANCE), null),
+                new Field("env1_duration", durationType, null),
+                new Field("env2_duration", durationType, null),
+                new Field("diff", durationType, null),
+                new Field("diff_percent", FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), null),
+                flag.field(),
+                new Field("details", FieldType.nullable(ArrowType.Utf8.INSTANCE), null)),
+                Map.of("env1", env1Name, "env2", env2Name));
+
+        VectorSchemaRoot root = root();
+        identifier = (VarCharVector) root.getVector("identifier");
+        env1Duration = (DurationVector) root.getVector("env1_duration");
+        env2Duration = (DurationVector) root.getVector("env2_duration");
+        diff = (DurationVector) root.getVector("diff");
+        diffPercent = (Float8Vector) root.getVector("diff_percent");
+        details = (VarCharVector) root.getVector("details");
+    }
+
+    @Override
+    public void accept(ComparisonRow row) throws IOException {
+        int index = nextRow();
+        status.set(index, row.getStatus().name());
+        type.set(index, row.getType());
+        setString(identifier, index, row.getIdentifier());
+        if (row.getEnv1Time() >= 0) {
+            env1Duration.setSafe(index, row.getEnv1Time());
+        }
+        if (row.getEnv2Time() >= 0) {
+            env2Duration.setSafe(index, row.getEnv2Time());
+        }
+        if (row.getStatus() == ComparisonRow.Status.MATCHED) {
+            diff.setSafe(index, row.diff());
+            diffPercent.setSafe(index, row.diffPercent());
+        }
+        if (!row.getFlag().isEmpty()) {
+            flag.set(index, row.getFlag());
+        }
+        if (!row.getDetails().isEmpty()) {
+            setString(details, index, row.getDetails());
+        }
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) throws IOException {
+        flush();
+        log.info("Arrow比對結果已輸出到 {}", outputPath);
+    }
+}
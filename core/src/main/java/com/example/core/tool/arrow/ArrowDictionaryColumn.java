@@ -0,0 +1,72 @@
+package com.example.core.tool.arrow;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 以字典編碼的字串欄位，用於取值很少的欄位，例如條目類型和標記。
+ *
+ * <p>字典只會在末尾追加新值，已寫出的索引永遠有效；{@link org.apache.arrow.vector.ipc.ArrowStreamWriter}
+ * 在字典有變化時於下一個批次之前重新寫出整個字典，因此不需要事先知道所有取值。</p>
+ */
+final class ArrowDictionaryColumn implements AutoCloseable {
+    private final Field field;
+    private final VarCharVector values;
+    private final Dictionary dictionary;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private IntVector indices;
+
+    ArrowDictionaryColumn(String name, long id, BufferAllocator allocator) {
+        DictionaryEncoding encoding = new DictionaryEncoding(id, false, new ArrowType.Int(32, true));
+        this.field = new Field(name, new FieldType(true, encoding.getIndexType(), encoding), null);
+        this.values = new VarCharVector(name + "_dictionary", allocator);
+        this.values.allocateNew();
+        this.dictionary = new Dictionary(values, encoding);
+    }
+
+    Field field() {
+        return field;
+    }
+
+    Dictionary dictionary() {
+        return dictionary;
+    }
+
+    void bind(VectorSchemaRoot root) {
+        this.indices = (IntVector) root.getVector(field.getName());
+    }
+
+    /**
+     * @param row   行的位置
+     * @param value 字串值，null表示空值
+     */
+    void set(int row, String value) {
+        if (value == null) {
+            return;
+        }
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = indexes.size();
+            values.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+            values.setValueCount(index + 1);
+            indexes.put(value, index);
+        }
+        indices.setSafe(row, index);
+    }
+
+    @Override
+    public void close() {
+        values.close();
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.core.tool.arrow;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以Arrow IPC串流格式逐批寫出行的基礎類別。
+ *
+ * <p>子類別逐行填入同一組向量，每滿一個批次就寫出並重設向量，記憶體用量只與批次大小有關，
+ * 與總行數無關。寫出的文件可以用 pyarrow.ipc.open_stream 或 DuckDB 直接讀取。</p>
+ */
+abstract class ArrowRowWriter implements Closeable {
+
+    /**
+     * 默認每個批次的行數
+     */
+    static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+
+    final BufferAllocator allocator = new RootAllocator();
+    private final DictionaryProvider.MapDictionaryProvider dictionaries = new DictionaryProvider.MapDictionaryProvider();
+    private final List<ArrowDictionaryColumn> dictionaryColumns = new ArrayList<>();
+    private final Path outputPath;
+    private final int batchSize;
+    private FileChannel channel;
+    private VectorSchemaRoot root;
+    private ArrowStreamWriter writer;
+    private int rowCount;
+    private long totalRows;
+
+    ArrowRowWriter(Path outputPath, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("批次大小必須大於0: " + batchSize);
+        }
+        this.outputPath = outputPath;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 建立一個字典編碼的欄位，必須在 {@link #start} 之前調用
+     */
+    final ArrowDictionaryColumn dictionaryColumn(String name) {
+        ArrowDictionaryColumn column = new ArrowDictionaryColumn(name, dictionaryColumns.size(), allocator);
+        dictionaryColumns.add(column);
+        dictionaries.put(column.dictionary());
+        return column;
+    }
+
+    /**
+     * 建立文件並寫出schema
+     *
+     * @param fields   所有欄位，字典欄位以 {@link ArrowDictionaryColumn#field()} 加入
+     * @param metadata schema的自訂元數據
+     */
+    final void start(List<Field> fields, Map<String, String> metadata) throws IOException {
+        root = VectorSchemaRoot.create(new Schema(fields, metadata), allocator);
+        for (ArrowDictionaryColumn column : dictionaryColumns) {
+            column.bind(root);
+        }
+        root.allocateNew();
+        channel = FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        writer = new ArrowStreamWriter(root, dictionaries, channel);
+        writer.start();
+    }
+
+    final boolean isStarted() {
+        return writer != null;
+    }
+
+    final VectorSchemaRoot root() {
+        return root;
+    }
+
+    /**
+     * @return 下一行的位置；目前批次已滿時先寫出
+     */
+    final int nextRow() throws IOException {
+        if (rowCount == batchSize) {
+            flush();
+        }
+        totalRows++;
+        return rowCount++;
+    }
+
+    /**
+     * @return 已寫入的總行數
+     */
+    public final long getRowCount() {
+        return totalRows;
+    }
+
+    final void flush() throws IOException {
+        if (rowCount == 0) {
+            return;
+        }
+        root.setRowCount(rowCount);
+        writer.writeBatch();
+        // 保留已分配的容量，下一個批次不需要重新分配
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.reset();
+        }
+        rowCount = 0;
+    }
+
+    static void setString(VarCharVector vector, int row, String value) {
+        if (value != null) {
+            vector.setSafe(row, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 寫出最後一個不完整的批次和串流結尾，並釋放所有堆外記憶體
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (writer != null) {
+                flush();
+                writer.end();
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            if (root != null) {
+                root.close();
+            }
+            for (ArrowDictionaryColumn column : dictionaryColumns) {
+                column.close();
+            }
+            allocator.close();
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
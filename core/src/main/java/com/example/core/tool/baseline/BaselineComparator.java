@@ -0,0 +1,208 @@
+package com.example.core.tool.baseline;
+
+import com.example.core.cli.TraceToolCli;
+import com.example.core.tool.AETraceComparator;
+import com.example.core.tool.TopKRegressions;
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.rule.RuleInput;
+import com.example.core.tool.rule.RuleSet;
+import com.example.core.tool.report.CsvComparisonSink;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 將新的跟蹤文件與已保存的基準比較，只需要解析新的跟蹤文件。
+ *
+ * <p>比較以標識符為單位：新跟蹤文件先彙總成 {@link BaselineSnapshot}，再逐個標識符在基準的索引中查找，
+ * 比較平均執行時間、執行次數和自身時間。差異標記套用與 {@link AETraceComparator} 相同的 {@link RuleSet}，
+ * 其中env1為基準的平均時間，env2為新跟蹤文件的平均時間，executions為新跟蹤文件中的執行次數。
+ * 基準只保存彙總值，因此無法像兩個跟蹤文件比較那樣逐次配對執行。</p>
+ */
+@Slf4j
+public class BaselineComparator {
+
+    /**
+     * 比較結果中的一行
+     */
+    public static final class BaselineRow {
+        private final String type;
+        private final String identifier;
+        private final long baselineCount;
+        private final long currentCount;
+        private final long baselineMean;
+        private final long currentMean;
+        private final String flag;
+        private long baselineP95;
+        private long currentMax;
+        private long selfDiff;
+
+        BaselineRow(String type, String identifier, long baselineCount, long currentCount,
+                    long baselineMean, long currentMean, String flag) {
+            this.type = type;
+            this.identifier = identifier;
+            this.baselineCount = baselineCount;
+            this.currentCount = currentCount;
+            this.baselineMean = baselineMean;
+            this.currentMean = currentMean;
+            this.flag = flag;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * @return 基準中的執行次數，0表示基準中沒有此標識符
+         */
+        public long getBaselineCount() {
+            return baselineCount;
+        }
+
+        /**
+         * @return 新跟蹤文件中的執行次數，0表示新跟蹤文件中沒有此標識符
+         */
+        public long getCurrentCount() {
+            return currentCount;
+        }
+
+        public long getBaselineMean() {
+            return baselineMean;
+        }
+
+        public long getCurrentMean() {
+            return currentMean;
+        }
+
+        public long diff() {
+            return currentMean - baselineMean;
+        }
+
+        /**
+         * @return 規則標記，或UNIQUE（只在新跟蹤文件中）、MISSING（只在基準中）
+         */
+        public String getFlag() {
+            return flag;
+        }
+    }
+
+    /**
+     * 以默認規則將新跟蹤文件與基準比較。
+     *
+     * @see #compareToBaseline(BaselineProfile, List, String, String, RuleSet)
+     */
+    public static List<BaselineRow> compareToBaseline(
+            BaselineProfile baseline,
+            List<TraceEntry> currentEntries,
+            String currentName,
+            String outputPath) throws IOException {
+        return compareToBaseline(baseline, currentEntries, currentName, outputPath, RuleSet.defaults());
+    }
+
+    /**
+     * 將新跟蹤文件與基準比較並輸出CSV。
+     *
+     * @param baseline       基準
+     * @param currentEntries 新跟蹤文件的條目
+     * @param currentName    新跟蹤文件所在環境的名稱
+     * @param outputPath     輸出CSV文件的路徑
+     * @param rules          標記差異的規則
+     * @return 比較結果，平均時間增加最多的在前，UNIQUE和MISSING在最後
+     * @throws IOException 如果輸出文件無法寫入
+     */
+    public static List<BaselineRow> compareToBaseline(
+            BaselineProfile baseline,
+            List<TraceEntry> currentEntries,
+            String currentName,
+            String outputPath,
+            RuleSet rules) throws IOException {
+
+        BaselineSnapshot current = BaselineSnapshot.of(baseline.getProgramName(), currentEntries);
+        String baselineName = "Baseline";
+        TopKRegressions topRegressions = new TopKRegressions();
+        for (TraceEntry entry : currentEntries) {
+            topRegressions.recordRuntime(entry.startTime, entry.endTime);
+        }
+
+        RuleInput ruleInput = new RuleInput();
+        List<BaselineRow> rows = new ArrayList<>();
+        List<BaselineRow> unmatched = new ArrayList<>();
+        boolean[] matched = new boolean[baseline.size()];
+        for (BaselineSnapshot.Aggregate aggregate : current.aggregates()) {
+            int index = baseline.indexOf(aggregate.getIdentifier());
+            long currentMean = Math.round(aggregate.getMean());
+            if (index < 0) {
+                unmatched.add(new BaselineRow(aggregate.getType(), aggregate.getIdentifier(), 0, aggregate.getCount(),
+                        0, currentMean, "UNIQUE"));
+                continue;
+            }
+            matched[index] = true;
+
+            long baselineMean = Math.round(baseline.mean(index));
+            ruleInput.set(baselineMean, currentMean, (int) Math.min(aggregate.getCount(), Integer.MAX_VALUE));
+            BaselineRow row = new BaselineRow(aggregate.getType(), aggregate.getIdentifier(), baseline.count(index),
+                    aggregate.getCount(), baselineMean, currentMean, rules.evaluate(aggregate.getType(), ruleInput));
+            row.baselineP95 = baseline.percentile(index, 0.95);
+            row.currentMax = aggregate.getMax();
+            row.selfDiff = Math.round((double) aggregate.getSelfTotal() / aggregate.getCount()
+                    - (double) baseline.selfTotal(index) / baseline.count(index));
+            rows.add(row);
+            topRegressions.offer(aggregate.getType(), aggregate.getIdentifier(), baselineMean, currentMean);
+        }
+
+        for (int index = 0; index < baseline.size(); index++) {
+            if (!matched[index]) {
+                unmatched.add(new BaselineRow(baseline.type(index), baseline.identifier(index), baseline.count(index), 0,
+                        Math.round(baseline.mean(index)), 0, "MISSING"));
+            }
+        }
+
+        // 平均時間增加最多的排在前面；UNIQUE和MISSING在最後，以N/A表示缺少的一方
+        rows.sort(Comparator.comparingLong(BaselineRow::diff).reversed());
+
+        List<String> outputLines = new ArrayList<>(rows.size() + unmatched.size() + 1);
+        outputLines.add(String.join(",", "Type,Identifier,Baseline Count", CsvComparisonSink.escape(currentName + " Count"),
+                "Baseline Mean(ms)", CsvComparisonSink.escape(currentName + " Mean(ms)"), "Diff(ms),Diff(%),Baseline P95(ms)",
+                CsvComparisonSink.escape(currentName + " Max(ms)"), "Self Diff(ms),Flag"));
+        for (BaselineRow row : rows) {
+            double diffPercent = row.baselineMean > 0 ? row.diff() * 100.0 / row.baselineMean : 0;
+            outputLines.add(String.format("%s,%s,%d,%d,%d,%d,%d,%.2f,%d,%d,%d,%s",
+                    CsvComparisonSink.escape(row.type), CsvComparisonSink.escape(row.identifier),
+                    row.baselineCount, row.currentCount, row.baselineMean, row.currentMean,
+                    row.diff(), diffPercent, row.baselineP95, row.currentMax, row.selfDiff, row.flag));
+        }
+        for (BaselineRow row : unmatched) {
+            boolean unique = row.flag.equals("UNIQUE");
+            outputLines.add(String.format("%s,%s,%s,%s,%s,%s,N/A,N/A,N/A,N/A,N/A,%s",
+                    CsvComparisonSink.escape(row.type), CsvComparisonSink.escape(row.identifier),
+                    unique ? "N/A" : String.valueOf(row.baselineCount), unique ? String.valueOf(row.currentCount) : "N/A",
+                    unique ? "N/A" : String.valueOf(row.baselineMean), unique ? String.valueOf(row.currentMean) : "N/A",
+                    row.flag));
+        }
+        rows.addAll(unmatched);
+
+        topRegressions.logSummary(baselineName, currentName);
+        Files.write(Paths.get(outputPath), outputLines);
+        log.info("\n與基準 {} 的比對結果已輸出到 {}", baseline.getProgramName(), outputPath);
+        return rows;
+    }
+
+    /**
+     * 主方法，與 {@code trace-tool baseline compare} 相同：只解析新的跟蹤文件並與基準比較，
+     * 基準以 {@code trace-tool baseline save} 建立，參數見 {@link TraceToolCli}。
+     *
+     * @param args 跟蹤文件和選項
+     */
+    public static void main(String[] args) {
+        TraceToolCli.runAndExit(args, "baseline", "compare");
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.core.tool.baseline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 以記憶體映射方式讀取的基準檔（由 {@link BaselineSnapshot#writeTo} 寫出）。
+ *
+ * <p>載入時只解碼字串表並建立標識符到記錄位置的索引；每條記錄的數值和直方圖在需要時
+ * 才從映射的緩衝區中按固定偏移讀取，不會複製整個文件，也不會建立TraceEntry物件。</p>
+ *
+ * <p>BaselineProfile是唯讀的，可以在多個線程中共用。</p>
+ */
+public final class BaselineProfile {
+
+    /**
+     * 文件開頭的魔術數字 "AEBP"
+     */
+    static final int MAGIC = 0x41455042;
+
+    /**
+     * 目前的格式版本
+     */
+    static final int VERSION = 1;
+
+    /**
+     * 直方圖的桶數：第0桶為0ms，第b桶為 [2^(b-1), 2^b) 毫秒，超出範圍的時間放在最後一桶
+     */
+    public static final int HISTOGRAM_BUCKETS = 32;
+
+    /**
+     * 每條記錄的位元組數
+     */
+    static final int RECORD_SIZE = 4 + 4 + 5 * 8 + HISTOGRAM_BUCKETS * 4;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int COUNT_OFFSET = 8;
+    private static final int TOTAL_OFFSET = 16;
+    private static final int MIN_OFFSET = 24;
+    private static final int MAX_OFFSET = 32;
+    private static final int SELF_TOTAL_OFFSET = 40;
+    private static final int HISTOGRAM_OFFSET = 48;
+
+    private final ByteBuffer buffer;
+    private final String programName;
+    private final long createdAt;
+    private final long entryCount;
+    private final int recordCount;
+    private final int recordsOffset;
+    private final String[] strings;
+    private final Map<String, Integer> recordIndexes;
+
+    private BaselineProfile(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("不是有效的基準檔");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("不支援的基準檔版本: " + version);
+        }
+        this.createdAt = buffer.getLong(8);
+        this.entryCount = buffer.getLong(16);
+        this.recordCount = buffer.getInt(24);
+        int stringCount = buffer.getInt(28);
+
+        strings = new String[stringCount];
+        int position = HEADER_SIZE;
+        for (int i = 0; i < stringCount; i++) {
+            int length = buffer.getInt(position);
+            byte[] bytes = new byte[length];
+            buffer.get(position + 4, bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += 4 + length;
+        }
+        this.recordsOffset = position;
+        if ((long) recordsOffset + (long) recordCount * RECORD_SIZE > buffer.limit()) {
+            throw new IllegalArgumentException("基準檔已損壞：記錄區不完整");
+        }
+
+        this.programName = strings[0];
+        recordIndexes = new HashMap<>(recordCount * 2);
+        for (int i = 0; i < recordCount; i++) {
+            recordIndexes.put(identifier(i), i);
+        }
+    }
+
+    /**
+     * 以記憶體映射方式開啟基準檔。
+     *
+     * @param path 基準檔路徑
+     * @return 基準檔
+     * @throws IOException              如果文件無法讀取
+     * @throws IllegalArgumentException 如果文件不是有效的基準檔
+     */
+    public static BaselineProfile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // 映射在通道關閉後仍然有效
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BaselineProfile(buffer);
+        }
+    }
+
+    /**
+     * 從記憶體中的內容讀取基準檔，主要用於測試。
+     *
+     * @param bytes 基準檔內容
+     * @return 基準檔
+     */
+    static BaselineProfile wrap(byte[] bytes) {
+        return new BaselineProfile(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * 計算執行時間所屬的直方圖桶
+     */
+    static int bucketOf(long duration) {
+        if (duration <= 0) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros(duration), HISTOGRAM_BUCKETS - 1);
+    }
+
+    /**
+     * @return 程序名稱
+     */
+    public String getProgramName() {
+        return programName;
+    }
+
+    /**
+     * @return 建立時間（epoch毫秒）
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return 建立基準時跟蹤文件的條目數
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return 標識符數量
+     */
+    public int size() {
+        return recordCount;
+    }
+
+    /**
+     * @param identifier 標識符
+     * @return 記錄的位置，不存在時返回-1
+     */
+    public int indexOf(String identifier) {
+        Integer index = recordIndexes.get(identifier);
+        return index != null ? index : -1;
+    }
+
+    public String type(int index) {
+        return strings[buffer.getInt(recordOffset(index))];
+    }
+
+    public String identifier(int index) {
+        return strings[buffer.getInt(recordOffset(index) + 4)];
+    }
+
+    public long count(int index) {
+        return buffer.getLong(recordOffset(index) + COUNT_OFFSET);
+    }
+
+    public long total(int index) {
+        return buffer.getLong(recordOffset(index) + TOTAL_OFFSET);
+    }
+
+    public long min(int index) {
+        return buffer.getLong(recordOffset(index) + MIN_OFFSET);
+    }
+
+    public long max(int index) {
+        return buffer.getLong(recordOffset(index) + MAX_OFFSET);
+    }
+
+    /**
+     * @return 自身時間總和（毫秒），即扣除子條目後的時間
+     */
+    public long selfTotal(int index) {
+        return buffer.getLong(recordOffset(index) + SELF_TOTAL_OFFSET);
+    }
+
+    /**
+     * @return 平均執行時間（毫秒）
+     */
+    public double mean(int index) {
+        long count = count(index);
+        return count > 0 ? (double) total(index) / count : 0;
+    }
+
+    /**
+     * @param index  記錄的位置
+     * @param bucket 直方圖桶
+     * @return 落在該桶的執行次數
+     */
+    public int histogram(int index, int bucket) {
+        return buffer.getInt(recordOffset(index) + HISTOGRAM_OFFSET + bucket * 4);
+    }
+
+    /**
+     * 從直方圖估計百分位數。返回所在桶的上界，並限制在最短和最長時間之間，
+     * 因此估計值最多比實際值大一倍。
+     *
+     * @param index    記錄的位置
+     * @param quantile 0到1之間的百分位，例如0.95
+     * @return 估計的執行時間（毫秒）
+     */
+    public long percentile(int index, double quantile) {
+        long count = count(index);
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(quantile * count));
+        long cumulative = 0;
+        int bucket = 0;
+        for (; bucket < HISTOGRAM_BUCKETS - 1; bucket++) {
+            cumulative += histogram(index, bucket);
+            if (cumulative >= target) {
+                break;
+            }
+        }
+        long upperBound = bucket == 0 ? 0 : (1L << bucket) - 1;
+        return Math.max(min(index), Math.min(max(index), upperBound));
+    }
+
+    private int recordOffset(int index) {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("記錄位置 " + index + " 超出範圍 0.." + (recordCount - 1));
+        }
+        return recordsOffset + index * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.core.tool.baseline;
+
+import com.example.core.tool.analyzer.TraceEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 按AE或SQR程序名稱保存基準檔的目錄。每個程序一個文件，名稱為 {@code <程序名稱>.aebp}。
+ *
+ * <p>保存時先寫入臨時文件再原子性地替換原文件，正在讀取舊基準的比較不會讀到寫了一半的文件。</p>
+ */
+@Slf4j
+public class BaselineProfileStore {
+
+    /**
+     * 基準檔的副檔名
+     */
+    public static final String EXTENSION = ".aebp";
+
+    private final Path directory;
+
+    /**
+     * @param directory 保存基準檔的目錄，不存在時會在第一次保存時建立
+     */
+    public BaselineProfileStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 彙總跟蹤條目並保存為指定程序的基準，取代該程序原有的基準。
+     *
+     * @param programName AE或SQR程序名稱
+     * @param entries     已解析的跟蹤條目
+     * @return 基準檔的路徑
+     * @throws IOException 如果文件無法寫入
+     */
+    public Path save(String programName, List<TraceEntry> entries) throws IOException {
+        BaselineSnapshot snapshot = BaselineSnapshot.of(programName, entries);
+        Files.createDirectories(directory);
+        Path target = pathOf(programName);
+        Path temporary = Files.createTempFile(directory, programName, ".tmp");
+        try {
+            snapshot.writeTo(temporary);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        log.info("已將 {} 的 {} 個條目保存為基準 {}", programName, entries.size(), target);
+        return target;
+    }
+
+    /**
+     * 開啟指定程序的基準。
+     *
+     * @param programName AE或SQR程序名稱
+     * @return 基準檔
+     * @throws IOException 如果基準不存在或無法讀取
+     */
+    public BaselineProfile open(String programName) throws IOException {
+        return BaselineProfile.open(pathOf(programName));
+    }
+
+    /**
+     * @param programName AE或SQR程序名稱
+     * @return 是否已有該程序的基準
+     */
+    public boolean exists(String programName) {
+        return Files.isRegularFile(pathOf(programName));
+    }
+
+    /**
+     * @return 已有基準的所有程序名稱，按名稱排序
+     * @throws IOException 如果目錄無法讀取
+     */
+    public List<String> list() throws IOException {
+        List<String> programs = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return programs;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(EXTENSION))
+                    .map(name -> name.substring(0, name.length() - EXTENSION.length()))
+                    .sorted()
+                    .forEach(programs::add);
+        }
+        return programs;
+    }
+
+    private Path pathOf(String programName) {
+        if (programName.isEmpty() || programName.contains("/") || programName.contains("\\") || programName.contains("..")) {
+            throw new IllegalArgumentException("無效的程序名稱: " + programName);
+        }
+        return directory.resolve(programName + EXTENSION);
+    }
+}
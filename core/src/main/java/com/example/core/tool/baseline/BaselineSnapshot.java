@@ -0,0 +1,213 @@
+package com.example.core.tool.baseline;
+
+import com.example.core.tool.TraceTimeline;
+import com.example.core.tool.analyzer.TraceEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一個跟蹤文件按標識符彙總後的結果，可以寫成 {@link BaselineProfile} 的二進位格式。
+ *
+ * <p>每個標識符記錄執行次數、總時間、最短和最長時間、自身時間總和（由 {@link TraceTimeline} 計算，
+ * 即調用樹中扣除子條目後的時間），以及以2的冪為邊界的執行時間直方圖。</p>
+ *
+ * <p>二進位格式（大端序）：</p>
+ * <pre>
+ * 標頭     : magic(int) version(int) createdAt(long) entryCount(long) recordCount(int) stringCount(int)
+ * 字串表   : stringCount × (byteLength(int) UTF-8位元組)，第0個字串為程序名稱
+ * 記錄     : recordCount × 固定 {@value BaselineProfile#RECORD_SIZE} 位元組
+ *            typeIndex(int) identifierIndex(int) count(long) total(long) min(long) max(long) selfTotal(long)
+ *            histogram({@value BaselineProfile#HISTOGRAM_BUCKETS} × int)
+ * </pre>
+ */
+public final class BaselineSnapshot {
+
+    private final String programName;
+    private final long createdAt;
+    private final long entryCount;
+    private final Map<String, Aggregate> aggregates;
+
+    private BaselineSnapshot(String programName, long createdAt, long entryCount, Map<String, Aggregate> aggregates) {
+        this.programName = programName;
+        this.createdAt = createdAt;
+        this.entryCount = entryCount;
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * 彙總一個跟蹤文件的條目。
+     *
+     * @param programName AE或SQR程序名稱
+     * @param entries     跟蹤條目
+     * @return 彙總結果
+     */
+    public static BaselineSnapshot of(String programName, List<TraceEntry> entries) {
+        TraceTimeline timeline = TraceTimeline.build(entries);
+        Map<String, Aggregate> aggregates = new LinkedHashMap<>();
+        for (int i = 0; i < timeline.size(); i++) {
+            TraceEntry entry = timeline.entry(i);
+            aggregates.computeIfAbsent(entry.identifier, k -> new Aggregate(entry.type, entry.identifier))
+                    .add(entry.duration(), timeline.selfTime(i));
+        }
+        return new BaselineSnapshot(programName, System.currentTimeMillis(), entries.size(), aggregates);
+    }
+
+    /**
+     * @return 程序名稱
+     */
+    public String getProgramName() {
+        return programName;
+    }
+
+    /**
+     * @return 彙總前的條目數
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @param identifier 標識符
+     * @return 該標識符的彙總，不存在時返回null
+     */
+    public Aggregate get(String identifier) {
+        return aggregates.get(identifier);
+    }
+
+    /**
+     * @return 所有標識符的彙總，按第一次開始的順序排列
+     */
+    public Iterable<Aggregate> aggregates() {
+        return aggregates.values();
+    }
+
+    /**
+     * 將彙總結果寫成二進位基準檔。
+     *
+     * @param path 輸出路徑
+     * @throws IOException 如果文件無法寫入
+     */
+    public void writeTo(Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            writeTo(out);
+        }
+    }
+
+    void writeTo(OutputStream stream) throws IOException {
+        // 類型和標識符都放入字串表，記錄中只保存索引
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        strings.add(programName);
+        for (Aggregate aggregate : aggregates.values()) {
+            stringIndexes.computeIfAbsent(aggregate.type, k -> addString(strings, k));
+            stringIndexes.computeIfAbsent(aggregate.identifier, k -> addString(strings, k));
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(BaselineProfile.MAGIC);
+        out.writeInt(BaselineProfile.VERSION);
+        out.writeLong(createdAt);
+        out.writeLong(entryCount);
+        out.writeInt(aggregates.size());
+        out.writeInt(strings.size());
+
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        for (Aggregate aggregate : aggregates.values()) {
+            out.writeInt(stringIndexes.get(aggregate.type));
+            out.writeInt(stringIndexes.get(aggregate.identifier));
+            out.writeLong(aggregate.count);
+            out.writeLong(aggregate.total);
+            out.writeLong(aggregate.min);
+            out.writeLong(aggregate.max);
+            out.writeLong(aggregate.selfTotal);
+            for (int bucket : aggregate.histogram) {
+                out.writeInt(bucket);
+            }
+        }
+        out.flush();
+    }
+
+    private static int addString(List<String> strings, String value) {
+        strings.add(value);
+        return strings.size() - 1;
+    }
+
+    /**
+     * 一個標識符的彙總
+     */
+    public static final class Aggregate {
+        private final String type;
+        private final String identifier;
+        private long count;
+        private long total;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private long selfTotal;
+        private final int[] histogram = new int[BaselineProfile.HISTOGRAM_BUCKETS];
+
+        Aggregate(String type, String identifier) {
+            this.type = type;
+            this.identifier = identifier;
+        }
+
+        void add(long duration, long selfTime) {
+            count++;
+            total += duration;
+            min = Math.min(min, duration);
+            max = Math.max(max, duration);
+            selfTotal += selfTime;
+            histogram[BaselineProfile.bucketOf(duration)]++;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getSelfTotal() {
+            return selfTotal;
+        }
+
+        /**
+         * @return 平均執行時間（毫秒）
+         */
+        public double getMean() {
+            return count > 0 ? (double) total / count : 0;
+        }
+    }
+}
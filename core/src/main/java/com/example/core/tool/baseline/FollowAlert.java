@@ -0,0 +1,64 @@
+package com.example.core.tool.baseline;
+
+/**
+ * 跟隨模式中一個超出基準預期時間的條目。
+ */
+public final class FollowAlert {
+    private final String type;
+    private final String identifier;
+    private final int lineNumber;
+    private final long duration;
+    private final long expected;
+    private final boolean running;
+
+    FollowAlert(String type, String identifier, int lineNumber, long duration, long expected, boolean running) {
+        this.type = type;
+        this.identifier = identifier;
+        this.lineNumber = lineNumber;
+        this.duration = duration;
+        this.expected = expected;
+        this.running = running;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return 條目開始的行號
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return 執行時間（毫秒）；仍在執行時為目前已經過的時間
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return 基準中預期的最長執行時間（毫秒）
+     */
+    public long getExpected() {
+        return expected;
+    }
+
+    /**
+     * @return 條目是否仍在執行
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s - %s (line %d): %d ms%s, expected <= %d ms",
+                type, identifier, lineNumber, duration, running ? " and still running" : "", expected);
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.core.tool.baseline;
+
+import com.example.core.cli.TraceToolCli;
+import com.example.core.tool.analyzer.TraceAnalyzer;
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.analyzer.TraceSession;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 跟隨一個仍在寫入的跟蹤文件，即時將每個完成的條目與基準比較。
+ *
+ * <p>每次讀取只讀入上次讀取位置之後新增的位元組；不完整的最後一行保留到下次讀取，
+ * 各分析器的 {@link TraceSession} 保存尚未結束的條目，因此不會重新解析已讀過的內容。
+ * 多個分析器報告的同一條目（相同的開始行、類型和標識符）只比較一次。</p>
+ *
+ * <p>條目的預期最長時間為基準中第 {@value #EXPECTED_PERCENTILE} 百分位數的估計值，
+ * 且至少比基準平均時間多 {@value #MIN_EXCESS_MS} ms。條目完成時超過預期即發出警報；
+ * 仍在執行的條目若已超過預期（以跟蹤文件中最新的時間計算），也會立即發出一次警報，
+ * 不必等到幾小時後步驟結束。基準中沒有的標識符不會發出警報。</p>
+ */
+@Slf4j
+public class TraceFollower {
+
+    /**
+     * 預期時間所用的百分位數
+     */
+    public static final int EXPECTED_PERCENTILE = 99;
+
+    /**
+     * 超出基準平均時間的最小差距（毫秒），避免非常短的條目因正常波動發出警報
+     */
+    public static final long MIN_EXCESS_MS = 100;
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final Path traceFile;
+    private final List<TraceAnalyzer> analyzers;
+    private final BaselineProfile baseline;
+    private final Consumer<FollowAlert> alertListener;
+
+    private List<TraceSession> sessions;
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final List<TraceEntry> lineCompleted = new ArrayList<>();
+    private final Set<String> runningAlerts = new HashSet<>();
+    private long offset;
+    private int lineNumber;
+    private long latestTime;
+    private long completedCount;
+    private long alertCount;
+    private volatile boolean stopped;
+
+    /**
+     * @param traceFile     要跟隨的跟蹤文件
+     * @param analyzers     分析器
+     * @param baseline      比較用的基準
+     * @param alertListener 接收警報
+     */
+    public TraceFollower(Path traceFile, List<TraceAnalyzer> analyzers, BaselineProfile baseline,
+                         Consumer<FollowAlert> alertListener) {
+        this.traceFile = traceFile;
+        this.analyzers = analyzers;
+        this.baseline = baseline;
+        this.alertListener = alertListener;
+        this.sessions = openSessions();
+    }
+
+    /**
+     * 讀取並處理上次讀取之後新增的內容。文件變小時（例如被重新建立）從頭開始。
+     *
+     * @return 本次完成的條目數
+     * @throws IOException 如果文件無法讀取
+     */
+    public synchronized int poll() throws IOException {
+        if (!Files.exists(traceFile)) {
+            return 0;
+        }
+
+        long before = completedCount;
+        try (FileChannel channel = FileChannel.open(traceFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                log.warn("跟蹤文件 {} 變小了，從頭重新讀取", traceFile);
+                reset();
+            }
+
+            while (offset < size) {
+                readBuffer.clear();
+                int read = channel.read(readBuffer, offset);
+                if (read <= 0) {
+                    break;
+                }
+                offset += read;
+                processBytes(readBuffer.array(), read);
+            }
+        }
+
+        checkRunningEntries();
+        return (int) (completedCount - before);
+    }
+
+    /**
+     * 以WatchService監視文件所在的目錄，每當文件變化或每隔一段時間讀取新內容，直到調用 {@link #stop()}。
+     *
+     * @param pollIntervalMillis 沒有文件事件時的讀取間隔（毫秒）；部分文件系統的事件會延遲或遺失
+     * @throws IOException          如果文件無法讀取
+     * @throws InterruptedException 如果線程被中斷
+     */
+    public void follow(long pollIntervalMillis) throws IOException, InterruptedException {
+        Path directory = traceFile.toAbsolutePath().getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            log.info("開始跟隨 {}，與基準 {} 比較", traceFile, baseline.getProgramName());
+
+            poll();
+            while (!stopped) {
+                WatchKey key = watcher.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    // 目錄中任何變化都只需要檢查一次文件大小，事件內容本身不重要
+                    key.pollEvents();
+                    key.reset();
+                }
+                poll();
+            }
+        }
+        log.info("停止跟隨 {}：完成 {} 個條目，發出 {} 個警報", traceFile, completedCount, alertCount);
+    }
+
+    /**
+     * 讓 {@link #follow} 在下一次讀取後返回
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return 目前為止完成的條目數
+     */
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @return 目前為止發出的警報數
+     */
+    public synchronized long getAlertCount() {
+        return alertCount;
+    }
+
+    /**
+     * 按行切分新讀入的位元組；最後一個換行符之後的位元組保留到下次讀取
+     */
+    private void processBytes(byte[] bytes, int length) {
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+                String line;
+                if (partialLine.size() > 0) {
+                    partialLine.write(bytes, lineStart, lineEnd - lineStart);
+                    line = partialLine.toString(StandardCharsets.UTF_8);
+                    partialLine.reset();
+                    if (line.endsWith("\r")) {
+                        line = line.substring(0, line.length() - 1);
+                    }
+                } else {
+                    line = new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+                }
+                processLine(line);
+                lineStart = i + 1;
+            }
+        }
+        partialLine.write(bytes, lineStart, length - lineStart);
+    }
+
+    private void processLine(String line) {
+        lineNumber++;
+        lineCompleted.clear();
+        for (TraceSession session : sessions) {
+            session.processLine(line, lineNumber, this::addCompleted);
+        }
+        for (TraceEntry entry : lineCompleted) {
+            completedCount++;
+            latestTime = Math.max(latestTime, entry.endTime);
+            runningAlerts.remove(instanceKey(entry));
+            check(entry, entry.duration(), false);
+        }
+    }
+
+    /**
+     * 多個分析器可能報告同一條目，只保留第一個
+     */
+    private void addCompleted(TraceEntry entry) {
+        for (TraceEntry existing : lineCompleted) {
+            if (existing.lineNumber == entry.lineNumber && existing.type.equals(entry.type)
+                    && existing.identifier.equals(entry.identifier)) {
+                return;
+            }
+        }
+        lineCompleted.add(entry);
+    }
+
+    /**
+     * 檢查仍在執行的條目是否已超過預期時間，每個條目只警報一次
+     */
+    private void checkRunningEntries() {
+        for (TraceSession session : sessions) {
+            for (TraceEntry entry : session.openEntries()) {
+                latestTime = Math.max(latestTime, entry.startTime);
+            }
+        }
+        for (TraceSession session : sessions) {
+            for (TraceEntry entry : session.openEntries()) {
+                String key = instanceKey(entry);
+                if (!runningAlerts.contains(key) && check(entry, latestTime - entry.startTime, true)) {
+                    runningAlerts.add(key);
+                }
+            }
+        }
+    }
+
+    private boolean check(TraceEntry entry, long duration, boolean running) {
+        int index = baseline.indexOf(entry.identifier);
+        if (index < 0) {
+            return false;
+        }
+        long expected = expectedDuration(index);
+        if (duration <= expected) {
+            return false;
+        }
+
+        FollowAlert alert = new FollowAlert(entry.type, entry.identifier, entry.lineNumber, duration, expected, running);
+        alertCount++;
+        log.warn("超出基準預期: {}", alert);
+        alertListener.accept(alert);
+        return true;
+    }
+
+    private long expectedDuration(int index) {
+        long percentile = baseline.percentile(index, EXPECTED_PERCENTILE / 100.0);
+        return Math.max(percentile, Math.round(baseline.mean(index)) + MIN_EXCESS_MS);
+    }
+
+    private void reset() {
+        sessions = openSessions();
+        partialLine.reset();
+        runningAlerts.clear();
+        offset = 0;
+        lineNumber = 0;
+        latestTime = 0;
+    }
+
+    private List<TraceSession> openSessions() {
+        List<TraceSession> opened = new ArrayList<>(analyzers.size());
+        for (TraceAnalyzer analyzer : analyzers) {
+            opened.add(analyzer.openSession());
+        }
+        return opened;
+    }
+
+    private static String instanceKey(TraceEntry entry) {
+        return entry.lineNumber + ":" + entry.type + ":" + entry.identifier;
+    }
+
+    /**
+     * 主方法，與 {@code trace-tool follow} 相同：跟隨一個正在執行的AE程序的跟蹤文件，並與該程序的基準比較。
+     *
+     * @param args 跟蹤文件和選項
+     */
+    public static void main(String[] args) {
+        TraceToolCli.runAndExit(args, "follow");
+    }
+}
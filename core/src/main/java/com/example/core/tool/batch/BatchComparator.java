@@ -0,0 +1,368 @@
+package com.example.core.tool.batch;
+
+import com.example.core.cli.TraceToolCli;
+import com.example.core.tool.AETraceComparator;
+import com.example.core.tool.SQRTraceComparator;
+import com.example.core.tool.TopKRegressions;
+import com.example.core.tool.analyzer.TraceAnalyzerFactory;
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.analyzer.TraceStreams;
+import com.example.core.tool.report.ComparisonRow;
+import com.example.core.tool.report.ComparisonSink;
+import com.example.core.tool.report.ComparisonSinks;
+import com.example.core.tool.report.CsvComparisonSink;
+import com.example.core.tool.report.FanOutComparisonSink;
+import com.example.core.tool.report.MarkdownComparisonSink;
+import com.example.core.tool.rule.RuleSet;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 一次比較數百個程序在兩個環境（例如上一個和目前的版本）中的跟蹤文件，最後輸出一份匯總報告。
+ *
+ * <p>程序按兩個跟蹤文件的估計大小由大到小開始，最大的程序最先運行，不會在最後單獨拖長整個批次。
+ * 比較在 {@link ForkJoinPool} 中運行，每個程序的第二個環境在分出的子任務中解析，
+ * 空閒的線程會竊取這些子任務，少數大程序也能用上所有線程。</p>
+ *
+ * <p>同時運行的程序數不超過線程數，它們估計使用的堆記憶體總和也不超過 {@link MemoryBudget}：
+ * 每個程序按跟蹤文件解壓後大小的 {@value #DEFAULT_HEAP_PER_TRACE_BYTE} 倍估計，預算不足時等待其他程序結束；
+ * 超過整個預算的程序單獨運行。預算可以與其他比較共用。</p>
+ *
+ * <p>每個程序的報告寫入輸出目錄下以程序名稱命名的目錄，匯總報告為輸出目錄中的
+ * {@code batch_summary.csv} 和 {@code batch_summary.md}。一個程序失敗不影響其他程序。</p>
+ */
+@Slf4j
+public class BatchComparator {
+
+    /**
+     * 每個跟蹤位元組估計需要的堆記憶體位元組數
+     */
+    public static final double DEFAULT_HEAP_PER_TRACE_BYTE = 3;
+
+    private static final String AE_DEFAULT_TRACE_PARAMS = "-TRACE 3 -TOOLSTRACEPC 4044 -TOOLSTRACESQL 31";
+    private static final String SQR_DEFAULT_TRACE_PARAMS = "-S -TIMING -debugfgt -E";
+
+    private final String env1Name;
+    private final String env2Name;
+    private final RuleSet rules;
+    private final Set<ComparisonSinks.Format> formats;
+    private final int parallelism;
+    private final MemoryBudget memoryBudget;
+
+    /**
+     * @param env1Name          第一個環境的名稱
+     * @param env2Name          第二個環境的名稱
+     * @param rules             差異標記規則
+     * @param formats           每個程序產生的報告格式
+     * @param parallelism       線程數，也是同時運行的程序數上限
+     * @param memoryBudgetBytes 同時運行的程序估計使用的堆記憶體上限
+     */
+    public BatchComparator(String env1Name, String env2Name, RuleSet rules, Set<ComparisonSinks.Format> formats,
+                           int parallelism, long memoryBudgetBytes) {
+        this(env1Name, env2Name, rules, formats, parallelism, new MemoryBudget(memoryBudgetBytes));
+    }
+
+    /**
+     * @param env1Name     第一個環境的名稱
+     * @param env2Name     第二個環境的名稱
+     * @param rules        差異標記規則
+     * @param formats      每個程序產生的報告格式
+     * @param parallelism  線程數，也是同時運行的程序數上限
+     * @param memoryBudget 同時運行的程序估計使用的堆記憶體預算，可與其他比較共用
+     */
+    public BatchComparator(String env1Name, String env2Name, RuleSet rules, Set<ComparisonSinks.Format> formats,
+                           int parallelism, MemoryBudget memoryBudget) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("線程數必須大於0: " + parallelism);
+        }
+        this.env1Name = env1Name;
+        this.env2Name = env2Name;
+        this.rules = rules;
+        this.formats = EnumSet.copyOf(formats);
+        // 批次中的程序以CSV報告為準，匯總報告指向它
+        this.formats.add(ComparisonSinks.Format.CSV);
+        this.parallelism = parallelism;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * 比較清單中的所有程序，並寫出匯總報告。
+     *
+     * @param manifest  程序清單
+     * @param outputDir 報告的輸出目錄
+     * @param listener  每個程序結束時在運行它的線程中調用，可為null
+     * @return 每個程序的結果，按清單的順序
+     * @throws IOException          如果輸出目錄或匯總報告無法寫入
+     * @throws InterruptedException 如果等待時被中斷；運行中的程序被中斷，之後的程序不再開始
+     */
+    public List<BatchResult> run(BatchManifest manifest, Path outputDir, Consumer<BatchResult> listener)
+            throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        List<BatchPair> pairs = manifest.getPairs();
+        Integer[] order = new Integer[pairs.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> pairs.get(i).getTraceBytes()).reversed());
+
+        Semaphore slots = new Semaphore(parallelism);
+        List<AtomicBoolean> claims = new ArrayList<>(pairs.size());
+        List<MemoryBudget.Lease> leases = new ArrayList<>(pairs.size());
+        BatchResult[] results = new BatchResult[pairs.size()];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long started = System.currentTimeMillis();
+        log.info("開始批次比較 {} 個程序：{} 個線程，記憶體預算 {} MB", pairs.size(), parallelism, memoryBudget.getTotalMb());
+        try {
+            for (int index : order) {
+                BatchPair pair = pairs.get(index);
+                slots.acquire();
+                MemoryBudget.Lease lease = memoryBudget.acquire(estimatedHeapBytes(pair));
+                AtomicBoolean claimed = new AtomicBoolean();
+                claims.add(claimed);
+                leases.add(lease);
+                pool.execute(() -> {
+                    if (!claimed.compareAndSet(false, true)) {
+                        return;
+                    }
+                    try {
+                        results[index] = compare(pair, outputDir);
+                        if (listener != null) {
+                            listener.accept(results[index]);
+                        }
+                    } finally {
+                        lease.close();
+                        slots.release();
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            // 被中斷時不再開始新的程序，運行中的程序在下一行結果時停止
+            pool.shutdownNow();
+            // 已提交但未開始的程序不會再運行，它們保留的記憶體要歸還給共用的預算
+            for (int i = 0; i < claims.size(); i++) {
+                if (claims.get(i).compareAndSet(false, true)) {
+                    leases.get(i).close();
+                }
+            }
+        }
+
+        List<BatchResult> ordered = Arrays.asList(results);
+        writeSummary(outputDir, ordered, manifest.getUnmatched());
+        log.info("批次比較完成：{} 個程序，{} ms", pairs.size(), System.currentTimeMillis() - started);
+        return ordered;
+    }
+
+    /**
+     * @return 比較一個程序估計需要的堆記憶體
+     */
+    static long estimatedHeapBytes(BatchPair pair) {
+        return MemoryBudget.estimatedHeapBytes(pair.getTraceBytes());
+    }
+
+    private BatchResult compare(BatchPair pair, Path outputDir) {
+        long started = System.currentTimeMillis();
+        String directory = pair.getProgram().replaceAll("[^A-Za-z0-9._-]", "_");
+        String report = directory + "/" + pair.getTool().name().toLowerCase(Locale.ROOT) + "_trace_comparison_result.csv";
+        SummarySink summary = new SummarySink();
+        try {
+            Files.createDirectories(outputDir.resolve(directory));
+            String outputPath = outputDir.resolve(report).toString();
+            String traceParams = pair.getTraceParams();
+            try (ComparisonSink sink = new FanOutComparisonSink(List.of(
+                    ComparisonSinks.create(outputPath, pair.getTool().name(), formats, false), summary))) {
+                if (pair.getTool() == BatchPair.Tool.AE) {
+                    String params = traceParams != null ? traceParams : AE_DEFAULT_TRACE_PARAMS;
+                    // 每個環境使用自己的分析器，兩個文件可以同時解析
+                    ForkJoinTask<List<TraceEntry>> env2 = ForkJoinTask.adapt(() ->
+                            parse(pair.getEnv2File(), reader -> AETraceComparator.parseTraceWithMultipleAnalyzers(
+                                    reader, TraceAnalyzerFactory.createAnalyzersForParams(params)))).fork();
+                    List<TraceEntry> env1 = parse(pair.getEnv1File(), reader ->
+                            AETraceComparator.parseTraceWithMultipleAnalyzers(reader, TraceAnalyzerFactory.createAnalyzersForParams(params)));
+                    AETraceComparator.compareTraces(env1, join(env2), env1Name, env2Name, rules, sink);
+                } else {
+                    String params = traceParams != null ? traceParams : SQR_DEFAULT_TRACE_PARAMS;
+                    ForkJoinTask<List<SQRTraceComparator.TraceEntry>> env2 = ForkJoinTask.adapt(() ->
+                            parse(pair.getEnv2File(), reader -> SQRTraceComparator.parseTraceWithParams(reader, params))).fork();
+                    List<SQRTraceComparator.TraceEntry> env1 = parse(pair.getEnv1File(), reader ->
+                            SQRTraceComparator.parseTraceWithParams(reader, params));
+                    SQRTraceComparator.compareTraces(env1, join(env2), env1Name, env2Name, rules, sink);
+                }
+            }
+            log.info("程序 {} 比較完成：{} 個標記，{} ms", pair, summary.flagged, System.currentTimeMillis() - started);
+            return summary.result(pair, BatchResult.Status.SUCCEEDED, null, started, report);
+        } catch (InterruptedIOException e) {
+            return summary.result(pair, BatchResult.Status.CANCELLED, null, started, null);
+        } catch (IOException | RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                return summary.result(pair, BatchResult.Status.CANCELLED, null, started, null);
+            }
+            log.error("程序 {} 比較失敗", pair, e);
+            String error = e.getMessage() != null ? e.getMessage() : e.toString();
+            return summary.result(pair, BatchResult.Status.FAILED, error, started, null);
+        }
+    }
+
+    private static <T> T parse(Path traceFile, TraceParser<T> parser) throws IOException {
+        try (InputStream in = Files.newInputStream(traceFile);
+             BufferedReader reader = TraceStreams.newReader(in)) {
+            return parser.parse(reader);
+        }
+    }
+
+    /**
+     * 等待分出的解析子任務；子任務的IOException被ForkJoinTask包裝為RuntimeException，這裡還原
+     */
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+
+    private void writeSummary(Path outputDir, List<BatchResult> results, List<String> unmatched) throws IOException {
+        List<BatchResult> sorted = new ArrayList<>();
+        for (BatchResult result : results) {
+            if (result != null) {
+                sorted.add(result);
+            }
+        }
+        // 失敗的程序排在最前，其餘按標記數和變慢最多的毫秒數排列
+        sorted.sort(Comparator.comparing((BatchResult r) -> r.status() == BatchResult.Status.SUCCEEDED)
+                .thenComparing(Comparator.comparingLong(BatchResult::flagged).reversed())
+                .thenComparing(Comparator.comparingLong(BatchResult::worstDiff).reversed())
+                .thenComparing(BatchResult::program));
+
+        List<String> csv = new ArrayList<>();
+        csv.add("Program,Tool,Status,Env1 Bytes,Env2 Bytes,Matched,Unique,Missing,Flagged,Worst Regression,Worst Diff(ms),Elapsed(ms),Report,Error");
+        for (BatchResult r : sorted) {
+            csv.add(String.join(",", CsvComparisonSink.escape(r.program()), r.tool().name(), r.status().name(),
+                    String.valueOf(r.env1Bytes()), String.valueOf(r.env2Bytes()), String.valueOf(r.matched()),
+                    String.valueOf(r.unique()), String.valueOf(r.missing()), String.valueOf(r.flagged()),
+                    CsvComparisonSink.escape(r.worstIdentifier() != null ? r.worstIdentifier() : ""),
+                    r.worstIdentifier() != null ? String.valueOf(r.worstDiff()) : "",
+                    String.valueOf(r.elapsedMillis()), CsvComparisonSink.escape(r.report() != null ? r.report() : ""),
+                    CsvComparisonSink.escape(r.error() != null ? r.error() : "")));
+        }
+        Files.write(outputDir.resolve("batch_summary.csv"), csv);
+
+        long succeeded = sorted.stream().filter(r -> r.status() == BatchResult.Status.SUCCEEDED).count();
+        long failed = sorted.stream().filter(r -> r.status() == BatchResult.Status.FAILED).count();
+        long flaggedPrograms = sorted.stream().filter(r -> r.flagged() > 0).count();
+        List<String> md = new ArrayList<>();
+        md.add("# Batch Trace Comparison Summary");
+        md.add("");
+        md.add("- Environments: " + env1Name + " vs " + env2Name);
+        md.add("- Programs compared: " + sorted.size() + " (" + succeeded + " succeeded, " + failed + " failed, "
+                + (sorted.size() - succeeded - failed) + " cancelled)");
+        md.add("- Programs with flagged differences: " + flaggedPrograms);
+        md.add("- Programs with a trace in only one environment: " + unmatched.size());
+        md.add("");
+        md.add("| Program | Tool | Status | Matched | Unique | Missing | Flagged | Worst Regression | Worst Diff(ms) | Report |");
+        md.add("|---|---|---|---:|---:|---:|---:|---|---:|---|");
+        for (BatchResult r : sorted) {
+            String status = r.status() == BatchResult.Status.FAILED ? "FAILED: " + MarkdownComparisonSink.cell(r.error()) : r.status().name();
+            md.add("| " + MarkdownComparisonSink.cell(r.program()) + " | " + r.tool() + " | " + status + " | " + r.matched() + " | "
+                    + r.unique() + " | " + r.missing() + " | " + r.flagged() + " | "
+                    + (r.worstIdentifier() != null ? MarkdownComparisonSink.cell(r.worstIdentifier()) : "") + " | "
+                    + (r.worstIdentifier() != null ? r.worstDiff() : "") + " | "
+                    + (r.report() != null ? "[" + r.report() + "](" + r.report() + ")" : "") + " |");
+        }
+        if (!unmatched.isEmpty()) {
+            md.add("");
+            md.add("## Programs With a Trace in Only One Environment");
+            md.add("");
+            for (String program : unmatched) {
+                md.add("- " + MarkdownComparisonSink.cell(program));
+            }
+        }
+        Files.write(outputDir.resolve("batch_summary.md"), md);
+        log.info("批次匯總報告已輸出到 {}", outputDir.resolve("batch_summary.md"));
+    }
+
+    @FunctionalInterface
+    private interface TraceParser<T> {
+        T parse(BufferedReader reader) throws IOException;
+    }
+
+    /**
+     * 統計一個程序的比較結果；比較線程被中斷時停止比較
+     */
+    private static final class SummarySink implements ComparisonSink {
+        private long matched;
+        private long unique;
+        private long missing;
+        private long flagged;
+        private TopKRegressions.Regression worst;
+
+        @Override
+        public void begin(String env1Name, String env2Name) {
+        }
+
+        @Override
+        public void accept(ComparisonRow row) throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("批次比較已中斷");
+            }
+            switch (row.getStatus()) {
+                case MATCHED -> {
+                    matched++;
+                    if (!row.getFlag().isEmpty()) {
+                        flagged++;
+                    }
+                }
+                case UNIQUE -> unique++;
+                case MISSING -> missing++;
+            }
+        }
+
+        @Override
+        public void end(TopKRegressions topRegressions) {
+            List<TopKRegressions.Regression> regressions = topRegressions.byAbsoluteDelta();
+            worst = regressions.isEmpty() ? null : regressions.get(0);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        BatchResult result(BatchPair pair, BatchResult.Status status, String error, long started, String report) {
+            return new BatchResult(pair.getProgram(), pair.getTool(), status, error, pair.getEnv1Bytes(), pair.getEnv2Bytes(),
+                    matched, unique, missing, flagged, worst != null ? worst.getIdentifier() : null,
+                    worst != null ? worst.diff() : 0, System.currentTimeMillis() - started, report);
+        }
+    }
+
+    /**
+     * 主方法，與 {@code trace-tool batch} 相同，參數見 {@link TraceToolCli}。
+     *
+     * @param args 清單文件或兩個跟蹤目錄，以及選項
+     */
+    public static void main(String[] args) {
+        TraceToolCli.runAndExit(args, "batch");
+    }
+}
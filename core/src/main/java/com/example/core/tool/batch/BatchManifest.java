@@ -0,0 +1,204 @@
+package com.example.core.tool.batch;
+
+import com.example.core.tool.analyzer.TraceStreams;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * 批次比較的程序清單，來自清單文件或兩個跟蹤目錄。
+ *
+ * <p>清單文件每行一個程序：{@code 程序名稱,工具,第一個環境的跟蹤文件,第二個環境的跟蹤文件[,trace參數]}，
+ * 工具為 AE、SQR 或留空（由文件內容判斷），相對路徑相對於清單文件所在的目錄；空行和以 # 開頭的行被忽略。
+ * 跟蹤文件不存在的程序記錄在 {@link #getUnmatched()} 中。</p>
+ *
+ * <p>以兩個目錄建立時，按程序名稱配對兩個目錄中的文件：程序名稱是文件名去掉 .gz/.zip 和 .log/.trc/.txt
+ * 副檔名後的部分，不區分大小寫。只存在於一個目錄中的程序記錄在 {@link #getUnmatched()} 中，不參與比較。</p>
+ */
+@Slf4j
+public final class BatchManifest {
+
+    /**
+     * 判斷工具時最多讀取的行數
+     */
+    private static final int DETECT_LINES = 200;
+
+    private final List<BatchPair> pairs;
+    private final List<String> unmatched;
+
+    public BatchManifest(List<BatchPair> pairs, List<String> unmatched) {
+        this.pairs = List.copyOf(pairs);
+        this.unmatched = List.copyOf(unmatched);
+    }
+
+    /**
+     * @return 需要比較的程序，按清單或程序名稱的順序
+     */
+    public List<BatchPair> getPairs() {
+        return pairs;
+    }
+
+    /**
+     * @return 只在一個環境中有跟蹤文件的程序，例如 "PROG1 (只有第一個環境)"
+     */
+    public List<String> getUnmatched() {
+        return unmatched;
+    }
+
+    /**
+     * 讀取清單文件。
+     *
+     * @param manifest 清單文件
+     * @return 程序清單
+     * @throws IOException              如果清單或其中的跟蹤文件無法讀取
+     * @throws IllegalArgumentException 如果某一行的格式不正確或程序名稱重複
+     */
+    public static BatchManifest read(Path manifest) throws IOException {
+        Path base = manifest.toAbsolutePath().getParent();
+        List<BatchPair> pairs = new ArrayList<>();
+        List<String> unmatched = new ArrayList<>();
+        Set<String> programs = new HashSet<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] fields = trimmed.split(",", 5);
+            if (fields.length < 4) {
+                throw new IllegalArgumentException("清單第 " + lineNumber + " 行應為 程序,工具,文件1,文件2[,trace參數]: " + line);
+            }
+            String program = fields[0].trim();
+            if (!programs.add(program.toUpperCase(Locale.ROOT))) {
+                throw new IllegalArgumentException("清單第 " + lineNumber + " 行的程序名稱重複: " + program);
+            }
+            Path env1 = base.resolve(fields[2].trim());
+            Path env2 = base.resolve(fields[3].trim());
+            String traceParams = fields.length == 5 && !fields[4].isBlank() ? fields[4].trim() : null;
+            // 某個程序缺少跟蹤文件時不影響其他程序
+            boolean hasEnv1 = Files.isRegularFile(env1);
+            boolean hasEnv2 = Files.isRegularFile(env2);
+            if (!hasEnv1 && !hasEnv2) {
+                unmatched.add(program + " (兩個環境都沒有)");
+            } else if (!hasEnv1) {
+                unmatched.add(program + " (只有第二個環境)");
+            } else if (!hasEnv2) {
+                unmatched.add(program + " (只有第一個環境)");
+            } else {
+                pairs.add(pair(program, tool(fields[1].trim(), env1, lineNumber), env1, env2, traceParams));
+            }
+        }
+        log.info("從清單 {} 讀取了 {} 個程序，{} 個程序缺少跟蹤文件", manifest, pairs.size(), unmatched.size());
+        return new BatchManifest(pairs, unmatched);
+    }
+
+    /**
+     * 按程序名稱配對兩個目錄中的跟蹤文件，工具由文件內容判斷。
+     *
+     * @param env1Dir 第一個環境的跟蹤目錄
+     * @param env2Dir 第二個環境的跟蹤目錄
+     * @return 程序清單，按程序名稱排序
+     * @throws IOException 如果目錄或跟蹤文件無法讀取
+     */
+    public static BatchManifest match(Path env1Dir, Path env2Dir) throws IOException {
+        Map<String, Path> env1Files = traceFiles(env1Dir);
+        Map<String, Path> env2Files = traceFiles(env2Dir);
+        List<BatchPair> pairs = new ArrayList<>();
+        List<String> unmatched = new ArrayList<>();
+        for (Map.Entry<String, Path> entry : env1Files.entrySet()) {
+            Path env2 = env2Files.get(entry.getKey());
+            if (env2 == null) {
+                unmatched.add(entry.getKey() + " (只有第一個環境)");
+            } else {
+                pairs.add(pair(entry.getKey(), detectTool(entry.getValue()), entry.getValue(), env2, null));
+            }
+        }
+        for (String program : env2Files.keySet()) {
+            if (!env1Files.containsKey(program)) {
+                unmatched.add(program + " (只有第二個環境)");
+            }
+        }
+        log.info("在 {} 和 {} 中配對了 {} 個程序，{} 個程序只有一個環境", env1Dir, env2Dir, pairs.size(), unmatched.size());
+        return new BatchManifest(pairs, unmatched);
+    }
+
+    /**
+     * @param fileName 跟蹤文件名稱，例如 "PAYROLL.log.gz"
+     * @return 程序名稱，例如 "PAYROLL"
+     */
+    public static String programName(String fileName) {
+        String name = fileName;
+        for (String suffix : List.of(".gz", ".zip", ".log", ".trc", ".txt")) {
+            if (name.toLowerCase(Locale.ROOT).endsWith(suffix)) {
+                name = name.substring(0, name.length() - suffix.length());
+            }
+        }
+        return name.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * 以文件開頭的內容判斷跟蹤文件由哪個工具產生：出現SQR的開始行時為SQR，否則為AE。壓縮的文件先解壓。
+     *
+     * @param traceFile 跟蹤文件
+     * @return 比較工具
+     * @throws IOException 如果文件無法讀取
+     */
+    public static BatchPair.Tool detectTool(Path traceFile) throws IOException {
+        try (InputStream in = Files.newInputStream(traceFile);
+             BufferedReader reader = TraceStreams.newReader(in)) {
+            int lines = 0;
+            for (String line = reader.readLine(); line != null && lines < DETECT_LINES; line = reader.readLine()) {
+                if (line.startsWith("SQR开始执行")) {
+                    return BatchPair.Tool.SQR;
+                }
+                lines++;
+            }
+        }
+        return BatchPair.Tool.AE;
+    }
+
+    private static BatchPair.Tool tool(String value, Path env1, int lineNumber) throws IOException {
+        if (value.isEmpty()) {
+            return detectTool(env1);
+        }
+        try {
+            return BatchPair.Tool.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("清單第 " + lineNumber + " 行的工具應為 AE、SQR 或留空: " + value);
+        }
+    }
+
+    private static BatchPair pair(String program, BatchPair.Tool tool, Path env1, Path env2, String traceParams) throws IOException {
+        // 壓縮的跟蹤文件按解壓後的大小估計記憶體和排序
+        return new BatchPair(program, tool, env1, env2, traceParams,
+                TraceStreams.uncompressedSize(env1), TraceStreams.uncompressedSize(env2));
+    }
+
+    private static Map<String, Path> traceFiles(Path dir) throws IOException {
+        Map<String, Path> files = new TreeMap<>();
+        try (Stream<Path> entries = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) entries.filter(Files::isRegularFile).sorted()::iterator) {
+                Path previous = files.put(programName(file.getFileName().toString()), file);
+                if (previous != null) {
+                    throw new IllegalArgumentException("目錄 " + dir + " 中有多個同名程序的跟蹤文件: "
+                            + previous.getFileName() + "、" + file.getFileName());
+                }
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.core.tool.batch;
+
+import java.nio.file.Path;
+
+/**
+ * 批次比較中的一個程序：同一個AE或SQR程序在兩個環境中的跟蹤文件。
+ */
+public final class BatchPair {
+
+    /**
+     * 比較工具
+     */
+    public enum Tool {
+        AE,
+        SQR
+    }
+
+    /**
+     * 壓縮的跟蹤文件解壓後大約的倍數，用於估計解析所需的記憶體
+     */
+    private static final int COMPRESSION_RATIO = 8;
+
+    private final String program;
+    private final Tool tool;
+    private final Path env1File;
+    private final Path env2File;
+    private final String traceParams;
+    private final long env1Bytes;
+    private final long env2Bytes;
+
+    /**
+     * @param program     程序名稱，同時是報告目錄的名稱
+     * @param tool        比較工具
+     * @param env1File    第一個環境的跟蹤文件
+     * @param env2File    第二個環境的跟蹤文件
+     * @param traceParams 產生跟蹤文件時使用的trace參數，為null時使用工具的默認參數
+     * @param env1Bytes   第一個環境的跟蹤文件大小
+     * @param env2Bytes   第二個環境的跟蹤文件大小
+     */
+    public BatchPair(String program, Tool tool, Path env1File, Path env2File, String traceParams,
+                     long env1Bytes, long env2Bytes) {
+        this.program = program;
+        this.tool = tool;
+        this.env1File = env1File;
+        this.env2File = env2File;
+        this.traceParams = traceParams;
+        this.env1Bytes = env1Bytes;
+        this.env2Bytes = env2Bytes;
+    }
+
+    public String getProgram() {
+        return program;
+    }
+
+    public Tool getTool() {
+        return tool;
+    }
+
+    public Path getEnv1File() {
+        return env1File;
+    }
+
+    public Path getEnv2File() {
+        return env2File;
+    }
+
+    public String getTraceParams() {
+        return traceParams;
+    }
+
+    public long getEnv1Bytes() {
+        return env1Bytes;
+    }
+
+    public long getEnv2Bytes() {
+        return env2Bytes;
+    }
+
+    /**
+     * @return 兩個跟蹤文件解壓後的估計總大小，批次按此由大到小開始
+     */
+    public long getTraceBytes() {
+        return uncompressed(env1File, env1Bytes) + uncompressed(env2File, env2Bytes);
+    }
+
+    private static long uncompressed(Path file, long bytes) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".gz") || name.endsWith(".zip") ? bytes * COMPRESSION_RATIO : bytes;
+    }
+
+    @Override
+    public String toString() {
+        return program + " (" + tool + ")";
+    }
+}
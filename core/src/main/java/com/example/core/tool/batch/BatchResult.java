@@ -0,0 +1,33 @@
+package com.example.core.tool.batch;
+
+/**
+ * 批次比較中一個程序的結果摘要。
+ *
+ * @param program         程序名稱
+ * @param tool            比較工具
+ * @param status          比較的結果
+ * @param error           失敗原因，成功時為null
+ * @param env1Bytes       第一個環境的跟蹤文件大小
+ * @param env2Bytes       第二個環境的跟蹤文件大小
+ * @param matched         兩個環境都有的執行數
+ * @param unique          只存在於第二個環境的執行數
+ * @param missing         只存在於第一個環境的執行數
+ * @param flagged         被規則標記（例如ALERT）的執行數
+ * @param worstIdentifier 變慢最多的條目，沒有變慢的條目時為null
+ * @param worstDiff       變慢最多的條目多出的毫秒數
+ * @param elapsedMillis   解析和比較所用的時間
+ * @param report          CSV報告相對於批次輸出目錄的路徑，失敗時為null
+ */
+public record BatchResult(String program, BatchPair.Tool tool, Status status, String error,
+                          long env1Bytes, long env2Bytes, long matched, long unique, long missing, long flagged,
+                          String worstIdentifier, long worstDiff, long elapsedMillis, String report) {
+
+    /**
+     * 一個程序的比較結果
+     */
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+}
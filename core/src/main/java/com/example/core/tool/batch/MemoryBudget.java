@@ -0,0 +1,103 @@
+package com.example.core.tool.batch;
+
+import com.example.core.tool.analyzer.TraceStreams;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * 同時運行的比較估計使用的堆記憶體預算，以MB為單位。
+ *
+ * <p>伺服器中批次的程序和單獨提交的比較作業共用同一個實例，兩者同時運行時估計的堆記憶體總和仍不超過預算。
+ * 預算不足時按申請的順序等待；需要的記憶體超過整個預算時按整個預算計算，單獨運行而不是永遠等待。</p>
+ */
+public final class MemoryBudget {
+
+    private static final long MIB = 1 << 20;
+
+    private final int totalMb;
+    private final Semaphore available;
+
+    /**
+     * @param bytes 預算的位元組數
+     * @throws IllegalArgumentException 如果預算小於1MB
+     */
+    public MemoryBudget(long bytes) {
+        if (bytes < MIB) {
+            throw new IllegalArgumentException("記憶體預算至少為1MB: " + bytes);
+        }
+        this.totalMb = (int) Math.min(Integer.MAX_VALUE, bytes / MIB);
+        // 公平模式，大的申請不會被之後的小申請一直搶先
+        this.available = new Semaphore(totalMb, true);
+    }
+
+    /**
+     * @param megabytes 預算的MB數，為0時使用最大堆記憶體的六成
+     * @return 記憶體預算
+     */
+    public static MemoryBudget ofMegabytes(long megabytes) {
+        return new MemoryBudget(megabytes > 0 ? megabytes * MIB : (long) (Runtime.getRuntime().maxMemory() * 0.6));
+    }
+
+    /**
+     * @param traceBytes 跟蹤內容解壓後的位元組數；壓縮的文件用 {@link TraceStreams#uncompressedSize} 取得，
+     *                   不能用壓縮文件本身的大小，否則預算會按壓縮比少算
+     * @return 比較這些跟蹤內容估計需要的堆記憶體
+     */
+    public static long estimatedHeapBytes(long traceBytes) {
+        return (long) (traceBytes * BatchComparator.DEFAULT_HEAP_PER_TRACE_BYTE);
+    }
+
+    /**
+     * 等待預算足夠後保留估計需要的記憶體。
+     *
+     * @param estimatedBytes 估計需要的堆記憶體位元組數
+     * @return 保留的記憶體，關閉時歸還
+     * @throws InterruptedException 如果等待時被中斷
+     */
+    public Lease acquire(long estimatedBytes) throws InterruptedException {
+        int permits = (int) Math.max(1, Math.min(totalMb, estimatedBytes / MIB));
+        available.acquire(permits);
+        return new Lease(permits);
+    }
+
+    /**
+     * @return 預算的MB數
+     */
+    public int getTotalMb() {
+        return totalMb;
+    }
+
+    /**
+     * @return 目前未被保留的MB數
+     */
+    public int getAvailableMb() {
+        return available.availablePermits();
+    }
+
+    /**
+     * 一次 {@link #acquire} 保留的記憶體，關閉多次只歸還一次
+     */
+    public final class Lease implements AutoCloseable {
+        private final int permits;
+        private boolean released;
+
+        private Lease(int permits) {
+            this.permits = permits;
+        }
+
+        /**
+         * @return 保留的MB數
+         */
+        public int getMegabytes() {
+            return permits;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                available.release(permits);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.core.tool.history;
+
+/**
+ * 一個標識符在一次運行中的彙總，是時間序列中的一個點。
+ */
+public final class HistoryPoint {
+    private final long runTime;
+    private final String program;
+    private final String environment;
+    private final long count;
+    private final long total;
+    private final long max;
+
+    HistoryPoint(long runTime, String program, String environment, long count, long total, long max) {
+        this.runTime = runTime;
+        this.program = program;
+        this.environment = environment;
+        this.count = count;
+        this.total = total;
+        this.max = max;
+    }
+
+    /**
+     * @return 運行時間（epoch毫秒）
+     */
+    public long getRunTime() {
+        return runTime;
+    }
+
+    public String getProgram() {
+        return program;
+    }
+
+    public String getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * @return 該次運行中的執行次數
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return 該次運行中的總執行時間（毫秒）
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return 該次運行中最長的一次執行時間（毫秒）
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return 平均執行時間（毫秒）
+     */
+    public double getMean() {
+        return count > 0 ? (double) total / count : 0;
+    }
+}
@@ -0,0 +1,447 @@
+package com.example.core.tool.history;
+
+import com.example.core.tool.analyzer.TraceEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以本地文件保存每次運行中各標識符的執行時間彙總，不需要資料庫伺服器。
+ *
+ * <p>目錄中有四個文件：</p>
+ * <ul>
+ *   <li>{@code identifiers.dat}：只追加，每個新標識符寫入一次，位置即標識符編號</li>
+ *   <li>{@code runs.dat}：只追加，每次運行一筆：運行時間、程序、環境、第一筆記錄的編號和記錄數</li>
+ *   <li>{@code records.dat}：只追加，固定 {@value #RECORD_SIZE} 位元組的記錄：
+ *       標識符編號、運行編號、執行次數、總時間、最長時間、同一標識符上一筆記錄的編號</li>
+ *   <li>{@code heads.idx}：每個標識符最新一筆記錄的編號，每批寫入後整個替換</li>
+ * </ul>
+ *
+ * <p>同一標識符的記錄以「上一筆記錄的編號」串成鏈，讀取一個標識符的時間序列時只需從
+ * {@code heads.idx} 中的最新記錄沿鏈定位讀取，不必掃描整個歷史。每次運行的所有記錄先在記憶體中
+ * 組成一批，再一次追加寫入並強制寫入磁碟，最後才更新索引；寫入失敗時三個文件都截回寫入前的長度，
+ * 若程序在寫入過程中中斷，下次開啟時會截掉不完整的尾部並從記錄重建索引。</p>
+ *
+ * <p>同一個目錄同時只能由一個RunHistoryStore寫入，開啟時鎖定 {@code runs.dat}，目錄已被其他實例開啟時
+ * 拋出異常；方法是同步的，可在多個線程中共用。</p>
+ */
+@Slf4j
+public class RunHistoryStore implements Closeable {
+
+    /**
+     * 每筆記錄的位元組數
+     */
+    static final int RECORD_SIZE = 4 + 4 + 8 + 8 + 8 + 8;
+
+    private static final String IDENTIFIERS_FILE = "identifiers.dat";
+    private static final String RUNS_FILE = "runs.dat";
+    private static final String RECORDS_FILE = "records.dat";
+    private static final String HEADS_FILE = "heads.idx";
+
+    private final Path directory;
+    private final FileChannel identifiersChannel;
+    private final FileChannel runsChannel;
+    private final FileChannel recordsChannel;
+
+    private final List<String> identifiers = new ArrayList<>();
+    private final List<String> types = new ArrayList<>();
+    private final Map<String, Integer> identifierIds = new HashMap<>();
+    private final List<RunInfo> runs = new ArrayList<>();
+    private long[] heads = new long[16];
+    private long recordCount;
+
+    private RunHistoryStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        identifiersChannel = openChannel(IDENTIFIERS_FILE);
+        runsChannel = openChannel(RUNS_FILE);
+        recordsChannel = openChannel(RECORDS_FILE);
+        lock(runsChannel);
+    }
+
+    /**
+     * 開啟或建立歷史目錄。
+     *
+     * @param directory 歷史目錄
+     * @return 歷史存儲
+     * @throws IOException 如果文件無法讀取或建立，或目錄已被另一個RunHistoryStore開啟
+     */
+    public static RunHistoryStore open(Path directory) throws IOException {
+        RunHistoryStore store = new RunHistoryStore(directory);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * 彙總一次運行的跟蹤條目並作為一批追加到歷史中。
+     *
+     * @param program     AE或SQR程序名稱
+     * @param environment 環境名稱
+     * @param runTime     運行時間（epoch毫秒）
+     * @param entries     跟蹤條目
+     * @return 運行編號
+     * @throws IOException 如果文件無法寫入
+     */
+    public synchronized int recordRun(String program, String environment, long runTime, List<TraceEntry> entries) throws IOException {
+        Map<String, long[]> aggregates = new LinkedHashMap<>();
+        Map<String, String> entryTypes = new HashMap<>();
+        for (TraceEntry entry : entries) {
+            // {執行次數, 總時間, 最長時間}
+            long[] aggregate = aggregates.computeIfAbsent(entry.identifier, k -> new long[3]);
+            long duration = entry.duration();
+            aggregate[0]++;
+            aggregate[1] += duration;
+            aggregate[2] = Math.max(aggregate[2], duration);
+            entryTypes.putIfAbsent(entry.identifier, entry.type);
+        }
+
+        int runIndex = runs.size();
+        long firstRecord = recordCount;
+
+        // 新標識符、記錄和運行資訊各自組成一批，每個文件只追加寫入一次
+        ByteArrayOutputStream newIdentifiers = new ByteArrayOutputStream();
+        DataOutputStream identifierOut = new DataOutputStream(newIdentifiers);
+        ByteBuffer records = ByteBuffer.allocate(aggregates.size() * RECORD_SIZE);
+        long[] newHeads = Arrays.copyOf(heads, Math.max(heads.length, identifiers.size() + aggregates.size()));
+        int identifierCount = identifiers.size();
+        List<String> pendingIdentifiers = new ArrayList<>();
+
+        long recordNumber = firstRecord;
+        for (Map.Entry<String, long[]> aggregate : aggregates.entrySet()) {
+            String identifier = aggregate.getKey();
+            Integer id = identifierIds.get(identifier);
+            if (id == null) {
+                id = identifierCount++;
+                pendingIdentifiers.add(identifier);
+                identifierOut.writeUTF(entryTypes.get(identifier));
+                identifierOut.writeUTF(identifier);
+                newHeads[id] = -1;
+            }
+            long[] values = aggregate.getValue();
+            records.putInt(id).putInt(runIndex).putLong(values[0]).putLong(values[1]).putLong(values[2]).putLong(newHeads[id]);
+            newHeads[id] = recordNumber++;
+        }
+        records.flip();
+
+        ByteArrayOutputStream runBytes = new ByteArrayOutputStream();
+        DataOutputStream runOut = new DataOutputStream(runBytes);
+        runOut.writeLong(runTime);
+        runOut.writeUTF(program);
+        runOut.writeUTF(environment);
+        runOut.writeLong(firstRecord);
+        runOut.writeInt(aggregates.size());
+
+        // 先寫入標識符和記錄，最後寫入運行資訊；運行資訊是一批寫入完成的標記
+        long identifiersEnd = identifiersChannel.size();
+        long recordsEnd = recordsChannel.size();
+        long runsEnd = runsChannel.size();
+        try {
+            writeFully(identifiersChannel, ByteBuffer.wrap(newIdentifiers.toByteArray()));
+            writeFully(recordsChannel, records);
+            identifiersChannel.force(false);
+            recordsChannel.force(false);
+            writeFully(runsChannel, ByteBuffer.wrap(runBytes.toByteArray()));
+            runsChannel.force(false);
+        } catch (IOException | RuntimeException e) {
+            // 截回寫入前的長度，之後的標識符編號和記錄位置仍與記憶體中的狀態一致
+            rollBack(e, runsChannel, runsEnd);
+            rollBack(e, recordsChannel, recordsEnd);
+            rollBack(e, identifiersChannel, identifiersEnd);
+            throw e;
+        }
+
+        for (String identifier : pendingIdentifiers) {
+            identifierIds.put(identifier, identifiers.size());
+            identifiers.add(identifier);
+            types.add(entryTypes.get(identifier));
+        }
+        heads = newHeads;
+        recordCount = recordNumber;
+        runs.add(new RunInfo(runTime, program, environment, firstRecord, aggregates.size()));
+        writeHeads();
+
+        log.info("已將 {} 在 {} 的運行記錄到歷史中（{} 個標識符）", program, environment, aggregates.size());
+        return runIndex;
+    }
+
+    /**
+     * 讀取一個標識符的時間序列。
+     *
+     * @param identifier 標識符
+     * @return 按運行順序排列的時間序列，標識符不存在時返回空列表
+     * @throws IOException 如果文件無法讀取
+     */
+    public List<HistoryPoint> series(String identifier) throws IOException {
+        return series(identifier, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 讀取一個標識符最近的時間序列。
+     *
+     * @param identifier 標識符
+     * @param maxPoints  最多讀取的點數，從最新的運行往回數
+     * @return 按運行順序排列的時間序列，標識符不存在時返回空列表
+     * @throws IOException 如果文件無法讀取
+     */
+    public synchronized List<HistoryPoint> series(String identifier, int maxPoints) throws IOException {
+        Integer id = identifierIds.get(identifier);
+        if (id == null) {
+            return Collections.emptyList();
+        }
+
+        List<HistoryPoint> points = new ArrayList<>();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        long recordNumber = heads[id];
+        while (recordNumber >= 0 && points.size() < maxPoints) {
+            record.clear();
+            readFully(recordsChannel, record, recordNumber * RECORD_SIZE);
+            record.flip();
+            record.getInt();
+            RunInfo run = runs.get(record.getInt());
+            points.add(new HistoryPoint(run.runTime, run.program, run.environment,
+                    record.getLong(), record.getLong(), record.getLong()));
+            recordNumber = record.getLong();
+        }
+        Collections.reverse(points);
+        return points;
+    }
+
+    /**
+     * @return 所有出現過的標識符，按第一次記錄的順序排列
+     */
+    public synchronized List<String> identifiers() {
+        return new ArrayList<>(identifiers);
+    }
+
+    /**
+     * @param identifier 標識符
+     * @return 標識符的類型，不存在時返回null
+     */
+    public synchronized String typeOf(String identifier) {
+        Integer id = identifierIds.get(identifier);
+        return id != null ? types.get(id) : null;
+    }
+
+    /**
+     * @return 已記錄的運行次數
+     */
+    public synchronized int runCount() {
+        return runs.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try (FileChannel a = identifiersChannel; FileChannel b = runsChannel; FileChannel c = recordsChannel) {
+            // 依次關閉所有文件，關閉runs.dat時釋放鎖
+        }
+    }
+
+    private void load() throws IOException {
+        // 運行資訊最後寫入，以它為準截掉中斷時留下的不完整標識符和記錄
+        long runsEnd = 0;
+        ByteArrayInputStream runBytes = readAll(runsChannel);
+        try (DataInputStream in = new DataInputStream(runBytes)) {
+            while (true) {
+                long runTime = in.readLong();
+                String program = in.readUTF();
+                String environment = in.readUTF();
+                long firstRecord = in.readLong();
+                int size = in.readInt();
+                runs.add(new RunInfo(runTime, program, environment, firstRecord, size));
+                runsEnd = runsChannel.size() - runBytes.available();
+            }
+        } catch (EOFException e) {
+            // 讀到文件結尾或不完整的最後一筆
+        }
+        truncate(runsChannel, runsEnd);
+
+        RunInfo lastRun = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+        recordCount = lastRun == null ? 0 : lastRun.firstRecord + lastRun.size;
+        if (recordsChannel.size() < recordCount * RECORD_SIZE) {
+            throw new IOException("歷史記錄文件已損壞：" + directory.resolve(RECORDS_FILE));
+        }
+        truncate(recordsChannel, recordCount * RECORD_SIZE);
+
+        long identifiersEnd = 0;
+        ByteArrayInputStream identifierBytes = readAll(identifiersChannel);
+        try (DataInputStream in = new DataInputStream(identifierBytes)) {
+            while (true) {
+                String type = in.readUTF();
+                String identifier = in.readUTF();
+                identifierIds.put(identifier, identifiers.size());
+                identifiers.add(identifier);
+                types.add(type);
+                identifiersEnd = identifiersChannel.size() - identifierBytes.available();
+            }
+        } catch (EOFException e) {
+            // 讀到文件結尾或不完整的最後一筆
+        }
+        truncate(identifiersChannel, identifiersEnd);
+
+        if (!loadHeads()) {
+            rebuildHeads();
+        }
+        log.debug("從 {} 載入了 {} 次運行和 {} 個標識符", directory, runs.size(), identifiers.size());
+    }
+
+    /**
+     * 讀取索引文件；文件不存在或與記錄數不一致時返回false
+     */
+    private boolean loadHeads() throws IOException {
+        Path headsPath = directory.resolve(HEADS_FILE);
+        if (!Files.exists(headsPath)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(headsPath))) {
+            if (in.readLong() != recordCount) {
+                return false;
+            }
+            int count = in.readInt();
+            if (count != identifiers.size()) {
+                return false;
+            }
+            heads = new long[Math.max(16, count)];
+            for (int i = 0; i < count; i++) {
+                heads[i] = in.readLong();
+            }
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private void rebuildHeads() throws IOException {
+        if (recordCount > 0) {
+            log.warn("歷史索引與記錄不一致，從記錄重建索引：{}", directory);
+        }
+        heads = new long[Math.max(16, identifiers.size())];
+        Arrays.fill(heads, -1);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        for (long recordNumber = 0; recordNumber < recordCount; recordNumber++) {
+            record.clear();
+            readFully(recordsChannel, record, recordNumber * RECORD_SIZE);
+            heads[record.getInt(0)] = recordNumber;
+        }
+        writeHeads();
+    }
+
+    private void writeHeads() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + identifiers.size() * 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(recordCount);
+        out.writeInt(identifiers.size());
+        for (int i = 0; i < identifiers.size(); i++) {
+            out.writeLong(heads[i]);
+        }
+        Path temporary = directory.resolve(HEADS_FILE + ".tmp");
+        Files.write(temporary, bytes.toByteArray());
+        Files.move(temporary, directory.resolve(HEADS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private FileChannel openChannel(String fileName) throws IOException {
+        return FileChannel.open(directory.resolve(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 讀取整個文件。標識符和運行資訊文件都很小，讀入記憶體後可以準確知道最後一筆完整資料的結尾位置
+     */
+    private static ByteArrayInputStream readAll(FileChannel channel) throws IOException {
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("歷史文件過大");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        readFully(channel, buffer, 0);
+        return new ByteArrayInputStream(buffer.array());
+    }
+
+    /**
+     * 鎖定文件，防止另一個程序或同一程序中的另一個實例同時寫入同一個目錄
+     */
+    private void lock(FileChannel channel) throws IOException {
+        FileLock fileLock;
+        try {
+            fileLock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            close();
+            throw new IOException("歷史目錄正由另一個RunHistoryStore寫入：" + directory);
+        }
+    }
+
+    private static void rollBack(Exception failure, FileChannel channel, long size) {
+        try {
+            truncate(channel, size);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static void truncate(FileChannel channel, long size) throws IOException {
+        if (channel.size() > size) {
+            channel.truncate(size);
+        }
+        channel.position(size);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("歷史記錄文件已損壞：讀取位置 " + position + " 超出文件結尾");
+            }
+        }
+    }
+
+    /**
+     * 一次運行的資訊
+     */
+    private static final class RunInfo {
+        private final long runTime;
+        private final String program;
+        private final String environment;
+        private final long firstRecord;
+        private final int size;
+
+        RunInfo(long runTime, String program, String environment, long firstRecord, int size) {
+            this.runTime = runTime;
+            this.program = program;
+            this.environment = environment;
+            this.firstRecord = firstRecord;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.core.tool.history;
+
+import com.example.core.cli.TraceToolCli;
+import com.example.core.tool.TraceStatistics;
+import com.example.core.tool.report.CsvComparisonSink;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 在 {@link RunHistoryStore} 的時間序列中找出逐漸變慢的標識符。
+ *
+ * <p>兩個跟蹤文件的比較只能發現一次性的大幅變慢；每週慢5%的SQL在任何一次比較中都不會超過門檻。
+ * 此檢測器以序列中較早的一半作為參考，用中位數和中位數絕對偏差（MAD）估計正常水準和波動，
+ * 不受個別異常運行的影響；再以指數加權移動平均（EWMA）平滑整個序列，使最近的運行權重較高。
+ * 當EWMA比參考中位數高出 {@value #Z_THRESHOLD} 倍穩健標準差（1.4826 × MAD）以上，
+ * 且升幅超過 {@value #MIN_CHANGE_PERCENT}% 時標記為CREEP。</p>
+ */
+@Slf4j
+public class TrendDetector {
+
+    /**
+     * EWMA的平滑係數，越大越重視最近的運行
+     */
+    public static final double ALPHA = 0.5;
+
+    /**
+     * 檢測所需的最少運行次數
+     */
+    public static final int MIN_POINTS = 6;
+
+    /**
+     * 穩健Z分數的門檻
+     */
+    public static final double Z_THRESHOLD = 3.0;
+
+    /**
+     * 相對參考中位數的最小升幅（%）
+     */
+    public static final double MIN_CHANGE_PERCENT = 10.0;
+
+    /**
+     * 將MAD換算為常態分佈標準差的係數
+     */
+    private static final double MAD_SCALE = 1.4826;
+
+    /**
+     * 波動的下限（參考中位數的比例），避免完全穩定的序列因微小變化被標記
+     */
+    private static final double MIN_RELATIVE_SCALE = 0.02;
+
+    /**
+     * 一個標識符的趨勢檢測結果
+     */
+    public static final class Trend {
+        private final String type;
+        private final String identifier;
+        private final int points;
+        private final double reference;
+        private final double ewma;
+        private final double robustZ;
+
+        Trend(String type, String identifier, int points, double reference, double ewma, double robustZ) {
+            this.type = type;
+            this.identifier = identifier;
+            this.points = points;
+            this.reference = reference;
+            this.ewma = ewma;
+            this.robustZ = robustZ;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * @return 參與檢測的運行次數
+         */
+        public int getPoints() {
+            return points;
+        }
+
+        /**
+         * @return 參考期平均執行時間的中位數（毫秒）
+         */
+        public double getReference() {
+            return reference;
+        }
+
+        /**
+         * @return 平滑後的最近平均執行時間（毫秒）
+         */
+        public double getEwma() {
+            return ewma;
+        }
+
+        public double getRobustZ() {
+            return robustZ;
+        }
+
+        public double getChangePercent() {
+            return reference > 0 ? (ewma - reference) * 100.0 / reference : 0;
+        }
+
+        /**
+         * @return 是否逐漸變慢
+         */
+        public boolean isCreeping() {
+            return robustZ >= Z_THRESHOLD && getChangePercent() >= MIN_CHANGE_PERCENT;
+        }
+    }
+
+    /**
+     * 分析一個標識符的時間序列。
+     *
+     * @param type       標識符的類型
+     * @param identifier 標識符
+     * @param series     按運行順序排列的時間序列
+     * @return 檢測結果，運行次數少於 {@value #MIN_POINTS} 時返回null
+     */
+    public static Trend analyze(String type, String identifier, List<HistoryPoint> series) {
+        int n = series.size();
+        if (n < MIN_POINTS) {
+            return null;
+        }
+
+        // 參考期：較早的一半運行
+        int referenceSize = n / 2;
+        long[] reference = new long[referenceSize];
+        for (int i = 0; i < referenceSize; i++) {
+            reference[i] = Math.round(series.get(i).getMean());
+        }
+        double median = TraceStatistics.median(reference);
+        long[] deviations = new long[referenceSize];
+        for (int i = 0; i < referenceSize; i++) {
+            deviations[i] = Math.round(Math.abs(reference[i] - median));
+        }
+        double scale = Math.max(Math.max(MAD_SCALE * TraceStatistics.median(deviations), median * MIN_RELATIVE_SCALE), 1.0);
+
+        double ewma = series.get(0).getMean();
+        for (int i = 1; i < n; i++) {
+            ewma = ALPHA * series.get(i).getMean() + (1 - ALPHA) * ewma;
+        }
+        return new Trend(type, identifier, n, median, ewma, (ewma - median) / scale);
+    }
+
+    /**
+     * 分析歷史中一個程序在一個環境的所有標識符。
+     * 標識符在歷史中是全局的，不同程序的同名SQL或步驟各自成為一個序列，不會混在一起。
+     *
+     * @param store       歷史存儲
+     * @param program     程序名稱
+     * @param environment 環境名稱
+     * @return 所有運行次數足夠的標識符的檢測結果，穩健Z分數高的在前
+     * @throws IOException 如果歷史文件無法讀取
+     */
+    public static List<Trend> detect(RunHistoryStore store, String program, String environment) throws IOException {
+        List<Trend> trends = new ArrayList<>();
+        for (String identifier : store.identifiers()) {
+            List<HistoryPoint> series = new ArrayList<>();
+            for (HistoryPoint point : store.series(identifier)) {
+                if (point.getProgram().equals(program) && point.getEnvironment().equals(environment)) {
+                    series.add(point);
+                }
+            }
+            Trend trend = analyze(store.typeOf(identifier), identifier, series);
+            if (trend != null) {
+                trends.add(trend);
+            }
+        }
+        trends.sort(Comparator.comparingDouble(Trend::getRobustZ).reversed());
+        return trends;
+    }
+
+    /**
+     * 將檢測結果寫成CSV。
+     *
+     * @param trends     檢測結果
+     * @param outputPath 輸出CSV文件的路徑
+     * @throws IOException 如果輸出文件無法寫入
+     */
+    public static void writeReport(List<Trend> trends, String outputPath) throws IOException {
+        List<String> outputLines = new ArrayList<>(trends.size() + 1);
+        outputLines.add("Type,Identifier,Runs,Reference(ms),EWMA(ms),Change(%),Robust Z,Flag");
+        int creeping = 0;
+        for (Trend trend : trends) {
+            outputLines.add(String.format("%s,%s,%d,%.2f,%.2f,%.2f,%.2f,%s",
+                    CsvComparisonSink.escape(trend.type), CsvComparisonSink.escape(trend.identifier), trend.points,
+                    trend.reference, trend.ewma, trend.getChangePercent(), trend.robustZ, trend.isCreeping() ? "CREEP" : ""));
+            if (trend.isCreeping()) {
+                creeping++;
+                log.info("{} - {} 逐漸變慢：{} ms -> {} ms ({}%)", trend.type, trend.identifier,
+                        String.format("%.0f", trend.reference), String.format("%.0f", trend.ewma),
+                        String.format("%.1f", trend.getChangePercent()));
+            }
+        }
+        Files.write(Paths.get(outputPath), outputLines);
+        log.info("分析了 {} 個標識符，其中 {} 個逐漸變慢，結果已輸出到 {}", trends.size(), creeping, outputPath);
+    }
+
+    /**
+     * 主方法，與 {@code trace-tool trend} 相同：將本次運行的跟蹤文件記錄到歷史中，再檢測逐漸變慢的標識符，參數見 {@link TraceToolCli}。
+     *
+     * @param args 跟蹤文件和選項
+     */
+    public static void main(String[] args) {
+        TraceToolCli.runAndExit(args, "trend");
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.TopKRegressions;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 在獨立的寫入線程中將事件交給另一個輸出，讓格式化和磁碟寫入不會拖慢比較。
+ *
+ * <p>事件放入有界隊列，寫入線程按順序處理；隊列已滿時比較線程會等待，因此記憶體用量有上限。
+ * 寫入線程中發生的錯誤在下一次調用或 {@link #close()} 時以IOException拋出，
+ * 之後的事件都會被丟棄。{@link #close()} 等待所有已放入的事件處理完畢後才關閉被包裝的輸出。</p>
+ */
+@Slf4j
+public final class AsyncComparisonSink implements ComparisonSink {
+
+    /**
+     * 默認隊列容量（事件數）
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Event CLOSE = sink -> {
+    };
+
+    private final ComparisonSink delegate;
+    private final BlockingQueue<Event> queue;
+    private final Thread writer;
+    private volatile Exception failure;
+    private boolean closed;
+
+    public AsyncComparisonSink(ComparisonSink delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param delegate 在寫入線程中接收事件的輸出，關閉時一併關閉
+     * @param capacity 隊列容量
+     */
+    public AsyncComparisonSink(ComparisonSink delegate, int capacity) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drain, "comparison-sink-" + delegate.getClass().getSimpleName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) throws IOException {
+        submit(sink -> sink.begin(env1Name, env2Name));
+    }
+
+    @Override
+    public void accept(ComparisonRow row) throws IOException {
+        submit(sink -> sink.accept(row));
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) throws IOException {
+        submit(sink -> sink.end(topRegressions));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(CLOSE);
+            writer.join();
+        } catch (InterruptedException e) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+            delegate.close();
+            throw new InterruptedIOException("等待報告寫入線程時被中斷");
+        }
+        delegate.close();
+        checkFailure();
+    }
+
+    private void submit(Event event) throws IOException {
+        if (closed) {
+            throw new IOException("報告輸出已關閉");
+        }
+        checkFailure();
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待報告寫入線程時被中斷");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Exception e = failure;
+        if (e != null) {
+            throw new IOException("報告寫入失敗: " + e.getMessage(), e);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Event event = queue.take();
+                if (event == CLOSE) {
+                    return;
+                }
+                // 失敗後繼續取出事件，避免比較線程在已滿的隊列上永遠等待
+                if (failure == null) {
+                    try {
+                        event.apply(delegate);
+                    } catch (IOException | RuntimeException e) {
+                        log.error("報告寫入失敗", e);
+                        failure = e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Event {
+        void apply(ComparisonSink sink) throws IOException;
+    }
+}
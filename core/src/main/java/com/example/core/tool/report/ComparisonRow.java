@@ -0,0 +1,130 @@
+package com.example.core.tool.report;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一行比較結果：一次配對的執行，或只存在於一個環境的執行。建立後不可變，可以交給其他線程寫出。
+ */
+public final class ComparisonRow {
+
+    /**
+     * 結果的種類
+     */
+    public enum Status {
+        /**
+         * 兩個環境都有此執行
+         */
+        MATCHED,
+        /**
+         * 只存在於第二個環境
+         */
+        UNIQUE,
+        /**
+         * 只存在於第一個環境
+         */
+        MISSING
+    }
+
+    private final Status status;
+    private final String type;
+    private final String identifier;
+    private final long env1Time;
+    private final long env2Time;
+    private final String flag;
+    private final String details;
+    private final List<DetailSection> sections;
+
+    private ComparisonRow(Status status, String type, String identifier, long env1Time, long env2Time,
+                          String flag, String details, List<DetailSection> sections) {
+        this.status = status;
+        this.type = type;
+        this.identifier = identifier;
+        this.env1Time = env1Time;
+        this.env2Time = env2Time;
+        this.flag = flag;
+        this.details = details;
+        this.sections = sections;
+    }
+
+    /**
+     * @param flag     規則標記，沒有時為空字串
+     * @param details  差異摘要，例如 "SQL Text differs;"，沒有時為空字串
+     * @param sections 附加資訊
+     * @return 兩個環境都有的執行
+     */
+    public static ComparisonRow matched(String type, String identifier, long env1Time, long env2Time,
+                                        String flag, String details, List<DetailSection> sections) {
+        return new ComparisonRow(Status.MATCHED, type, identifier, env1Time, env2Time, flag, details,
+                sections.isEmpty() ? Collections.emptyList() : List.copyOf(sections));
+    }
+
+    /**
+     * @return 只存在於第二個環境的執行
+     */
+    public static ComparisonRow unique(String type, String identifier, long env2Time) {
+        return new ComparisonRow(Status.UNIQUE, type, identifier, -1, env2Time, "UNIQUE", "", Collections.emptyList());
+    }
+
+    /**
+     * @return 只存在於第一個環境的執行
+     */
+    public static ComparisonRow missing(String type, String identifier, long env1Time) {
+        return new ComparisonRow(Status.MISSING, type, identifier, env1Time, -1, "MISSING", "", Collections.emptyList());
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return 第一個環境的執行時間（毫秒），UNIQUE時為-1
+     */
+    public long getEnv1Time() {
+        return env1Time;
+    }
+
+    /**
+     * @return 第二個環境的執行時間（毫秒），MISSING時為-1
+     */
+    public long getEnv2Time() {
+        return env2Time;
+    }
+
+    /**
+     * @return 差異（毫秒），只對MATCHED有意義
+     */
+    public long diff() {
+        return env2Time - env1Time;
+    }
+
+    /**
+     * @return 差異百分比，只對MATCHED有意義
+     */
+    public double diffPercent() {
+        return env1Time > 0 ? diff() * 100.0 / env1Time : 0;
+    }
+
+    /**
+     * @return 規則標記、UNIQUE或MISSING；沒有標記時為空字串
+     */
+    public String getFlag() {
+        return flag;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    public List<DetailSection> getSections() {
+        return sections;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.TopKRegressions;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 接收一次比較產生的結果，並輸出為某一種格式。
+ *
+ * <p>比較引擎對每次比較依次調用 {@link #begin}、每一行結果一次 {@link #accept}、最後一次 {@link #end}，
+ * 然後 {@link #close}。比較出錯時可能不會調用 {@link #end}，但一定會調用 {@link #close}。
+ * 多個格式以 {@link FanOutComparisonSink} 同時接收同一個事件流，比較只需進行一次；
+ * 以 {@link AsyncComparisonSink} 包裝的輸出在自己的線程中寫入，不會拖慢比較。</p>
+ */
+public interface ComparisonSink extends Closeable {
+
+    /**
+     * 比較開始。
+     *
+     * @param env1Name 第一個環境的名稱
+     * @param env2Name 第二個環境的名稱
+     * @throws IOException 如果輸出無法寫入
+     */
+    void begin(String env1Name, String env2Name) throws IOException;
+
+    /**
+     * 一行比較結果。
+     *
+     * @param row 比較結果，不可變
+     * @throws IOException 如果輸出無法寫入
+     */
+    void accept(ComparisonRow row) throws IOException;
+
+    /**
+     * 所有結果都已送出。
+     *
+     * @param topRegressions 變慢最多的條目，調用後不會再被修改
+     * @throws IOException 如果輸出無法寫入
+     */
+    void end(TopKRegressions topRegressions) throws IOException;
+}
@@ -0,0 +1,120 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.arrow.ArrowComparisonSink;
+import com.example.core.tool.store.ResultStoreSink;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按需要的格式建立比較報告的輸出。
+ */
+public final class ComparisonSinks {
+
+    /**
+     * 報告格式及其輸出文件
+     */
+    public enum Format {
+        /**
+         * 控制台摘要：進度和變慢最多的條目，不產生文件
+         */
+        CONSOLE,
+        /**
+         * 控制台逐筆輸出，只適合小型比較；與CONSOLE同時指定時以此為準
+         */
+        CONSOLE_ROWS,
+        /**
+         * CSV摘要，寫入outputPath
+         */
+        CSV,
+        /**
+         * Markdown詳細報告，寫入outputPath中的 .csv 換成 _detailed.md 的文件
+         */
+        MARKDOWN,
+        /**
+         * 可離線打開的HTML報告，寫入outputPath中的 .csv 換成 _report.html 的文件
+         */
+        HTML,
+        /**
+         * JSON Lines，寫入outputPath中的 .csv 換成 .jsonl 的文件
+         */
+        JSON_LINES,
+        /**
+         * Arrow IPC串流，寫入outputPath中的 .csv 換成 .arrows 的文件
+         */
+        ARROW,
+        /**
+         * 帶索引的列式結果存儲，供分頁查詢，寫入outputPath中的 .csv 換成 .rows 的文件
+         */
+        RESULT_STORE
+    }
+
+    private ComparisonSinks() {
+    }
+
+    /**
+     * @param outputPath 輸出CSV文件的路徑
+     * @param title      報告標題中的工具名稱，例如 "AE" 或 "SQR"
+     * @return 控制台、CSV、Markdown和HTML輸出；大型比較的Markdown報告難以打開時可改用HTML報告
+     * @throws IOException 如果文件無法建立
+     */
+    public static ComparisonSink defaults(String outputPath, String title) throws IOException {
+        return create(outputPath, title, EnumSet.of(Format.CONSOLE, Format.CSV, Format.MARKDOWN, Format.HTML), false);
+    }
+
+    /**
+     * 建立多個格式的輸出，它們在一次比較中接收同一個事件流。
+     *
+     * @param outputPath 輸出CSV文件的路徑，其他格式的文件名由此推導
+     * @param title      報告標題中的工具名稱
+     * @param formats    需要的格式
+     * @param async      是否讓每個寫文件的輸出在自己的寫入線程中運行
+     * @return 輸出
+     * @throws IOException 如果文件無法建立；已建立的文件會被關閉
+     */
+    public static ComparisonSink create(String outputPath, String title, Set<Format> formats, boolean async) throws IOException {
+        List<ComparisonSink> sinks = new ArrayList<>();
+        try {
+            // 控制台輸出默認只有進度和摘要，不需要獨立線程；日誌本身由logback的AsyncAppender異步寫出
+            if (formats.contains(Format.CONSOLE_ROWS)) {
+                sinks.add(new ConsoleComparisonSink(ConsoleComparisonSink.Mode.ROWS));
+            } else if (formats.contains(Format.CONSOLE)) {
+                sinks.add(new ConsoleComparisonSink());
+            }
+            if (formats.contains(Format.CSV)) {
+                sinks.add(wrap(new CsvComparisonSink(outputPath), async));
+            }
+            if (formats.contains(Format.MARKDOWN)) {
+                sinks.add(wrap(new MarkdownComparisonSink(outputPath.replace(".csv", "_detailed.md"), title), async));
+            }
+            if (formats.contains(Format.HTML)) {
+                sinks.add(wrap(new HtmlComparisonSink(outputPath.replace(".csv", "_report.html"), title), async));
+            }
+            if (formats.contains(Format.JSON_LINES)) {
+                sinks.add(wrap(new JsonLinesComparisonSink(outputPath.replace(".csv", ".jsonl")), async));
+            }
+            if (formats.contains(Format.ARROW)) {
+                sinks.add(wrap(new ArrowComparisonSink(Path.of(outputPath.replace(".csv", ".arrows"))), async));
+            }
+            if (formats.contains(Format.RESULT_STORE)) {
+                sinks.add(wrap(new ResultStoreSink(Path.of(outputPath.replace(".csv", ".rows"))), async));
+            }
+        } catch (IOException e) {
+            try {
+                FanOutComparisonSink.closeAll(sinks);
+            } catch (IOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw e;
+        }
+        return sinks.size() == 1 ? sinks.get(0) : new FanOutComparisonSink(sinks);
+    }
+
+    private static ComparisonSink wrap(ComparisonSink sink, boolean async) {
+        return async ? new AsyncComparisonSink(sink) : sink;
+    }
+}
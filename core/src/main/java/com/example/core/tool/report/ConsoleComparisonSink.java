@@ -0,0 +1,138 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.TopKRegressions;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 在控制台輸出比較結果。
+ *
+ * <p>默認為摘要模式：比較期間每隔 {@link #PROGRESS_INTERVAL_MILLIS} 毫秒輸出一次進度，結束後輸出各狀態的行數和變慢最多的條目，
+ * 逐筆結果只寫入報告文件。百萬條目的跟蹤文件逐筆寫日誌比比較本身還慢，因此只有在明確需要時才使用逐筆模式。</p>
+ */
+@Slf4j
+public final class ConsoleComparisonSink implements ComparisonSink {
+
+    /**
+     * 兩次進度輸出之間的最短間隔
+     */
+    public static final long PROGRESS_INTERVAL_MILLIS = 5000;
+    private static final long PROGRESS_INTERVAL_NANOS = PROGRESS_INTERVAL_MILLIS * 1_000_000L;
+
+    /**
+     * 每處理這麼多行才讀取一次時鐘，避免每行都調用 System.nanoTime()
+     */
+    private static final int CLOCK_CHECK_MASK = 4096 - 1;
+
+    /**
+     * 控制台輸出模式
+     */
+    public enum Mode {
+        /**
+         * 只輸出進度和變慢最多的條目
+         */
+        SUMMARY,
+        /**
+         * 另外以INFO級別逐筆輸出每一行
+         */
+        ROWS
+    }
+
+    private final Mode mode;
+    private String env1Name;
+    private String env2Name;
+    private long startNanos;
+    private long nextProgressNanos;
+    private long matched;
+    private long unique;
+    private long missing;
+    private long flagged;
+
+    public ConsoleComparisonSink() {
+        this(Mode.SUMMARY);
+    }
+
+    public ConsoleComparisonSink(Mode mode) {
+        this.mode = mode;
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) {
+        this.env1Name = env1Name;
+        this.env2Name = env2Name;
+        this.startNanos = System.nanoTime();
+        this.nextProgressNanos = startNanos + PROGRESS_INTERVAL_NANOS;
+        log.info("開始比較 {} 和 {}", env1Name, env2Name);
+        if (mode == Mode.ROWS) {
+            log.info("Type        Identifier                                        {} (ms)       {} (ms)       Diff      Diff(%)    Flag      Details", env1Name, env2Name);
+            log.info("{}", "=".repeat(140));
+        }
+    }
+
+    @Override
+    public void accept(ComparisonRow row) {
+        switch (row.getStatus()) {
+            case MATCHED:
+                matched++;
+                if (!row.getFlag().isEmpty()) {
+                    flagged++;
+                }
+                break;
+            case UNIQUE:
+                unique++;
+                break;
+            default:
+                missing++;
+                break;
+        }
+        if (mode == Mode.ROWS) {
+            logRow(row);
+        }
+
+        long rows = rowCount();
+        if ((rows & CLOCK_CHECK_MASK) == 0) {
+            long now = System.nanoTime();
+            if (now - nextProgressNanos >= 0) {
+                nextProgressNanos = now + PROGRESS_INTERVAL_NANOS;
+                log.info("已比較 {} 行（{} 行被標記），耗時 {} 秒", rows, flagged, (now - startNanos) / 1_000_000_000L);
+            }
+        }
+    }
+
+    private static void logRow(ComparisonRow row) {
+        if (row.getStatus() == ComparisonRow.Status.MATCHED) {
+            log.info("{} {} {} {} {} {} {} {}", row.getType(), row.getIdentifier(), row.getEnv1Time(), row.getEnv2Time(),
+                    row.diff(), String.format("%.2f", row.diffPercent()), row.getFlag(), row.getDetails());
+        } else {
+            log.info("{} {} {} {} {} {} {} {}", row.getType(), row.getIdentifier(),
+                    row.getEnv1Time() >= 0 ? row.getEnv1Time() : "N/A", row.getEnv2Time() >= 0 ? row.getEnv2Time() : "N/A",
+                    "N/A", "N/A", row.getFlag(), "");
+        }
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) {
+        log.info("比較完成：共 {} 行，配對 {} 行，{} 獨有 {} 行，{} 缺少 {} 行，{} 行被標記，耗時 {} 毫秒",
+                rowCount(), matched, env2Name, unique, env2Name, missing, flagged,
+                (System.nanoTime() - startNanos) / 1_000_000L);
+        topRegressions.logSummary(env1Name, env2Name);
+    }
+
+    /**
+     * @return 已接收的行數
+     */
+    public long rowCount() {
+        return matched + unique + missing;
+    }
+
+    /**
+     * @return 被規則標記的配對行數
+     */
+    public long flaggedCount() {
+        return flagged;
+    }
+
+    @Override
+    public void close() {
+        // 沒有需要釋放的資源
+    }
+}
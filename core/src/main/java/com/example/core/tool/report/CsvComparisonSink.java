@@ -0,0 +1,108 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.StreamingReportWriter;
+import com.example.core.tool.TopKRegressions;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+
+/**
+ * 以CSV格式輸出比較結果摘要，每行一個結果。
+ *
+ * <p>欄位按RFC 4180加引號：包含逗號、雙引號或換行的欄位以雙引號包圍，欄位中的雙引號重複一次，
+ * 因此含逗號的標識符（例如 {@code PROC: Get-Rate(A, B)}）不會破壞欄位對齊。</p>
+ */
+@Slf4j
+public final class CsvComparisonSink implements ComparisonSink {
+    private final String outputPath;
+    private final StreamingReportWriter output;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * @param outputPath 輸出CSV文件的路徑
+     * @throws IOException 如果文件無法建立
+     */
+    public CsvComparisonSink(String outputPath) throws IOException {
+        this.outputPath = outputPath;
+        this.output = StreamingReportWriter.create(outputPath);
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) throws IOException {
+        line.setLength(0);
+        line.append("Type,Identifier,");
+        appendField(env1Name + "(ms)").append(',');
+        appendField(env2Name + "(ms)").append(",Diff(ms),Diff(%),Flag,Details");
+        output.line(line.toString());
+    }
+
+    @Override
+    public void accept(ComparisonRow row) throws IOException {
+        line.setLength(0);
+        appendField(row.getType()).append(',');
+        appendField(row.getIdentifier()).append(',');
+        if (row.getStatus() == ComparisonRow.Status.MATCHED) {
+            line.append(row.getEnv1Time()).append(',').append(row.getEnv2Time()).append(',').append(row.diff())
+                    .append(',').append(String.format("%.2f", row.diffPercent())).append(',');
+            appendField(row.getFlag()).append(',');
+            appendField(row.getDetails());
+        } else {
+            line.append(row.getEnv1Time() >= 0 ? String.valueOf(row.getEnv1Time()) : "N/A").append(',')
+                    .append(row.getEnv2Time() >= 0 ? String.valueOf(row.getEnv2Time()) : "N/A")
+                    .append(",N/A,N/A,").append(row.getFlag()).append(',');
+        }
+        output.line(line.toString());
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) {
+        log.info("\n比對結果已輸出到 {}", outputPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private StringBuilder appendField(String value) {
+        return quote(line, value);
+    }
+
+    /**
+     * @param value 欄位值，null視為空字串
+     * @return 按RFC 4180加上引號（如果需要）的欄位
+     */
+    public static String escape(String value) {
+        return quote(new StringBuilder(), value).toString();
+    }
+
+    /**
+     * 按RFC 4180將欄位附加到一行CSV，只在需要時加引號。
+     *
+     * @param line  目前的CSV行
+     * @param value 欄位值，null視為空字串
+     * @return 同一個line，方便連續調用
+     */
+    public static StringBuilder quote(StringBuilder line, String value) {
+        if (value == null) {
+            return line;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            return line.append(value);
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.core.tool.report;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一行比較結果中兩個環境不同的附加資訊，例如SQL文本、綁定變量或執行計劃。
+ */
+public final class DetailSection {
+    private final String title;
+    private final String subject;
+    private final String language;
+    private final String env1Value;
+    private final String env2Value;
+    private final Map<String, String[]> differences;
+
+    private DetailSection(String title, String subject, String language, String env1Value, String env2Value,
+                          Map<String, String[]> differences) {
+        this.title = title;
+        this.subject = subject;
+        this.language = language;
+        this.env1Value = env1Value;
+        this.env2Value = env2Value;
+        this.differences = differences;
+    }
+
+    /**
+     * 兩個環境各有一段文字的附加資訊。
+     *
+     * @param title     標題，例如 "SQL Text Difference"
+     * @param subject   內容的名稱，例如 "SQL"
+     * @param language  Markdown程式碼區塊的語言，沒有時為空字串
+     * @param env1Value 第一個環境的內容
+     * @param env2Value 第二個環境的內容
+     * @return 附加資訊
+     */
+    public static DetailSection text(String title, String subject, String language, String env1Value, String env2Value) {
+        return new DetailSection(title, subject, language, env1Value, env2Value, null);
+    }
+
+    /**
+     * 以名稱列出兩個環境不同值的附加資訊，例如PeopleCode變量。
+     *
+     * @param title       標題，例如 "Variables Difference"
+     * @param subject     名稱欄的標題，例如 "Variable"
+     * @param differences 名稱到 {第一個環境的值, 第二個環境的值} 的對應
+     * @return 附加資訊
+     */
+    public static DetailSection table(String title, String subject, Map<String, String[]> differences) {
+        return new DetailSection(title, subject, "", null, null, Collections.unmodifiableMap(new LinkedHashMap<>(differences)));
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public String getEnv1Value() {
+        return env1Value;
+    }
+
+    public String getEnv2Value() {
+        return env2Value;
+    }
+
+    /**
+     * @return 是否為 {@link #table} 建立的附加資訊
+     */
+    public boolean isTable() {
+        return differences != null;
+    }
+
+    /**
+     * @return 名稱到 {第一個環境的值, 第二個環境的值} 的對應；文字附加資訊返回空對應
+     */
+    public Map<String, String[]> getDifferences() {
+        return differences != null ? differences : Collections.emptyMap();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.TopKRegressions;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 將同一個事件流依次交給多個輸出，比較只需進行一次就能產生所有格式的報告。
+ */
+public final class FanOutComparisonSink implements ComparisonSink {
+    private final ComparisonSink[] sinks;
+
+    /**
+     * @param sinks 按順序接收事件的輸出，關閉時一併關閉
+     */
+    public FanOutComparisonSink(List<? extends ComparisonSink> sinks) {
+        this.sinks = sinks.toArray(new ComparisonSink[0]);
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) throws IOException {
+        for (ComparisonSink sink : sinks) {
+            sink.begin(env1Name, env2Name);
+        }
+    }
+
+    @Override
+    public void accept(ComparisonRow row) throws IOException {
+        for (ComparisonSink sink : sinks) {
+            sink.accept(row);
+        }
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) throws IOException {
+        for (ComparisonSink sink : sinks) {
+            sink.end(topRegressions);
+        }
+    }
+
+    /**
+     * 關閉所有輸出；即使其中一個關閉失敗也會繼續關閉其餘的，第一個失敗在最後拋出
+     */
+    @Override
+    public void close() throws IOException {
+        closeAll(List.of(sinks));
+    }
+
+    static void closeAll(List<? extends ComparisonSink> sinks) throws IOException {
+        IOException failure = null;
+        for (ComparisonSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.StreamingReportWriter;
+import com.example.core.tool.TopKRegressions;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 以單一、離線可用的HTML文件輸出比較結果，即使有上百萬行差異也能在瀏覽器中立即打開。
+ *
+ * <p>結果按欄位編碼為JSON，每 {@value #CHUNK_ROWS} 行一個 {@code <script type="application/json">} 區塊，
+ * 類型、標記和差異摘要以字典索引表示。SQL文本等附加資訊各自放在獨立的區塊中，
+ * 瀏覽器不會解析它們，只在展開該行時才讀取。頁面以虛擬捲動只繪製可見的行，並支援按類型、標記、
+ * 差異大小和標識符篩選，以及按任一欄排序。</p>
+ *
+ * <p>行邊產生邊寫出，記憶體中只保留目前的區塊和字典。</p>
+ */
+@Slf4j
+public final class HtmlComparisonSink implements ComparisonSink {
+
+    /**
+     * 每個資料區塊的行數
+     */
+    public static final int CHUNK_ROWS = 8192;
+
+    private static final String TEMPLATE = "/report/comparison-report.html";
+    private static final String DATA_MARKER = "<!--DATA-->";
+
+    private final String outputPath;
+    private final String title;
+    private final StreamingReportWriter output;
+    private final String templateHead;
+    private final String templateTail;
+    private final Map<String, Integer> types = new LinkedHashMap<>();
+    private final Map<String, Integer> flags = new LinkedHashMap<>();
+    private final Map<String, Integer> details = new LinkedHashMap<>();
+    private final StringBuilder typeColumn = new StringBuilder();
+    private final StringBuilder identifierColumn = new StringBuilder();
+    private final StringBuilder env1Column = new StringBuilder();
+    private final StringBuilder env2Column = new StringBuilder();
+    private final StringBuilder flagColumn = new StringBuilder();
+    private final StringBuilder detailColumn = new StringBuilder();
+    private final StringBuilder sectionColumn = new StringBuilder();
+    private final StringBuilder block = new StringBuilder();
+    private int chunkRows;
+    private long rowCount;
+    private int sectionBlocks;
+    private String env1Name;
+    private String env2Name;
+
+    /**
+     * @param outputPath 輸出HTML文件的路徑
+     * @param title      報告標題中的工具名稱，例如 "AE" 或 "SQR"
+     * @throws IOException 如果文件無法建立
+     */
+    public HtmlComparisonSink(String outputPath, String title) throws IOException {
+        String template = loadTemplate();
+        int marker = template.indexOf(DATA_MARKER);
+        this.templateHead = template.substring(0, marker);
+        this.templateTail = template.substring(marker + DATA_MARKER.length());
+        this.outputPath = outputPath;
+        this.title = title;
+        this.output = StreamingReportWriter.create(outputPath);
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) throws IOException {
+        this.env1Name = env1Name;
+        this.env2Name = env2Name;
+        output.line(templateHead.replace("{{TITLE}}",
+                escapeHtml(title + " Trace Comparison: " + env1Name + " vs " + env2Name)));
+    }
+
+    @Override
+    public void accept(ComparisonRow row) throws IOException {
+        int section = -1;
+        if (!row.getSections().isEmpty()) {
+            section = sectionBlocks++;
+            writeSections(section, row);
+        }
+
+        String separator = chunkRows == 0 ? "" : ",";
+        typeColumn.append(separator).append(indexOf(types, row.getType()));
+        JsonStrings.append(identifierColumn.append(separator), row.getIdentifier(), true);
+        env1Column.append(separator).append(row.getEnv1Time());
+        env2Column.append(separator).append(row.getEnv2Time());
+        flagColumn.append(separator).append(indexOf(flags, row.getFlag()));
+        detailColumn.append(separator).append(indexOf(details, row.getDetails()));
+        sectionColumn.append(separator).append(section);
+        rowCount++;
+
+        if (++chunkRows == CHUNK_ROWS) {
+            writeChunk();
+        }
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) throws IOException {
+        writeChunk();
+
+        block.setLength(0);
+        block.append("<script type=\"application/json\" id=\"meta\">{\"title\":");
+        JsonStrings.append(block, title, true).append(",\"env1\":");
+        JsonStrings.append(block, env1Name, true).append(",\"env2\":");
+        JsonStrings.append(block, env2Name, true).append(",\"rows\":").append(rowCount);
+        appendDictionary("types", types);
+        appendDictionary("flags", flags);
+        appendDictionary("details", details);
+        block.append(",\"top\":[");
+        boolean first = true;
+        for (TopKRegressions.Regression regression : topRegressions.byAbsoluteDelta()) {
+            block.append(first ? "[" : ",[");
+            first = false;
+            JsonStrings.append(block, regression.getType(), true).append(',');
+            JsonStrings.append(block, regression.getIdentifier(), true).append(',')
+                    .append(regression.getEnv1Time()).append(',').append(regression.getEnv2Time()).append(']');
+        }
+        block.append("]}</script>");
+        output.line(block.toString());
+        output.line(templateTail);
+        log.info("HTML報告已輸出到 {}", outputPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private void writeChunk() throws IOException {
+        if (chunkRows == 0) {
+            return;
+        }
+        block.setLength(0);
+        block.append("<script type=\"application/json\" class=\"rows\">{\"type\":[").append(typeColumn)
+                .append("],\"id\":[").append(identifierColumn)
+                .append("],\"e1\":[").append(env1Column)
+                .append("],\"e2\":[").append(env2Column)
+                .append("],\"flag\":[").append(flagColumn)
+                .append("],\"det\":[").append(detailColumn)
+                .append("],\"sec\":[").append(sectionColumn)
+                .append("]}</script>");
+        output.line(block.toString());
+
+        typeColumn.setLength(0);
+        identifierColumn.setLength(0);
+        env1Column.setLength(0);
+        env2Column.setLength(0);
+        flagColumn.setLength(0);
+        detailColumn.setLength(0);
+        sectionColumn.setLength(0);
+        chunkRows = 0;
+    }
+
+    /**
+     * 附加資訊在展開行時才由頁面解析
+     */
+    private void writeSections(int section, ComparisonRow row) throws IOException {
+        block.setLength(0);
+        block.append("<script type=\"application/json\" id=\"s").append(section).append("\">[");
+        boolean first = true;
+        for (DetailSection detail : row.getSections()) {
+            block.append(first ? "{\"title\":" : ",{\"title\":");
+            first = false;
+            JsonStrings.append(block, detail.getTitle(), true).append(",\"subject\":");
+            JsonStrings.append(block, detail.getSubject(), true);
+            if (detail.isTable()) {
+                block.append(",\"rows\":[");
+                boolean firstRow = true;
+                for (Map.Entry<String, String[]> difference : detail.getDifferences().entrySet()) {
+                    block.append(firstRow ? "[" : ",[");
+                    firstRow = false;
+                    JsonStrings.append(block, difference.getKey(), true).append(',');
+                    JsonStrings.append(block, difference.getValue()[0], true).append(',');
+                    JsonStrings.append(block, difference.getValue()[1], true).append(']');
+                }
+                block.append(']');
+            } else {
+                block.append(",\"env1\":");
+                JsonStrings.append(block, detail.getEnv1Value(), true).append(",\"env2\":");
+                JsonStrings.append(block, detail.getEnv2Value(), true);
+            }
+            block.append('}');
+        }
+        block.append("]</script>");
+        output.line(block.toString());
+    }
+
+    private void appendDictionary(String name, Map<String, Integer> dictionary) {
+        block.append(",\"").append(name).append("\":[");
+        boolean first = true;
+        for (String value : dictionary.keySet()) {
+            if (!first) {
+                block.append(',');
+            }
+            first = false;
+            JsonStrings.append(block, value, true);
+        }
+        block.append(']');
+    }
+
+    private static int indexOf(Map<String, Integer> dictionary, String value) {
+        return dictionary.computeIfAbsent(value, k -> dictionary.size());
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String loadTemplate() {
+        try (InputStream in = HtmlComparisonSink.class.getResourceAsStream(TEMPLATE)) {
+            if (in == null) {
+                throw new IllegalStateException("找不到HTML報告模板 " + TEMPLATE);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.StreamingReportWriter;
+import com.example.core.tool.TopKRegressions;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * 以JSON Lines格式輸出比較結果，每行一個JSON物件，方便以jq或其他工具逐行處理。
+ *
+ * <p>第一行是 {@code {"record":"header",...}}，包含兩個環境的名稱；之後每個結果一行
+ * {@code {"record":"row",...}}，UNIQUE和MISSING的結果中不存在的執行時間為null。</p>
+ *
+ * <p>除了寫到文件，也可以寫到任意的Writer，例如HTTP回應，行分隔符固定為 {@code \n}。</p>
+ */
+@Slf4j
+public final class JsonLinesComparisonSink implements ComparisonSink {
+    private final String outputPath;
+    private final StreamingReportWriter output;
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * @param outputPath 輸出文件的路徑
+     * @throws IOException 如果文件無法建立
+     */
+    public JsonLinesComparisonSink(String outputPath) throws IOException {
+        this.outputPath = outputPath;
+        this.output = StreamingReportWriter.create(outputPath);
+        this.writer = null;
+    }
+
+    /**
+     * @param writer 輸出，由調用方負責flush和關閉
+     */
+    public JsonLinesComparisonSink(Writer writer) {
+        this.outputPath = null;
+        this.output = null;
+        this.writer = writer;
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) throws IOException {
+        line.setLength(0);
+        line.append("{\"record\":\"header\",\"env1\":");
+        string(env1Name).append(",\"env2\":");
+        string(env2Name).append('}');
+        writeLine();
+    }
+
+    @Override
+    public void accept(ComparisonRow row) throws IOException {
+        line.setLength(0);
+        line.append("{\"record\":\"row\",\"status\":\"").append(row.getStatus()).append("\",\"type\":");
+        string(row.getType()).append(",\"identifier\":");
+        string(row.getIdentifier()).append(",\"env1Ms\":");
+        time(row.getEnv1Time()).append(",\"env2Ms\":");
+        time(row.getEnv2Time());
+        if (row.getStatus() == ComparisonRow.Status.MATCHED) {
+            line.append(",\"diffMs\":").append(row.diff())
+                    .append(",\"diffPercent\":").append(Math.round(row.diffPercent() * 100) / 100.0);
+        }
+        line.append(",\"flag\":");
+        string(row.getFlag()).append(",\"details\":");
+        string(row.getDetails());
+
+        if (!row.getSections().isEmpty()) {
+            line.append(",\"sections\":[");
+            boolean first = true;
+            for (DetailSection section : row.getSections()) {
+                line.append(first ? "{\"title\":" : ",{\"title\":");
+                first = false;
+                string(section.getTitle());
+                if (section.isTable()) {
+                    line.append(",\"differences\":{");
+                    boolean firstDifference = true;
+                    for (Map.Entry<String, String[]> difference : section.getDifferences().entrySet()) {
+                        if (!firstDifference) {
+                            line.append(',');
+                        }
+                        firstDifference = false;
+                        string(difference.getKey()).append(":[");
+                        string(difference.getValue()[0]).append(',');
+                        string(difference.getValue()[1]).append(']');
+                    }
+                    line.append('}');
+                } else {
+                    line.append(",\"env1\":");
+                    string(section.getEnv1Value()).append(",\"env2\":");
+                    string(section.getEnv2Value());
+                }
+                line.append('}');
+            }
+            line.append(']');
+        }
+        line.append('}');
+        writeLine();
+    }
+
+    /**
+     * 寫出作業結束的記錄 {@code {"record":"status",...}}，讓讀取串流的客戶端知道結果是否完整。
+     *
+     * @param jobId  作業編號
+     * @param status 作業的最終狀態
+     * @param error  失敗原因，沒有時為null
+     * @throws IOException 如果輸出無法寫入
+     */
+    public void status(String jobId, String status, String error) throws IOException {
+        line.setLength(0);
+        line.append("{\"record\":\"status\",\"id\":");
+        string(jobId).append(",\"status\":");
+        string(status).append(",\"error\":");
+        string(error).append('}');
+        writeLine();
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) {
+        if (outputPath != null) {
+            log.info("JSON Lines比對結果已輸出到 {}", outputPath);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (output != null) {
+            output.close();
+        }
+    }
+
+    private void writeLine() throws IOException {
+        if (output != null) {
+            output.line(line.toString());
+        } else {
+            writer.append(line).append('\n');
+        }
+    }
+
+    private StringBuilder time(long millis) {
+        return millis >= 0 ? line.append(millis) : line.append("null");
+    }
+
+    private StringBuilder string(String value) {
+        return JsonStrings.append(line, value);
+    }
+}
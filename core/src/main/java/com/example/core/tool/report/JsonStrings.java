@@ -0,0 +1,59 @@
+package com.example.core.tool.report;
+
+/**
+ * 將字串以JSON字串字面值的形式附加到StringBuilder。
+ */
+final class JsonStrings {
+
+    private JsonStrings() {
+    }
+
+    /**
+     * @param out   輸出
+     * @param value 字串，null輸出為 null
+     * @return 同一個out，方便連續調用
+     */
+    static StringBuilder append(StringBuilder out, String value) {
+        return append(out, value, false);
+    }
+
+    /**
+     * @param out      輸出
+     * @param value    字串，null輸出為 null
+     * @param htmlSafe 是否另外轉義 &lt;、&gt;、&amp; 和行分隔符，讓結果可以直接放在HTML的script元素中
+     * @return 同一個out，方便連續調用
+     */
+    static StringBuilder append(StringBuilder out, String value, boolean htmlSafe) {
+        if (value == null) {
+            return out.append("null");
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || (htmlSafe && (c == '<' || c == '>' || c == '&' || c == '\u2028' || c == '\u2029'))) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+}
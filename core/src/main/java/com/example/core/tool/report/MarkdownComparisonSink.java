@@ -0,0 +1,133 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.StreamingReportWriter;
+import com.example.core.tool.TopKRegressions;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 以Markdown格式輸出詳細比較報告。
+ *
+ * <p>逐筆差異先寫入臨時文件，比較結束後再寫出標題和變慢最多的條目，之後附加這些差異，
+ * 因此報告開頭就是最重要的資訊，而整個報告不需要放在記憶體中。</p>
+ */
+@Slf4j
+public final class MarkdownComparisonSink implements ComparisonSink {
+    private final String outputPath;
+    private final String title;
+    private final StreamingReportWriter output;
+    private final StreamingReportWriter.Spool body;
+    private String env1Name;
+    private String env2Name;
+
+    /**
+     * @param outputPath 輸出Markdown文件的路徑
+     * @param title      報告標題中的工具名稱，例如 "AE" 或 "SQR"
+     * @throws IOException 如果文件無法建立
+     */
+    public MarkdownComparisonSink(String outputPath, String title) throws IOException {
+        this.outputPath = outputPath;
+        this.title = title;
+        this.output = StreamingReportWriter.create(outputPath);
+        try {
+            this.body = output.spool();
+        } catch (IOException e) {
+            output.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param value 表格儲存格的內容，null視為空字串
+     * @return 可以放進Markdown表格儲存格的文字：| 加上跳脫，換行改為空格，以免拆開表格的行或欄
+     */
+    public static String cell(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("|", "\\|").replace("\r\n", " ").replace('\r', ' ').replace('\n', ' ');
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) {
+        this.env1Name = env1Name;
+        this.env2Name = env2Name;
+    }
+
+    @Override
+    public void accept(ComparisonRow row) throws IOException {
+        switch (row.getStatus()) {
+            case UNIQUE:
+                writeUnmatched(row, env2Name, row.getEnv2Time());
+                return;
+            case MISSING:
+                writeUnmatched(row, env1Name, row.getEnv1Time());
+                return;
+            default:
+                break;
+        }
+
+        for (DetailSection section : row.getSections()) {
+            writeSection(row.getIdentifier(), section);
+        }
+
+        // 只有被規則標記的條目才列出執行時間
+        if (!row.getFlag().isEmpty()) {
+            body.line("### " + row.getFlag() + ": " + row.getType() + " - " + row.getIdentifier());
+            body.line("* " + env1Name + " Duration: " + row.getEnv1Time() + " ms");
+            body.line("* " + env2Name + " Duration: " + row.getEnv2Time() + " ms");
+            body.line("* Difference: " + row.diff() + " ms (" + String.format("%.2f", row.diffPercent()) + "%)");
+            if (!row.getDetails().isEmpty()) {
+                body.line("* Details: " + row.getDetails());
+            }
+            body.line("");
+        }
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) throws IOException {
+        output.line("# " + title + " Trace Comparison Detailed Report");
+        output.line("## Comparison between " + env1Name + " and " + env2Name);
+        output.line("");
+        output.lines(topRegressions.toMarkdown(env1Name, env2Name));
+        output.append(body);
+        log.info("詳細報告已輸出到 {}", outputPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private void writeSection(String identifier, DetailSection section) throws IOException {
+        body.line("### " + section.getTitle() + " for " + identifier);
+        if (section.isTable()) {
+            body.line("| " + cell(section.getSubject()) + " | " + cell(env1Name) + " | " + cell(env2Name) + " |");
+            body.line("|----------|------------|------------|");
+            for (Map.Entry<String, String[]> difference : section.getDifferences().entrySet()) {
+                String[] values = difference.getValue();
+                body.line("| " + cell(difference.getKey()) + " | " + cell(values[0]) + " | " + cell(values[1]) + " |");
+            }
+        } else {
+            writeBlock(env1Name, section.getSubject(), section.getLanguage(), section.getEnv1Value());
+            writeBlock(env2Name, section.getSubject(), section.getLanguage(), section.getEnv2Value());
+        }
+        body.line("");
+    }
+
+    private void writeBlock(String envName, String subject, String language, String value) throws IOException {
+        body.line("#### " + envName + " " + subject + ":");
+        body.line("```" + language);
+        body.line(value);
+        body.line("```");
+    }
+
+    private void writeUnmatched(ComparisonRow row, String envName, long duration) throws IOException {
+        body.line("### " + row.getFlag() + ": " + row.getType() + " - " + row.getIdentifier());
+        body.line("* Only exists in " + envName);
+        body.line("* Duration: " + duration + " ms");
+        body.line("");
+    }
+}
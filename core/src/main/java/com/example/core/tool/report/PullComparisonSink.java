@@ -0,0 +1,154 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.TopKRegressions;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把比較的事件流交給另一個線程逐個取出，例如把結果即時寫給HTTP客戶端。
+ *
+ * <p>與 {@link AsyncComparisonSink} 一樣以有界隊列連接比較線程和讀取方，但沒有自己的寫入線程：
+ * 事件由調用 {@link #drainTo} 的線程取出並交給目標輸出。讀取方較慢時隊列會滿，比較線程隨之等待，
+ * 因此比較的速度跟隨讀取方，記憶體用量不會超過隊列容量。</p>
+ *
+ * <p>讀取方離開（{@link #detach()}，或 {@link #drainTo} 因寫入失敗而結束）之後，之後的事件都被丟棄，
+ * 比較繼續進行，不影響其他輸出。讀取方超過指定時間沒有取出任何事件時也視為離開，避免比較線程永遠等待。</p>
+ */
+@Slf4j
+public final class PullComparisonSink implements ComparisonSink {
+
+    /**
+     * 默認隊列容量（事件數）
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final long POLL_MILLIS = 100;
+
+    private static final Event CLOSE = sink -> {
+    };
+
+    private final BlockingQueue<Event> queue;
+    private final long stallTimeoutMillis;
+    private volatile boolean detached;
+    private boolean closed;
+
+    /**
+     * @param capacity     隊列容量
+     * @param stallTimeout 隊列已滿時比較線程最多等待讀取方的時間，超過後停止交出事件
+     */
+    public PullComparisonSink(int capacity, Duration stallTimeout) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.stallTimeoutMillis = stallTimeout.toMillis();
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) throws IOException {
+        submit(sink -> sink.begin(env1Name, env2Name));
+    }
+
+    @Override
+    public void accept(ComparisonRow row) throws IOException {
+        submit(sink -> sink.accept(row));
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) throws IOException {
+        submit(sink -> sink.end(topRegressions));
+    }
+
+    /**
+     * 通知讀取方事件流已結束，重複調用沒有作用。比較線程被中斷時不再等待讀取方，直接視為讀取方已離開。
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submit(CLOSE);
+        } catch (InterruptedIOException e) {
+            detach();
+        }
+    }
+
+    /**
+     * 在調用線程中依次把事件交給目標輸出，直到事件流結束或讀取方離開。
+     * 隊列暫時沒有事件時先調用 {@code output.flush()}，讓已寫出的結果即時送到客戶端。
+     *
+     * @param target 接收事件的輸出，不會被關閉
+     * @param output 目標輸出寫入的地方
+     * @throws IOException          如果目標輸出無法寫入，之後視為讀取方已離開
+     * @throws InterruptedException 如果等待事件時被中斷，之後視為讀取方已離開
+     */
+    public void drainTo(ComparisonSink target, Flushable output) throws IOException, InterruptedException {
+        boolean completed = false;
+        try {
+            while (!detached) {
+                Event event = queue.poll();
+                if (event == null) {
+                    output.flush();
+                    while ((event = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                        if (detached) {
+                            return;
+                        }
+                    }
+                }
+                if (event == CLOSE) {
+                    output.flush();
+                    completed = true;
+                    return;
+                }
+                event.apply(target);
+            }
+        } finally {
+            // 讀取方沒有讀到結尾就離開時，不能讓比較線程在已滿的隊列上等待
+            if (!completed) {
+                detach();
+            }
+        }
+    }
+
+    /**
+     * 讀取方離開：丟棄隊列中和之後的事件，正在等待的比較線程隨即繼續。
+     */
+    public void detach() {
+        detached = true;
+        queue.clear();
+    }
+
+    /**
+     * @return 讀取方是否已離開
+     */
+    public boolean isDetached() {
+        return detached;
+    }
+
+    private void submit(Event event) throws InterruptedIOException {
+        long waited = 0;
+        try {
+            while (!detached && !queue.offer(event, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                waited += POLL_MILLIS;
+                if (waited >= stallTimeoutMillis) {
+                    log.warn("讀取方 {} 秒沒有取出比較結果，停止交出結果", stallTimeoutMillis / 1000);
+                    detach();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待讀取方取出比較結果時被中斷");
+        }
+    }
+
+    @FunctionalInterface
+    private interface Event {
+        void apply(ComparisonSink sink) throws IOException;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.core.tool.rule;
+
+/**
+ * 編譯後的數值表達式
+ */
+@FunctionalInterface
+interface NumericExpression {
+
+    double evaluate(RuleInput input);
+}
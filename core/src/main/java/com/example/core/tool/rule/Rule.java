@@ -0,0 +1,40 @@
+package com.example.core.tool.rule;
+
+/**
+ * 一條編譯後的規則：條件成立時將條目標記為指定的標記。
+ */
+public final class Rule {
+
+    private final String condition;
+    private final String flag;
+    private final RulePredicate predicate;
+
+    Rule(String condition, String flag, RulePredicate predicate) {
+        this.condition = condition;
+        this.flag = flag;
+        this.predicate = predicate;
+    }
+
+    /**
+     * @return 規則條件的原始文字
+     */
+    public String getCondition() {
+        return condition;
+    }
+
+    /**
+     * @return 條件成立時使用的標記
+     */
+    public String getFlag() {
+        return flag;
+    }
+
+    boolean matches(RuleInput input) {
+        return predicate.test(input);
+    }
+
+    @Override
+    public String toString() {
+        return condition + " -> " + flag;
+    }
+}
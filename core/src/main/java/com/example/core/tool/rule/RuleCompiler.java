@@ -0,0 +1,382 @@
+package com.example.core.tool.rule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 將規則條件的文字編譯為 {@link RulePredicate} 物件。
+ *
+ * <p>語法（優先順序由低到高）：</p>
+ * <pre>
+ * or         := and (("||" | "OR") and)*
+ * and        := not (("&amp;&amp;" | "AND") not)*
+ * not        := ("!" | "NOT") not | comparison
+ * comparison := sum ((">" | "&gt;=" | "&lt;" | "&lt;=" | "==" | "!=") sum)?
+ * sum        := product (("+" | "-") product)*
+ * product    := unary (("*" | "/") unary)*
+ * unary      := "-" unary | primary
+ * primary    := number [ms | s | x | %] | variable | function "(" or ("," or)* ")" | "(" or ")"
+ * </pre>
+ *
+ * <p>變量：env1、env2（兩個環境的執行時間，毫秒）、diff（env2 - env1）、ratio（env2 / env1）、
+ * pct（差異百分比）、executions（env2中的執行次數）。函數：abs、min、max。
+ * 數字後的 s 表示秒，其他單位只是為了可讀性。</p>
+ *
+ * <p>編譯只在載入規則時進行一次；比較時只調用編譯好的lambda，不再解析文字。</p>
+ */
+final class RuleCompiler {
+
+    private final String source;
+    private final List<String> tokens;
+    private int position;
+
+    private RuleCompiler(String source) {
+        this.source = source;
+        this.tokens = tokenize(source);
+    }
+
+    /**
+     * 編譯一個條件。
+     *
+     * @param condition 條件文字
+     * @return 編譯後的條件
+     * @throws IllegalArgumentException 如果條件的語法不正確
+     */
+    static RulePredicate compile(String condition) {
+        RuleCompiler compiler = new RuleCompiler(condition);
+        RulePredicate predicate = compiler.expectPredicate(compiler.parseOr());
+        if (compiler.position < compiler.tokens.size()) {
+            throw compiler.error("多餘的內容 '" + compiler.tokens.get(compiler.position) + "'");
+        }
+        return predicate;
+    }
+
+    private Object parseOr() {
+        Object left = parseAnd();
+        while (accept("||") || accept("OR")) {
+            RulePredicate l = expectPredicate(left);
+            RulePredicate r = expectPredicate(parseAnd());
+            left = (RulePredicate) input -> l.test(input) || r.test(input);
+        }
+        return left;
+    }
+
+    private Object parseAnd() {
+        Object left = parseNot();
+        while (accept("&&") || accept("AND")) {
+            RulePredicate l = expectPredicate(left);
+            RulePredicate r = expectPredicate(parseNot());
+            left = (RulePredicate) input -> l.test(input) && r.test(input);
+        }
+        return left;
+    }
+
+    private Object parseNot() {
+        if (accept("!") || accept("NOT")) {
+            RulePredicate operand = expectPredicate(parseNot());
+            return (RulePredicate) input -> !operand.test(input);
+        }
+        return parseComparison();
+    }
+
+    private Object parseComparison() {
+        Object left = parseSum();
+        String operator = peek();
+        if (operator == null || !isComparison(operator)) {
+            return left;
+        }
+        position++;
+        NumericExpression l = expectNumeric(left);
+        NumericExpression r = expectNumeric(parseSum());
+
+        // 右邊為常數時（最常見的情況）避免每次求值都調用常數表達式
+        if (r instanceof Constant) {
+            double c = ((Constant) r).value;
+            switch (operator) {
+                case ">":
+                    return (RulePredicate) input -> l.evaluate(input) > c;
+                case ">=":
+                    return (RulePredicate) input -> l.evaluate(input) >= c;
+                case "<":
+                    return (RulePredicate) input -> l.evaluate(input) < c;
+                case "<=":
+                    return (RulePredicate) input -> l.evaluate(input) <= c;
+                case "==":
+                    return (RulePredicate) input -> l.evaluate(input) == c;
+                default:
+                    return (RulePredicate) input -> l.evaluate(input) != c;
+            }
+        }
+        switch (operator) {
+            case ">":
+                return (RulePredicate) input -> l.evaluate(input) > r.evaluate(input);
+            case ">=":
+                return (RulePredicate) input -> l.evaluate(input) >= r.evaluate(input);
+            case "<":
+                return (RulePredicate) input -> l.evaluate(input) < r.evaluate(input);
+            case "<=":
+                return (RulePredicate) input -> l.evaluate(input) <= r.evaluate(input);
+            case "==":
+                return (RulePredicate) input -> l.evaluate(input) == r.evaluate(input);
+            default:
+                return (RulePredicate) input -> l.evaluate(input) != r.evaluate(input);
+        }
+    }
+
+    private Object parseSum() {
+        Object left = parseProduct();
+        while (true) {
+            if (accept("+")) {
+                left = fold(expectNumeric(left), expectNumeric(parseProduct()), '+');
+            } else if (accept("-")) {
+                left = fold(expectNumeric(left), expectNumeric(parseProduct()), '-');
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Object parseProduct() {
+        Object left = parseUnary();
+        while (true) {
+            if (accept("*")) {
+                left = fold(expectNumeric(left), expectNumeric(parseUnary()), '*');
+            } else if (accept("/")) {
+                left = fold(expectNumeric(left), expectNumeric(parseUnary()), '/');
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Object parseUnary() {
+        if (accept("-")) {
+            return fold(new Constant(0), expectNumeric(parseUnary()), '-');
+        }
+        return parsePrimary();
+    }
+
+    private Object parsePrimary() {
+        String token = next();
+        if (token.equals("(")) {
+            Object inner = parseOr();
+            expect(")");
+            return inner;
+        }
+        if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '.') {
+            // 允許數字和單位之間有空格，例如 "500 ms"
+            String unit = peek();
+            if (unit != null && isUnit(unit) && isUnit(token.replaceAll("^[0-9.]+", ""))) {
+                position++;
+                token = token + unit;
+            }
+            return parseNumber(token);
+        }
+        switch (token.toLowerCase(Locale.ROOT)) {
+            case "env1":
+                return (NumericExpression) input -> input.env1Time;
+            case "env2":
+                return (NumericExpression) input -> input.env2Time;
+            case "diff":
+                return (NumericExpression) RuleInput::diff;
+            case "ratio":
+                return (NumericExpression) RuleInput::ratio;
+            case "pct":
+                return (NumericExpression) RuleInput::percent;
+            case "executions":
+                return (NumericExpression) input -> input.executions;
+            case "abs": {
+                NumericExpression argument = parseArguments(1).get(0);
+                return argument instanceof Constant ? new Constant(Math.abs(((Constant) argument).value))
+                        : (NumericExpression) input -> Math.abs(argument.evaluate(input));
+            }
+            case "min": {
+                List<NumericExpression> arguments = parseArguments(2);
+                NumericExpression a = arguments.get(0);
+                NumericExpression b = arguments.get(1);
+                return (NumericExpression) input -> Math.min(a.evaluate(input), b.evaluate(input));
+            }
+            case "max": {
+                List<NumericExpression> arguments = parseArguments(2);
+                NumericExpression a = arguments.get(0);
+                NumericExpression b = arguments.get(1);
+                return (NumericExpression) input -> Math.max(a.evaluate(input), b.evaluate(input));
+            }
+            default:
+                throw error("未知的變量或函數 '" + token + "'");
+        }
+    }
+
+    private List<NumericExpression> parseArguments(int count) {
+        expect("(");
+        List<NumericExpression> arguments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                expect(",");
+            }
+            arguments.add(expectNumeric(parseOr()));
+        }
+        expect(")");
+        return arguments;
+    }
+
+    private Constant parseNumber(String token) {
+        int end = 0;
+        while (end < token.length() && (Character.isDigit(token.charAt(end)) || token.charAt(end) == '.')) {
+            end++;
+        }
+        double value;
+        try {
+            value = Double.parseDouble(token.substring(0, end));
+        } catch (NumberFormatException e) {
+            throw error("無效的數字 '" + token + "'");
+        }
+        String unit = token.substring(end).toLowerCase(Locale.ROOT);
+        switch (unit) {
+            case "":
+            case "ms":
+            case "x":
+            case "%":
+                return new Constant(value);
+            case "s":
+                return new Constant(value * 1000);
+            default:
+                throw error("未知的單位 '" + unit + "'");
+        }
+    }
+
+    /**
+     * 兩邊都是常數時在編譯時計算結果
+     */
+    private static NumericExpression fold(NumericExpression l, NumericExpression r, char operator) {
+        if (l instanceof Constant && r instanceof Constant) {
+            double a = ((Constant) l).value;
+            double b = ((Constant) r).value;
+            switch (operator) {
+                case '+':
+                    return new Constant(a + b);
+                case '-':
+                    return new Constant(a - b);
+                case '*':
+                    return new Constant(a * b);
+                default:
+                    return new Constant(a / b);
+            }
+        }
+        switch (operator) {
+            case '+':
+                return input -> l.evaluate(input) + r.evaluate(input);
+            case '-':
+                return input -> l.evaluate(input) - r.evaluate(input);
+            case '*':
+                return input -> l.evaluate(input) * r.evaluate(input);
+            default:
+                return input -> l.evaluate(input) / r.evaluate(input);
+        }
+    }
+
+    private RulePredicate expectPredicate(Object compiled) {
+        if (compiled instanceof RulePredicate) {
+            return (RulePredicate) compiled;
+        }
+        throw error("此處需要條件（例如 env2 > 100），而不是數值");
+    }
+
+    private NumericExpression expectNumeric(Object compiled) {
+        if (compiled instanceof NumericExpression) {
+            return (NumericExpression) compiled;
+        }
+        throw error("此處需要數值，而不是條件");
+    }
+
+    /**
+     * 空字串表示數字後面沒有單位
+     */
+    private static boolean isUnit(String token) {
+        String unit = token.toLowerCase(Locale.ROOT);
+        return unit.isEmpty() || unit.equals("ms") || unit.equals("s") || unit.equals("x") || unit.equals("%");
+    }
+
+    private static boolean isComparison(String token) {
+        return token.equals(">") || token.equals(">=") || token.equals("<") || token.equals("<=")
+                || token.equals("==") || token.equals("!=");
+    }
+
+    private String peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    private String next() {
+        if (position >= tokens.size()) {
+            throw error("條件不完整");
+        }
+        return tokens.get(position++);
+    }
+
+    private boolean accept(String token) {
+        String current = peek();
+        if (current != null && current.equalsIgnoreCase(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw error("缺少 '" + token + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("無法編譯規則條件 '" + source + "': " + message);
+    }
+
+    private static List<String> tokenize(String source) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetterOrDigit(c) || c == '.' || c == '_') {
+                // 數字和單位（例如 500ms、3x）以及變量名稱作為一個記號
+                int start = i;
+                while (i < source.length() && (Character.isLetterOrDigit(source.charAt(i))
+                        || source.charAt(i) == '.' || source.charAt(i) == '_' || source.charAt(i) == '%')) {
+                    i++;
+                }
+                tokens.add(source.substring(start, i));
+            } else if (i + 1 < source.length() && isTwoCharOperator(source.substring(i, i + 2))) {
+                tokens.add(source.substring(i, i + 2));
+                i += 2;
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isTwoCharOperator(String candidate) {
+        return candidate.equals(">=") || candidate.equals("<=") || candidate.equals("==")
+                || candidate.equals("!=") || candidate.equals("&&") || candidate.equals("||");
+    }
+
+    /**
+     * 常數，用於編譯時的常數折疊
+     */
+    private static final class Constant implements NumericExpression {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(RuleInput input) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.core.tool.rule;
+
+/**
+ * 規則求值時的輸入值。比較器為每一次比較重用同一個實例，只更新其中的基本類型欄位，求值時不會分配物件。
+ */
+public final class RuleInput {
+
+    long env1Time;
+    long env2Time;
+    long executions;
+
+    /**
+     * 設定下一次求值的輸入。
+     *
+     * @param env1Time   第一個環境的執行時間（毫秒）
+     * @param env2Time   第二個環境的執行時間（毫秒）
+     * @param executions 該標識符在第二個環境中的執行次數
+     * @return 此實例
+     */
+    public RuleInput set(long env1Time, long env2Time, long executions) {
+        this.env1Time = env1Time;
+        this.env2Time = env2Time;
+        this.executions = executions;
+        return this;
+    }
+
+    double diff() {
+        return env2Time - env1Time;
+    }
+
+    double ratio() {
+        return env1Time > 0 ? (double) env2Time / env1Time : 0;
+    }
+
+    double percent() {
+        return env1Time > 0 ? (env2Time - env1Time) * 100.0 / env1Time : 0;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.core.tool.rule;
+
+/**
+ * 編譯後的布林規則條件
+ */
+@FunctionalInterface
+interface RulePredicate {
+
+    boolean test(RuleInput input);
+}
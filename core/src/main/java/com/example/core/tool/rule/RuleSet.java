@@ -0,0 +1,202 @@
+package com.example.core.tool.rule;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 一組按條目類型分組、編譯好的差異標記規則。
+ *
+ * <p>規則定義文件每行一條規則，空行和以 # 開頭的行會被忽略：</p>
+ * <pre>
+ * # 類型（多個類型以逗號分隔，* 表示所有類型）: 條件 -&gt; 標記
+ * SQL: ratio &gt; 3x AND diff &gt; 500 ms AND executions &gt; 100 -&gt; ALERT
+ * STEP, FUNCTION: abs(diff) &gt; env1 * 0.5 &amp;&amp; abs(diff) &gt; 1s -&gt; ALERT
+ * *: abs(diff) &gt; env1 * 0.2 &amp;&amp; abs(diff) &gt; 100 -&gt; ALERT
+ * </pre>
+ *
+ * <p>條件的語法見 {@link RuleCompiler}。對每個條目，先按文件順序檢查該類型的規則，再檢查 * 規則，
+ * 第一條成立的規則決定標記；都不成立時標記為空字串。</p>
+ *
+ * <p>所有規則在載入時編譯一次並按類型存放為陣列，比較時每個條目只需一次查表和幾次lambda調用。
+ * RuleSet是不可變的，可以在多個線程中共用；{@link RuleInput} 則應每個線程各自持有。</p>
+ */
+@Slf4j
+public final class RuleSet {
+
+    /**
+     * 與原來寫死在AETraceComparator和SQRTraceComparator中的規則相同：差異超過20%且超過100ms時標記為ALERT
+     */
+    public static final String DEFAULT_RULES = "*: abs(diff) > env1 * 0.2 && abs(diff) > 100 -> ALERT";
+
+    private static final String WILDCARD = "*";
+    private static final Rule[] NO_RULES = new Rule[0];
+
+    private final Map<String, Rule[]> rulesByType;
+    private final Rule[] wildcardRules;
+
+    private RuleSet(Map<String, Rule[]> rulesByType, Rule[] wildcardRules) {
+        this.rulesByType = rulesByType;
+        this.wildcardRules = wildcardRules;
+    }
+
+    /**
+     * @return 重現原有ALERT規則的默認規則集
+     */
+    public static RuleSet defaults() {
+        return DefaultHolder.DEFAULTS;
+    }
+
+    /**
+     * 差異同時超過第一個環境時間的指定百分比和指定毫秒數時標記為ALERT，與 {@link #DEFAULT_RULES} 的形式相同。
+     *
+     * @param percent 百分比閾值，例如20表示20%
+     * @param millis  毫秒閾值
+     * @return 規則集
+     */
+    public static RuleSet threshold(double percent, long millis) {
+        return compile("*: abs(diff) > env1 * " + number(BigDecimal.valueOf(percent).movePointLeft(2))
+                + " && abs(diff) > " + millis + " -> ALERT");
+    }
+
+    /**
+     * 重現NewAETraceComparator原有的THRESHOLD_EXCEEDED規則：
+     * 兩個環境的執行時間都大於0，且較慢的一方超過較快一方的指定倍數。
+     *
+     * @param multiplier 倍數閾值
+     * @return 規則集
+     */
+    public static RuleSet ratioThreshold(double multiplier) {
+        String threshold = number(BigDecimal.valueOf(multiplier));
+        return compile("*: env1 > 0 && env2 > 0 && (env2 / env1 > " + threshold + " || env1 / env2 > " + threshold
+                + ") -> THRESHOLD_EXCEEDED");
+    }
+
+    /**
+     * 規則語法中的數字不接受科學記數法，因此以十進位形式寫出，例如1.0E-5寫為0.00001
+     */
+    private static String number(BigDecimal value) {
+        return value.stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * 從規則定義文件載入並編譯規則。
+     *
+     * @param path 規則定義文件的路徑（UTF-8）
+     * @return 規則集
+     * @throws IOException              如果文件無法讀取
+     * @throws IllegalArgumentException 如果任一規則的語法不正確
+     */
+    public static RuleSet load(Path path) throws IOException {
+        RuleSet ruleSet = compile(Files.readString(path, StandardCharsets.UTF_8));
+        log.info("從 {} 載入了 {} 條規則", path, ruleSet.size());
+        return ruleSet;
+    }
+
+    /**
+     * 編譯規則定義文字。
+     *
+     * @param definitions 規則定義，每行一條
+     * @return 規則集
+     * @throws IllegalArgumentException 如果任一規則的語法不正確，訊息中包含行號
+     */
+    public static RuleSet compile(String definitions) {
+        Map<String, List<Rule>> rules = new HashMap<>();
+        String[] lines = definitions.split("\\R");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            int arrow = line.lastIndexOf("->");
+            if (colon <= 0 || arrow < colon) {
+                throw new IllegalArgumentException("規則第" + (i + 1) + "行的格式應為 '類型: 條件 -> 標記': " + line);
+            }
+
+            String condition = line.substring(colon + 1, arrow).trim();
+            String flag = line.substring(arrow + 2).trim();
+            if (flag.isEmpty()) {
+                throw new IllegalArgumentException("規則第" + (i + 1) + "行缺少標記: " + line);
+            }
+
+            Rule rule;
+            try {
+                rule = new Rule(condition, flag, RuleCompiler.compile(condition));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("規則第" + (i + 1) + "行: " + e.getMessage(), e);
+            }
+
+            for (String type : line.substring(0, colon).split(",")) {
+                rules.computeIfAbsent(type.trim().toUpperCase(Locale.ROOT), k -> new ArrayList<>()).add(rule);
+            }
+        }
+
+        Map<String, Rule[]> rulesByType = new HashMap<>();
+        for (Map.Entry<String, List<Rule>> entry : rules.entrySet()) {
+            if (!entry.getKey().equals(WILDCARD)) {
+                rulesByType.put(entry.getKey(), entry.getValue().toArray(NO_RULES));
+            }
+        }
+        Rule[] wildcardRules = rules.getOrDefault(WILDCARD, Collections.emptyList()).toArray(NO_RULES);
+        return new RuleSet(rulesByType, wildcardRules);
+    }
+
+    /**
+     * 對一個條目求值。
+     *
+     * @param type  條目類型
+     * @param input 輸入值
+     * @return 第一條成立的規則的標記，沒有規則成立時返回空字串
+     */
+    public String evaluate(String type, RuleInput input) {
+        Rule[] typeRules = rulesByType.getOrDefault(type, NO_RULES);
+        for (Rule rule : typeRules) {
+            if (rule.matches(input)) {
+                return rule.getFlag();
+            }
+        }
+        for (Rule rule : wildcardRules) {
+            if (rule.matches(input)) {
+                return rule.getFlag();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * @param type 條目類型
+     * @return 適用於該類型的規則，按檢查順序排列
+     */
+    public List<Rule> rulesFor(String type) {
+        List<Rule> applicable = new ArrayList<>(List.of(rulesByType.getOrDefault(type, NO_RULES)));
+        applicable.addAll(List.of(wildcardRules));
+        return applicable;
+    }
+
+    /**
+     * @return 規則總數（適用於多個類型的規則按類型分別計算）
+     */
+    public int size() {
+        int size = wildcardRules.length;
+        for (Rule[] typeRules : rulesByType.values()) {
+            size += typeRules.length;
+        }
+        return size;
+    }
+
+    private static final class DefaultHolder {
+        private static final RuleSet DEFAULTS = compile(DEFAULT_RULES);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.core.tool.store;
+
+import com.example.core.tool.report.ComparisonRow;
+
+import java.util.List;
+
+/**
+ * {@link ResultStore} 查詢的一頁結果。
+ *
+ * @param total 符合條件的總行數
+ * @param page  頁碼，從0開始
+ * @param size  每頁的行數
+ * @param sort  排序欄位
+ * @param rows  這一頁的行
+ */
+public record ResultPage(long total, int page, int size, String sort, List<Row> rows) {
+
+    /**
+     * 一行比較結果
+     *
+     * @param row         在比較結果中的行號，從0開始
+     * @param status      結果的種類
+     * @param type        條目類型
+     * @param identifier  標識符
+     * @param env1Time    第一個環境的執行時間（毫秒），不存在時為null
+     * @param env2Time    第二個環境的執行時間（毫秒），不存在時為null
+     * @param diff        差異（毫秒），只有兩個環境都有時才有值
+     * @param diffPercent 差異百分比，只有兩個環境都有時才有值
+     * @param flag        規則標記、UNIQUE或MISSING，沒有標記時為空字串
+     * @param details     差異摘要
+     */
+    public record Row(int row, ComparisonRow.Status status, String type, String identifier,
+                      Long env1Time, Long env2Time, Long diff, Double diffPercent,
+                      String flag, String details) {
+    }
+}
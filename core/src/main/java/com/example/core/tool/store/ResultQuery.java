@@ -0,0 +1,109 @@
+package com.example.core.tool.store;
+
+import com.example.core.tool.report.ComparisonRow;
+
+/**
+ * 對 {@link ResultStore} 的一次分頁查詢。所有條件都是可選的，同時指定時必須全部符合。
+ */
+public class ResultQuery {
+
+    /**
+     * 每頁最多的行數
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private String type;
+    private String flag;
+    private ComparisonRow.Status status;
+    private String prefix;
+    private Long minDiff;
+    private String sort = "row";
+    private int page;
+    private int size = 50;
+
+    /**
+     * @return 條目類型，例如 SQL
+     */
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * @return 規則標記、UNIQUE或MISSING；空字串表示沒有標記的行
+     */
+    public String getFlag() {
+        return flag;
+    }
+
+    public void setFlag(String flag) {
+        this.flag = flag;
+    }
+
+    public ComparisonRow.Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(ComparisonRow.Status status) {
+        this.status = status;
+    }
+
+    /**
+     * @return 標識符的前綴，區分大小寫
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return 最小差異（毫秒，env2 - env1），指定時只返回兩個環境都有的行
+     */
+    public Long getMinDiff() {
+        return minDiff;
+    }
+
+    public void setMinDiff(Long minDiff) {
+        this.minDiff = minDiff;
+    }
+
+    /**
+     * @return 排序欄位：row、type、identifier、env1、env2、diff、diffPercent 或 flag，前面加 - 表示降序；
+     * 沒有值的行（例如只存在於一個環境的行的diff）無論升降序都排在最後
+     */
+    public String getSort() {
+        return sort;
+    }
+
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    /**
+     * @return 頁碼，從0開始
+     */
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    /**
+     * @return 每頁的行數，最多 {@value #MAX_PAGE_SIZE}
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+}
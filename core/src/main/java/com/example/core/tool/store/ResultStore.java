@@ -0,0 +1,604 @@
+package com.example.core.tool.store;
+
+import com.example.core.tool.report.ComparisonRow;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * 以列式存放、帶有次級索引的比較結果，由 {@link ResultStoreSink} 寫出，以記憶體映射讀取並分頁查詢。
+ *
+ * <p>文件依次為：文件頭（行數、環境名稱、type和flag的字典、字串列的長度）；每一列一個連續區段
+ * （status、type編號、flag編號、env1、env2、identifier、details，字串列先存放偏移量再存放UTF-8位元組）；
+ * type和flag每個值按行號排列的行列表；identifier、env1、env2、diff、diffPercent 各一個排序後的行號數組，
+ * 沒有值的行排在最後。字典按字母排序，因此把各值的行列表依次連接起來就是按該列排序的順序。</p>
+ *
+ * <p>查詢先從符合條件的行最少的索引（type或flag的行列表、identifier前綴或最小差異在排序數組中的範圍）取得候選行，
+ * 逐行檢查其餘條件得到總數，再沿排序欄位的索引順序取出所要的一頁，找到足夠的行就停止。
+ * 每次查詢最多讀取每行的幾個位元組，不建立中間物件，百萬行的結果也能在幾毫秒內返回。</p>
+ *
+ * <p>實例開啟後不可變，可在多個線程中同時查詢。{@link #close()} 立即解除映射，使文件可以被刪除；
+ * 它會等待進行中的查詢結束，之後的查詢拋出 {@link IllegalStateException}。</p>
+ */
+public final class ResultStore implements Closeable {
+
+    static final int MAGIC = 0x54525253;
+    static final int VERSION = 1;
+
+    /**
+     * 排序欄位
+     */
+    public enum SortKey {
+        ROW("row"),
+        TYPE("type"),
+        IDENTIFIER("identifier"),
+        ENV1("env1"),
+        ENV2("env2"),
+        DIFF("diff"),
+        DIFF_PERCENT("diffPercent"),
+        FLAG("flag");
+
+        /**
+         * 有排序數組的欄位，按文件中的順序
+         */
+        static final List<SortKey> INDEXED = List.of(IDENTIFIER, ENV1, ENV2, DIFF, DIFF_PERCENT);
+
+        private final String parameter;
+
+        SortKey(String parameter) {
+            this.parameter = parameter;
+        }
+
+        static SortKey of(String parameter) {
+            for (SortKey key : values()) {
+                if (key.parameter.equals(parameter)) {
+                    return key;
+                }
+            }
+            throw new IllegalArgumentException("未知的排序欄位: " + parameter);
+        }
+    }
+
+    private static final ComparisonRow.Status[] STATUSES = ComparisonRow.Status.values();
+
+    /**
+     * sun.misc.Unsafe的invokeCleaner，用於立即解除記憶體映射；JDK不提供時為null，映射在回收時才解除
+     */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final MappedByteBuffer buffer;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+    private final int rowCount;
+    private final String env1Name;
+    private final String env2Name;
+    private final List<String> types;
+    private final List<String> flags;
+    private final int statusPosition;
+    private final int typePosition;
+    private final int flagPosition;
+    private final int env1Position;
+    private final int env2Position;
+    private final int identifierOffsetPosition;
+    private final int identifierPosition;
+    private final int detailOffsetPosition;
+    private final int detailPosition;
+    private final int typeStartPosition;
+    private final int typePostingPosition;
+    private final int flagStartPosition;
+    private final int flagPostingPosition;
+    private final int[] permutationPositions = new int[SortKey.values().length];
+    private final int[] definedCounts = new int[SortKey.values().length];
+
+    private ResultStore(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        ByteBuffer header = buffer.duplicate();
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(header));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("不是結果存儲文件或版本不相容");
+        }
+        rowCount = in.readInt();
+        env1Name = in.readUTF();
+        env2Name = in.readUTF();
+        types = readDictionary(in);
+        flags = readDictionary(in);
+        long identifierLength = in.readLong();
+        long detailLength = in.readLong();
+
+        long position = header.position();
+        statusPosition = (int) position;
+        position += rowCount;
+        typePosition = (int) position;
+        position += 4L * rowCount;
+        flagPosition = (int) position;
+        position += 4L * rowCount;
+        env1Position = (int) position;
+        position += 8L * rowCount;
+        env2Position = (int) position;
+        position += 8L * rowCount;
+        identifierOffsetPosition = (int) position;
+        position += 8L * (rowCount + 1);
+        identifierPosition = (int) position;
+        position += identifierLength;
+        detailOffsetPosition = (int) position;
+        position += 8L * (rowCount + 1);
+        detailPosition = (int) position;
+        position += detailLength;
+        typeStartPosition = (int) position;
+        position += 4L * (types.size() + 1);
+        typePostingPosition = (int) position;
+        position += 4L * rowCount;
+        flagStartPosition = (int) position;
+        position += 4L * (flags.size() + 1);
+        flagPostingPosition = (int) position;
+        position += 4L * rowCount;
+        for (SortKey key : SortKey.INDEXED) {
+            definedCounts[key.ordinal()] = buffer.getInt((int) position);
+            permutationPositions[key.ordinal()] = (int) position + 4;
+            position += 4 + 4L * rowCount;
+        }
+        if (position != buffer.capacity()) {
+            throw new IOException("結果存儲文件的長度不符，可能已損壞");
+        }
+    }
+
+    /**
+     * @param path {@link ResultStoreSink} 寫出的文件
+     * @return 以記憶體映射開啟的結果存儲
+     * @throws IOException 如果文件無法讀取、格式不符或大於2GB
+     */
+    public static ResultStore open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("結果存儲文件大於2GB: " + path);
+            }
+            return new ResultStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public String getEnv1Name() {
+        return env1Name;
+    }
+
+    public String getEnv2Name() {
+        return env2Name;
+    }
+
+    /**
+     * @param index 行號，從0開始
+     * @return 該行的內容
+     */
+    public ResultPage.Row row(int index) {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return rowAt(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private ResultPage.Row rowAt(int index) {
+        ComparisonRow.Status status = status(index);
+        long env1 = env1(index);
+        long env2 = env2(index);
+        boolean matched = status == ComparisonRow.Status.MATCHED;
+        return new ResultPage.Row(index, status,
+                types.get(typeCode(index)),
+                string(identifierOffsetPosition, identifierPosition, index),
+                env1 >= 0 ? env1 : null,
+                env2 >= 0 ? env2 : null,
+                matched ? env2 - env1 : null,
+                matched ? diffPercent(env1, env2) : null,
+                flags.get(flagCode(index)),
+                string(detailOffsetPosition, detailPosition, index));
+    }
+
+    /**
+     * @param query 查詢條件、排序和頁碼
+     * @return 符合條件的總行數和所要的一頁
+     * @throws IllegalArgumentException 如果排序欄位、頁碼或每頁行數不正確
+     */
+    public ResultPage query(ResultQuery query) {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return queryOpen(query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 解除記憶體映射。重複調用沒有作用。
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                unmap(buffer);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return 是否已關閉
+     */
+    public boolean isClosed() {
+        lock.readLock().lock();
+        try {
+            return closed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 立即解除映射；之後不能再存取這個緩衝區，否則JVM會崩潰
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            // 無法立即解除時由垃圾回收解除
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("結果存儲已關閉");
+        }
+    }
+
+    private ResultPage queryOpen(ResultQuery query) {
+        String sort = query.getSort() == null || query.getSort().isBlank() ? "row" : query.getSort();
+        boolean descending = sort.startsWith("-");
+        SortKey sortKey = SortKey.of(descending ? sort.substring(1) : sort);
+        if (query.getSize() < 1 || query.getSize() > ResultQuery.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("每頁行數必須在1到" + ResultQuery.MAX_PAGE_SIZE + "之間");
+        }
+        if (query.getPage() < 0) {
+            throw new IllegalArgumentException("頁碼不能為負數");
+        }
+        long offset = (long) query.getPage() * query.getSize();
+
+        Filter filter = new Filter(query);
+        if (filter.empty) {
+            return new ResultPage(0, query.getPage(), query.getSize(), sort, Collections.emptyList());
+        }
+
+        // 只有在有條件時才需要逐行檢查；沒有條件時每一行都符合
+        BitSet matches = null;
+        long total = rowCount;
+        if (filter.active()) {
+            Segment candidates = filter.candidates();
+            matches = new BitSet(rowCount);
+            for (int i = candidates.from; i < candidates.to; i++) {
+                int row = candidates.row(i);
+                if (filter.test(row)) {
+                    matches.set(row);
+                }
+            }
+            total = matches.cardinality();
+        }
+
+        List<ResultPage.Row> rows = new ArrayList<>(query.getSize());
+        if (offset < total) {
+            collect(sortKey, descending, matches, offset, query.getSize(), rows);
+        }
+        return new ResultPage(total, query.getPage(), query.getSize(), sort, rows);
+    }
+
+    /**
+     * 按排序欄位的順序走過所有行，略過前offset個符合條件的行，收集之後的limit行
+     */
+    private void collect(SortKey sortKey, boolean descending, BitSet matches, long offset, int limit, List<ResultPage.Row> rows) {
+        if (sortKey == SortKey.ROW && matches != null) {
+            long skipped = 0;
+            int row = descending ? matches.previousSetBit(rowCount - 1) : matches.nextSetBit(0);
+            while (row >= 0 && rows.size() < limit) {
+                if (skipped++ >= offset) {
+                    rows.add(rowAt(row));
+                }
+                row = descending ? matches.previousSetBit(row - 1) : matches.nextSetBit(row + 1);
+            }
+            return;
+        }
+
+        long skipped = 0;
+        for (Segment segment : order(sortKey, descending)) {
+            int step = segment.reversed ? -1 : 1;
+            int i = segment.reversed ? segment.to - 1 : segment.from;
+            for (; i >= segment.from && i < segment.to; i += step) {
+                int row = segment.row(i);
+                if (matches != null && !matches.get(row)) {
+                    continue;
+                }
+                if (matches == null && skipped < offset) {
+                    // 沒有條件時可以直接跳到所要的位置
+                    long jump = Math.min(offset - skipped, segment.reversed ? i - segment.from + 1 : segment.to - i);
+                    skipped += jump;
+                    i += step * (int) (jump - 1);
+                    continue;
+                }
+                if (skipped++ >= offset) {
+                    rows.add(rowAt(row));
+                    if (rows.size() == limit) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 按排序欄位排列的所有行，以一個或多個連續區段表示
+     */
+    private List<Segment> order(SortKey sortKey, boolean descending) {
+        switch (sortKey) {
+            case ROW:
+                return List.of(new Segment(-1, 0, rowCount, descending));
+            case TYPE:
+                return List.of(new Segment(typePostingPosition, 0, rowCount, descending));
+            case FLAG:
+                return List.of(new Segment(flagPostingPosition, 0, rowCount, descending));
+            default:
+                int position = permutationPositions[sortKey.ordinal()];
+                int defined = definedCounts[sortKey.ordinal()];
+                return List.of(new Segment(position, 0, defined, descending), new Segment(position, defined, rowCount, false));
+        }
+    }
+
+    private ComparisonRow.Status status(int row) {
+        return STATUSES[buffer.get(statusPosition + row)];
+    }
+
+    private int typeCode(int row) {
+        return buffer.getInt(typePosition + 4 * row);
+    }
+
+    private int flagCode(int row) {
+        return buffer.getInt(flagPosition + 4 * row);
+    }
+
+    private long env1(int row) {
+        return buffer.getLong(env1Position + 8 * row);
+    }
+
+    private long env2(int row) {
+        return buffer.getLong(env2Position + 8 * row);
+    }
+
+    private long diff(int row) {
+        return env2(row) - env1(row);
+    }
+
+    private String string(int offsetPosition, int dataPosition, int row) {
+        long start = buffer.getLong(offsetPosition + 8 * row);
+        long end = buffer.getLong(offsetPosition + 8 * (row + 1));
+        byte[] bytes = new byte[(int) (end - start)];
+        buffer.get(dataPosition + (int) start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return 標識符與前綴比較的結果：以前綴開頭時為0，否則與按位元組比較的順序相同
+     */
+    private int comparePrefix(int row, byte[] prefix) {
+        int start = identifierPosition + (int) buffer.getLong(identifierOffsetPosition + 8 * row);
+        int length = (int) (buffer.getLong(identifierOffsetPosition + 8 * (row + 1))
+                - buffer.getLong(identifierOffsetPosition + 8 * row));
+        for (int i = 0; i < prefix.length; i++) {
+            if (i == length) {
+                return -1;
+            }
+            int c = Integer.compare(buffer.get(start + i) & 0xff, prefix[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    static double diffPercent(long env1, long env2) {
+        return env1 > 0 ? (env2 - env1) * 100.0 / env1 : 0;
+    }
+
+    private static List<String> readDictionary(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.readUTF());
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * 行號數組中的一段；base為負數時行號就是索引本身
+     */
+    private final class Segment {
+        final int base;
+        final int from;
+        final int to;
+        final boolean reversed;
+
+        Segment(int base, int from, int to, boolean reversed) {
+            this.base = base;
+            this.from = from;
+            this.to = to;
+            this.reversed = reversed;
+        }
+
+        int row(int index) {
+            return base < 0 ? index : buffer.getInt(base + 4 * index);
+        }
+
+        int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * 一次查詢的條件
+     */
+    private final class Filter {
+        final int typeCode;
+        final int flagCode;
+        final ComparisonRow.Status status;
+        final byte[] prefix;
+        final Long minDiff;
+        final boolean empty;
+
+        Filter(ResultQuery query) {
+            typeCode = query.getType() != null ? Collections.binarySearch(types, query.getType()) : -1;
+            flagCode = query.getFlag() != null ? Collections.binarySearch(flags, query.getFlag()) : -1;
+            status = query.getStatus();
+            prefix = query.getPrefix() != null && !query.getPrefix().isEmpty()
+                    ? query.getPrefix().getBytes(StandardCharsets.UTF_8) : null;
+            minDiff = query.getMinDiff();
+            // 字典中沒有的值不會有任何符合的行
+            empty = (query.getType() != null && typeCode < 0) || (query.getFlag() != null && flagCode < 0);
+        }
+
+        boolean active() {
+            return typeCode >= 0 || flagCode >= 0 || status != null || prefix != null || minDiff != null;
+        }
+
+        /**
+         * @return 各索引中候選行最少的一段
+         */
+        Segment candidates() {
+            Segment best = new Segment(-1, 0, rowCount, false);
+            if (typeCode >= 0) {
+                best = smaller(best, new Segment(typePostingPosition,
+                        buffer.getInt(typeStartPosition + 4 * typeCode), buffer.getInt(typeStartPosition + 4 * (typeCode + 1)), false));
+            }
+            if (flagCode >= 0) {
+                best = smaller(best, new Segment(flagPostingPosition,
+                        buffer.getInt(flagStartPosition + 4 * flagCode), buffer.getInt(flagStartPosition + 4 * (flagCode + 1)), false));
+            }
+            if (prefix != null) {
+                int position = permutationPositions[SortKey.IDENTIFIER.ordinal()];
+                int from = lowerBound(position, rowCount, row -> comparePrefix(row, prefix) >= 0);
+                int to = lowerBound(position, rowCount, row -> comparePrefix(row, prefix) > 0);
+                best = smaller(best, new Segment(position, from, to, false));
+            }
+            if (minDiff != null) {
+                int position = permutationPositions[SortKey.DIFF.ordinal()];
+                int defined = definedCounts[SortKey.DIFF.ordinal()];
+                int from = lowerBound(position, defined, row -> diff(row) >= minDiff);
+                best = smaller(best, new Segment(position, from, defined, false));
+            }
+            return best;
+        }
+
+        boolean test(int row) {
+            if (typeCode >= 0 && typeCode(row) != typeCode) {
+                return false;
+            }
+            if (flagCode >= 0 && flagCode(row) != flagCode) {
+                return false;
+            }
+            if (status != null && status(row) != status) {
+                return false;
+            }
+            if (prefix != null && comparePrefix(row, prefix) != 0) {
+                return false;
+            }
+            return minDiff == null || (status(row) == ComparisonRow.Status.MATCHED && diff(row) >= minDiff);
+        }
+
+        private Segment smaller(Segment a, Segment b) {
+            return b.size() < a.size() ? b : a;
+        }
+
+        /**
+         * @return 排序數組前count個元素中第一個符合條件的位置；條件必須在排序順序上單調
+         */
+        private int lowerBound(int position, int count, IntPredicate condition) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (condition.test(buffer.getInt(position + 4 * mid))) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * 從ByteBuffer的當前位置讀取，用於解析文件頭
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+    }
+}
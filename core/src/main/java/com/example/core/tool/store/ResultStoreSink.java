@@ -0,0 +1,425 @@
+package com.example.core.tool.store;
+
+import com.example.core.tool.TopKRegressions;
+import com.example.core.tool.report.ComparisonRow;
+import com.example.core.tool.report.ComparisonSink;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把比較結果寫成 {@link ResultStore} 的列式文件，供分頁查詢。
+ *
+ * <p>每一列在收到時就追加到輸出文件旁的暫存目錄中各自的文件，字串以UTF-8位元組連續存放，不為每一行建立物件，
+ * 堆中只保留type和flag的字典。比較結束時把字典按字母排序，依次複製各列，再以記憶體映射讀取暫存的列，
+ * 用基本類型的行號數組建立行列表和排序索引；這一步每行只需要8個位元組的堆。
+ * 文件先寫到臨時文件再改名，讀取方不會看到寫了一半的文件；比較沒有正常結束時不產生文件，暫存目錄在關閉時刪除。</p>
+ */
+@Slf4j
+public final class ResultStoreSink implements ComparisonSink {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private final Path outputPath;
+    private final Path spillDirectory;
+    private String env1Name = "";
+    private String env2Name = "";
+    private int rowCount;
+    private Column status;
+    private Column typeCodes;
+    private Column flagCodes;
+    private Column env1Times;
+    private Column env2Times;
+    private StringColumn identifiers;
+    private StringColumn details;
+    private final Map<String, Integer> typeDictionary = new HashMap<>();
+    private final Map<String, Integer> flagDictionary = new HashMap<>();
+    private final List<String> types = new ArrayList<>();
+    private final List<String> flags = new ArrayList<>();
+
+    /**
+     * @param outputPath 輸出文件的路徑，建議使用 .rows 副檔名
+     */
+    public ResultStoreSink(Path outputPath) {
+        this.outputPath = outputPath;
+        this.spillDirectory = outputPath.resolveSibling(outputPath.getFileName() + ".spill");
+    }
+
+    @Override
+    public void begin(String env1Name, String env2Name) throws IOException {
+        this.env1Name = env1Name;
+        this.env2Name = env2Name;
+        Files.createDirectories(spillDirectory);
+        status = new Column(spillDirectory.resolve("status"));
+        typeCodes = new Column(spillDirectory.resolve("type"));
+        flagCodes = new Column(spillDirectory.resolve("flag"));
+        env1Times = new Column(spillDirectory.resolve("env1"));
+        env2Times = new Column(spillDirectory.resolve("env2"));
+        identifiers = new StringColumn(spillDirectory.resolve("identifier"));
+        details = new StringColumn(spillDirectory.resolve("details"));
+    }
+
+    @Override
+    public void accept(ComparisonRow row) throws IOException {
+        status.out.writeByte(row.getStatus().ordinal());
+        typeCodes.out.writeInt(code(typeDictionary, types, row.getType()));
+        flagCodes.out.writeInt(code(flagDictionary, flags, row.getFlag()));
+        env1Times.out.writeLong(row.getEnv1Time());
+        env2Times.out.writeLong(row.getEnv2Time());
+        identifiers.add(row.getIdentifier());
+        details.add(row.getDetails());
+        rowCount++;
+    }
+
+    @Override
+    public void end(TopKRegressions topRegressions) throws IOException {
+        long started = System.currentTimeMillis();
+        closeColumns();
+        int[] typeOrder = sortDictionary(types);
+        int[] flagOrder = sortDictionary(flags);
+
+        Path temp = outputPath.resolveSibling(outputPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE));
+             Columns columns = new Columns()) {
+            out.writeInt(ResultStore.MAGIC);
+            out.writeInt(ResultStore.VERSION);
+            out.writeInt(rowCount);
+            out.writeUTF(env1Name);
+            out.writeUTF(env2Name);
+            writeDictionary(out, types, typeOrder);
+            writeDictionary(out, flags, flagOrder);
+            out.writeLong(identifiers.byteLength);
+            out.writeLong(details.byteLength);
+
+            Files.copy(status.path, out);
+            writeCodes(out, columns.typeCodes, typeOrder);
+            writeCodes(out, columns.flagCodes, flagOrder);
+            Files.copy(env1Times.path, out);
+            Files.copy(env2Times.path, out);
+            identifiers.copyTo(out);
+            details.copyTo(out);
+
+            int[] rows = new int[rowCount];
+            int[] buffer = new int[rowCount];
+            writePostings(out, columns.typeCodes, typeOrder, rows);
+            writePostings(out, columns.flagCodes, flagOrder, rows);
+            for (ResultStore.SortKey key : ResultStore.SortKey.INDEXED) {
+                writePermutation(out, columns, key, rows, buffer);
+            }
+        }
+        Files.move(temp, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteSpill();
+        log.info("結果存儲已輸出到 {}（{} 行，{} ms）", outputPath, rowCount, System.currentTimeMillis() - started);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // 正常結束時end()已刪除暫存目錄；比較失敗時在這裡清理
+        closeColumns();
+        deleteSpill();
+    }
+
+    private void closeColumns() throws IOException {
+        for (Column column : new Column[]{status, typeCodes, flagCodes, env1Times, env2Times}) {
+            if (column != null) {
+                column.out.close();
+            }
+        }
+        for (StringColumn column : new StringColumn[]{identifiers, details}) {
+            if (column != null) {
+                column.offsets.out.close();
+                column.bytes.out.close();
+            }
+        }
+    }
+
+    private void deleteSpill() throws IOException {
+        if (!Files.isDirectory(spillDirectory)) {
+            return;
+        }
+        try (var files = Files.list(spillDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(spillDirectory);
+    }
+
+    private static int code(Map<String, Integer> dictionary, List<String> values, String value) {
+        String key = value != null ? value : "";
+        Integer code = dictionary.get(key);
+        if (code == null) {
+            code = values.size();
+            dictionary.put(key, code);
+            values.add(key);
+        }
+        return code;
+    }
+
+    /**
+     * @return 按出現順序的編號到按字母順序的編號的對照，使按編號排序即按字串排序
+     */
+    private static int[] sortDictionary(List<String> values) {
+        int[] sorted = new int[values.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        sort(sorted, new int[sorted.length], sorted.length, (a, b) -> values.get(a).compareTo(values.get(b)));
+        int[] order = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            order[sorted[i]] = i;
+        }
+        return order;
+    }
+
+    private static void writeDictionary(DataOutputStream out, List<String> values, int[] order) throws IOException {
+        String[] sorted = new String[values.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[order[i]] = values.get(i);
+        }
+        out.writeInt(sorted.length);
+        for (String value : sorted) {
+            out.writeUTF(value);
+        }
+    }
+
+    private void writeCodes(DataOutputStream out, MappedByteBuffer codes, int[] order) throws IOException {
+        for (int i = 0; i < rowCount; i++) {
+            out.writeInt(order[codes.getInt(4 * i)]);
+        }
+    }
+
+    /**
+     * 每個字典值一個按行號排列的行列表：先寫出每個值的起始位置，再寫出所有行號
+     */
+    private void writePostings(DataOutputStream out, MappedByteBuffer codes, int[] order, int[] postings) throws IOException {
+        int[] start = new int[order.length + 1];
+        for (int i = 0; i < rowCount; i++) {
+            start[order[codes.getInt(4 * i)] + 1]++;
+        }
+        for (int i = 0; i < order.length; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] next = Arrays.copyOf(start, order.length);
+        for (int i = 0; i < rowCount; i++) {
+            postings[next[order[codes.getInt(4 * i)]]++] = i;
+        }
+        for (int value : start) {
+            out.writeInt(value);
+        }
+        for (int i = 0; i < rowCount; i++) {
+            out.writeInt(postings[i]);
+        }
+    }
+
+    /**
+     * 按一列排序的行號：有值的行按值升序、同值按行號排在前面，沒有值的行按行號排在後面
+     */
+    private void writePermutation(DataOutputStream out, Columns columns, ResultStore.SortKey key, int[] rows, int[] buffer)
+            throws IOException {
+        int defined = 0;
+        int undefined = rowCount;
+        for (int i = 0; i < rowCount; i++) {
+            if (columns.isDefined(key, i)) {
+                rows[defined++] = i;
+            }
+        }
+        for (int i = rowCount - 1; i >= 0; i--) {
+            if (!columns.isDefined(key, i)) {
+                rows[--undefined] = i;
+            }
+        }
+        sort(rows, buffer, defined, columns.comparator(key));
+        out.writeInt(defined);
+        for (int i = 0; i < rowCount; i++) {
+            out.writeInt(rows[i]);
+        }
+    }
+
+    /**
+     * 穩定的合併排序，排序rows的前length個元素；buffer至少與length一樣長
+     */
+    static void sort(int[] rows, int[] buffer, int length, RowComparator comparator) {
+        for (int from = 0; from < length; from += INSERTION_SORT_THRESHOLD) {
+            int to = Math.min(length, from + INSERTION_SORT_THRESHOLD);
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(rows[j], row) > 0) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+        }
+        int[] source = rows;
+        int[] target = buffer;
+        for (int width = INSERTION_SORT_THRESHOLD; width < length; width *= 2) {
+            for (int from = 0; from < length; from += 2 * width) {
+                int middle = Math.min(length, from + width);
+                int to = Math.min(length, from + 2 * width);
+                int left = from;
+                int right = middle;
+                for (int i = from; i < to; i++) {
+                    // 相等時取左邊的元素，保持原來的順序
+                    if (left < middle && (right >= to || comparator.compare(source[left], source[right]) <= 0)) {
+                        target[i] = source[left++];
+                    } else {
+                        target[i] = source[right++];
+                    }
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != rows) {
+            System.arraycopy(source, 0, rows, 0, length);
+        }
+    }
+
+    /**
+     * 比較兩個行號
+     */
+    @FunctionalInterface
+    interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    /**
+     * 一個暫存的列文件
+     */
+    private static final class Column {
+        final Path path;
+        final DataOutputStream out;
+
+        Column(Path path) throws IOException {
+            this.path = path;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * 暫存的字串列：偏移量文件以0開始，第i個字串位於第i和第i+1個偏移量之間
+     */
+    private static final class StringColumn {
+        final Column offsets;
+        final Column bytes;
+        long byteLength;
+
+        StringColumn(Path path) throws IOException {
+            offsets = new Column(path.resolveSibling(path.getFileName() + ".offsets"));
+            bytes = new Column(path.resolveSibling(path.getFileName() + ".bytes"));
+            offsets.out.writeLong(0);
+        }
+
+        void add(String value) throws IOException {
+            byte[] encoded = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            byteLength += encoded.length;
+            if (byteLength > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("結果存儲的字串總長度超過2GB");
+            }
+            bytes.out.write(encoded);
+            offsets.out.writeLong(byteLength);
+        }
+
+        void copyTo(DataOutputStream out) throws IOException {
+            Files.copy(offsets.path, out);
+            Files.copy(bytes.path, out);
+        }
+    }
+
+    /**
+     * 以記憶體映射讀取的暫存列，建立索引時按行號隨機存取；關閉時解除映射
+     */
+    private final class Columns implements AutoCloseable {
+        final MappedByteBuffer status = map(ResultStoreSink.this.status.path);
+        final MappedByteBuffer typeCodes = map(ResultStoreSink.this.typeCodes.path);
+        final MappedByteBuffer flagCodes = map(ResultStoreSink.this.flagCodes.path);
+        final MappedByteBuffer env1Times = map(ResultStoreSink.this.env1Times.path);
+        final MappedByteBuffer env2Times = map(ResultStoreSink.this.env2Times.path);
+        final MappedByteBuffer identifierOffsets = map(identifiers.offsets.path);
+        final MappedByteBuffer identifierBytes = map(identifiers.bytes.path);
+
+        Columns() throws IOException {
+        }
+
+        boolean isDefined(ResultStore.SortKey key, int row) {
+            return switch (key) {
+                case ENV1 -> env1(row) >= 0;
+                case ENV2 -> env2(row) >= 0;
+                case DIFF, DIFF_PERCENT -> status.get(row) == ComparisonRow.Status.MATCHED.ordinal();
+                default -> true;
+            };
+        }
+
+        RowComparator comparator(ResultStore.SortKey key) {
+            return switch (key) {
+                case IDENTIFIER -> this::compareIdentifiers;
+                case ENV1 -> (a, b) -> Long.compare(env1(a), env1(b));
+                case ENV2 -> (a, b) -> Long.compare(env2(a), env2(b));
+                case DIFF -> (a, b) -> Long.compare(env2(a) - env1(a), env2(b) - env1(b));
+                case DIFF_PERCENT -> (a, b) -> Double.compare(ResultStore.diffPercent(env1(a), env2(a)),
+                        ResultStore.diffPercent(env1(b), env2(b)));
+                default -> throw new IllegalArgumentException("沒有排序索引: " + key);
+            };
+        }
+
+        private long env1(int row) {
+            return env1Times.getLong(8 * row);
+        }
+
+        private long env2(int row) {
+            return env2Times.getLong(8 * row);
+        }
+
+        /**
+         * 按無符號位元組比較兩行的標識符，與UTF-8字串的碼位順序相同
+         */
+        private int compareIdentifiers(int a, int b) {
+            int aStart = (int) identifierOffsets.getLong(8 * a);
+            int aLength = (int) identifierOffsets.getLong(8 * (a + 1)) - aStart;
+            int bStart = (int) identifierOffsets.getLong(8 * b);
+            int bLength = (int) identifierOffsets.getLong(8 * (b + 1)) - bStart;
+            int length = Math.min(aLength, bLength);
+            for (int i = 0; i < length; i++) {
+                int c = Integer.compare(identifierBytes.get(aStart + i) & 0xff, identifierBytes.get(bStart + i) & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return Integer.compare(aLength, bLength);
+        }
+
+        @Override
+        public void close() {
+            for (MappedByteBuffer buffer : new MappedByteBuffer[]{status, typeCodes, flagCodes, env1Times, env2Times,
+                    identifierOffsets, identifierBytes}) {
+                ResultStore.unmap(buffer);
+            }
+        }
+
+        private static MappedByteBuffer map(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("結果存儲的暫存列大於2GB: " + path);
+                }
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+    }
+}
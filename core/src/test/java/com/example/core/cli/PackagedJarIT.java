@@ -0,0 +1,111 @@
+package com.example.core.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the packaged command line jar, run by Failsafe after the package phase
+ * without the JVM options Surefire adds.
+ */
+class PackagedJarIT {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that java -jar writes the Arrow report, which needs the Add-Opens entry of the jar manifest.
+     */
+    @Test
+    void testArrowFormatFromJar() throws Exception {
+        Path jar = Path.of(System.getProperty("trace-tool.jar"));
+        List<String> command = List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(), "-jar", jar.toString());
+
+        compareWithArrow(command, Map.of());
+
+        assertTrue(Files.size(tempDir.resolve("out").resolve("sqr_trace_comparison_result.arrows")) > 0);
+    }
+
+    /**
+     * Test that the shell launcher records a class data sharing archive on the first run and uses it afterwards.
+     */
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testArrowFormatFromLauncher() throws Exception {
+        Path launcher = Path.of(System.getProperty("trace-tool.jar")).resolveSibling("trace-tool");
+        Path cache = tempDir.resolve("cache");
+        Map<String, String> environment = Map.of("TRACE_TOOL_CACHE", cache.toString());
+
+        compareWithArrow(List.of("sh", launcher.toString()), environment);
+        assertTrue(Files.size(tempDir.resolve("out").resolve("sqr_trace_comparison_result.arrows")) > 0);
+        try (Stream<Path> archives = Files.list(cache)) {
+            assertEquals(1, archives.filter(path -> path.toString().endsWith(".jsa")).count());
+        }
+
+        // 第二次運行映射已記錄的歸檔，JVM拒絕歸檔時的CDS警告會出現在輸出中
+        String log = Files.readString(compareWithArrow(List.of("sh", launcher.toString()), environment));
+        assertFalse(log.contains("[cds]"), log);
+    }
+
+    /**
+     * Test that the shell launcher runs without recording an archive when the cache cannot be created.
+     */
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testLauncherWithoutWritableCache() throws Exception {
+        Path launcher = Path.of(System.getProperty("trace-tool.jar")).resolveSibling("trace-tool");
+        Path notADirectory = Files.writeString(tempDir.resolve("cache"), "");
+
+        compareWithArrow(List.of("sh", launcher.toString()), Map.of("TRACE_TOOL_CACHE", notADirectory.resolve("trace-tool").toString()));
+
+        assertTrue(Files.size(tempDir.resolve("out").resolve("sqr_trace_comparison_result.arrows")) > 0);
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertTrue(files.noneMatch(path -> path.getFileName().toString().contains(".jsa")));
+        }
+    }
+
+    /**
+     * @return The combined output of the process
+     */
+    private Path compareWithArrow(List<String> baseCommand, Map<String, String> environment) throws IOException, InterruptedException {
+        Path env1 = Files.writeString(tempDir.resolve("env1.log"), sqrTrace(1.25));
+        Path env2 = Files.writeString(tempDir.resolve("env2.log"), sqrTrace(2.5));
+        Path out = tempDir.resolve("out");
+        List<String> command = new ArrayList<>(baseCommand);
+        command.addAll(List.of("sqr", env1.toString(), env2.toString(), "--out", out.toString(), "--format", "csv,arrow"));
+
+        Path log = tempDir.resolve("process.log");
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(tempDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile());
+        builder.environment().putAll(environment);
+        int status = builder.start().waitFor();
+
+        assertEquals(TraceToolCli.EXIT_OK, status, Files.readString(log));
+        assertFalse(Files.readString(log).contains("Failed to initialize MemoryUtil"), Files.readString(log));
+        return log;
+    }
+
+    private static String sqrTrace(double sqlSeconds) {
+        return "SQR开始执行: 2023-05-15 14:25:30\n"
+                + "程序: TEST.SQR\n"
+                + "\n"
+                + "执行SQL (14:25:31):\n"
+                + "SELECT * FROM DUAL\n"
+                + "执行时间: " + sqlSeconds + "秒\n"
+                + "\n"
+                + "SQR结束执行: 2023-05-15 14:32:45\n";
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.core.cli;
+
+import com.example.core.tool.baseline.BaselineProfileStore;
+import com.example.core.tool.report.ComparisonSinks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the TraceToolCli class.
+ */
+class TraceToolCliTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that the sqr subcommand takes its files, names, rules and formats from the command line.
+     */
+    @Test
+    void testCompareSqrFromArguments() throws IOException {
+        Path env1 = Files.writeString(tempDir.resolve("env1.log"), sqrTrace(1.25));
+        Path env2 = Files.writeString(tempDir.resolve("env2.log"), sqrTrace(2.5));
+        Path out = tempDir.resolve("out");
+
+        int status = TraceToolCli.run("sqr", env1.toString(), env2.toString(), "--out", out.toString(),
+                "--env1-name=PROD", "--env2-name", "UAT", "--format", "csv", "--rules", "SQL: diff > 2000 -> ALERT");
+
+        assertEquals(TraceToolCli.EXIT_OK, status);
+        List<String> csv = Files.readAllLines(out.resolve("sqr_trace_comparison_result.csv"));
+        assertTrue(csv.get(0).contains("PROD(ms),UAT(ms)"), csv.get(0));
+        // 1250 ms 的差異沒有超過指定的規則
+        assertTrue(csv.stream().noneMatch(line -> line.contains("ALERT")), csv.toString());
+        assertFalse(Files.exists(out.resolve("sqr_trace_comparison_result_report.html")));
+    }
+
+    /**
+     * Test that the newae subcommand runs the aligned comparison and lists the code executed in only one environment.
+     */
+    @Test
+    void testNewAeWritesExtraCode() throws IOException {
+        String trace = "10:00:00.000 Step:MAIN.STEP1 started\n"
+                + "10:00:00.100 SQL:SQL1 started\n"
+                + "10:00:00.600 SQL:SQL1 ended\n"
+                + "10:00:01.000 Step:MAIN.STEP1 ended\n";
+        Path env1 = Files.writeString(tempDir.resolve("env1.log"), trace);
+        Path env2 = Files.writeString(tempDir.resolve("env2.log"), trace
+                + "10:00:02.000 Step:MAIN.STEP2 started\n"
+                + "10:00:03.000 Step:MAIN.STEP2 ended\n");
+        Path out = tempDir.resolve("out");
+
+        int status = TraceToolCli.run("newae", env1.toString(), env2.toString(), "--out", out.toString(),
+                "--env1-name", "PROD", "--env2-name", "UAT");
+
+        assertEquals(TraceToolCli.EXIT_OK, status);
+        String report = Files.readString(out.resolve("ae_trace_comparison_result.txt"));
+        assertTrue(report.contains("Extra code in UAT:"), report);
+        assertTrue(report.contains("MAIN.STEP2"), report);
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("newae", env1.toString(), env2.toString(), "--format", "csv"));
+    }
+
+    /**
+     * Test that ae --self-time writes the self-time report flagged by the rules from the command line.
+     */
+    @Test
+    void testAeSelfTimeFromArguments() throws IOException {
+        Path env1 = Files.writeString(tempDir.resolve("env1.log"), aeTrace(500));
+        Path env2 = Files.writeString(tempDir.resolve("env2.log"), aeTrace(2000));
+        Path out = tempDir.resolve("out");
+
+        int status = TraceToolCli.run("ae", env1.toString(), env2.toString(), "--out", out.toString(),
+                "--format", "csv", "--self-time", "--rules", "SQL: diff > 2000 -> ALERT");
+
+        assertEquals(TraceToolCli.EXIT_OK, status);
+        List<String> csv = Files.readAllLines(out.resolve("ae_trace_self_time_result.csv"));
+        assertTrue(csv.get(0).startsWith("Type,Identifier,DEV Self(ms),TEST Self(ms)"), csv.get(0));
+        // 1500 ms 的SQL差異超過默認規則，但沒有超過指定的規則
+        assertTrue(csv.get(1).startsWith("SQL,SQL1,500,2000,1500,"), csv.get(1));
+        assertTrue(csv.stream().noneMatch(line -> line.endsWith("ALERT")), csv.toString());
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("sqr", env1.toString(), env2.toString(), "--self-time"));
+    }
+
+    /**
+     * Test that the matrix subcommand compares every environment in one report, named by option or by file name.
+     */
+    @Test
+    void testMatrixFromArguments() throws IOException {
+        Path dev = Files.writeString(tempDir.resolve("dev.log"), aeTrace(500));
+        Path sit = Files.writeString(tempDir.resolve("sit.log"), aeTrace(520));
+        Path prod = Files.writeString(tempDir.resolve("prod.log"), aeTrace(2000));
+        Path out = tempDir.resolve("out");
+
+        int status = TraceToolCli.run("matrix", dev.toString(), sit.toString(), prod.toString(), "--out", out.toString());
+
+        assertEquals(TraceToolCli.EXIT_OK, status);
+        List<String> csv = Files.readAllLines(out.resolve("ae_trace_matrix_result.csv"));
+        assertTrue(csv.get(0).contains(",DEV(ms),SIT(ms),PROD(ms),"), csv.get(0));
+        assertTrue(csv.stream().anyMatch(line -> line.startsWith("SQL,SQL1,1,500,520,2000,") && line.endsWith(",PROD,ALERT")),
+                csv.toString());
+
+        status = TraceToolCli.run("matrix", dev.toString(), prod.toString(), "--out", out.toString(),
+                "--env-names", "PROD,UAT", "--threshold-percent", "500");
+        assertEquals(TraceToolCli.EXIT_OK, status);
+        csv = Files.readAllLines(out.resolve("ae_trace_matrix_result.csv"));
+        assertTrue(csv.get(0).contains(",PROD(ms),UAT(ms),"), csv.get(0));
+        assertTrue(csv.stream().noneMatch(line -> line.endsWith(",ALERT")), csv.toString());
+
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("matrix", dev.toString()));
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("matrix", dev.toString(), sit.toString(), "--env-names", "DEV"));
+    }
+
+    /**
+     * Test that the multirun subcommand takes the runs of each environment from its options.
+     */
+    @Test
+    void testMultiRunFromArguments() throws IOException {
+        StringBuilder env1Runs = new StringBuilder();
+        StringBuilder env2Runs = new StringBuilder();
+        for (int run = 0; run < 3; run++) {
+            env1Runs.append(Files.writeString(tempDir.resolve("dev" + run + ".log"), aeTrace(500 + run))).append(',');
+            env2Runs.append(Files.writeString(tempDir.resolve("prod" + run + ".log"), aeTrace(900 + run))).append(',');
+        }
+        Path out = tempDir.resolve("out");
+
+        int status = TraceToolCli.run("multirun", "--env1-runs", env1Runs.toString(), "--env2-runs", env2Runs.toString(),
+                "--env1-name", "DEV", "--env2-name", "PROD", "--out", out.toString());
+
+        assertEquals(TraceToolCli.EXIT_OK, status);
+        List<String> csv = Files.readAllLines(out.resolve("ae_multi_run_comparison_result.csv"));
+        assertTrue(csv.get(0).startsWith("Type,Identifier,DEV Runs,PROD Runs,"), csv.get(0));
+        assertTrue(csv.stream().anyMatch(line -> line.startsWith("SQL,SQL1,3,3,")), csv.toString());
+
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("multirun", "--env1-runs", env1Runs.toString()));
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("multirun", "--env1-runs", env1Runs.toString(),
+                "--env2-runs", tempDir.resolve("prod0.log").toString()));
+    }
+
+    /**
+     * Test that baseline save creates the baseline that baseline compare reads, and that trend records each run.
+     */
+    @Test
+    void testBaselineAndTrend() throws IOException {
+        Path good = Files.writeString(tempDir.resolve("good.log"), aeTrace(500));
+        Path slow = Files.writeString(tempDir.resolve("slow.log"), aeTrace(2000));
+        Path baselines = tempDir.resolve("baselines");
+        Path out = tempDir.resolve("out");
+
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("baseline", "compare", slow.toString(),
+                "--program", "PAYROLL", "--baselines", baselines.toString()));
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("baseline", "list"));
+
+        assertEquals(TraceToolCli.EXIT_OK, TraceToolCli.run("baseline", "save", good.toString(),
+                "--program", "PAYROLL", "--baselines", baselines.toString()));
+        int status = TraceToolCli.run("baseline", "compare", slow.toString(), "--program", "PAYROLL",
+                "--baselines", baselines.toString(), "--env", "UAT", "--out", out.toString());
+
+        assertEquals(TraceToolCli.EXIT_OK, status);
+        List<String> csv = Files.readAllLines(out.resolve("ae_trace_baseline_result.csv"));
+        assertTrue(csv.get(0).contains(",UAT Count,"), csv.get(0));
+        assertTrue(csv.stream().anyMatch(line -> line.startsWith("SQL,SQL1,1,1,500,2000,") && line.endsWith(",ALERT")),
+                csv.toString());
+
+        Path history = tempDir.resolve("history");
+        for (Path trace : List.of(good, slow)) {
+            assertEquals(TraceToolCli.EXIT_OK, TraceToolCli.run("trend", trace.toString(), "--program", "PAYROLL",
+                    "--env", "UAT", "--history", history.toString(), "--out", out.toString()));
+        }
+        assertEquals("Type,Identifier,Runs,Reference(ms),EWMA(ms),Change(%),Robust Z,Flag",
+                Files.readAllLines(out.resolve("ae_trace_trend_result.csv")).get(0));
+    }
+
+    /**
+     * Test that the batch subcommand compares two directories and writes the consolidated summary.
+     */
+    @Test
+    void testBatchFromDirectories() throws IOException {
+        Path env1Dir = Files.createDirectories(tempDir.resolve("previous"));
+        Path env2Dir = Files.createDirectories(tempDir.resolve("current"));
+        Files.writeString(env1Dir.resolve("PAYROLL.log"), sqrTrace(1.25));
+        Files.writeString(env2Dir.resolve("PAYROLL.log"), sqrTrace(2.5));
+        Path out = tempDir.resolve("batch");
+
+        int status = TraceToolCli.run("batch", env1Dir.toString(), env2Dir.toString(), "--out", out.toString(),
+                "--threads", "2", "--memory-mb", "64");
+
+        assertEquals(TraceToolCli.EXIT_OK, status);
+        List<String> summary = Files.readAllLines(out.resolve("batch_summary.csv"));
+        assertTrue(summary.get(1).startsWith("PAYROLL,SQR,SUCCEEDED,"), summary.get(1));
+        assertTrue(Files.exists(out.resolve("PAYROLL/sqr_trace_comparison_result_report.html")));
+    }
+
+    /**
+     * Test that usage errors are reported with exit code 2 instead of an exception.
+     */
+    @Test
+    void testUsageErrors() throws IOException {
+        Path env1 = Files.writeString(tempDir.resolve("env1.log"), sqrTrace(1));
+
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run());
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("diff", env1.toString(), env1.toString()));
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("sqr", env1.toString()));
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("sqr", env1.toString(), tempDir.resolve("missing.log").toString()));
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("sqr", env1.toString(), env1.toString(), "--threads", "2"));
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("sqr", env1.toString(), env1.toString(), "--format", "pdf"));
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("sqr", env1.toString(), env1.toString(), "--out"));
+        assertEquals(TraceToolCli.EXIT_OK, TraceToolCli.run("batch", "--help"));
+    }
+
+    /**
+     * Test that invalid content found while comparing is a failure, not a usage error.
+     */
+    @Test
+    void testFailureIsNotUsageError() throws IOException {
+        Path trace = Files.writeString(tempDir.resolve("PAYROLL.log"), aeTrace(500));
+        Path baselines = Files.createDirectories(tempDir.resolve("baselines"));
+        // 基準檔存在但內容無效，在讀取時才發現
+        Files.writeString(baselines.resolve("PAYROLL" + BaselineProfileStore.EXTENSION), "not a baseline");
+
+        assertEquals(TraceToolCli.EXIT_FAILED, TraceToolCli.run("baseline", "compare", trace.toString(),
+                "--baselines", baselines.toString(), "--out", tempDir.resolve("out").toString()));
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("baseline", "compare", trace.toString(),
+                "--baselines", baselines.toString(), "--rules", "SQL: diff >"));
+        assertEquals(TraceToolCli.EXIT_USAGE, TraceToolCli.run("batch", tempDir.toString(), tempDir.toString(), "--threads", "0"));
+    }
+
+    /**
+     * Test that options accept both forms, the last occurrence wins and everything after "--" is positional.
+     */
+    @Test
+    void testCommandLineArguments() {
+        CommandLineArguments arguments = new CommandLineArguments(
+                new String[]{"--ratio", "2.0", "a.log", "--ratio=3", "--verbose", "--", "--b.log"},
+                Set.of("ratio"), Set.of("verbose"));
+
+        assertEquals(3.0, arguments.getDouble("ratio", 0));
+        assertTrue(arguments.has("verbose"));
+        assertEquals(List.of("a.log", "--b.log"), arguments.positionals());
+        assertEquals(7, arguments.getInt("threads", 7));
+        assertThrows(IllegalArgumentException.class, () -> new CommandLineArguments(
+                new String[]{"--verbose=yes"}, Set.of(), Set.of("verbose")));
+        assertThrows(IllegalArgumentException.class, () -> new CommandLineArguments(
+                new String[]{"--ratio", "fast"}, Set.of("ratio"), Set.of()).getDouble("ratio", 0));
+    }
+
+    /**
+     * Test that report formats are parsed case-insensitively with either separator.
+     */
+    @Test
+    void testFormats() {
+        assertEquals(EnumSet.of(ComparisonSinks.Format.CSV, ComparisonSinks.Format.JSON_LINES),
+                TraceToolCli.formats("CSV, json-lines", EnumSet.of(ComparisonSinks.Format.HTML)));
+        assertEquals(EnumSet.of(ComparisonSinks.Format.HTML), TraceToolCli.formats(null, EnumSet.of(ComparisonSinks.Format.HTML)));
+        assertThrows(IllegalArgumentException.class, () -> TraceToolCli.formats(",", EnumSet.of(ComparisonSinks.Format.HTML)));
+    }
+
+    private static String aeTrace(long sqlMillis) {
+        return "10:00:00.000 Step:MAIN.STEP1 started\n"
+                + "10:00:00.000 SQL:SQL1 started\n"
+                + String.format("10:00:%02d.%03d SQL:SQL1 ended\n", sqlMillis / 1000, sqlMillis % 1000)
+                + "10:00:59.000 Step:MAIN.STEP1 ended\n";
+    }
+
+    private static String sqrTrace(double sqlSeconds) {
+        return "SQR开始执行: 2023-05-15 14:25:30\n"
+                + "程序: TEST.SQR\n"
+                + "\n"
+                + "执行SQL (14:25:31):\n"
+                + "SELECT * FROM DUAL\n"
+                + "执行时间: " + sqlSeconds + "秒\n"
+                + "\n"
+                + "SQR结束执行: 2023-05-15 14:32:45\n";
+    }
+}
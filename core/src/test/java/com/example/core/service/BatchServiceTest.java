@@ -0,0 +1,76 @@
+package com.example.core.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the BatchService class.
+ */
+class BatchServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private CoreService coreService;
+    private BatchService batchService;
+
+    @BeforeEach
+    void setUp() {
+        coreService = new CoreService(1, 4, tempDir.resolve("jobs").toString(), tempDir.toString(), 10, 64,
+                new ParsedTraceCache(1 << 20, "", 0));
+        batchService = new BatchService(1, 4, tempDir.resolve("batches").toString(), tempDir.toString(), 1, coreService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchService.shutdown();
+        coreService.shutdown();
+    }
+
+    /**
+     * Test that batches use the job memory budget and that finished batches beyond the retained count are deleted.
+     */
+    @Test
+    void testEvictsFinishedBatches() throws Exception {
+        Path env1Dir = Files.createDirectories(tempDir.resolve("previous"));
+        Path env2Dir = Files.createDirectories(tempDir.resolve("current"));
+        Files.writeString(env1Dir.resolve("PAYROLL.log"), sqrTrace(1.25));
+        Files.writeString(env2Dir.resolve("PAYROLL.log"), sqrTrace(2.5));
+        BatchJobRequest request = new BatchJobRequest();
+        request.setEnv1Dir(env1Dir.toString());
+        request.setEnv2Dir(env2Dir.toString());
+
+        BatchJob first = batchService.submit(request);
+        first.getFuture().get();
+        assertEquals(ComparisonJob.Status.SUCCEEDED, first.getStatus());
+        assertTrue(Files.exists(first.getOutputDirectory().resolve("batch_summary.csv")));
+        assertEquals(64, coreService.getMemoryBudget().getAvailableMb());
+
+        BatchJob second = batchService.submit(request);
+        second.getFuture().get();
+        assertEquals(ComparisonJob.Status.SUCCEEDED, second.getStatus());
+
+        assertTrue(batchService.getBatch(first.getId()).isEmpty());
+        assertFalse(Files.exists(first.getOutputDirectory()));
+        assertTrue(batchService.getBatch(second.getId()).isPresent());
+        assertTrue(Files.exists(second.getOutputDirectory().resolve("batch_summary.csv")));
+    }
+
+    private static String sqrTrace(double sqlSeconds) {
+        return "SQR开始执行: 2023-05-15 14:25:30\n"
+                + "程序: TEST.SQR\n"
+                + "\n"
+                + "执行SQL (14:25:31):\n"
+                + "SELECT * FROM DUAL\n"
+                + "执行时间: " + sqlSeconds + "秒\n"
+                + "\n"
+                + "SQR结束执行: 2023-05-15 14:32:45\n";
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.core.service;
+
+import com.example.core.tool.rule.RuleInput;
+import com.example.core.tool.rule.RuleSet;
+import com.example.core.tool.store.ResultPage;
+import com.example.core.tool.store.ResultQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the CoreService class.
+ */
+class CoreServiceTest {
+
+    private static final String ENV1_TRACE =
+            "SQR开始执行: 2023-05-15 14:25:30\n" +
+            "程序: TEST.SQR\n" +
+            "\n" +
+            "执行SQL (14:25:31):\n" +
+            "SELECT * FROM DUAL\n" +
+            "执行时间: 1.25秒\n" +
+            "\n" +
+            "SQR结束执行: 2023-05-15 14:32:45\n";
+
+    private static final String ENV2_TRACE =
+            "SQR开始执行: 2023-05-15 14:25:30\n" +
+            "程序: TEST.SQR\n" +
+            "\n" +
+            "执行SQL (14:25:31):\n" +
+            "SELECT * FROM DUAL\n" +
+            "执行时间: 2.50秒\n" +
+            "\n" +
+            "SQR结束执行: 2023-05-15 14:33:45\n";
+
+    @TempDir
+    Path tempDir;
+
+    private ParsedTraceCache traceCache;
+    private CoreService coreService;
+
+    @BeforeEach
+    void setUp() {
+        traceCache = new ParsedTraceCache(1 << 20, "", 0);
+        coreService = new CoreService(1, 4, tempDir.resolve("jobs").toString(), tempDir.toString(), 10, 64, traceCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coreService.shutdown();
+    }
+
+    /**
+     * Test that a submitted SQR job runs in the background and lists its reports.
+     */
+    @Test
+    void testSubmitRunsJobAndListsReports() throws Exception {
+        ComparisonJob job = coreService.submit(sqrRequest());
+        job.getFuture().get();
+
+        assertEquals(ComparisonJob.Status.SUCCEEDED, job.getStatus());
+        assertNull(job.getError());
+        assertEquals(64, coreService.getMemoryBudget().getAvailableMb());
+        assertTrue(job.getReports().contains("sqr_trace_comparison_result.csv"));
+        assertTrue(job.getReports().contains("sqr_trace_comparison_result_report.html"));
+
+        Optional<Path> csv = coreService.getReport(job.getId(), "sqr_trace_comparison_result.csv");
+        assertTrue(csv.isPresent());
+        assertTrue(Files.readString(csv.get()).startsWith("Type,Identifier,DEV(ms),TEST(ms)"));
+
+        // 只能下載作業自己列出的報告，不能以相對路徑讀取其他文件
+        assertTrue(coreService.getReport(job.getId(), "../env1.log").isEmpty());
+        assertTrue(coreService.getReport("unknown", "sqr_trace_comparison_result.csv").isEmpty());
+    }
+
+    /**
+     * Test that a finished job reports the bytes it parsed and the rows it wrote.
+     */
+    @Test
+    void testProgressOfFinishedJob() throws Exception {
+        ComparisonJob job = coreService.submit(sqrRequest());
+        job.getFuture().get();
+
+        JobProgress.Snapshot progress = job.getProgress();
+        assertEquals(JobProgress.Phase.FINISHED, progress.phase());
+        long env1Size = Files.size(tempDir.resolve("env1.log"));
+        assertEquals(env1Size, progress.env1BytesTotal());
+        assertEquals(env1Size, progress.env1BytesParsed());
+        assertEquals(progress.env2BytesTotal(), progress.env2BytesParsed());
+        assertEquals(2, progress.env2Entries());
+        assertEquals(2, progress.matched());
+        assertEquals(2, progress.rowsWritten());
+        assertEquals(100.0, progress.alignedPercent());
+    }
+
+    /**
+     * Test that the rows of a finished job can be queried from its result store.
+     */
+    @Test
+    void testQueryRowsOfFinishedJob() throws Exception {
+        ComparisonJob job = coreService.submit(sqrRequest());
+        job.getFuture().get();
+
+        ResultQuery query = new ResultQuery();
+        query.setType("SQL");
+        query.setSort("-diff");
+        Optional<ResultPage> page = coreService.queryRows(job.getId(), query);
+        assertTrue(page.isPresent());
+        assertEquals(1, page.get().total());
+        assertEquals(1250, page.get().rows().get(0).diff());
+        assertTrue(coreService.queryRows("unknown", query).isEmpty());
+
+        // 淘汰作業前解除映射，之後的查詢不再開啟結果存儲
+        job.closeResultStore();
+        assertTrue(coreService.queryRows(job.getId(), query).isEmpty());
+    }
+
+    /**
+     * Test that a streaming job writes its rows as JSON Lines followed by its final status.
+     */
+    @Test
+    void testStreamRowsOfJob() throws Exception {
+        ComparisonJob job = coreService.submitStreaming(sqrRequest());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        coreService.streamRows(job, out);
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(4, lines.size());
+        assertEquals("{\"record\":\"header\",\"env1\":\"DEV\",\"env2\":\"TEST\"}", lines.get(0));
+        assertTrue(lines.get(1).startsWith("{\"record\":\"row\",\"status\":\"MATCHED\""), lines.get(1));
+        assertEquals("{\"record\":\"status\",\"id\":\"" + job.getId() + "\",\"status\":\"SUCCEEDED\",\"error\":null}",
+                lines.get(3));
+        assertTrue(job.getReports().contains("sqr_trace_comparison_result.csv"));
+
+        ComparisonJob notStreaming = coreService.submit(sqrRequest());
+        assertThrows(IllegalStateException.class, () -> coreService.streamRows(notStreaming, out));
+        notStreaming.getFuture().get();
+    }
+
+    /**
+     * Test that invalid requests are rejected before they are queued.
+     */
+    @Test
+    void testSubmitRejectsInvalidRequest() throws IOException {
+        ComparisonJobRequest missingTool = sqrRequest();
+        missingTool.setTool(null);
+        assertThrows(IllegalArgumentException.class, () -> coreService.submit(missingTool));
+
+        ComparisonJobRequest missingFile = sqrRequest();
+        missingFile.setEnv2TraceFile(tempDir.resolve("missing.log").toString());
+        assertThrows(IllegalArgumentException.class, () -> coreService.submit(missingFile));
+
+        ComparisonJobRequest outsideTraceDir = sqrRequest();
+        outsideTraceDir.setEnv1TraceFile(tempDir.getParent().resolve("other.log").toString());
+        assertThrows(IllegalArgumentException.class, () -> coreService.submit(outsideTraceDir));
+
+        ComparisonJobRequest badRules = sqrRequest();
+        badRules.setRules("SQL: diff >> 5 -> ALERT");
+        assertThrows(IllegalArgumentException.class, () -> coreService.submit(badRules));
+
+        assertTrue(coreService.getJobs().isEmpty());
+
+        // 未設定trace-dir時只接受上傳的內容
+        CoreService uploadsOnly = new CoreService(1, 4, tempDir.resolve("jobs").toString(), "", 10, 64, traceCache);
+        try {
+            assertThrows(IllegalArgumentException.class, () -> uploadsOnly.submit(sqrRequest()));
+        } finally {
+            uploadsOnly.shutdown();
+        }
+    }
+
+    /**
+     * Test that thresholds build an ALERT rule and unspecified thresholds keep their defaults.
+     */
+    @Test
+    void testBuildRulesFromThresholds() {
+        ComparisonJobRequest request = new ComparisonJobRequest();
+        assertSame(RuleSet.defaults(), CoreService.buildRules(request));
+
+        request.setThresholdMillis(1000L);
+        RuleSet rules = CoreService.buildRules(request);
+        assertEquals("ALERT", rules.evaluate("SQL", new RuleInput().set(1000, 2500, 1)));
+        assertEquals("", rules.evaluate("SQL", new RuleInput().set(1000, 1900, 1)));
+
+        request.setRules("SQL: env2 > 10 -> SLOW");
+        assertEquals("SLOW", CoreService.buildRules(request).evaluate("SQL", new RuleInput().set(1, 11, 1)));
+    }
+
+    /**
+     * Test that cancelling a finished job leaves its status unchanged.
+     */
+    @Test
+    void testCancelFinishedJob() throws Exception {
+        ComparisonJob job = coreService.submit(sqrRequest());
+        job.getFuture().get();
+
+        assertEquals(Optional.of(job), coreService.cancel(job.getId()));
+        assertEquals(ComparisonJob.Status.SUCCEEDED, job.getStatus());
+        assertTrue(coreService.cancel("unknown").isEmpty());
+        assertEquals(List.of(job), coreService.getJobs());
+    }
+
+    /**
+     * Test that gzip and zip uploads are parsed as they are read and compared without trace files.
+     */
+    @Test
+    void testSubmitUploadedTraces() throws Exception {
+        ComparisonJobRequest request = new ComparisonJobRequest();
+        request.setTool(ComparisonJobRequest.Tool.SQR);
+        request.setTraceParams("-S -TIMING");
+
+        UploadedTrace env1 = coreService.parseUpload(request, "env1.log.gz", new ByteArrayInputStream(gzip(ENV1_TRACE)));
+        UploadedTrace env2 = coreService.parseUpload(request, "env2.zip", new ByteArrayInputStream(zip(ENV2_TRACE)));
+        assertEquals(2, env1.size());
+        assertEquals(2, env2.size());
+
+        ComparisonJob job = coreService.submit(request, env1, env2);
+        assertTrue(job.isUploaded());
+        job.getFuture().get();
+
+        assertEquals(ComparisonJob.Status.SUCCEEDED, job.getStatus());
+        Optional<Path> csv = coreService.getReport(job.getId(), "sqr_trace_comparison_result.csv");
+        assertTrue(csv.isPresent());
+        assertTrue(Files.readString(csv.get()).contains("2500"));
+        // 作業結束後不再持有解析出的條目
+        assertNull(job.getEnv1Upload());
+
+        ComparisonJobRequest aeRequest = new ComparisonJobRequest();
+        aeRequest.setTool(ComparisonJobRequest.Tool.AE);
+        assertThrows(IllegalArgumentException.class, () -> coreService.submit(aeRequest, env1, env2));
+    }
+
+    /**
+     * Test that a parsed trace is cached by content hash and can be referenced by its digest.
+     */
+    @Test
+    void testRepeatedTraceUsesCache() throws Exception {
+        ComparisonJob first = coreService.submit(sqrRequest());
+        first.getFuture().get();
+        assertEquals(ComparisonJob.Status.SUCCEEDED, first.getStatus());
+        assertNotNull(first.getEnv1Digest());
+        assertNotEquals(first.getEnv1Digest(), first.getEnv2Digest());
+        assertTrue(traceCache.getMemoryBytes() > 0);
+
+        // 相同的伺服器文件只計算雜湊，不再解析
+        ComparisonJob repeated = coreService.submit(sqrRequest());
+        repeated.getFuture().get();
+        assertEquals(ComparisonJob.Status.SUCCEEDED, repeated.getStatus());
+        assertEquals(first.getEnv1Digest(), repeated.getEnv1Digest());
+        assertEquals(0, repeated.progress().snapshot().env1BytesParsed());
+
+        // 相同內容的上傳直接得到快取中的實例
+        ComparisonJobRequest request = sqrRequest();
+        UploadedTrace uploaded = coreService.parseUpload(request, "env1.log.gz", new ByteArrayInputStream(gzip(ENV1_TRACE)));
+        assertEquals(first.getEnv1Digest(), uploaded.getDigest());
+        assertSame(coreService.getCachedTrace(request, first.getEnv1Digest()).orElseThrow(), uploaded);
+
+        // 以雜湊引用之前的內容，不需要跟蹤文件
+        request.setEnv1TraceFile(null);
+        request.setEnv1Digest(first.getEnv1Digest());
+        ComparisonJob second = coreService.submit(request);
+        assertTrue(second.isUploaded());
+        second.getFuture().get();
+        assertEquals(ComparisonJob.Status.SUCCEEDED, second.getStatus());
+        assertEquals(first.getEnv2Digest(), second.getEnv2Digest());
+
+        // 不同的trace參數是不同的鍵
+        request.setTraceParams("-S");
+        assertThrows(IllegalArgumentException.class, () -> coreService.submit(request));
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry("trace.log"));
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private ComparisonJobRequest sqrRequest() throws IOException {
+        Path env1 = tempDir.resolve("env1.log");
+        Path env2 = tempDir.resolve("env2.log");
+        Files.writeString(env1, ENV1_TRACE);
+        Files.writeString(env2, ENV2_TRACE);
+
+        ComparisonJobRequest request = new ComparisonJobRequest();
+        request.setTool(ComparisonJobRequest.Tool.SQR);
+        request.setEnv1TraceFile(env1.toString());
+        request.setEnv2TraceFile(env2.toString());
+        request.setTraceParams("-S -TIMING");
+        return request;
+    }
+}
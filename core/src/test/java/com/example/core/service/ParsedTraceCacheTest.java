@@ -0,0 +1,156 @@
+package com.example.core.service;
+
+import com.example.core.tool.analyzer.TraceEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the ParsedTraceCache class.
+ */
+class ParsedTraceCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that the memory tier evicts the least recently used trace once its byte budget is exceeded.
+     */
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        UploadedTrace a = trace("a", 100);
+        ParsedTraceCache cache = new ParsedTraceCache(a.getEstimatedBytes() * 2 + 1, "", 0);
+        cache.put("a", a);
+        cache.put("b", trace("b", 100));
+        // 訪問a使b成為最久未使用的
+        assertSame(a, cache.get("a").orElseThrow());
+        cache.put("c", trace("c", 100));
+
+        assertTrue(cache.get("a").isPresent());
+        assertTrue(cache.get("b").isEmpty());
+        assertTrue(cache.get("c").isPresent());
+        assertTrue(cache.getMemoryBytes() <= a.getEstimatedBytes() * 2 + 1);
+
+        // 比整個記憶體層還大的內容不會被快取
+        cache.put("big", trace("big", 1000));
+        assertTrue(cache.get("big").isEmpty());
+        assertTrue(cache.get("c").isPresent());
+    }
+
+    /**
+     * Test that evicted traces spill to disk, are read back on a hit and survive a restart.
+     */
+    @Test
+    void testSpillsToDisk() throws IOException {
+        UploadedTrace a = trace("a", 100);
+        String spillDir = tempDir.resolve("spill").toString();
+        ParsedTraceCache cache = new ParsedTraceCache(a.getEstimatedBytes(), spillDir, 1 << 20);
+        cache.put("a", a);
+        cache.put("b", trace("b", 100));
+        assertTrue(cache.getSpilledBytes() > 0);
+
+        UploadedTrace restored = cache.get("a").orElseThrow();
+        assertNotSame(a, restored);
+        assertEquals(a.getDigest(), restored.getDigest());
+        assertEquals(100, restored.size());
+        assertEquals("SQL#99", restored.getAeEntries().get(99).identifier);
+        assertEquals("db", restored.getAeEntries().get(99).metadata.get("source"));
+
+        ParsedTraceCache reopened = new ParsedTraceCache(0, spillDir, 1 << 20);
+        assertEquals(cache.getSpilledBytes(), reopened.getSpilledBytes());
+        assertTrue(reopened.get("b").isPresent());
+        assertTrue(reopened.get("c").isEmpty());
+    }
+
+    /**
+     * Test that the disk tier deletes the least recently used files once its byte budget is exceeded.
+     */
+    @Test
+    void testDiskTierIsBounded() throws IOException {
+        Path spillDir = tempDir.resolve("spill");
+        ParsedTraceCache cache = new ParsedTraceCache(0, spillDir.toString(), Long.MAX_VALUE);
+        cache.put("a", trace("a", 100));
+        long fileSize = cache.getSpilledBytes();
+
+        ParsedTraceCache bounded = new ParsedTraceCache(0, tempDir.resolve("bounded").toString(), fileSize * 2);
+        bounded.put("a", trace("a", 100));
+        bounded.put("b", trace("b", 100));
+        bounded.put("c", trace("c", 100));
+
+        assertTrue(bounded.getSpilledBytes() <= fileSize * 2);
+        assertTrue(bounded.get("a").isEmpty());
+        assertTrue(bounded.get("c").isPresent());
+        try (Stream<Path> files = Files.list(tempDir.resolve("bounded"))) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    /**
+     * Test that a spill file holding a class outside the allow-list is rejected before the class is deserialized.
+     */
+    @Test
+    void testRejectsUnexpectedClasses() throws IOException {
+        Path spillDir = tempDir.resolve("spill");
+        ParsedTraceCache cache = new ParsedTraceCache(0, spillDir.toString(), 1 << 20);
+        cache.put("a", trace("a", 10));
+        Path file;
+        try (Stream<Path> files = Files.list(spillDir)) {
+            file = files.findFirst().orElseThrow();
+        }
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(file))) {
+            out.writeObject(new Gadget());
+        }
+
+        assertTrue(cache.get("a").isEmpty());
+        assertFalse(Gadget.deserialized);
+        assertFalse(Files.exists(file));
+        assertEquals(0, cache.getSpilledBytes());
+    }
+
+    /**
+     * Test that keys differ by tool and trace params but ignore whitespace differences.
+     */
+    @Test
+    void testKey() {
+        assertEquals(ParsedTraceCache.key(ComparisonJobRequest.Tool.SQR, "-S  -TIMING ", "abc"),
+                ParsedTraceCache.key(ComparisonJobRequest.Tool.SQR, "-S -TIMING", "abc"));
+        assertNotEquals(ParsedTraceCache.key(ComparisonJobRequest.Tool.SQR, "-S", "abc"),
+                ParsedTraceCache.key(ComparisonJobRequest.Tool.AE, "-S", "abc"));
+    }
+
+    private static final class Gadget implements Serializable {
+        private static final long serialVersionUID = 1L;
+        static boolean deserialized;
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            deserialized = true;
+        }
+    }
+
+    private static UploadedTrace trace(String digest, int entries) {
+        List<TraceEntry> list = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            TraceEntry entry = new TraceEntry();
+            entry.identifier = "SQL#" + i;
+            entry.type = "SQL";
+            entry.startTime = i;
+            entry.endTime = i + 10;
+            entry.lineNumber = i + 1;
+            entry.metadata.put("source", "db");
+            list.add(entry);
+        }
+        return UploadedTrace.ae(digest + ".log", digest, list);
+    }
+}
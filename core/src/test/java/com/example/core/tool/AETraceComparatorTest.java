@@ -3,9 +3,14 @@ package com.example.core.tool;
 import com.example.core.tool.analyzer.TraceAnalyzer;
 import com.example.core.tool.analyzer.TraceAnalyzerFactory;
 import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.analyzer.TraceEntryCursor;
+import com.example.core.tool.analyzer.TraceEntryTable;
+import com.example.core.tool.analyzer.TraceStringPool;
+import com.example.core.tool.rule.RuleSet;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -14,6 +19,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -152,6 +158,87 @@ class AETraceComparatorTest {
         assertEquals(600, functionEntry.duration()); // 0.6 seconds = 600ms
     }
 
+    /**
+     * Test that repeated executions of the same step and SQL stay separate, in file order.
+     */
+    @Test
+    void testParseTraceKeepsRepeatedExecutions() throws IOException {
+        Path traceFile = createSampleTraceFile("repeated_trace.log",
+                "10:00:00.000 Step:MAIN.STEP1 started\n" +
+                "10:00:00.100 SQL:SQL1 started\n" +
+                "SQL statement: SELECT 1 FROM DUAL\n" +
+                "Bind-Variables: A=1\n" +
+                "10:00:00.200 SQL:SQL1 ended\n" +
+                "10:00:00.300 Step:MAIN.STEP1 ended\n" +
+                "10:00:05.000 Step:MAIN.STEP1 started\n" +
+                "10:00:05.100 SQL:SQL1 started\n" +
+                "SQL statement: SELECT 2 FROM DUAL\n" +
+                "Bind-Variables: A=2\n" +
+                "10:00:06.100 SQL:SQL1 ended\n" +
+                "10:00:06.500 Step:MAIN.STEP1 ended\n");
+
+        List<TraceAnalyzer> analyzers = TraceAnalyzerFactory.createAnalyzersForParams("-TRACE 3 -TOOLSTRACEPC 4044 -TOOLSTRACESQL 31");
+        List<TraceEntry> entries = AETraceComparator.parseTraceWithMultipleAnalyzers(traceFile.toString(), analyzers);
+
+        assertEquals(4, entries.size());
+        for (int i = 1; i < entries.size(); i++) {
+            assertTrue(entries.get(i - 1).lineNumber < entries.get(i).lineNumber, "Entries should be in file order");
+        }
+
+        List<TraceEntry> steps = entries.stream().filter(e -> e.type.equals("STEP")).toList();
+        assertEquals(300, steps.get(0).duration());
+        assertEquals(1500, steps.get(1).duration());
+
+        List<TraceEntry> sqls = entries.stream().filter(e -> e.type.equals("SQL")).toList();
+        assertEquals("SELECT 1 FROM DUAL", sqls.get(0).content);
+        assertEquals("A=1", sqls.get(0).metadata.get("bindVariables"));
+        assertEquals(1000, sqls.get(1).duration());
+        assertEquals("SELECT 2 FROM DUAL", sqls.get(1).content);
+        assertEquals("A=2", sqls.get(1).metadata.get("bindVariables"));
+    }
+
+    /**
+     * Test that parsing from a reader yields the same entries, in the same order, as parsing the file.
+     */
+    @Test
+    void testParseTraceFromReaderMatchesFile() throws IOException {
+        Path traceFile = createSampleTraceFile("reader_trace.log",
+                "10:00:00.000 Step:MAIN.STEP1 started\n" +
+                "10:00:00.100 SQL:SQL1 started\n" +
+                "SQL statement: SELECT * FROM PS_JOB WHERE EMPLID = '12345'\n" +
+                "Bind-Variables: EMPLID=12345\n" +
+                "10:00:00.200 Function:GetJobData started\n" +
+                "PeopleCode Execution: GetJobData()\n" +
+                "10:00:00.800 Function:GetJobData ended\n" +
+                "10:00:00.600 SQL:SQL1 ended\n" +
+                "10:00:01.000 Step:MAIN.STEP1 ended\n" +
+                "10:00:05.000 Step:MAIN.STEP1 started\n" +
+                "10:00:05.100 SQL:SQL1 started\n" +
+                "SQL statement: SELECT 2 FROM DUAL\n" +
+                "10:00:06.100 SQL:SQL1 ended\n" +
+                "10:00:06.500 Step:MAIN.STEP1 ended\n");
+
+        List<TraceAnalyzer> analyzers = TraceAnalyzerFactory.createAnalyzersForParams("-TRACE 3 -TOOLSTRACEPC 4044 -TOOLSTRACESQL 31");
+        List<TraceEntry> fromFile = AETraceComparator.parseTraceWithMultipleAnalyzers(traceFile.toString(), analyzers);
+        List<TraceEntry> fromReader;
+        try (BufferedReader reader = Files.newBufferedReader(traceFile)) {
+            fromReader = AETraceComparator.parseTraceWithMultipleAnalyzers(reader, analyzers);
+        }
+
+        assertEquals(fromFile.size(), fromReader.size());
+        for (int i = 0; i < fromFile.size(); i++) {
+            TraceEntry expected = fromFile.get(i);
+            TraceEntry actual = fromReader.get(i);
+            assertEquals(expected.type, actual.type);
+            assertEquals(expected.identifier, actual.identifier);
+            assertEquals(expected.startTime, actual.startTime);
+            assertEquals(expected.endTime, actual.endTime);
+            assertEquals(expected.content, actual.content);
+            assertEquals(expected.lineNumber, actual.lineNumber);
+            assertEquals(expected.metadata, actual.metadata);
+        }
+    }
+
     /**
      * Test that the compareTraces method correctly compares entries from two environments.
      */
@@ -213,6 +300,141 @@ class AETraceComparatorTest {
             }
         }
         assertTrue(foundUniqueStep, "Should mark the unique step as UNIQUE");
+
+        // The detailed report starts with the top regressions
+        List<String> detailedReport = Files.readAllLines(tempDir.resolve("ae_comparison_result_detailed.md"));
+        assertEquals("## Top 20 Regressions", detailedReport.get(3));
+    }
+
+    /**
+     * Test that comparing off-heap entry tables produces the same output as comparing lists.
+     */
+    @Test
+    void testCompareTracesWithEntryTables() throws IOException {
+        List<TraceEntry> env1Entries = createSampleEntries("ENV1");
+        List<TraceEntry> env2Entries = createSampleEntries("ENV2");
+        findEntryByType(env2Entries, "SQL").endTime += 1000;
+
+        TraceEntry missingEntry = new TraceEntry();
+        missingEntry.type = "STEP";
+        missingEntry.identifier = "MISSING_STEP";
+        missingEntry.startTime = 1000;
+        missingEntry.endTime = 1500;
+        env1Entries.add(missingEntry);
+
+        Path listOutput = tempDir.resolve("list_result.csv");
+        Path tableOutput = tempDir.resolve("table_result.csv");
+
+        AETraceComparator.compareTraces(env1Entries, env2Entries, "ENV1", "ENV2", listOutput.toString());
+
+        TraceStringPool pool = new TraceStringPool();
+        TraceEntryTable env1Table = TraceEntryTable.of(env1Entries, pool);
+        TraceEntryTable env2Table = TraceEntryTable.of(env2Entries, pool);
+        AETraceComparator.compareTraces(env1Table, env2Table, "ENV1", "ENV2", tableOutput.toString());
+
+        assertEquals(Files.readAllLines(listOutput), Files.readAllLines(tableOutput));
+        assertEquals(Files.readAllLines(tempDir.resolve("list_result_detailed.md")),
+                Files.readAllLines(tempDir.resolve("table_result_detailed.md")));
+        assertTrue(Files.readAllLines(tableOutput).stream().anyMatch(line -> line.contains("MISSING_STEP") && line.contains("MISSING")));
+    }
+
+    /**
+     * Test that parsing straight into an entry table yields the same entries, in the same order, as parsing to a list.
+     */
+    @Test
+    void testParseTraceToTableMatchesList() throws IOException {
+        Path traceFile = createSampleTraceFile("table_trace.log",
+                "10:00:00.000 Step:MAIN.STEP1 started\n" +
+                "10:00:00.100 SQL:SQL1 started\n" +
+                "SQL statement: SELECT * FROM PS_JOB\n" +
+                "10:00:00.300 SQL:SQL1 ended\n" +
+                "Bind-Variables: EMPLID=12345\n" +
+                "10:00:00.400 Function:GetJobData started\n" +
+                "10:00:00.450 Method:JOB_PKG:JobData.get started\n" +
+                "10:00:00.500 Method:JOB_PKG:JobData.get ended\n" +
+                "10:00:00.800 Function:GetJobData ended\n" +
+                "PeopleCode program JOB.EMPLID.FieldChange\n" +
+                "10:00:01.000 Step:MAIN.STEP1 ended\n" +
+                "10:00:05.000 Step:MAIN.STEP1 started\n" +
+                "10:00:05.100 SQL:SQL1 started\n" +
+                "SQL statement: SELECT 2 FROM DUAL\n" +
+                "10:00:06.100 SQL:SQL1 ended\n" +
+                "10:00:06.500 Step:MAIN.STEP1 ended\n" +
+                "10:00:07.000 Step:MAIN.STEP2 started\n");
+
+        List<TraceAnalyzer> analyzers = TraceAnalyzerFactory.createAnalyzersForParams("-TRACE 3 -TOOLSTRACEPC 4044 -TOOLSTRACESQL 31");
+        List<TraceEntry> fromList = AETraceComparator.parseTraceWithMultipleAnalyzers(traceFile.toString(), analyzers);
+        TraceEntryTable table = AETraceComparator.parseTraceToTable(traceFile.toString(), analyzers, new TraceStringPool());
+
+        assertEquals(fromList.size(), table.size());
+        TraceEntryCursor cursor = table.cursor();
+        for (TraceEntry expected : fromList) {
+            assertTrue(cursor.next());
+            TraceEntry actual = cursor.copyTo(new TraceEntry());
+            assertEquals(expected.type, actual.type);
+            assertEquals(expected.identifier, actual.identifier);
+            assertEquals(expected.startTime, actual.startTime);
+            assertEquals(expected.endTime, actual.endTime);
+            assertEquals(expected.content, actual.content);
+            assertEquals(expected.lineNumber, actual.lineNumber);
+            assertEquals(expected.metadata, actual.metadata);
+        }
+        assertEquals("EMPLID=12345", fromList.get(1).metadata.get("bindVariables"));
+    }
+
+    /**
+     * Test that custom rules replace the default ALERT rule during the comparison.
+     */
+    @Test
+    void testCompareTracesWithCustomRules() throws IOException {
+        List<TraceEntry> env1Entries = createSampleEntries("ENV1");
+        List<TraceEntry> env2Entries = createSampleEntries("ENV2");
+        findEntryByType(env2Entries, "SQL").endTime += 1000;
+        findEntryByType(env2Entries, "FUNCTION").endTime += 1000;
+
+        Path outputPath = tempDir.resolve("rules_result.csv");
+        RuleSet rules = RuleSet.compile("SQL: ratio > 2x && executions >= 1 -> SLOW_SQL");
+        AETraceComparator.compareTraces(env1Entries, env2Entries, "ENV1", "ENV2", outputPath.toString(), rules);
+
+        List<String> csvLines = Files.readAllLines(outputPath);
+        assertTrue(csvLines.stream().anyMatch(line -> line.startsWith("SQL,SQL#1,500,1500,1000,200.00,SLOW_SQL")));
+        // No rule applies to FUNCTION entries any more
+        assertTrue(csvLines.stream().anyMatch(line -> line.startsWith("FUNCTION,GetJobData,600,1600,1000,166.67,,")));
+    }
+
+    /**
+     * Test that the self-time comparison attributes a slower SQL to the SQL and not to its step.
+     */
+    @Test
+    void testCompareTracesBySelfTime() throws IOException {
+        List<TraceEntry> env1Entries = new ArrayList<>();
+        env1Entries.add(createEntry("STEP", "MAIN.STEP1", 0, 1000));
+        env1Entries.add(createEntry("SQL", "SQL#1", 100, 400));
+
+        List<TraceEntry> env2Entries = new ArrayList<>();
+        env2Entries.add(createEntry("STEP", "MAIN.STEP1", 0, 1700));
+        env2Entries.add(createEntry("SQL", "SQL#1", 100, 1000));
+        env2Entries.add(createEntry("SQL", "SQL#1", 1100, 1200));
+
+        Path outputPath = tempDir.resolve("self_time_result.csv");
+        AETraceComparator.compareTracesBySelfTime(env1Entries, env2Entries, "ENV1", "ENV2", RuleSet.defaults(),
+                outputPath.toString());
+
+        List<String> csvLines = Files.readAllLines(outputPath);
+        assertEquals(4, csvLines.size());
+        assertTrue(csvLines.get(0).startsWith("Type,Identifier,ENV1 Self(ms),ENV2 Self(ms),Self Diff(ms)"));
+
+        // The SQL grew by 600ms of its own time and is ranked first
+        assertTrue(csvLines.get(1).startsWith("SQL,SQL#1,300,900,600,"));
+        assertTrue(csvLines.get(1).endsWith("ALERT"));
+
+        // The step's total grew by 700ms, but its own time did not change
+        assertTrue(csvLines.get(2).startsWith("STEP,MAIN.STEP1,700,700,0,"));
+        assertFalse(csvLines.get(2).endsWith("ALERT"));
+
+        // The second execution only exists in ENV2
+        assertTrue(csvLines.get(3).startsWith("SQL,SQL#1,N/A,100,"));
+        assertTrue(csvLines.get(3).endsWith("UNIQUE"));
     }
 
     /**
@@ -0,0 +1,119 @@
+package com.example.core.tool;
+
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.rule.RuleSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the EnvironmentMatrixComparator class.
+ */
+class EnvironmentMatrixComparatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that all environments are joined into one matrix with the spread and outlier per row.
+     */
+    @Test
+    void testCompareEnvironments() throws IOException {
+        List<TraceEntry> dev = new ArrayList<>();
+        dev.add(createEntry("STEP", "MAIN.STEP1", 1000));
+        dev.add(createEntry("SQL", "SQL#1", 500));
+        dev.add(createEntry("SQL", "SQL#1", 510));
+
+        List<TraceEntry> sit = new ArrayList<>();
+        sit.add(createEntry("STEP", "MAIN.STEP1", 1050));
+        sit.add(createEntry("SQL", "SQL#1", 520));
+        sit.add(createEntry("SQL", "SQL#1", 500));
+
+        List<TraceEntry> prod = new ArrayList<>();
+        prod.add(createEntry("STEP", "MAIN.STEP1", 1020));
+        prod.add(createEntry("SQL", "SQL#1", 2000));
+        prod.add(createEntry("STEP", "PROD_ONLY", 300));
+
+        Path outputPath = tempDir.resolve("matrix_result.csv");
+        List<EnvironmentMatrixComparator.MatrixRow> rows = EnvironmentMatrixComparator.compareEnvironments(
+                List.of("DEV", "SIT", "PROD"), List.of(dev, sit, prod), outputPath.toString());
+
+        assertEquals(4, rows.size());
+
+        // The first execution of SQL#1 is much slower in PROD
+        EnvironmentMatrixComparator.MatrixRow slowSql = rows.get(0);
+        assertEquals("SQL#1", slowSql.getIdentifier());
+        assertEquals(1, slowSql.getOccurrence());
+        assertEquals(1500, slowSql.getSpread());
+        assertEquals(2, slowSql.getOutlier());
+        assertTrue(slowSql.isAlert());
+
+        EnvironmentMatrixComparator.MatrixRow step = rows.get(1);
+        assertEquals("MAIN.STEP1", step.getIdentifier());
+        assertEquals(50, step.getSpread());
+        assertFalse(step.isAlert());
+
+        // The second execution of SQL#1 does not exist in PROD
+        EnvironmentMatrixComparator.MatrixRow secondSql = rows.get(2);
+        assertEquals(2, secondSql.getOccurrence());
+        assertFalse(secondSql.isComplete());
+        assertEquals(-1, secondSql.getDuration(2));
+
+        List<String> csvLines = Files.readAllLines(outputPath);
+        assertEquals("Type,Identifier,Occurrence,DEV(ms),SIT(ms),PROD(ms),Min(ms),Max(ms),Spread(ms),Spread(%),Outlier,Flag",
+                csvLines.get(0));
+        assertEquals("SQL,SQL#1,1,500,520,2000,500,2000,1500,300.00,PROD,ALERT", csvLines.get(1));
+        assertEquals("STEP,PROD_ONLY,1,N/A,N/A,300,300,300,N/A,N/A,N/A,PARTIAL", csvLines.get(4));
+    }
+
+    /**
+     * Test that the spread is flagged by the given rules, with the fastest environment as env1.
+     */
+    @Test
+    void testCompareEnvironmentsWithRules() throws IOException {
+        List<TraceEntry> dev = List.of(createEntry("STEP", "MAIN.STEP1", 1000), createEntry("SQL", "SQL#1", 500));
+        List<TraceEntry> sit = List.of(createEntry("STEP", "MAIN.STEP1", 1050), createEntry("SQL", "SQL#1", 400));
+
+        Path outputPath = tempDir.resolve("matrix_result.csv");
+        List<EnvironmentMatrixComparator.MatrixRow> rows = EnvironmentMatrixComparator.compareEnvironments(
+                List.of("DEV", "SIT"), List.of(dev, sit), outputPath.toString(),
+                RuleSet.compile("SQL: diff >= 100 && ratio > 1.2 -> SLOW_SQL\n*: diff > 40 -> SLOW"));
+
+        assertEquals("SQL#1", rows.get(0).getIdentifier());
+        assertEquals("SLOW_SQL", rows.get(0).getFlag());
+        assertTrue(rows.get(0).isAlert());
+        assertEquals("SLOW", rows.get(1).getFlag());
+
+        List<String> csvLines = Files.readAllLines(outputPath);
+        assertEquals("SQL,SQL#1,1,500,400,400,500,100,25.00,DEV,SLOW_SQL", csvLines.get(1));
+        assertEquals("STEP,MAIN.STEP1,1,1000,1050,1000,1050,50,5.00,SIT,SLOW", csvLines.get(2));
+    }
+
+    /**
+     * Test that identifiers and environment names containing commas or quotes are escaped in the CSV report.
+     */
+    @Test
+    void testCsvFieldsAreEscaped() throws IOException {
+        String sql = "SELECT A, \"B\" FROM T";
+        List<TraceEntry> dev = List.of(createEntry("SQL", sql, 100));
+        List<TraceEntry> prod = List.of(createEntry("SQL", sql, 1000));
+
+        Path outputPath = tempDir.resolve("matrix_result.csv");
+        EnvironmentMatrixComparator.compareEnvironments(List.of("DEV", "PROD, EU"), List.of(dev, prod),
+                outputPath.toString());
+
+        List<String> csvLines = Files.readAllLines(outputPath);
+        assertEquals("Type,Identifier,Occurrence,DEV(ms),\"PROD, EU(ms)\",Min(ms),Max(ms),Spread(ms),Spread(%),Outlier,Flag",
+                csvLines.get(0));
+        assertEquals("SQL,\"SELECT A, \"\"B\"\" FROM T\",1,100,1000,100,1000,900,900.00,\"PROD, EU\",ALERT",
+                csvLines.get(1));
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.core.tool;
+
+import com.example.core.tool.analyzer.TraceAnalyzerFactory;
+import com.example.core.tool.analyzer.TraceEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the MultiRunTraceComparator class.
+ */
+class MultiRunTraceComparatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that a consistent slowdown is flagged while run-to-run noise is not.
+     */
+    @Test
+    void testOnlySignificantRegressionsAreFlagged() throws IOException {
+        long[][] env1Noise = {{1000, 1300}, {1250, 1000}, {1100, 1200}, {1300, 1050}, {1150, 1150}, {1000, 1400}};
+        long[][] env2Noise = {{1200, 1100}, {1050, 1300}, {1400, 1000}, {1000, 1250}, {1150, 1150}, {1300, 1050}};
+
+        List<List<TraceEntry>> env1Runs = new ArrayList<>();
+        List<List<TraceEntry>> env2Runs = new ArrayList<>();
+        for (int run = 0; run < 6; run++) {
+            List<TraceEntry> env1Run = new ArrayList<>();
+            List<TraceEntry> env2Run = new ArrayList<>();
+            for (int execution = 0; execution < 2; execution++) {
+                // The noisy step varies by up to 40% but its run totals are the same in both environments
+                env1Run.add(createEntry("STEP", "NOISY_STEP", env1Noise[run][execution]));
+                env2Run.add(createEntry("STEP", "NOISY_STEP", env2Noise[run][execution]));
+                // The SQL is consistently about 500ms slower per execution in ENV2
+                env1Run.add(createEntry("SQL", "SQL#1", 1000 + run * 10 + execution));
+                env2Run.add(createEntry("SQL", "SQL#1", 1500 + run * 10 + execution));
+            }
+            env2Run.add(createEntry("STEP", "NEW_STEP", 100));
+            env1Runs.add(env1Run);
+            env2Runs.add(env2Run);
+        }
+
+        Path outputPath = tempDir.resolve("multi_run_result.csv");
+        List<MultiRunTraceComparator.IdentifierStatistics> results =
+                MultiRunTraceComparator.compareRuns(env1Runs, env2Runs, "ENV1", "ENV2", outputPath.toString());
+
+        MultiRunTraceComparator.IdentifierStatistics sql = results.get(0);
+        assertEquals("SQL#1", sql.getIdentifier());
+        assertEquals("REGRESSION", sql.getFlag());
+        // One sample per run: the total of both executions
+        assertEquals(6, sql.getEnv1Count());
+        assertEquals(1000.0, sql.getMedianShift(), 1e-9);
+        assertEquals(1.0, sql.getCliffsDelta(), 1e-9);
+        assertTrue(sql.getCiLow() > 0);
+        assertTrue(sql.getQValue() < MultiRunTraceComparator.SIGNIFICANCE_LEVEL);
+
+        MultiRunTraceComparator.IdentifierStatistics noisy = findByIdentifier(results, "NOISY_STEP");
+        assertEquals("", noisy.getFlag());
+        assertTrue(noisy.getQValue() > 0.5);
+
+        assertEquals("UNIQUE", findByIdentifier(results, "NEW_STEP").getFlag());
+
+        List<String> csvLines = Files.readAllLines(outputPath);
+        assertEquals(4, csvLines.size());
+        assertTrue(csvLines.get(0).startsWith(
+                "Type,Identifier,ENV1 Runs,ENV2 Runs,ENV1 Median per Run(ms),ENV2 Median per Run(ms),Median Shift(ms)"));
+        assertTrue(csvLines.get(1).startsWith("SQL,SQL#1,6,6,"));
+        assertTrue(csvLines.get(1).endsWith(",REGRESSION"));
+    }
+
+    /**
+     * Test that many executions in a few runs do not count as independent samples.
+     */
+    @Test
+    void testExecutionsWithinARunAreOneSample() throws IOException {
+        List<List<TraceEntry>> env1Runs = new ArrayList<>();
+        List<List<TraceEntry>> env2Runs = new ArrayList<>();
+        for (int run = 0; run < 3; run++) {
+            List<TraceEntry> env1Run = new ArrayList<>();
+            List<TraceEntry> env2Run = new ArrayList<>();
+            for (int execution = 0; execution < 50; execution++) {
+                env1Run.add(createEntry("SQL", "SQL#1", 100 + execution % 5));
+                // Two of the three ENV2 runs were slow throughout, which says little about the environment
+                env2Run.add(createEntry("SQL", "SQL#1", (run < 2 ? 200 : 100) + execution % 5));
+            }
+            env1Runs.add(env1Run);
+            env2Runs.add(env2Run);
+        }
+
+        List<MultiRunTraceComparator.IdentifierStatistics> results =
+                MultiRunTraceComparator.compareRuns(env1Runs, env2Runs, "ENV1", "ENV2",
+                        tempDir.resolve("multi_run_result.csv").toString());
+
+        // Pooled, the 150 executions would make the shift look significant; three runs against three cannot
+        MultiRunTraceComparator.IdentifierStatistics sql = results.get(0);
+        assertEquals(3, sql.getEnv1Count());
+        assertEquals(3, sql.getEnv2Count());
+        assertEquals("", sql.getFlag());
+        assertTrue(sql.getPValue() > MultiRunTraceComparator.SIGNIFICANCE_LEVEL);
+    }
+
+    /**
+     * Test that trace files are parsed in parallel and returned in input order.
+     */
+    @Test
+    void testParseTracesInParallel() throws IOException {
+        List<String> filePaths = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Path traceFile = tempDir.resolve("run" + i + ".log");
+            Files.writeString(traceFile,
+                    "10:00:00.000 Step:MAIN.STEP" + i + " started\n" +
+                    "10:00:0" + (i + 1) + ".000 Step:MAIN.STEP" + i + " ended\n");
+            filePaths.add(traceFile.toString());
+        }
+
+        List<List<TraceEntry>> runs = MultiRunTraceComparator.parseTracesInParallel(filePaths,
+                TraceAnalyzerFactory.createAnalyzersForParams("-TRACE 1"));
+
+        assertEquals(4, runs.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1, runs.get(i).size());
+            assertEquals("MAIN.STEP" + i, runs.get(i).get(0).identifier);
+            assertEquals((i + 1) * 1000L, runs.get(i).get(0).duration());
+        }
+    }
+
+    private MultiRunTraceComparator.IdentifierStatistics findByIdentifier(
+            List<MultiRunTraceComparator.IdentifierStatistics> results, String identifier) {
+        return results.stream()
+                .filter(statistics -> statistics.getIdentifier().equals(identifier))
+                .findFirst()
+                .orElse(null);
+    }
+}
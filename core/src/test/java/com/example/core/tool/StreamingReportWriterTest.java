@@ -0,0 +1,63 @@
+package com.example.core.tool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the StreamingReportWriter class.
+ */
+class StreamingReportWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that spooled sections are appended where requested and their temporary files are removed.
+     */
+    @Test
+    void testSpoolIsAppendedInPlace() throws IOException {
+        Path outputPath = tempDir.resolve("report.md");
+        try (StreamingReportWriter writer = StreamingReportWriter.create(outputPath.toString())) {
+            StreamingReportWriter.Spool body = writer.spool();
+            StreamingReportWriter.Spool unused = writer.spool();
+            assertTrue(body.isEmpty());
+
+            body.line("### 第一筆差異");
+            body.line("* Duration: 500 ms");
+            assertFalse(body.isEmpty());
+            assertTrue(unused.isEmpty());
+
+            writer.line("# Report");
+            writer.lines(List.of("## Top", ""));
+            writer.append(body);
+            writer.line("end");
+        }
+
+        assertEquals(List.of("# Report", "## Top", "", "### 第一筆差異", "* Duration: 500 ms", "end"),
+                Files.readAllLines(outputPath));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    /**
+     * Test that an existing report is overwritten rather than appended to.
+     */
+    @Test
+    void testExistingFileIsOverwritten() throws IOException {
+        Path outputPath = tempDir.resolve("report.csv");
+        Files.write(outputPath, List.of("old line 1", "old line 2", "old line 3"));
+        try (StreamingReportWriter writer = StreamingReportWriter.create(outputPath.toString())) {
+            writer.line("new");
+        }
+        assertEquals(List.of("new"), Files.readAllLines(outputPath));
+    }
+}
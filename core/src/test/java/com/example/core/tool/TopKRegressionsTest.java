@@ -0,0 +1,77 @@
+package com.example.core.tool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the TopKRegressions class.
+ */
+class TopKRegressionsTest {
+
+    /**
+     * Test that each ranking keeps only the K worst regressions, worst first.
+     */
+    @Test
+    void testRankingsAreBoundedAndOrdered() {
+        TopKRegressions topRegressions = new TopKRegressions(3);
+        topRegressions.recordRuntime(0, 10000);
+
+        for (int i = 1; i <= 50; i++) {
+            // Diff grows with i, relative diff shrinks with i
+            topRegressions.offer("SQL", "SQL#" + i, i * 10, i * 10 + 100 + i);
+        }
+        // Faster or unchanged entries are never ranked
+        topRegressions.offer("STEP", "FASTER", 5000, 100);
+        topRegressions.offer("STEP", "SAME", 100, 100);
+        // Too small to count for the relative ranking, but the longest entry in ENV2
+        topRegressions.offer("STEP", "LONG", 9000, 9050);
+
+        List<TopKRegressions.Regression> byAbsolute = topRegressions.byAbsoluteDelta();
+        assertEquals(3, byAbsolute.size());
+        assertEquals("SQL#50", byAbsolute.get(0).getIdentifier());
+        assertEquals("SQL#49", byAbsolute.get(1).getIdentifier());
+        assertEquals("SQL#48", byAbsolute.get(2).getIdentifier());
+        assertEquals(150, byAbsolute.get(0).diff());
+
+        List<TopKRegressions.Regression> byRelative = topRegressions.byRelativeDelta();
+        assertEquals(3, byRelative.size());
+        assertEquals("SQL#1", byRelative.get(0).getIdentifier());
+        assertEquals(1010.0, byRelative.get(0).diffPercent(), 0.001);
+
+        List<TopKRegressions.Regression> byShare = topRegressions.byRuntimeShare();
+        assertEquals("LONG", byShare.get(0).getIdentifier());
+        assertEquals(10000, topRegressions.totalRuntime());
+    }
+
+    /**
+     * Test that the Markdown section contains all three rankings.
+     */
+    @Test
+    void testToMarkdown() {
+        TopKRegressions topRegressions = new TopKRegressions();
+        topRegressions.recordRuntime(0, 2000);
+        topRegressions.offer("SQL", "SQL#1", 500, 1500);
+
+        List<String> lines = topRegressions.toMarkdown("ENV1", "ENV2");
+        assertEquals("## Top 20 Regressions", lines.get(0));
+        assertTrue(lines.contains("### By Absolute Difference"));
+        assertTrue(lines.contains("### By Inclusive Share of ENV2 Runtime (2000 ms)"));
+        assertTrue(lines.contains("| SQL | SQL#1 | 500 | 1500 | 1000 | 200.00 | 75.00 |"));
+    }
+
+    /**
+     * Test that pipes and line breaks in SQL text do not break the Markdown table rows.
+     */
+    @Test
+    void testToMarkdownEscapesCells() {
+        TopKRegressions topRegressions = new TopKRegressions();
+        topRegressions.recordRuntime(0, 2000);
+        topRegressions.offer("SQL", "SELECT A || B\nFROM T", 500, 1500);
+
+        List<String> lines = topRegressions.toMarkdown("ENV1", "ENV2");
+        assertTrue(lines.contains("| SQL | SELECT A \\|\\| B FROM T | 500 | 1500 | 1000 | 200.00 | 75.00 |"), lines.toString());
+    }
+}
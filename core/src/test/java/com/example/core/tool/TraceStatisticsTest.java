@@ -0,0 +1,75 @@
+package com.example.core.tool;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the TraceStatistics class.
+ */
+class TraceStatisticsTest {
+
+    /**
+     * Test the Mann-Whitney p-value and Cliff's delta against known values.
+     */
+    @Test
+    void testMannWhitney() {
+        TraceStatistics.RankTestResult separated = TraceStatistics.mannWhitney(
+                new long[]{1, 2, 3, 4, 5}, new long[]{6, 7, 8, 9, 10});
+        assertEquals(0.01219, separated.getPValue(), 1e-4);
+        assertEquals(1.0, separated.getCliffsDelta(), 1e-9);
+
+        TraceStatistics.RankTestResult identical = TraceStatistics.mannWhitney(
+                new long[]{5, 5, 5}, new long[]{5, 5, 5});
+        assertEquals(1.0, identical.getPValue(), 1e-9);
+        assertEquals(0.0, identical.getCliffsDelta(), 1e-9);
+
+        // Ties across the two samples are ranked together
+        TraceStatistics.RankTestResult tied = TraceStatistics.mannWhitney(
+                new long[]{1, 2, 2, 3}, new long[]{2, 3, 4, 5});
+        assertEquals(0.6875, tied.getCliffsDelta(), 1e-9);
+    }
+
+    /**
+     * Test that the median works for odd and even sample counts.
+     */
+    @Test
+    void testMedian() {
+        assertEquals(3.0, TraceStatistics.median(new long[]{5, 1, 3, 2, 4}), 1e-9);
+        assertEquals(2.5, TraceStatistics.median(new long[]{4, 1, 3, 2}), 1e-9);
+        assertEquals(7.0, TraceStatistics.median(new long[]{7, 7, 7, 7}), 1e-9);
+    }
+
+    /**
+     * Test the Benjamini-Hochberg adjustment, including tied p-values.
+     */
+    @Test
+    void testBenjaminiHochberg() {
+        double[] qValues = TraceStatistics.benjaminiHochberg(new double[]{0.04, 0.01, 0.03, 0.04});
+        assertEquals(0.04, qValues[0], 1e-9);
+        assertEquals(0.04, qValues[1], 1e-9);
+        assertEquals(0.04, qValues[2], 1e-9);
+        assertEquals(0.04, qValues[3], 1e-9);
+
+        qValues = TraceStatistics.benjaminiHochberg(new double[]{0.001, 0.5, 0.02});
+        assertEquals(0.003, qValues[0], 1e-9);
+        assertEquals(0.5, qValues[1], 1e-9);
+        assertEquals(0.03, qValues[2], 1e-9);
+    }
+
+    /**
+     * Test that the bootstrap interval is reproducible and contains the observed shift.
+     */
+    @Test
+    void testBootstrapMedianShift() {
+        long[] env1 = {100, 102, 98, 101, 99, 100, 103, 97};
+        long[] env2 = {200, 205, 195, 201, 199, 198, 202, 204};
+
+        double[] interval = TraceStatistics.bootstrapMedianShift(env1, env2, 500, 0.95, 42);
+        double[] again = TraceStatistics.bootstrapMedianShift(env1, env2, 500, 0.95, 42);
+
+        assertArrayEquals(interval, again, 1e-9);
+        assertTrue(interval[0] > 90 && interval[0] <= 100.5);
+        assertTrue(interval[1] >= 100.5 && interval[1] < 110);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.core.tool;
+
+import com.example.core.tool.analyzer.TraceEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the TraceTimeline class.
+ */
+class TraceTimelineTest {
+
+    /**
+     * Test that nested entries subtract their time from the enclosing entry.
+     */
+    @Test
+    void testNestedEntriesSelfTime() {
+        List<TraceEntry> entries = new ArrayList<>();
+        entries.add(createEntry("STEP", "MAIN.STEP1", 0, 1000, 1));
+        entries.add(createEntry("SQL", "SQL#1", 100, 400, 2));
+        entries.add(createEntry("FUNCTION", "GetJobData", 500, 700, 3));
+        entries.add(createEntry("SQL", "SQL#2", 550, 650, 4));
+
+        TraceTimeline timeline = TraceTimeline.build(entries);
+
+        assertEquals(4, timeline.size());
+        assertEquals(500, timeline.selfTime(0));
+        assertEquals(300, timeline.selfTime(1));
+        assertEquals(100, timeline.selfTime(2));
+        assertEquals(100, timeline.selfTime(3));
+
+        assertEquals(-1, timeline.parent(0));
+        assertEquals(0, timeline.parent(1));
+        assertEquals(0, timeline.parent(2));
+        assertEquals(2, timeline.parent(3));
+        assertEquals(0, timeline.idleTime());
+    }
+
+    /**
+     * Test that partially overlapping entries are not counted twice and that gaps are idle time.
+     */
+    @Test
+    void testOverlapAndIdleTime() {
+        List<TraceEntry> entries = new ArrayList<>();
+        // Out of start order on purpose: the timeline sorts them itself
+        entries.add(createEntry("STEP", "MAIN.STEP2", 1500, 1700, 3));
+        entries.add(createEntry("SQL", "SQL#1", 0, 600, 1));
+        entries.add(createEntry("FUNCTION", "GetJobData", 400, 1000, 2));
+
+        TraceTimeline timeline = TraceTimeline.build(entries);
+
+        assertEquals("SQL#1", timeline.entry(0).identifier);
+        assertEquals(400, timeline.selfTime(0));
+        assertEquals(600, timeline.selfTime(1));
+        assertEquals(200, timeline.selfTime(2));
+        assertEquals(500, timeline.idleTime());
+
+        long covered = 0;
+        for (int i = 0; i < timeline.size(); i++) {
+            covered += timeline.selfTime(i);
+        }
+        assertEquals(1700 - timeline.idleTime(), covered);
+    }
+}
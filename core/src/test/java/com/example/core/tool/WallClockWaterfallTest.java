@@ -0,0 +1,94 @@
+package com.example.core.tool;
+
+import com.example.core.tool.analyzer.TraceEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the WallClockWaterfall class.
+ */
+class WallClockWaterfallTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that the categories add up to the wall-clock time and the hottest chain follows the longest child.
+     */
+    @Test
+    void testCategoriesAndCriticalPath() {
+        WallClockWaterfall waterfall = WallClockWaterfall.of(createEntries(400));
+
+        assertEquals(500, waterfall.sqlTime());
+        assertEquals(100, waterfall.peopleCodeTime());
+        assertEquals(600, waterfall.stepOverheadTime());
+        assertEquals(0, waterfall.otherTime());
+        assertEquals(200, waterfall.idleTime());
+        assertEquals(1400, waterfall.wallClockTime());
+        assertEquals(waterfall.wallClockTime(), waterfall.sqlTime() + waterfall.peopleCodeTime()
+                + waterfall.stepOverheadTime() + waterfall.otherTime() + waterfall.idleTime());
+
+        List<Integer> criticalPath = waterfall.criticalPath();
+        assertEquals(2, criticalPath.size());
+        assertEquals(200, waterfall.timeline().gapBefore(criticalPath.get(1)));
+
+        List<TraceEntry> chain = waterfall.hottestChain(criticalPath.get(0));
+        assertEquals(3, chain.size());
+        assertEquals("MAIN.STEP1", chain.get(0).identifier);
+        assertEquals("GetJobData", chain.get(1).identifier);
+        assertEquals("SQL#2", chain.get(2).identifier);
+    }
+
+    /**
+     * Test that the report attributes a slower SQL to the SQL category.
+     */
+    @Test
+    void testWriteReport() throws IOException {
+        Path outputPath = tempDir.resolve("result_waterfall.md");
+        WallClockWaterfall.writeReport(createEntries(400), createEntries(1400), "ENV1", "ENV2", outputPath.toString());
+
+        List<String> report = Files.readAllLines(outputPath);
+        assertTrue(report.contains("| SQL | 500 | 1500 | +1000 | 100.0% |"));
+        assertTrue(report.contains("| 步驟開銷 | 600 | 600 | +0 | 0.0% |"));
+        assertTrue(report.stream().anyMatch(line -> line.startsWith("| STEP | MAIN.STEP1 | 1000 | 2000 | +1000 |")));
+        assertTrue(report.stream().anyMatch(line -> line.startsWith("| 200 | STEP:MAIN.STEP2 |")));
+    }
+
+    /**
+     * Test that pipes and line breaks in identifiers do not break the Markdown table rows.
+     */
+    @Test
+    void testWriteReportEscapesCells() throws IOException {
+        List<TraceEntry> entries = List.of(createEntry("SQL", "SELECT A || B\nFROM T", 0, 100));
+        Path outputPath = tempDir.resolve("result_waterfall.md");
+        WallClockWaterfall.writeReport(entries, entries, "ENV|1", "ENV2", outputPath.toString());
+
+        List<String> report = Files.readAllLines(outputPath);
+        assertTrue(report.contains("| 類別 | ENV\\|1 (ms) | ENV2 (ms) | 差異 (ms) | 佔總差異 |"), report.toString());
+        assertTrue(report.stream().anyMatch(line -> line.startsWith("| SQL | SELECT A \\|\\| B FROM T | 100 | 100 |")),
+                report.toString());
+    }
+
+    /**
+     * Creates two sequential steps with a 200ms gap; the first step calls a function running SQL#2.
+     */
+    private List<TraceEntry> createEntries(long sqlDuration) {
+        List<TraceEntry> entries = new ArrayList<>();
+        entries.add(createEntry("STEP", "MAIN.STEP1", 0, 600 + sqlDuration));
+        entries.add(createEntry("SQL", "SQL#1", 0, 100));
+        entries.add(createEntry("FUNCTION", "GetJobData", 100, 200 + sqlDuration));
+        entries.add(createEntry("SQL", "SQL#2", 200, 200 + sqlDuration));
+        long step2Start = 800 + sqlDuration;
+        entries.add(createEntry("STEP", "MAIN.STEP2", step2Start, step2Start + 200));
+        return entries;
+    }
+}
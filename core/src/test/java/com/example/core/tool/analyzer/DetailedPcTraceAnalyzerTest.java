@@ -0,0 +1,103 @@
+package com.example.core.tool.analyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the DetailedPcTraceAnalyzer class.
+ */
+class DetailedPcTraceAnalyzerTest {
+
+    /**
+     * One step with a function that calls a method, each running its own PeopleCode program,
+     * followed by a second step that is still running at the end of the trace
+     */
+    private static final String TRACE =
+            "10:00:00.000 Step:MAIN.STEP1 started\n" +
+            "10:00:00.100 Function:GetJobData started\n" +
+            "PeopleCode program JOB.EMPLID.FieldChange\n" +
+            "10:00:00.200 Method:JOB_PKG:JobData.get started\n" +
+            "PeopleCode program JOB_PKG.JobData.OnExecute\n" +
+            "10:00:00.300 Method:JOB_PKG:JobData.get ended\n" +
+            "10:00:00.400 Function:GetJobData ended\n" +
+            "PeopleCode program ORPHAN.PROGRAM\n" +
+            "10:00:01.000 Step:MAIN.STEP1 ended\n" +
+            "10:00:02.000 Step:MAIN.STEP2 started\n" +
+            "10:00:02.100 Function:GetJobData started\n" +
+            "10:00:02.200 Function:GetJobData ended\n";
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that parsing a file and feeding the same lines to a session yield the same entries and programs.
+     */
+    @Test
+    void testFileAndSessionAttachSamePrograms() throws IOException {
+        Path traceFile = Files.writeString(tempDir.resolve("detailed_pc.log"), TRACE);
+        DetailedPcTraceAnalyzer analyzer = new DetailedPcTraceAnalyzer();
+
+        List<TraceEntry> fromFile = analyzer.parseTrace(traceFile.toString());
+
+        List<TraceEntry> fromSession = new ArrayList<>();
+        TraceSession session = analyzer.openSession();
+        String[] lines = TRACE.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            session.processLine(lines[i], i + 1, fromSession::add);
+        }
+        fromSession.sort(Comparator.comparingInt(entry -> entry.lineNumber));
+
+        assertEquals(4, fromFile.size());
+        assertEquals(fromFile.size(), fromSession.size());
+        for (int i = 0; i < fromFile.size(); i++) {
+            TraceEntry expected = fromFile.get(i);
+            TraceEntry actual = fromSession.get(i);
+            assertEquals(expected.type, actual.type);
+            assertEquals(expected.identifier, actual.identifier);
+            assertEquals(expected.lineNumber, actual.lineNumber);
+            assertEquals(expected.startTime, actual.startTime);
+            assertEquals(expected.endTime, actual.endTime);
+            assertEquals(expected.metadata, actual.metadata);
+        }
+
+        // Each program goes to the innermost running callable; the one after the function ended goes nowhere
+        assertEquals("JOB.EMPLID.FieldChange", fromFile.get(1).metadata.get("peopleCodeProgram"));
+        assertEquals("JOB_PKG.JobData.OnExecute", fromFile.get(2).metadata.get("peopleCodeProgram"));
+        assertTrue(fromFile.stream().noneMatch(entry -> "ORPHAN.PROGRAM".equals(entry.metadata.get("peopleCodeProgram"))));
+    }
+
+    /**
+     * Test that finished entries are passed on while the trace is read, not held until its end.
+     */
+    @Test
+    void testSessionReleasesEntriesBeforeEnd() {
+        List<TraceEntry> merged = new ArrayList<>();
+        StreamingTraceEntryMerger merger = new StreamingTraceEntryMerger(
+                List.of(new DetailedPcTraceAnalyzer().openSession()), merged::add);
+
+        String[] lines = TRACE.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            merger.processLine(lines[i], i + 1);
+        }
+
+        // Everything inside STEP1 is final although callables with PeopleCode programs were seen
+        assertEquals(List.of("MAIN.STEP1", "GetJobData", "JOB_PKG:JobData.get"),
+                merged.stream().map(entry -> entry.identifier).toList());
+        assertEquals("JOB.EMPLID.FieldChange", merged.get(1).metadata.get("peopleCodeProgram"));
+        assertEquals("JOB_PKG.JobData.OnExecute", merged.get(2).metadata.get("peopleCodeProgram"));
+
+        merger.finish();
+        // The second function was passed on at the end, the still running STEP2 is dropped
+        assertEquals(4, merged.size());
+        assertNull(merged.get(3).metadata.get("peopleCodeProgram"));
+    }
+}
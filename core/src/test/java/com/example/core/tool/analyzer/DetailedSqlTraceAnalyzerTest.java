@@ -0,0 +1,88 @@
+package com.example.core.tool.analyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the DetailedSqlTraceAnalyzer class.
+ */
+class DetailedSqlTraceAnalyzerTest {
+
+    /**
+     * One trace with a detail line written before its SQL started and two executions of the same SQL
+     */
+    private static final String TRACE =
+            "SQL statement: SELECT 0 FROM DUAL -- SQL:SQL2\n" +
+            "Bind-Variables: B=0\n" +
+            "\n" +
+            "\n" +
+            "\n" +
+            "10:00:00.000 Step:MAIN.STEP1 started\n" +
+            "10:00:00.100 SQL:SQL1 started\n" +
+            "SQL statement: SELECT 1 FROM DUAL\n" +
+            "Bind-Variables: A=1\n" +
+            "10:00:00.200 SQL:SQL1 ended\n" +
+            "10:00:00.300 SQL:SQL2 started\n" +
+            "10:00:00.400 SQL:SQL2 ended\n" +
+            "10:00:00.500 SQL:SQL1 started\n" +
+            "SQL statement: SELECT 2\n" +
+            "FROM DUAL\n" +
+            "Bind-Variables: A=2\n" +
+            "10:00:00.900 SQL:SQL1 ended\n" +
+            "10:00:01.000 Step:MAIN.STEP1 ended\n";
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that parsing a file and feeding the same lines to a session yield the same entries and SQL details.
+     */
+    @Test
+    void testFileAndSessionAttachSameDetails() throws IOException {
+        Path traceFile = Files.writeString(tempDir.resolve("detailed_sql.log"), TRACE);
+        DetailedSqlTraceAnalyzer analyzer = new DetailedSqlTraceAnalyzer();
+
+        List<TraceEntry> fromFile = analyzer.parseTrace(traceFile.toString());
+
+        List<TraceEntry> fromSession = new ArrayList<>();
+        TraceSession session = analyzer.openSession();
+        String[] lines = TRACE.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            session.processLine(lines[i], i + 1, fromSession::add);
+        }
+        fromSession.sort(Comparator.comparingInt(entry -> entry.lineNumber));
+
+        assertEquals(4, fromFile.size());
+        assertEquals(fromFile.size(), fromSession.size());
+        for (int i = 0; i < fromFile.size(); i++) {
+            TraceEntry expected = fromFile.get(i);
+            TraceEntry actual = fromSession.get(i);
+            assertEquals(expected.type, actual.type);
+            assertEquals(expected.identifier, actual.identifier);
+            assertEquals(expected.lineNumber, actual.lineNumber);
+            assertEquals(expected.content, actual.content);
+            assertEquals(expected.metadata, actual.metadata);
+        }
+
+        // Details written before SQL2 started are not attached to it
+        TraceEntry sql2 = fromFile.get(2);
+        assertEquals("SQL2", sql2.identifier);
+        assertNull(sql2.content);
+        assertNull(sql2.metadata.get("bindVariables"));
+
+        // Each execution of SQL1 keeps its own details
+        assertEquals("SELECT 1 FROM DUAL", fromFile.get(1).content);
+        assertEquals("A=1", fromFile.get(1).metadata.get("bindVariables"));
+        assertEquals("SELECT 2\nFROM DUAL", fromFile.get(3).content);
+        assertEquals("A=2", fromFile.get(3).metadata.get("bindVariables"));
+    }
+}
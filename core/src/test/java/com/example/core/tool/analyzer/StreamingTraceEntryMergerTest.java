@@ -0,0 +1,61 @@
+package com.example.core.tool.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the StreamingTraceEntryMerger class.
+ */
+class StreamingTraceEntryMergerTest {
+
+    /**
+     * Test that entries are passed on in file order as soon as no session can change them, before the trace ends.
+     */
+    @Test
+    void testPassesOnEntriesOnceFinal() {
+        List<TraceEntry> merged = new ArrayList<>();
+        StreamingTraceEntryMerger merger = new StreamingTraceEntryMerger(
+                List.of(new StandardTraceAnalyzer().openSession(), new DetailedSqlTraceAnalyzer().openSession()),
+                merged::add);
+
+        String[] lines = {
+                "10:00:00.000 Step:MAIN.STEP1 started",
+                "10:00:00.100 SQL:SQL1 started",
+                "SQL statement: SELECT 1 FROM DUAL",
+                "10:00:00.200 SQL:SQL1 ended",
+                "10:00:01.000 Step:MAIN.STEP1 ended",
+                "",
+                "",
+                "10:00:02.000 Step:MAIN.STEP2 started",
+                "10:00:02.100 SQL:SQL2 started",
+                "SQL statement: SELECT 2 FROM DUAL",
+                "10:00:02.200 SQL:SQL2 ended",
+                "10:00:03.000 Step:MAIN.STEP2 ended",
+                "10:00:04.000 Step:MAIN.STEP3 started"
+        };
+        for (int i = 0; i < 4; i++) {
+            merger.processLine(lines[i], i + 1);
+        }
+        // The step that contains SQL1 is still open, so nothing after it may be passed on yet
+        assertTrue(merged.isEmpty());
+
+        for (int i = 4; i < lines.length; i++) {
+            merger.processLine(lines[i], i + 1);
+        }
+        // STEP1 and SQL1 can no longer change once STEP2 has started and SQL2 has its statement
+        assertTrue(merged.size() >= 2);
+        assertEquals("MAIN.STEP1", merged.get(0).identifier);
+        assertEquals("SQL1", merged.get(1).identifier);
+        assertEquals("SELECT 1 FROM DUAL", merged.get(1).content);
+
+        merger.finish();
+        // Both sessions report the same SQL executions, which are merged; the open STEP3 is dropped
+        assertEquals(List.of("MAIN.STEP1", "SQL1", "MAIN.STEP2", "SQL2"),
+                merged.stream().map(entry -> entry.identifier).toList());
+        assertEquals("SELECT 2 FROM DUAL", merged.get(3).content);
+    }
+}
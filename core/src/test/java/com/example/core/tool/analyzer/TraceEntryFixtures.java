@@ -0,0 +1,39 @@
+package com.example.core.tool.analyzer;
+
+/**
+ * Trace entries for tests, built the way the analyzers fill them in.
+ */
+public final class TraceEntryFixtures {
+
+    private TraceEntryFixtures() {
+    }
+
+    /**
+     * Create an entry that starts at 0 and runs for the given duration.
+     */
+    public static TraceEntry createEntry(String type, String identifier, long duration) {
+        return createEntry(type, identifier, 0, duration);
+    }
+
+    public static TraceEntry createEntry(String type, String identifier, long startTime, long endTime) {
+        TraceEntry entry = new TraceEntry();
+        entry.type = type;
+        entry.identifier = identifier;
+        entry.startTime = startTime;
+        entry.endTime = endTime;
+        return entry;
+    }
+
+    public static TraceEntry createEntry(String type, String identifier, long startTime, long endTime, int lineNumber) {
+        TraceEntry entry = createEntry(type, identifier, startTime, endTime);
+        entry.lineNumber = lineNumber;
+        return entry;
+    }
+
+    public static TraceEntry createEntry(String type, String identifier, long startTime, long endTime, int lineNumber,
+                                         String content) {
+        TraceEntry entry = createEntry(type, identifier, startTime, endTime, lineNumber);
+        entry.content = content;
+        return entry;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.core.tool.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the TraceEntryTable class.
+ */
+class TraceEntryTableTest {
+
+    /**
+     * Test that entries read back through the cursor match the entries that were added.
+     */
+    @Test
+    void testRoundTripThroughCursor() {
+        TraceEntry sqlEntry = new TraceEntry();
+        sqlEntry.type = "SQL";
+        sqlEntry.identifier = "SQL1";
+        sqlEntry.startTime = 100;
+        sqlEntry.endTime = 600;
+        sqlEntry.lineNumber = 2;
+        sqlEntry.content = "SELECT * FROM PS_JOB";
+        sqlEntry.metadata.put("bindVariables", "EMPLID=12345");
+
+        TraceEntry stepEntry = new TraceEntry();
+        stepEntry.type = "STEP";
+        stepEntry.identifier = "MAIN.STEP1";
+        stepEntry.startTime = 0;
+        stepEntry.endTime = 1000;
+        stepEntry.lineNumber = 1;
+
+        TraceStringPool pool = new TraceStringPool();
+        TraceEntryTable table = TraceEntryTable.of(List.of(stepEntry, sqlEntry), pool);
+
+        assertEquals(2, table.size());
+        assertTrue(table.offHeapBytes() > 0);
+
+        TraceEntryCursor cursor = table.cursor();
+        assertTrue(cursor.next());
+        assertEquals("STEP", cursor.type());
+        assertEquals("MAIN.STEP1", cursor.identifier());
+        assertEquals(1000, cursor.duration());
+        assertNull(cursor.content());
+        assertTrue(cursor.metadata().isEmpty());
+
+        assertTrue(cursor.next());
+        TraceEntry copy = cursor.copyTo(new TraceEntry());
+        assertEquals("SQL1", copy.identifier);
+        assertEquals(500, copy.duration());
+        assertEquals(2, copy.lineNumber);
+        assertEquals("SELECT * FROM PS_JOB", copy.content);
+        assertEquals("EMPLID=12345", copy.metadata.get("bindVariables"));
+
+        assertFalse(cursor.next());
+        assertEquals(pool.idOf("SQL1"), cursor.identifierId());
+    }
+
+    /**
+     * Test that tables larger than one chunk keep every record addressable.
+     */
+    @Test
+    void testMultipleChunks() {
+        int count = TraceEntryTable.CHUNK_RECORDS + 10;
+        List<TraceEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            TraceEntry entry = new TraceEntry();
+            entry.type = "STEP";
+            entry.identifier = "STEP" + (i % 100);
+            entry.startTime = i;
+            entry.endTime = i * 2L;
+            entry.lineNumber = i + 1;
+            entries.add(entry);
+        }
+
+        TraceEntryTable table = TraceEntryTable.of(entries, new TraceStringPool());
+
+        TraceEntryCursor cursor = table.cursor().moveTo(count - 1);
+        assertEquals(count - 1, cursor.startTime());
+        assertEquals(count, cursor.lineNumber());
+        assertEquals("STEP" + ((count - 1) % 100), cursor.identifier());
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.core.tool.analyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the TraceStreams class.
+ */
+class TraceStreamsTest {
+
+    /**
+     * Highly repetitive like a real trace, so it compresses by far more than the assumed ratio
+     */
+    private static final byte[] TRACE = "10:00:00.000 Step:MAIN.STEP1 started\n".repeat(2000).getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that plain, gzip and zip traces report the size of their decompressed text.
+     */
+    @Test
+    void testUncompressedSize() throws IOException {
+        Path plain = Files.write(tempDir.resolve("trace.log"), TRACE);
+        assertEquals(TRACE.length, TraceStreams.uncompressedSize(plain));
+
+        Path gzip = tempDir.resolve("trace.log.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            out.write(TRACE);
+        }
+        assertTrue(Files.size(gzip) * TraceStreams.ASSUMED_COMPRESSION_RATIO < TRACE.length);
+        assertEquals(TRACE.length, TraceStreams.uncompressedSize(gzip));
+
+        Path zip = tempDir.resolve("trace.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("logs/"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("logs/trace.log"));
+            out.write(TRACE);
+            out.closeEntry();
+        }
+        assertEquals(TRACE.length, TraceStreams.uncompressedSize(zip));
+    }
+}
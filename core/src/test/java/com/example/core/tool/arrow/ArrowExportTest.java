@@ -0,0 +1,156 @@
+package com.example.core.tool.arrow;
+
+import com.example.core.tool.TopKRegressions;
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.analyzer.TraceEntryTable;
+import com.example.core.tool.analyzer.TraceStringPool;
+import com.example.core.tool.report.ComparisonRow;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.DurationVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the ArrowTraceEntryWriter and ArrowComparisonSink classes.
+ */
+class ArrowExportTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that entries are written in batches with typed columns and a dictionary that grows between batches.
+     */
+    @Test
+    void testTraceEntriesRoundTrip() throws IOException {
+        List<TraceEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // 新的類型在後面的批次才出現，字典需要在批次之間擴充
+            entries.add(createEntry(i < 7 ? "STEP" : "SQL", "ID," + i, 1000L * i, 1000L * i + 10 * i, i + 1,
+                    i % 2 == 0 ? "SELECT " + i : null));
+        }
+
+        Path outputPath = tempDir.resolve("entries.arrows");
+        try (ArrowTraceEntryWriter writer = ArrowTraceEntryWriter.create(outputPath, 3)) {
+            for (TraceEntry entry : entries) {
+                writer.write(entry);
+            }
+            assertEquals(10, writer.getRowCount());
+        }
+
+        int batches = 0;
+        int row = 0;
+        try (BufferAllocator allocator = new RootAllocator();
+             InputStream in = Files.newInputStream(outputPath);
+             ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertEquals("Time(MILLISECOND, 32)", root.getSchema().findField("start_time").getType().toString());
+            while (reader.loadNextBatch()) {
+                batches++;
+                Dictionary types = reader.getDictionaryVectors().get(0L);
+                IntVector typeIndexes = (IntVector) root.getVector("type");
+                for (int i = 0; i < root.getRowCount(); i++, row++) {
+                    TraceEntry expected = entries.get(row);
+                    assertEquals(expected.lineNumber, ((IntVector) root.getVector("line_number")).get(i));
+                    assertEquals(expected.type, ((VarCharVector) types.getVector()).getObject(typeIndexes.get(i)).toString());
+                    assertEquals(expected.identifier, ((VarCharVector) root.getVector("identifier")).getObject(i).toString());
+                    assertEquals((int) expected.startTime, ((TimeMilliVector) root.getVector("start_time")).get(i));
+                    assertEquals(expected.duration(), DurationVector.get(((DurationVector) root.getVector("duration")).getDataBuffer(), i));
+                    FieldVector content = root.getVector("content");
+                    assertEquals(expected.content == null, content.isNull(i));
+                }
+            }
+        }
+        assertEquals(4, batches);
+        assertEquals(10, row);
+    }
+
+    /**
+     * Test that exporting an off-heap table produces the same rows as the entries it was built from.
+     */
+    @Test
+    void testTableExport() throws IOException {
+        List<TraceEntry> entries = List.of(
+                createEntry("STEP", "MAIN.Step01", 0, 500, 1, null),
+                createEntry("SQL", "SQL#1", 100, 400, 2, "SELECT 1"));
+        Path outputPath = tempDir.resolve("table.arrows");
+        assertEquals(2, ArrowTraceEntryWriter.export(TraceEntryTable.of(entries, new TraceStringPool()), outputPath));
+
+        try (BufferAllocator allocator = new RootAllocator();
+             InputStream in = Files.newInputStream(outputPath);
+             ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+            assertTrue(reader.loadNextBatch());
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertEquals(2, root.getRowCount());
+            assertEquals("SQL#1", ((VarCharVector) root.getVector("identifier")).getObject(1).toString());
+            assertEquals("SELECT 1", ((VarCharVector) root.getVector("content")).getObject(1).toString());
+            assertEquals(300, DurationVector.get(((DurationVector) root.getVector("duration")).getDataBuffer(), 1));
+            assertFalse(reader.loadNextBatch());
+        }
+    }
+
+    /**
+     * Test that comparison rows keep nulls for absent values and record the environment names.
+     */
+    @Test
+    void testComparisonRows() throws IOException {
+        Path outputPath = tempDir.resolve("result.arrows");
+        try (ArrowComparisonSink sink = new ArrowComparisonSink(outputPath, 2)) {
+            sink.begin("DEV", "TEST");
+            sink.accept(ComparisonRow.matched("SQL", "SQL#1", 100, 400, "ALERT", "SQL Text differs;", List.of()));
+            sink.accept(ComparisonRow.matched("STEP", "MAIN.Step01", 100, 110, "", "", List.of()));
+            sink.accept(ComparisonRow.unique("SQL", "SQL#2", 250));
+            sink.end(new TopKRegressions());
+            assertEquals(3, sink.getRowCount());
+        }
+
+        List<String> flags = new ArrayList<>();
+        List<String> statuses = new ArrayList<>();
+        try (BufferAllocator allocator = new RootAllocator();
+             InputStream in = Files.newInputStream(outputPath);
+             ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertEquals("DEV", root.getSchema().getCustomMetadata().get("env1"));
+            assertEquals("TEST", root.getSchema().getCustomMetadata().get("env2"));
+            while (reader.loadNextBatch()) {
+                VarCharVector statusValues = (VarCharVector) reader.getDictionaryVectors().get(0L).getVector();
+                VarCharVector flagValues = (VarCharVector) reader.getDictionaryVectors().get(2L).getVector();
+                IntVector status = (IntVector) root.getVector("status");
+                IntVector flag = (IntVector) root.getVector("flag");
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    statuses.add(statusValues.getObject(status.get(i)).toString());
+                    flags.add(flag.isNull(i) ? null : flagValues.getObject(flag.get(i)).toString());
+                    if (statuses.size() == 1) {
+                        assertEquals(300.0, ((Float8Vector) root.getVector("diff_percent")).get(i), 0.001);
+                    }
+                    if (statuses.size() == 3) {
+                        assertTrue(root.getVector("env1_duration").isNull(i));
+                        assertTrue(root.getVector("diff").isNull(i));
+                    }
+                }
+            }
+        }
+        assertEquals(List.of("MATCHED", "MATCHED", "UNIQUE"), statuses);
+        assertEquals(Arrays.asList("ALERT", null, "UNIQUE"), flags);
+    }
+}
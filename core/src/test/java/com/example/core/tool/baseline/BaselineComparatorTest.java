@@ -0,0 +1,65 @@
+package com.example.core.tool.baseline;
+
+import com.example.core.tool.analyzer.TraceEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
+import static com.example.core.tool.baseline.BaselineProfileStoreTest.createBaselineEntries;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the BaselineComparator class.
+ */
+class BaselineComparatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that a new trace is joined against the stored baseline per identifier.
+     */
+    @Test
+    void testCompareToBaseline() throws IOException {
+        BaselineProfileStore store = new BaselineProfileStore(tempDir);
+        store.save("AE_PROGRAM", createBaselineEntries());
+        BaselineProfile baseline = store.open("AE_PROGRAM");
+
+        List<TraceEntry> current = new ArrayList<>();
+        current.add(createEntry("STEP", "MAIN.STEP1", 0, 1500));
+        current.add(createEntry("SQL", "SQL#1", 100, 1000));
+        current.add(createEntry("SQL", "SQL#1", 1000, 1300));
+        current.add(createEntry("SQL", "NEW_SQL", 1300, 1400));
+
+        Path outputPath = tempDir.resolve("baseline_result.csv");
+        List<BaselineComparator.BaselineRow> rows = BaselineComparator.compareToBaseline(
+                baseline, current, "TEST", outputPath.toString());
+
+        assertEquals(4, rows.size());
+        assertEquals("MAIN.STEP1", rows.get(0).getIdentifier());
+        assertEquals(500, rows.get(0).diff());
+        assertEquals("ALERT", rows.get(0).getFlag());
+        assertEquals("SQL#1", rows.get(1).getIdentifier());
+        assertEquals(400, rows.get(1).getBaselineMean());
+        assertEquals(600, rows.get(1).getCurrentMean());
+        assertEquals("ALERT", rows.get(1).getFlag());
+        assertEquals("UNIQUE", rows.get(2).getFlag());
+        assertEquals("MISSING", rows.get(3).getFlag());
+        assertEquals("OLD_FUNC", rows.get(3).getIdentifier());
+
+        List<String> lines = Files.readAllLines(outputPath);
+        assertEquals(5, lines.size());
+        assertEquals("Type,Identifier,Baseline Count,TEST Count,Baseline Mean(ms),TEST Mean(ms),Diff(ms),Diff(%),"
+                + "Baseline P95(ms),TEST Max(ms),Self Diff(ms),Flag", lines.get(0));
+        assertEquals("STEP,MAIN.STEP1,1,1,1000,1500,500,50.00,1000,1500,0,ALERT", lines.get(1));
+        assertEquals("SQL,SQL#1,2,2,400,600,200,50.00,500,900,200,ALERT", lines.get(2));
+        assertEquals("SQL,NEW_SQL,N/A,1,N/A,100,N/A,N/A,N/A,N/A,N/A,UNIQUE", lines.get(3));
+        assertEquals("FUNCTION,OLD_FUNC,1,N/A,50,N/A,N/A,N/A,N/A,N/A,N/A,MISSING", lines.get(4));
+    }
+}
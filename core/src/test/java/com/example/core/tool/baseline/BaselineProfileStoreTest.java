@@ -0,0 +1,103 @@
+package com.example.core.tool.baseline;
+
+import com.example.core.tool.analyzer.TraceEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the BaselineProfileStore and BaselineProfile classes.
+ */
+class BaselineProfileStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that a saved baseline is read back from the mapped file with the same aggregates.
+     */
+    @Test
+    void testSaveAndOpen() throws IOException {
+        BaselineProfileStore store = new BaselineProfileStore(tempDir.resolve("baselines"));
+        assertFalse(store.exists("AE_PROGRAM"));
+        assertTrue(store.list().isEmpty());
+
+        Path path = store.save("AE_PROGRAM", createBaselineEntries());
+        assertTrue(Files.exists(path));
+        assertTrue(store.exists("AE_PROGRAM"));
+        assertEquals(List.of("AE_PROGRAM"), store.list());
+
+        BaselineProfile profile = store.open("AE_PROGRAM");
+        assertEquals("AE_PROGRAM", profile.getProgramName());
+        assertEquals(4, profile.getEntryCount());
+        assertEquals(3, profile.size());
+        assertEquals(-1, profile.indexOf("UNKNOWN"));
+
+        int step = profile.indexOf("MAIN.STEP1");
+        assertEquals("STEP", profile.type(step));
+        assertEquals(1, profile.count(step));
+        assertEquals(1000, profile.total(step));
+        assertEquals(200, profile.selfTotal(step));
+
+        int sql = profile.indexOf("SQL#1");
+        assertEquals("SQL", profile.type(sql));
+        assertEquals(2, profile.count(sql));
+        assertEquals(800, profile.total(sql));
+        assertEquals(300, profile.min(sql));
+        assertEquals(500, profile.max(sql));
+        assertEquals(400.0, profile.mean(sql), 0.001);
+        assertEquals(800, profile.selfTotal(sql));
+        // 300ms and 500ms both fall in the [256, 512) bucket
+        assertEquals(2, profile.histogram(sql, 9));
+        assertEquals(500, profile.percentile(sql, 0.95));
+    }
+
+    /**
+     * Test that saving again replaces the existing baseline.
+     */
+    @Test
+    void testSaveReplacesExistingBaseline() throws IOException {
+        BaselineProfileStore store = new BaselineProfileStore(tempDir);
+        store.save("AE_PROGRAM", createBaselineEntries());
+
+        List<TraceEntry> entries = new ArrayList<>();
+        entries.add(createEntry("STEP", "OTHER.STEP", 0, 50));
+        store.save("AE_PROGRAM", entries);
+
+        BaselineProfile profile = store.open("AE_PROGRAM");
+        assertEquals(1, profile.size());
+        assertEquals(0, profile.indexOf("OTHER.STEP"));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    /**
+     * Test that files which are not baselines and invalid program names are rejected.
+     */
+    @Test
+    void testInvalidInput() throws IOException {
+        Path notBaseline = tempDir.resolve("NOT_BASELINE" + BaselineProfileStore.EXTENSION);
+        Files.writeString(notBaseline, "this is not a baseline profile at all");
+        assertThrows(IllegalArgumentException.class, () -> BaselineProfile.open(notBaseline));
+        assertThrows(IllegalArgumentException.class, () -> new BaselineProfileStore(tempDir).exists("../AE_PROGRAM"));
+    }
+
+    static List<TraceEntry> createBaselineEntries() {
+        List<TraceEntry> entries = new ArrayList<>();
+        entries.add(createEntry("STEP", "MAIN.STEP1", 0, 1000));
+        entries.add(createEntry("SQL", "SQL#1", 100, 600));
+        entries.add(createEntry("SQL", "SQL#1", 600, 900));
+        entries.add(createEntry("FUNCTION", "OLD_FUNC", 2000, 2050));
+        return entries;
+    }
+}
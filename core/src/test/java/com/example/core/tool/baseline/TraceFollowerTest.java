@@ -0,0 +1,110 @@
+package com.example.core.tool.baseline;
+
+import com.example.core.tool.analyzer.TraceAnalyzerFactory;
+import com.example.core.tool.analyzer.TraceEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the TraceFollower class.
+ */
+class TraceFollowerTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that appended bytes are parsed incrementally and slow entries raise alerts while they run and when they end.
+     */
+    @Test
+    void testFollowGrowingTrace() throws IOException {
+        List<TraceEntry> baselineEntries = new ArrayList<>();
+        baselineEntries.add(createEntry("STEP", "MAIN.STEP1", 0, 1000));
+        baselineEntries.add(createEntry("SQL", "SQL#1", 100, 200));
+        baselineEntries.add(createEntry("SQL", "SQL#1", 200, 310));
+        baselineEntries.add(createEntry("SQL", "SQL#1", 310, 430));
+        BaselineProfileStore store = new BaselineProfileStore(tempDir.resolve("baselines"));
+        store.save("AE_PROGRAM", baselineEntries);
+
+        Path traceFile = tempDir.resolve("running_trace.log");
+        List<FollowAlert> alerts = new ArrayList<>();
+        // Both analyzers report STEP and SQL entries, which must only be compared once
+        TraceFollower follower = new TraceFollower(traceFile,
+                TraceAnalyzerFactory.createAnalyzersForParams("-TRACE 3 -TOOLSTRACEPC 4044 -TOOLSTRACESQL 31"),
+                store.open("AE_PROGRAM"), alerts::add);
+
+        assertEquals(0, follower.poll());
+
+        // The last line is cut in the middle
+        append(traceFile, "10:00:00.000 Step:MAIN.STEP1 started\n10:00:00.100 SQL:SQL#1 started\n10:00:00.2");
+        assertEquals(0, follower.poll());
+
+        append(traceFile, "00 SQL:SQL#1 ended\n");
+        assertEquals(1, follower.poll());
+        assertTrue(alerts.isEmpty());
+
+        append(traceFile, "10:00:00.300 SQL:SQL#1 started\n10:00:01.500 SQL:SQL#1 ended\n");
+        assertEquals(1, follower.poll());
+        assertEquals(2, alerts.size());
+        assertEquals("SQL#1", alerts.get(0).getIdentifier());
+        assertEquals(1200, alerts.get(0).getDuration());
+        assertEquals(210, alerts.get(0).getExpected());
+        assertFalse(alerts.get(0).isRunning());
+        assertEquals("MAIN.STEP1", alerts.get(1).getIdentifier());
+        assertEquals(1500, alerts.get(1).getDuration());
+        assertEquals(1100, alerts.get(1).getExpected());
+        assertTrue(alerts.get(1).isRunning());
+
+        // A running entry is only reported once
+        append(traceFile, "10:00:01.600 Function:UNKNOWN_FUNC started\n");
+        assertEquals(0, follower.poll());
+        assertEquals(2, alerts.size());
+
+        append(traceFile, "10:00:01.700 Function:UNKNOWN_FUNC ended\r\n10:00:02.000 Step:MAIN.STEP1 ended\r\n");
+        assertEquals(2, follower.poll());
+        assertEquals(3, alerts.size());
+        assertEquals("MAIN.STEP1", alerts.get(2).getIdentifier());
+        assertEquals(2000, alerts.get(2).getDuration());
+        assertEquals(1, alerts.get(2).getLineNumber());
+        assertFalse(alerts.get(2).isRunning());
+
+        assertEquals(4, follower.getCompletedCount());
+        assertEquals(3, follower.getAlertCount());
+    }
+
+    /**
+     * Test that a trace file that was recreated is read again from the start.
+     */
+    @Test
+    void testTruncatedTraceIsReadFromStart() throws IOException {
+        BaselineProfileStore store = new BaselineProfileStore(tempDir);
+        store.save("AE_PROGRAM", List.of(createEntry("STEP", "MAIN.STEP1", 0, 1000)));
+
+        Path traceFile = tempDir.resolve("running_trace.log");
+        TraceFollower follower = new TraceFollower(traceFile,
+                TraceAnalyzerFactory.createAnalyzersForParams("-TRACE 3"), store.open("AE_PROGRAM"), alert -> { });
+
+        append(traceFile, "10:00:00.000 Step:MAIN.STEP1 started\n10:00:00.500 Step:MAIN.STEP1 ended\n"
+                + "10:00:01.000 Step:MAIN.STEP2 started\n");
+        assertEquals(1, follower.poll());
+
+        Files.writeString(traceFile, "11:00:00.000 Step:MAIN.STEP1 started\n11:00:00.400 Step:MAIN.STEP1 ended\n");
+        assertEquals(1, follower.poll());
+        assertEquals(2, follower.getCompletedCount());
+    }
+
+    private static void append(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.core.tool.batch;
+
+import com.example.core.tool.report.ComparisonSinks;
+import com.example.core.tool.rule.RuleSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the BatchManifest and BatchComparator classes.
+ */
+class BatchComparatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that trace files in two directories are paired by program name and their tool is detected.
+     */
+    @Test
+    void testMatchDirectoriesByProgramName() throws IOException {
+        Path env1Dir = Files.createDirectories(tempDir.resolve("previous"));
+        Path env2Dir = Files.createDirectories(tempDir.resolve("current"));
+        Files.writeString(env1Dir.resolve("PAYROLL.log"), sqrTrace(1.25));
+        Files.write(env2Dir.resolve("payroll.log.gz"), gzip(sqrTrace(2.5)));
+        Files.writeString(env1Dir.resolve("BILLING.trc"), "PSAPPSRV.1 (1) 1-1 10.00.00 0.000000 Cur#1.1.DB SQL\n");
+        Files.writeString(env2Dir.resolve("BILLING.trc"), "PSAPPSRV.1 (1) 1-1 10.00.00 0.000000 Cur#1.1.DB SQL\n");
+        Files.writeString(env1Dir.resolve("OLD_ONLY.log"), "");
+        Files.writeString(env2Dir.resolve("NEW_ONLY.log"), "");
+
+        BatchManifest manifest = BatchManifest.match(env1Dir, env2Dir);
+
+        assertEquals(2, manifest.getPairs().size());
+        BatchPair billing = manifest.getPairs().get(0);
+        assertEquals("BILLING", billing.getProgram());
+        assertEquals(BatchPair.Tool.AE, billing.getTool());
+        BatchPair payroll = manifest.getPairs().get(1);
+        assertEquals("PAYROLL", payroll.getProgram());
+        assertEquals(BatchPair.Tool.SQR, payroll.getTool());
+        assertEquals(env2Dir.resolve("payroll.log.gz"), payroll.getEnv2File());
+        assertEquals(List.of("OLD_ONLY (只有第一個環境)", "NEW_ONLY (只有第二個環境)"), manifest.getUnmatched());
+    }
+
+    /**
+     * Test that a manifest resolves relative paths, skips comments and records programs missing a trace file.
+     */
+    @Test
+    void testReadManifest() throws IOException {
+        Files.writeString(tempDir.resolve("a1.log"), sqrTrace(1));
+        Files.writeString(tempDir.resolve("a2.log"), sqrTrace(2));
+        Path manifestFile = tempDir.resolve("nightly.csv");
+        Files.writeString(manifestFile, "# program,tool,previous,current\n"
+                + "\n"
+                + "PROG_A,,a1.log,a2.log,-S -TIMING\n"
+                + "PROG_B,AE,b1.log,a2.log\n");
+
+        BatchManifest manifest = BatchManifest.read(manifestFile);
+
+        assertEquals(1, manifest.getPairs().size());
+        BatchPair pair = manifest.getPairs().get(0);
+        assertEquals(BatchPair.Tool.SQR, pair.getTool());
+        assertEquals(tempDir.resolve("a1.log").toAbsolutePath(), pair.getEnv1File());
+        assertEquals("-S -TIMING", pair.getTraceParams());
+        assertEquals(List.of("PROG_B (只有第二個環境)"), manifest.getUnmatched());
+
+        Files.writeString(manifestFile, "PROG_A,COBOL,a1.log,a2.log\n");
+        assertThrows(IllegalArgumentException.class, () -> BatchManifest.read(manifestFile));
+        Files.writeString(manifestFile, "PROG_A,SQR,a1.log,a2.log\nprog_a,SQR,a1.log,a2.log\n");
+        assertThrows(IllegalArgumentException.class, () -> BatchManifest.read(manifestFile));
+    }
+
+    /**
+     * Test that a batch starts the largest programs first, isolates failures and writes one consolidated summary.
+     */
+    @Test
+    void testRunWritesConsolidatedSummary() throws Exception {
+        List<BatchPair> pairs = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            // 程序越後面跟蹤文件越大
+            Path env1 = tempDir.resolve("p" + i + "_env1.log");
+            Path env2 = tempDir.resolve("p" + i + "_env2.log");
+            Files.writeString(env1, sqrTrace(1.25).repeat(i));
+            Files.writeString(env2, sqrTrace(i == 2 ? 1.25 : 2.5).repeat(i));
+            pairs.add(new BatchPair("P" + i, BatchPair.Tool.SQR, env1, env2, null, Files.size(env1), Files.size(env2)));
+        }
+        pairs.add(new BatchPair("BROKEN", BatchPair.Tool.SQR, tempDir.resolve("missing.log"), tempDir.resolve("missing.log"),
+                null, 0, 0));
+        BatchManifest manifest = new BatchManifest(pairs, List.of("ORPHAN (只有第一個環境)"));
+
+        List<String> finishedOrder = Collections.synchronizedList(new ArrayList<>());
+        MemoryBudget budget = new MemoryBudget(64L << 20);
+        BatchComparator comparator = new BatchComparator("PREV", "CURR", RuleSet.defaults(),
+                EnumSet.of(ComparisonSinks.Format.HTML), 1, budget);
+        Path outputDir = tempDir.resolve("out");
+        List<BatchResult> results = comparator.run(manifest, outputDir, result -> finishedOrder.add(result.program()));
+
+        // 只有一個線程時按跟蹤文件的大小由大到小運行
+        assertEquals(List.of("P3", "P2", "P1", "BROKEN"), finishedOrder);
+        assertEquals(4, results.size());
+        assertEquals(64, budget.getAvailableMb());
+        BatchResult p1 = results.get(0);
+        assertEquals(BatchResult.Status.SUCCEEDED, p1.status());
+        assertEquals(2, p1.matched());
+        assertEquals(1, p1.flagged());
+        assertEquals("SQL#1", p1.worstIdentifier());
+        assertEquals(1250, p1.worstDiff());
+        assertEquals("P1/sqr_trace_comparison_result.csv", p1.report());
+        assertTrue(Files.exists(outputDir.resolve(p1.report())));
+        assertTrue(Files.exists(outputDir.resolve("P1/sqr_trace_comparison_result_report.html")));
+        assertEquals(0, results.get(1).flagged());
+        assertEquals(BatchResult.Status.FAILED, results.get(3).status());
+        assertNotNull(results.get(3).error());
+
+        List<String> csv = Files.readAllLines(outputDir.resolve("batch_summary.csv"));
+        assertEquals(5, csv.size());
+        assertTrue(csv.get(1).startsWith("BROKEN,SQR,FAILED,"), csv.get(1));
+        assertTrue(csv.get(2).startsWith("P3,SQR,SUCCEEDED,"), csv.get(2));
+        assertTrue(csv.get(4).startsWith("P2,SQR,SUCCEEDED,"), csv.get(4));
+        String summary = Files.readString(outputDir.resolve("batch_summary.md"));
+        assertTrue(summary.contains("- Programs compared: 4 (3 succeeded, 1 failed, 0 cancelled)"), summary);
+        assertTrue(summary.contains("- ORPHAN (只有第一個環境)"), summary);
+    }
+
+    /**
+     * Test that the heap estimate scales with the uncompressed trace size.
+     */
+    @Test
+    void testEstimatedHeapBytes() {
+        BatchPair plain = new BatchPair("A", BatchPair.Tool.AE, Path.of("a.log"), Path.of("b.log"), null, 100, 200);
+        BatchPair compressed = new BatchPair("A", BatchPair.Tool.AE, Path.of("a.log.gz"), Path.of("b.log"), null, 100, 200);
+        assertEquals(300, plain.getTraceBytes());
+        assertEquals(1000, compressed.getTraceBytes());
+        assertEquals(900, BatchComparator.estimatedHeapBytes(plain));
+        assertThrows(IllegalArgumentException.class, () -> new BatchComparator("PREV", "CURR", RuleSet.defaults(),
+                EnumSet.of(ComparisonSinks.Format.CSV), 0, 64L << 20));
+    }
+
+    private static String sqrTrace(double sqlSeconds) {
+        return "SQR开始执行: 2023-05-15 14:25:30\n"
+                + "程序: TEST.SQR\n"
+                + "\n"
+                + "执行SQL (14:25:31):\n"
+                + "SELECT * FROM DUAL\n"
+                + "执行时间: " + sqlSeconds + "秒\n"
+                + "\n"
+                + "SQR结束执行: 2023-05-15 14:32:45\n";
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.core.tool.batch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the MemoryBudget class.
+ */
+class MemoryBudgetTest {
+
+    /**
+     * Test that a lease waits until another lease of the same budget is returned, and is returned only once.
+     */
+    @Test
+    void testLeasesShareTheBudget() throws Exception {
+        MemoryBudget budget = new MemoryBudget(64L << 20);
+        MemoryBudget.Lease first = budget.acquire(40L << 20);
+        assertEquals(40, first.getMegabytes());
+        assertEquals(24, budget.getAvailableMb());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread second = new Thread(() -> {
+            try (MemoryBudget.Lease lease = budget.acquire(40L << 20)) {
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        first.close();
+        first.close();
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        second.join();
+        assertEquals(64, budget.getAvailableMb());
+    }
+
+    /**
+     * Test that a request larger than the whole budget takes the whole budget instead of waiting forever.
+     */
+    @Test
+    void testOversizedRequestTakesWholeBudget() throws Exception {
+        MemoryBudget budget = MemoryBudget.ofMegabytes(8);
+        try (MemoryBudget.Lease lease = budget.acquire(1L << 40)) {
+            assertEquals(8, lease.getMegabytes());
+            assertEquals(0, budget.getAvailableMb());
+        }
+        try (MemoryBudget.Lease lease = budget.acquire(0)) {
+            assertEquals(1, lease.getMegabytes());
+        }
+        assertEquals(8, budget.getAvailableMb());
+        assertThrows(IllegalArgumentException.class, () -> new MemoryBudget(1000));
+    }
+}
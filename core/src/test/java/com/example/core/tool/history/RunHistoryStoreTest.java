@@ -0,0 +1,115 @@
+package com.example.core.tool.history;
+
+import com.example.core.tool.analyzer.TraceEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the RunHistoryStore class.
+ */
+class RunHistoryStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that each run is aggregated per identifier and read back as an ordered series.
+     */
+    @Test
+    void testRecordAndReadSeries() throws IOException {
+        try (RunHistoryStore store = RunHistoryStore.open(tempDir)) {
+            assertEquals(0, store.recordRun("AE_PROGRAM", "TEST", 1000, List.of(
+                    createEntry("SQL", "SQL#1", 100), createEntry("SQL", "SQL#1", 300), createEntry("STEP", "MAIN.STEP1", 500))));
+            assertEquals(1, store.recordRun("AE_PROGRAM", "TEST", 2000, List.of(createEntry("SQL", "SQL#1", 250))));
+            assertEquals(2, store.recordRun("AE_PROGRAM", "PROD", 3000, List.of(createEntry("SQL", "SQL#1", 400))));
+
+            assertEquals(3, store.runCount());
+            assertEquals(List.of("SQL#1", "MAIN.STEP1"), store.identifiers());
+            assertEquals("SQL", store.typeOf("SQL#1"));
+            assertTrue(store.series("UNKNOWN").isEmpty());
+
+            List<HistoryPoint> series = store.series("SQL#1");
+            assertEquals(3, series.size());
+            assertEquals(1000, series.get(0).getRunTime());
+            assertEquals(2, series.get(0).getCount());
+            assertEquals(400, series.get(0).getTotal());
+            assertEquals(300, series.get(0).getMax());
+            assertEquals(200.0, series.get(0).getMean(), 0.001);
+            assertEquals(250, series.get(1).getTotal());
+            assertEquals("PROD", series.get(2).getEnvironment());
+
+            List<HistoryPoint> latest = store.series("SQL#1", 2);
+            assertEquals(2, latest.size());
+            assertEquals(2000, latest.get(0).getRunTime());
+
+            assertEquals(1, store.series("MAIN.STEP1").size());
+        }
+
+        // 重新開啟後從索引讀取
+        try (RunHistoryStore store = RunHistoryStore.open(tempDir)) {
+            assertEquals(3, store.runCount());
+            assertEquals(3, store.series("SQL#1").size());
+            store.recordRun("AE_PROGRAM", "TEST", 4000, List.of(createEntry("SQL", "SQL#1", 50)));
+            assertEquals(4, store.series("SQL#1").size());
+            assertEquals(50, store.series("SQL#1").get(3).getTotal());
+        }
+    }
+
+    /**
+     * Test that an interrupted batch is discarded and the index is rebuilt from the records.
+     */
+    @Test
+    void testRecoverFromInterruptedWrite() throws IOException {
+        try (RunHistoryStore store = RunHistoryStore.open(tempDir)) {
+            store.recordRun("AE_PROGRAM", "TEST", 1000, List.of(createEntry("SQL", "SQL#1", 100)));
+            store.recordRun("AE_PROGRAM", "TEST", 2000, List.of(createEntry("SQL", "SQL#1", 200)));
+        }
+
+        // 模擬寫入記錄後、寫入運行資訊前中斷：記錄文件尾部有不屬於任何運行的資料，索引也遺失
+        Files.write(tempDir.resolve("records.dat"), new byte[RunHistoryStore.RECORD_SIZE + 7], StandardOpenOption.APPEND);
+        Files.write(tempDir.resolve("runs.dat"), new byte[5], StandardOpenOption.APPEND);
+        Files.delete(tempDir.resolve("heads.idx"));
+
+        try (RunHistoryStore store = RunHistoryStore.open(tempDir)) {
+            assertEquals(2, store.runCount());
+            assertEquals(2 * RunHistoryStore.RECORD_SIZE, Files.size(tempDir.resolve("records.dat")));
+            List<HistoryPoint> series = store.series("SQL#1");
+            assertEquals(2, series.size());
+            assertEquals(200, series.get(1).getTotal());
+
+            store.recordRun("AE_PROGRAM", "TEST", 3000, List.of(createEntry("SQL", "SQL#1", 300)));
+            assertEquals(3, store.series("SQL#1").size());
+        }
+    }
+
+    /**
+     * Test that a directory can only be opened by one store at a time.
+     */
+    @Test
+    void testSecondWriterIsRejected() throws IOException {
+        try (RunHistoryStore store = RunHistoryStore.open(tempDir)) {
+            assertThrows(IOException.class, () -> RunHistoryStore.open(tempDir));
+            store.recordRun("AE_PROGRAM", "TEST", 1000, List.of(createEntry("SQL", "SQL#1", 100)));
+        }
+
+        try (RunHistoryStore store = RunHistoryStore.open(tempDir)) {
+            assertEquals(1, store.runCount());
+        }
+    }
+
+    static List<TraceEntry> singleEntry(String type, String identifier, long duration) {
+        List<TraceEntry> entries = new ArrayList<>();
+        entries.add(createEntry(type, identifier, duration));
+        return entries;
+    }
+}
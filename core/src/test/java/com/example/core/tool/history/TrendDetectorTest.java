@@ -0,0 +1,102 @@
+package com.example.core.tool.history;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.example.core.tool.history.RunHistoryStoreTest.singleEntry;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the TrendDetector class.
+ */
+class TrendDetectorTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that a slow creep of 5% per run is flagged while a noisy but stable series is not.
+     */
+    @Test
+    void testDetectCreep() throws IOException {
+        long[] stable = {100, 103, 98, 101, 99, 102, 100, 97, 101, 100};
+        try (RunHistoryStore store = RunHistoryStore.open(tempDir.resolve("history"))) {
+            double creeping = 100;
+            for (int run = 0; run < 10; run++) {
+                long runTime = run * 7L * 24 * 60 * 60 * 1000;
+                store.recordRun("AE_PROGRAM", "TEST", runTime, singleEntry("SQL", "SLOW_SQL", Math.round(creeping)));
+                store.recordRun("AE_PROGRAM", "TEST", runTime, singleEntry("SQL", "STABLE_SQL", stable[run]));
+                store.recordRun("AE_PROGRAM", "PROD", runTime, singleEntry("SQL", "PROD_SQL", 100));
+                creeping *= 1.05;
+            }
+
+            List<TrendDetector.Trend> trends = TrendDetector.detect(store, "AE_PROGRAM", "TEST");
+            assertEquals(2, trends.size());
+
+            TrendDetector.Trend slow = trends.get(0);
+            assertEquals("SLOW_SQL", slow.getIdentifier());
+            assertEquals("SQL", slow.getType());
+            assertEquals(10, slow.getPoints());
+            assertEquals(110.0, slow.getReference(), 0.001);
+            assertTrue(slow.isCreeping());
+            assertTrue(slow.getChangePercent() > 30);
+
+            TrendDetector.Trend steady = trends.get(1);
+            assertEquals("STABLE_SQL", steady.getIdentifier());
+            assertFalse(steady.isCreeping());
+
+            Path outputPath = tempDir.resolve("trend_result.csv");
+            TrendDetector.writeReport(trends, outputPath.toString());
+            List<String> lines = Files.readAllLines(outputPath);
+            assertEquals(3, lines.size());
+            assertEquals("Type,Identifier,Runs,Reference(ms),EWMA(ms),Change(%),Robust Z,Flag", lines.get(0));
+            assertTrue(lines.get(1).startsWith("SQL,SLOW_SQL,10,110.00,"));
+            assertTrue(lines.get(1).endsWith(",CREEP"));
+            assertTrue(lines.get(2).endsWith(","));
+        }
+    }
+
+    /**
+     * Test that programs sharing an identifier are analyzed as separate series.
+     */
+    @Test
+    void testProgramsSharingAnIdentifier() throws IOException {
+        try (RunHistoryStore store = RunHistoryStore.open(tempDir)) {
+            // 兩個程序各自穩定，但後運行的程序較慢；混在一起的序列看起來會逐漸變慢
+            for (int run = 0; run < 10; run++) {
+                store.recordRun("AE_FAST", "TEST", run, singleEntry("SQL", "SHARED_SQL", 100));
+            }
+            for (int run = 10; run < 20; run++) {
+                store.recordRun("AE_SLOW", "TEST", run, singleEntry("SQL", "SHARED_SQL", 200));
+            }
+
+            List<TrendDetector.Trend> fast = TrendDetector.detect(store, "AE_FAST", "TEST");
+            assertEquals(1, fast.size());
+            assertEquals(10, fast.get(0).getPoints());
+            assertEquals(100.0, fast.get(0).getReference(), 0.001);
+            assertFalse(fast.get(0).isCreeping());
+            List<TrendDetector.Trend> slow = TrendDetector.detect(store, "AE_SLOW", "TEST");
+            assertEquals(200.0, slow.get(0).getReference(), 0.001);
+            assertFalse(slow.get(0).isCreeping());
+            assertTrue(TrendDetector.detect(store, "AE_OTHER", "TEST").isEmpty());
+        }
+    }
+
+    /**
+     * Test that series shorter than the minimum are not analyzed.
+     */
+    @Test
+    void testTooFewPoints() throws IOException {
+        try (RunHistoryStore store = RunHistoryStore.open(tempDir)) {
+            for (int run = 0; run < TrendDetector.MIN_POINTS - 1; run++) {
+                store.recordRun("AE_PROGRAM", "TEST", run, singleEntry("SQL", "SQL#1", 100 + run * 50));
+            }
+            assertTrue(TrendDetector.detect(store, "AE_PROGRAM", "TEST").isEmpty());
+        }
+    }
+}
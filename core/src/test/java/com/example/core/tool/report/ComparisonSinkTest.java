@@ -0,0 +1,238 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.AETraceComparator;
+import com.example.core.tool.TopKRegressions;
+import com.example.core.tool.analyzer.TraceEntry;
+import com.example.core.tool.rule.RuleSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.core.tool.analyzer.TraceEntryFixtures.createEntry;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the ComparisonSink implementations.
+ */
+class ComparisonSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that CSV fields containing commas, quotes or line breaks are quoted per RFC 4180.
+     */
+    @Test
+    void testCsvQuotesFieldsWithSeparators() throws IOException {
+        Path outputPath = tempDir.resolve("result.csv");
+        try (CsvComparisonSink sink = new CsvComparisonSink(outputPath.toString())) {
+            sink.begin("DEV", "TEST");
+            sink.accept(ComparisonRow.matched("FUNCTION", "PROC: Get-Rate(A, B)", 100, 400, "ALERT",
+                    "Variables differ;", List.of()));
+            sink.accept(ComparisonRow.unique("SQL", "say \"hi\"", 250));
+            sink.accept(ComparisonRow.missing("STEP", "MAIN.Step01", 30));
+            sink.end(new TopKRegressions());
+        }
+
+        List<String> lines = Files.readAllLines(outputPath);
+        assertEquals("Type,Identifier,DEV(ms),TEST(ms),Diff(ms),Diff(%),Flag,Details", lines.get(0));
+        assertEquals("FUNCTION,\"PROC: Get-Rate(A, B)\",100,400,300," + String.format("%.2f", 300.0)
+                + ",ALERT,Variables differ;", lines.get(1));
+        assertEquals("SQL,\"say \"\"hi\"\"\",N/A,250,N/A,N/A,UNIQUE,", lines.get(2));
+        assertEquals("STEP,MAIN.Step01,30,N/A,N/A,N/A,MISSING,", lines.get(3));
+        assertEquals("plain", CsvComparisonSink.escape("plain"));
+        assertEquals("\"a\nb\"", CsvComparisonSink.escape("a\nb"));
+    }
+
+    /**
+     * Test that the summary console sink counts rows by status without logging them.
+     */
+    @Test
+    void testConsoleSummaryCountsRows() throws IOException {
+        try (ConsoleComparisonSink sink = new ConsoleComparisonSink()) {
+            sink.begin("DEV", "TEST");
+            for (int i = 0; i < 10000; i++) {
+                sink.accept(ComparisonRow.matched("SQL", "SELECT " + i, 100, i % 10 == 0 ? 400 : 100,
+                        i % 10 == 0 ? "ALERT" : "", "", List.of()));
+            }
+            sink.accept(ComparisonRow.unique("SQL", "UPDATE", 250));
+            sink.accept(ComparisonRow.missing("STEP", "MAIN.Step01", 30));
+            sink.end(new TopKRegressions());
+
+            assertEquals(10002, sink.rowCount());
+            assertEquals(1000, sink.flaggedCount());
+        }
+    }
+
+    /**
+     * Test that the JSON Lines sink writes one escaped object per row.
+     */
+    @Test
+    void testJsonLinesEscapesValues() throws IOException {
+        Path outputPath = tempDir.resolve("result.jsonl");
+        try (JsonLinesComparisonSink sink = new JsonLinesComparisonSink(outputPath.toString())) {
+            sink.begin("DEV", "TEST");
+            sink.accept(ComparisonRow.matched("SQL", "SQL#1", 200, 300, "", "SQL Text differs;",
+                    List.of(DetailSection.text("SQL Text Difference", "SQL", "sql", "SELECT \"A\"\nFROM T", "SELECT B"),
+                            DetailSection.table("Variables Difference", "Variable", Map.of("&X", new String[]{"1", "2"})))));
+            sink.accept(ComparisonRow.missing("STEP", "MAIN\\Step", 30));
+            sink.end(new TopKRegressions());
+        }
+
+        List<String> lines = Files.readAllLines(outputPath);
+        assertEquals(3, lines.size());
+        assertEquals("{\"record\":\"header\",\"env1\":\"DEV\",\"env2\":\"TEST\"}", lines.get(0));
+        assertEquals("{\"record\":\"row\",\"status\":\"MATCHED\",\"type\":\"SQL\",\"identifier\":\"SQL#1\","
+                + "\"env1Ms\":200,\"env2Ms\":300,\"diffMs\":100,\"diffPercent\":50.0,\"flag\":\"\","
+                + "\"details\":\"SQL Text differs;\",\"sections\":["
+                + "{\"title\":\"SQL Text Difference\",\"env1\":\"SELECT \\\"A\\\"\\nFROM T\",\"env2\":\"SELECT B\"},"
+                + "{\"title\":\"Variables Difference\",\"differences\":{\"&X\":[\"1\",\"2\"]}}]}", lines.get(1));
+        assertEquals("{\"record\":\"row\",\"status\":\"MISSING\",\"type\":\"STEP\",\"identifier\":\"MAIN\\\\Step\","
+                + "\"env1Ms\":30,\"env2Ms\":null,\"flag\":\"MISSING\",\"details\":\"\"}", lines.get(2));
+    }
+
+    /**
+     * Test that one comparison feeds every format, including sinks running on their own writer threads.
+     */
+    @Test
+    void testSinglePassFanOutWithAsyncWriters() throws IOException {
+        List<TraceEntry> env1Entries = new ArrayList<>();
+        List<TraceEntry> env2Entries = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            env1Entries.add(createEntry("SQL", "SQL, #" + i, i * 10L, i * 10L + 5));
+            env2Entries.add(createEntry("SQL", "SQL, #" + i, i * 10L, i * 10L + (i == 42 ? 500 : 5)));
+        }
+        env2Entries.add(createEntry("STEP", "EXTRA", 0, 10));
+
+        Path outputPath = tempDir.resolve("fan_out.csv");
+        try (ComparisonSink sink = ComparisonSinks.create(outputPath.toString(), "AE",
+                EnumSet.allOf(ComparisonSinks.Format.class), true)) {
+            AETraceComparator.compareTraces(env1Entries, env2Entries, "DEV", "TEST", RuleSet.defaults(), sink);
+        }
+
+        List<String> csvLines = Files.readAllLines(outputPath);
+        List<String> jsonLines = Files.readAllLines(tempDir.resolve("fan_out.jsonl"));
+        List<String> detailedLines = Files.readAllLines(tempDir.resolve("fan_out_detailed.md"));
+
+        assertEquals(5002, csvLines.size());
+        assertEquals(5002, jsonLines.size());
+        assertTrue(csvLines.get(43).startsWith("SQL,\"SQL, #42\",5,500,495,"), csvLines.get(43));
+        assertTrue(csvLines.get(43).endsWith(",ALERT,"), csvLines.get(43));
+        assertEquals("STEP,EXTRA,N/A,10,N/A,N/A,UNIQUE,", csvLines.get(5001));
+        assertEquals("# AE Trace Comparison Detailed Report", detailedLines.get(0));
+        assertEquals("## Top 20 Regressions", detailedLines.get(3));
+        assertTrue(detailedLines.contains("### ALERT: SQL - SQL, #42"));
+        assertTrue(detailedLines.contains("### UNIQUE: STEP - EXTRA"));
+    }
+
+    /**
+     * Test that a failure on the writer thread surfaces to the comparison thread.
+     */
+    @Test
+    void testAsyncSinkRethrowsWriterFailure() {
+        ComparisonSink failing = new ComparisonSink() {
+            @Override
+            public void begin(String env1Name, String env2Name) {
+            }
+
+            @Override
+            public void accept(ComparisonRow row) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void end(TopKRegressions topRegressions) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        IOException e = assertThrows(IOException.class, () -> {
+            try (AsyncComparisonSink sink = new AsyncComparisonSink(failing, 4)) {
+                sink.begin("DEV", "TEST");
+                for (int i = 0; i < 100; i++) {
+                    sink.accept(ComparisonRow.unique("SQL", "SQL#" + i, i));
+                }
+                sink.end(new TopKRegressions());
+            }
+        });
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        assertEquals("disk full", cause.getMessage());
+    }
+
+    /**
+     * Test that a pull sink blocks the comparison thread while its queue is full and hands every row to the reader.
+     */
+    @Test
+    void testPullSinkAppliesBackpressure() throws Exception {
+        PullComparisonSink pull = new PullComparisonSink(4, Duration.ofMinutes(1));
+        AtomicInteger submitted = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            try (pull) {
+                pull.begin("DEV", "TEST");
+                for (int i = 0; i < 100; i++) {
+                    pull.accept(ComparisonRow.unique("SQL", "SQL#" + i, i));
+                    submitted.incrementAndGet();
+                }
+                pull.end(new TopKRegressions());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        producer.start();
+
+        // 沒有讀取方時比較線程最多只能放入隊列容量那麼多的事件
+        Thread.sleep(300);
+        assertTrue(producer.isAlive());
+        assertTrue(submitted.get() <= 4, "submitted " + submitted.get());
+
+        StringWriter out = new StringWriter();
+        pull.drainTo(new JsonLinesComparisonSink(out), out);
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        String[] lines = out.toString().split("\n");
+        assertEquals(101, lines.length);
+        assertTrue(lines[100].contains("\"identifier\":\"SQL#99\""), lines[100]);
+    }
+
+    /**
+     * Test that a reader leaving releases a comparison thread waiting on the full queue.
+     */
+    @Test
+    void testPullSinkDetachReleasesProducer() throws Exception {
+        PullComparisonSink pull = new PullComparisonSink(2, Duration.ofMinutes(1));
+        AtomicInteger submitted = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            try (pull) {
+                for (int i = 0; i < 100; i++) {
+                    pull.accept(ComparisonRow.unique("SQL", "SQL#" + i, i));
+                    submitted.incrementAndGet();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        producer.start();
+        Thread.sleep(200);
+        assertTrue(producer.isAlive());
+
+        pull.detach();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(100, submitted.get());
+        assertTrue(pull.isDetached());
+    }
+}
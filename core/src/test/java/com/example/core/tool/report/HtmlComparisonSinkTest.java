@@ -0,0 +1,69 @@
+package com.example.core.tool.report;
+
+import com.example.core.tool.TopKRegressions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the HtmlComparisonSink class.
+ */
+class HtmlComparisonSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that rows are written as column-encoded chunks and detail sections as separate blocks.
+     */
+    @Test
+    void testRowsAreChunkedAndSectionsSeparated() throws IOException {
+        Path outputPath = tempDir.resolve("report.html");
+        int rows = HtmlComparisonSink.CHUNK_ROWS + 10;
+        TopKRegressions topRegressions = new TopKRegressions();
+        try (HtmlComparisonSink sink = new HtmlComparisonSink(outputPath.toString(), "AE")) {
+            sink.begin("DEV", "<TEST>");
+            sink.accept(ComparisonRow.matched("SQL", "SQL#</script>", 100, 400, "ALERT", "SQL Text differs;",
+                    List.of(DetailSection.text("SQL Text Difference", "SQL", "sql", "SELECT 1", "SELECT 2 -- </script>"),
+                            DetailSection.table("Variables Difference", "Variable", Map.of("&X", new String[]{"1", "2"})))));
+            topRegressions.offer("SQL", "SQL#</script>", 100, 400);
+            for (int i = 1; i < rows - 1; i++) {
+                sink.accept(ComparisonRow.matched("STEP", "MAIN.Step" + i, 10, 12, "", "", List.of()));
+            }
+            sink.accept(ComparisonRow.missing("STEP", "MAIN.Gone", 30));
+            sink.end(topRegressions);
+        }
+
+        String html = Files.readString(outputPath);
+        assertTrue(html.contains("<title>AE Trace Comparison: DEV vs &lt;TEST&gt;</title>"));
+        assertFalse(html.contains("<!--DATA-->"));
+        assertEquals(2, count(html, "<script type=\"application/json\" class=\"rows\">"));
+        assertEquals(1, count(html, "<script type=\"application/json\" id=\"s0\">"));
+        // 資料中的 </script> 必須被轉義，否則會提前結束script元素
+        assertEquals(0, count(html, "#</script>"));
+        assertEquals(0, count(html, "-- </script>"));
+        assertTrue(html.contains("\"id\":[\"SQL#\\u003c/script\\u003e\""));
+        assertTrue(html.contains("\"rows\":" + rows + ","));
+        assertTrue(html.contains("\"types\":[\"SQL\",\"STEP\"]"));
+        assertTrue(html.contains("\"flags\":[\"ALERT\",\"\",\"MISSING\"]"));
+        assertTrue(html.contains("\"e1\":[100,10,"));
+        assertTrue(html.contains(",30],\"e2\":["));
+        assertTrue(html.contains(",-1],\"flag\":["));
+        assertTrue(html.indexOf("id=\"meta\"") < html.indexOf("(function () {"));
+    }
+
+    private static int count(String text, String needle) {
+        int count = 0;
+        for (int i = text.indexOf(needle); i >= 0; i = text.indexOf(needle, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.core.tool.rule;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the RuleSet class.
+ */
+class RuleSetTest {
+
+    /**
+     * Test that the default rules reproduce the hard-coded 20% / 100ms ALERT rule.
+     */
+    @Test
+    void testDefaultsMatchLegacyAlertRule() {
+        RuleSet rules = RuleSet.defaults();
+        RuleInput input = new RuleInput();
+
+        long[][] cases = {{500, 1500}, {1000, 1150}, {50, 140}, {50, 200}, {1000, 700}, {0, 150}, {0, 50}};
+        for (long[] times : cases) {
+            long diff = times[1] - times[0];
+            String expected = (Math.abs(diff) > times[0] * 0.2 && Math.abs(diff) > 100) ? "ALERT" : "";
+            assertEquals(expected, rules.evaluate("SQL", input.set(times[0], times[1], 1)),
+                    "env1=" + times[0] + " env2=" + times[1]);
+        }
+    }
+
+    /**
+     * Test that type-specific composite rules are checked before wildcard rules.
+     */
+    @Test
+    void testPerTypeCompositeRules() {
+        RuleSet rules = RuleSet.compile(
+                "# SQL only matters when it is slow and frequent\n" +
+                "SQL: ratio > 3x AND diff > 500 ms AND executions > 100 -> ALERT\n" +
+                "SQL: ratio > 3x -> WATCH\n" +
+                "STEP, FUNCTION: abs(diff) > 1s && pct > 50% -> ALERT\n" +
+                "\n" +
+                "*: abs(diff) > env1 * 0.2 && abs(diff) > 100 -> ALERT\n");
+        RuleInput input = new RuleInput();
+
+        assertEquals("ALERT", rules.evaluate("SQL", input.set(200, 800, 101)));
+        assertEquals("WATCH", rules.evaluate("SQL", input.set(200, 800, 100)));
+        // Falls through to the wildcard rule
+        assertEquals("ALERT", rules.evaluate("SQL", input.set(1000, 1500, 1)));
+        assertEquals("ALERT", rules.evaluate("STEP", input.set(1000, 1500, 1)));
+        assertEquals("ALERT", rules.evaluate("FUNCTION", input.set(1000, 2500, 1)));
+        assertEquals("", rules.evaluate("METHOD", input.set(1000, 1100, 1)));
+
+        assertEquals(5, rules.size());
+        assertEquals(3, rules.rulesFor("SQL").size());
+    }
+
+    /**
+     * Test arithmetic, precedence, negation and functions.
+     */
+    @Test
+    void testExpressions() {
+        RuleInput input = new RuleInput().set(100, 400, 3);
+
+        assertEquals("X", RuleSet.compile("*: env1 + env2 * 2 == 900 -> X").evaluate("SQL", input));
+        assertEquals("X", RuleSet.compile("*: (env1 + env2) * 2 == 1000 -> X").evaluate("SQL", input));
+        assertEquals("X", RuleSet.compile("*: -diff < 0 && !(executions > 3) -> X").evaluate("SQL", input));
+        assertEquals("X", RuleSet.compile("*: max(env1, env2) - min(env1, env2) == abs(-300) -> X").evaluate("SQL", input));
+        assertEquals("X", RuleSet.compile("*: ratio == 4 OR NOT env1 > 0 -> X").evaluate("SQL", input));
+        assertEquals("", RuleSet.compile("*: diff > 0.5s -> X").evaluate("SQL", input));
+    }
+
+    /**
+     * Test that invalid definitions are rejected with the line number.
+     */
+    @Test
+    void testInvalidRules() {
+        IllegalArgumentException missingArrow = assertThrows(IllegalArgumentException.class,
+                () -> RuleSet.compile("# comment\nSQL: diff > 100"));
+        assertTrue(missingArrow.getMessage().contains("第2行"));
+
+        assertThrows(IllegalArgumentException.class, () -> RuleSet.compile("SQL: diff -> ALERT"));
+        assertThrows(IllegalArgumentException.class, () -> RuleSet.compile("SQL: duration > 100 -> ALERT"));
+        assertThrows(IllegalArgumentException.class, () -> RuleSet.compile("SQL: (diff > 100 -> ALERT"));
+        assertThrows(IllegalArgumentException.class, () -> RuleSet.compile("SQL: diff > 100 100 -> ALERT"));
+        assertThrows(IllegalArgumentException.class, () -> RuleSet.compile("SQL: diff > 100 ->"));
+    }
+
+    /**
+     * Test that the ratio threshold reproduces the THRESHOLD_EXCEEDED rule.
+     */
+    @Test
+    void testRatioThreshold() {
+        RuleSet rules = RuleSet.ratioThreshold(2.0);
+        RuleInput input = new RuleInput();
+
+        assertEquals("THRESHOLD_EXCEEDED", rules.evaluate("SQL", input.set(100, 201, 1)));
+        assertEquals("THRESHOLD_EXCEEDED", rules.evaluate("STEP", input.set(201, 100, 1)));
+        assertEquals("", rules.evaluate("SQL", input.set(100, 200, 1)));
+        assertEquals("", rules.evaluate("SQL", input.set(0, 500, 1)));
+    }
+
+    /**
+     * Test that thresholds too small or too large for plain double formatting still compile.
+     */
+    @Test
+    void testThresholdsWithoutScientificNotation() {
+        RuleInput input = new RuleInput();
+
+        // 0.001% 的百分比閾值在double中為1.0E-5
+        RuleSet percent = RuleSet.threshold(0.001, 0);
+        assertEquals("ALERT", percent.evaluate("SQL", input.set(1_000_000, 1_000_011, 1)));
+        assertEquals("", percent.evaluate("SQL", input.set(1_000_000, 1_000_010, 1)));
+
+        RuleSet ratio = RuleSet.ratioThreshold(1.0E7);
+        assertEquals("THRESHOLD_EXCEEDED", ratio.evaluate("SQL", input.set(1, 10_000_001, 1)));
+        assertEquals("", ratio.evaluate("SQL", input.set(1, 10_000_000, 1)));
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.core.tool.store;
+
+import com.example.core.tool.TopKRegressions;
+import com.example.core.tool.report.ComparisonRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the ResultStoreSink and ResultStore classes.
+ */
+class ResultStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test that rows round-trip with their columns and that filters, sorting and paging use the indexes correctly.
+     */
+    @Test
+    void testQueryFiltersSortsAndPages() throws IOException {
+        List<ComparisonRow> rows = List.of(
+                ComparisonRow.matched("SQL", "SELECT A", 100, 700, "ALERT", "SQL Text differs;", List.of()),
+                ComparisonRow.matched("STEP", "MAIN.STEP1", 1000, 1100, "", "", List.of()),
+                ComparisonRow.unique("SQL", "SELECT B", 50),
+                ComparisonRow.matched("SQL", "SELECT C", 300, 200, "", "", List.of()),
+                ComparisonRow.missing("PROC", "Get-Rate(A, B)", 40),
+                ComparisonRow.matched("SQL", "UPDATE 中文", 10, 900, "ALERT", "", List.of()));
+        ResultStore store = write(rows);
+
+        assertEquals(6, store.getRowCount());
+        assertEquals("DEV", store.getEnv1Name());
+        ResultPage.Row first = store.row(0);
+        assertEquals(ComparisonRow.Status.MATCHED, first.status());
+        assertEquals("SELECT A", first.identifier());
+        assertEquals(600, first.diff());
+        assertEquals(600.0, first.diffPercent());
+        assertEquals("SQL Text differs;", first.details());
+        ResultPage.Row unique = store.row(2);
+        assertNull(unique.env1Time());
+        assertNull(unique.diff());
+        assertEquals("UNIQUE", unique.flag());
+
+        ResultPage page = store.query(query("SQL", null, null, 500L, "-diff", 0, 10));
+        assertEquals(2, page.total());
+        assertEquals(List.of(5, 0), rowNumbers(page));
+
+        page = store.query(query(null, "ALERT", null, null, "identifier", 0, 10));
+        assertEquals(List.of(0, 5), rowNumbers(page));
+
+        page = store.query(query(null, null, "SELECT", null, "-identifier", 0, 10));
+        assertEquals(List.of(3, 2, 0), rowNumbers(page));
+
+        // 只存在於一個環境的行沒有diff，無論升降序都排在最後
+        page = store.query(query(null, null, null, null, "diff", 0, 10));
+        assertEquals(List.of(3, 1, 0, 5, 2, 4), rowNumbers(page));
+        page = store.query(query(null, null, null, null, "-diff", 0, 10));
+        assertEquals(List.of(5, 0, 1, 3, 2, 4), rowNumbers(page));
+
+        page = store.query(query(null, null, null, null, "type", 1, 2));
+        assertEquals(6, page.total());
+        assertEquals(List.of(2, 3), rowNumbers(page));
+
+        page = store.query(query(null, "", null, null, "-row", 0, 10));
+        assertEquals(List.of(3, 1), rowNumbers(page));
+
+        assertEquals(0, store.query(query("FUNCTION", null, null, null, "row", 0, 10)).total());
+        assertTrue(store.query(query(null, null, null, null, "row", 5, 10)).rows().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> store.query(query(null, null, null, null, "unknown", 0, 10)));
+        assertThrows(IllegalArgumentException.class, () -> store.query(query(null, null, null, null, "row", 0, 0)));
+    }
+
+    /**
+     * Test that indexed queries over many rows return the same pages as filtering and sorting the rows directly.
+     */
+    @Test
+    void testQueryMatchesBruteForce() throws IOException {
+        Random random = new Random(42);
+        String[] types = {"SQL", "STEP", "FUNCTION"};
+        String[] flags = {"", "ALERT", "SLOW"};
+        List<ComparisonRow> rows = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String type = types[random.nextInt(types.length)];
+            String identifier = type + "#" + random.nextInt(5000);
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                rows.add(ComparisonRow.unique(type, identifier, random.nextInt(1000)));
+            } else if (kind == 1) {
+                rows.add(ComparisonRow.missing(type, identifier, random.nextInt(1000)));
+            } else {
+                rows.add(ComparisonRow.matched(type, identifier, random.nextInt(1000), random.nextInt(1000),
+                        flags[random.nextInt(flags.length)], "", List.of()));
+            }
+        }
+        ResultStore store = write(rows);
+
+        Comparator<Integer> byDiffDescending = Comparator.comparingLong((Integer row) -> rows.get(row).diff()).reversed();
+        assertBruteForce(store, rows, query("SQL", null, null, 200L, "-diff", 3, 25),
+                row -> row.getType().equals("SQL") && row.getStatus() == ComparisonRow.Status.MATCHED && row.diff() >= 200,
+                byDiffDescending);
+        assertBruteForce(store, rows, query(null, "SLOW", "STEP#1", null, "identifier", 1, 10),
+                row -> row.getFlag().equals("SLOW") && row.getIdentifier().startsWith("STEP#1"),
+                Comparator.comparing((Integer row) -> rows.get(row).getIdentifier()));
+        ResultQuery matched = query(null, null, null, null, "-diff", 100, 50);
+        matched.setStatus(ComparisonRow.Status.MATCHED);
+        assertBruteForce(store, rows, matched, row -> row.getStatus() == ComparisonRow.Status.MATCHED, byDiffDescending);
+    }
+
+    /**
+     * Test that the spilled columns are removed, a failed comparison leaves no file and a closed store rejects queries.
+     */
+    @Test
+    void testSpillCleanupAndClose() throws IOException {
+        ResultStore store = write(List.of(ComparisonRow.matched("SQL", "SELECT A", 100, 700, "ALERT", "", List.of())));
+        assertFalse(Files.exists(tempDir.resolve("result.rows.spill")));
+
+        store.close();
+        store.close();
+        assertTrue(store.isClosed());
+        assertThrows(IllegalStateException.class, () -> store.row(0));
+        assertThrows(IllegalStateException.class, () -> store.query(query(null, null, null, null, "row", 0, 10)));
+        Files.delete(tempDir.resolve("result.rows"));
+
+        Path failed = tempDir.resolve("failed.rows");
+        ResultStoreSink sink = new ResultStoreSink(failed);
+        sink.begin("DEV", "TEST");
+        sink.accept(ComparisonRow.unique("SQL", "SELECT B", 50));
+        assertTrue(Files.isDirectory(tempDir.resolve("failed.rows.spill")));
+        sink.close();
+        assertFalse(Files.exists(failed));
+        assertFalse(Files.exists(tempDir.resolve("failed.rows.spill")));
+    }
+
+    /**
+     * Test that the row sort is stable and agrees with sorting boxed rows.
+     */
+    @Test
+    void testSortIsStable() {
+        Random random = new Random(7);
+        int[] keys = new int[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt(20);
+        }
+        for (int length : new int[]{0, 1, 31, 33, 1000}) {
+            int[] rows = new int[length];
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < length; i++) {
+                rows[i] = i;
+                expected.add(i);
+            }
+            expected.sort(Comparator.comparingInt(row -> keys[row]));
+            ResultStoreSink.sort(rows, new int[length], length, (a, b) -> Integer.compare(keys[a], keys[b]));
+            assertEquals(expected, Arrays.stream(rows).boxed().toList());
+        }
+    }
+
+    private void assertBruteForce(ResultStore store, List<ComparisonRow> rows, ResultQuery query,
+                                  Predicate<ComparisonRow> filter, Comparator<Integer> order) {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (filter.test(rows.get(i))) {
+                expected.add(i);
+            }
+        }
+        // 排序是穩定的，同值的行保持行號順序
+        expected.sort(order);
+        ResultPage page = store.query(query);
+        int from = Math.min(expected.size(), query.getPage() * query.getSize());
+        int to = Math.min(expected.size(), from + query.getSize());
+        assertEquals(expected.size(), page.total());
+        List<Long> expectedKeys = new ArrayList<>();
+        for (int row : expected.subList(from, to)) {
+            expectedKeys.add(rows.get(row).diff());
+        }
+        List<Long> actualKeys = new ArrayList<>();
+        for (ResultPage.Row row : page.rows()) {
+            assertTrue(filter.test(rows.get(row.row())));
+            actualKeys.add(rows.get(row.row()).diff());
+        }
+        assertEquals(to - from, page.rows().size());
+        if (query.getSort().endsWith("diff")) {
+            assertEquals(expectedKeys, actualKeys);
+        }
+    }
+
+    private ResultStore write(List<ComparisonRow> rows) throws IOException {
+        Path path = tempDir.resolve("result.rows");
+        ResultStoreSink sink = new ResultStoreSink(path);
+        sink.begin("DEV", "TEST");
+        for (ComparisonRow row : rows) {
+            sink.accept(row);
+        }
+        sink.end(new TopKRegressions());
+        sink.close();
+        assertTrue(Files.exists(path));
+        return ResultStore.open(path);
+    }
+
+    private static ResultQuery query(String type, String flag, String prefix, Long minDiff, String sort, int page, int size) {
+        ResultQuery query = new ResultQuery();
+        query.setType(type);
+        query.setFlag(flag);
+        query.setPrefix(prefix);
+        query.setMinDiff(minDiff);
+        query.setSort(sort);
+        query.setPage(page);
+        query.setSize(size);
+        return query;
+    }
+
+    private static List<Integer> rowNumbers(ResultPage page) {
+        List<Integer> rows = new ArrayList<>();
+        for (ResultPage.Row row : page.rows()) {
+            rows.add(row.row());
+        }
+        return Collections.unmodifiableList(rows);
+    }
+}